@@ -0,0 +1,227 @@
+package com.example.bloodpressuremonitoring;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import androidx.core.app.ActivityCompat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@link GattTransport} over {@link BluetoothGatt}. Holds this connection's own
+ * characteristic handles, resolved once per service discovery.
+ */
+final class AndroidGattTransport implements GattTransport {
+
+    static final UUID CCCD_UUID =
+            UUID.fromString("00002902-0000-1000-8000-00805f9b34fb"); // 0x2902
+
+    private final Context context;
+    private final BluetoothDevice device;
+    private final UUID serviceUuid;
+
+    private volatile BluetoothGatt gatt;
+    private volatile Callback callback;
+    private volatile Map<UUID, BluetoothGattCharacteristic> characteristics = Collections.emptyMap();
+
+    AndroidGattTransport(Context context, BluetoothDevice device, UUID serviceUuid) {
+        this.context = context.getApplicationContext();
+        this.device = device;
+        this.serviceUuid = serviceUuid;
+    }
+
+    @Override
+    public String address() {
+        return device.getAddress();
+    }
+
+    @Override
+    public boolean connect(Callback callback, boolean autoConnect) {
+        if (!hasConnectPermission()) return false;
+        this.callback = callback;
+        gatt = device.connectGatt(context, autoConnect, gattCallback, BluetoothDevice.TRANSPORT_LE);
+        return gatt != null;
+    }
+
+    @Override
+    public boolean discoverServices() {
+        BluetoothGatt g = gatt;
+        return g != null && hasConnectPermission() && g.discoverServices();
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID characteristic) {
+        return characteristics.containsKey(characteristic);
+    }
+
+    @Override
+    public boolean hasProperties(UUID characteristic, int properties) {
+        BluetoothGattCharacteristic c = characteristics.get(characteristic);
+        return c != null && (c.getProperties() & properties) == properties;
+    }
+
+    @Override
+    public int properties(UUID characteristic) {
+        BluetoothGattCharacteristic c = characteristics.get(characteristic);
+        return c == null ? -1 : c.getProperties();
+    }
+
+    @Override
+    public boolean isBonded() {
+        return hasConnectPermission() && device.getBondState() == BluetoothDevice.BOND_BONDED;
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID characteristic) {
+        BluetoothGatt g = gatt;
+        BluetoothGattCharacteristic c = characteristics.get(characteristic);
+        return g != null && c != null && hasConnectPermission() && g.readCharacteristic(c);
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID characteristic, byte[] value) {
+        BluetoothGatt g = gatt;
+        BluetoothGattCharacteristic c = characteristics.get(characteristic);
+        if (g == null || c == null || !hasConnectPermission()) return false;
+        c.setValue(value);
+        return g.writeCharacteristic(c);
+    }
+
+    @Override
+    public boolean enableNotifications(UUID characteristic, byte[] cccdValue) {
+        BluetoothGatt g = gatt;
+        BluetoothGattCharacteristic c = characteristics.get(characteristic);
+        if (g == null || c == null || !hasConnectPermission()) return false;
+        BluetoothGattDescriptor cccd = c.getDescriptor(CCCD_UUID);
+        if (cccd == null) return false;
+        if (!g.setCharacteristicNotification(c, true)) return false;
+        cccd.setValue(cccdValue);
+        return g.writeDescriptor(cccd);
+    }
+
+    @Override
+    public boolean enableLocalNotifications(UUID characteristic) {
+        BluetoothGatt g = gatt;
+        BluetoothGattCharacteristic c = characteristics.get(characteristic);
+        return g != null && c != null && hasConnectPermission() && g.setCharacteristicNotification(c, true);
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        BluetoothGatt g = gatt;
+        return g != null && hasConnectPermission() && g.requestMtu(mtu);
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int priority) {
+        BluetoothGatt g = gatt;
+        return g != null && hasConnectPermission() && g.requestConnectionPriority(priority);
+    }
+
+    @Override
+    public boolean isLe2MPhySupported() {
+        BluetoothManager manager = context.getSystemService(BluetoothManager.class);
+        BluetoothAdapter adapter = manager != null ? manager.getAdapter() : null;
+        return adapter != null && adapter.isLe2MPhySupported();
+    }
+
+    @Override
+    public boolean setPreferredPhy(int txPhyMask, int rxPhyMask, int phyOptions) {
+        BluetoothGatt g = gatt;
+        if (g == null || !hasConnectPermission()) return false;
+        // No return value: a refusal shows up as a missing onPhyUpdate (operation timeout)
+        g.setPreferredPhy(txPhyMask, rxPhyMask, phyOptions);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        BluetoothGatt g = gatt;
+        gatt = null;
+        callback = null;
+        if (g != null && hasConnectPermission()) g.close();
+    }
+
+    private boolean hasConnectPermission() {
+        return ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    // Binder threads; forwarded as-is, the session serializes them
+    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt g, int status, int newState) {
+            Callback cb = callback;
+            if (cb != null) cb.onConnectionStateChanged(newState == BluetoothProfile.STATE_CONNECTED, status);
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt g, int status) {
+            Map<UUID, BluetoothGattCharacteristic> found = new HashMap<>();
+            BluetoothGattService service = g.getService(serviceUuid);
+            if (service != null) {
+                for (BluetoothGattCharacteristic c : service.getCharacteristics()) found.put(c.getUuid(), c);
+            }
+            characteristics = found;
+            Callback cb = callback;
+            if (cb != null) cb.onServicesDiscovered(status);
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt g, BluetoothGattCharacteristic c, int status) {
+            Callback cb = callback;
+            if (cb != null) cb.onCharacteristicRead(c.getUuid(), status, c.getValue());
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt g, BluetoothGattCharacteristic c, int status) {
+            Callback cb = callback;
+            if (cb != null) cb.onCharacteristicWrite(c.getUuid(), status);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt g, BluetoothGattDescriptor d, int status) {
+            Callback cb = callback;
+            if (cb != null) cb.onDescriptorWrite(d.getCharacteristic().getUuid(), status, d.getValue());
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic c) {
+            Callback cb = callback;
+            if (cb != null) cb.onCharacteristicChanged(c.getUuid(), c.getValue());
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt g, int mtu, int status) {
+            Callback cb = callback;
+            if (cb != null) cb.onMtuChanged(mtu, status);
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt g, int txPhy, int rxPhy, int status) {
+            Callback cb = callback;
+            if (cb != null) cb.onPhyUpdate(txPhy, rxPhy, status);
+        }
+
+        // The stack handles the 0x2A05 indication and reports it here (API 31)
+        @Override
+        public void onServiceChanged(BluetoothGatt g) {
+            characteristics = Collections.emptyMap();
+            Callback cb = callback;
+            if (cb != null) cb.onServiceChanged();
+        }
+    };
+}
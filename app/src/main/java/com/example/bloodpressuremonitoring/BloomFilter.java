@@ -0,0 +1,56 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * Bloom filter over 64-bit keys: "maybe seen" or "certainly not seen".
+ * <p>
+ * {@value #BITS_PER_KEY} bits and {@value #HASHES} probes per key give about 1% false
+ * positives at the capacity it was sized for, and more past it. The probes are derived
+ * from one mixed 64-bit value (double hashing), so a lookup is a few shifts and
+ * multiplications and allocates nothing. Not thread-safe.
+ */
+final class BloomFilter {
+
+    static final int BITS_PER_KEY = 10;
+    static final int HASHES = 7;
+
+    private final long[] words;
+    private final long bits;
+
+    BloomFilter(long capacity) {
+        long n = Math.max(64, Math.max(capacity, 1) * BITS_PER_KEY);
+        words = new long[(int) Math.min((n + 63) >>> 6, Integer.MAX_VALUE - 8)];
+        bits = (long) words.length << 6;
+    }
+
+    void add(long key) {
+        long h = mix(key);
+        long h1 = h >>> 32;
+        long h2 = h & 0xFFFFFFFFL | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) % bits;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(long key) {
+        long h = mix(key);
+        long h1 = h >>> 32;
+        long h2 = h & 0xFFFFFFFFL | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) % bits;
+            if ((words[(int) (bit >>> 6)] & 1L << bit) == 0) return false;
+        }
+        return true;
+    }
+
+    long bitCount() {
+        return bits;
+    }
+
+    // SplitMix64 finalizer: every input bit affects every output bit
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
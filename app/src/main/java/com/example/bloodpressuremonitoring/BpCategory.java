@@ -0,0 +1,23 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * Blood pressure category of one reading (ACC/AHA 2017, adults, mmHg). A reading takes
+ * the higher of the categories its systolic and diastolic values fall in.
+ */
+public enum BpCategory {
+    NORMAL,     // < 120 and < 80
+    ELEVATED,   // 120-129 and < 80
+    STAGE_1,    // 130-139 or 80-89
+    STAGE_2,    // >= 140 or >= 90
+    CRISIS;     // > 180 and/or > 120
+
+    static final BpCategory[] VALUES = values();
+
+    public static BpCategory of(float systolic, float diastolic) {
+        if (systolic > 180 || diastolic > 120) return CRISIS;
+        if (systolic >= 140 || diastolic >= 90) return STAGE_2;
+        if (systolic >= 130 || diastolic >= 80) return STAGE_1;
+        if (systolic >= 120) return ELEVATED;
+        return NORMAL;
+    }
+}
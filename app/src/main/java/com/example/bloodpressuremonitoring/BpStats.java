@@ -0,0 +1,165 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Locale;
+
+/**
+ * Running statistics of a set of readings, in mmHg: count, mean, min and max of
+ * systolic, diastolic and MAP, the same for the pulse rate when present, and the number
+ * of readings per {@link BpCategory}.
+ * <p>
+ * Adding a reading or merging another instance is O(1) and allocates nothing. Not
+ * thread-safe: owners synchronize (see {@link MeasurementRollups}).
+ */
+public final class BpStats {
+
+    static final float KPA_TO_MMHG = 7.500617f;
+
+    private long count;
+    private double sumSystolic;
+    private double sumDiastolic;
+    private double sumMap;
+    private float minSystolic = Float.POSITIVE_INFINITY;
+    private float maxSystolic = Float.NEGATIVE_INFINITY;
+    private float minDiastolic = Float.POSITIVE_INFINITY;
+    private float maxDiastolic = Float.NEGATIVE_INFINITY;
+    private float minMap = Float.POSITIVE_INFINITY;
+    private float maxMap = Float.NEGATIVE_INFINITY;
+
+    private long pulseCount;
+    private double sumPulse;
+    private float minPulse = Float.POSITIVE_INFINITY;
+    private float maxPulse = Float.NEGATIVE_INFINITY;
+
+    private final long[] categories = new long[BpCategory.VALUES.length];
+
+    /** Adds a stored reading, converted to mmHg if it was taken in kPa. */
+    public void add(MeasurementRecord r) {
+        float k = (r.flags & BpsMeasurement.FLAG_UNIT_KPA) != 0 ? KPA_TO_MMHG : 1f;
+        add(r.systolic * k, r.diastolic * k, r.map * k, r.hasPulseRate() ? r.pulseRate : Float.NaN);
+    }
+
+    /** Pressures in mmHg; {@code pulseRate} NaN when absent. Non-finite pressures are ignored. */
+    public void add(float systolic, float diastolic, float map, float pulseRate) {
+        if (!Float.isFinite(systolic) || !Float.isFinite(diastolic)) return;
+        count++;
+        sumSystolic += systolic;
+        sumDiastolic += diastolic;
+        sumMap += map;
+        minSystolic = Math.min(minSystolic, systolic);
+        maxSystolic = Math.max(maxSystolic, systolic);
+        minDiastolic = Math.min(minDiastolic, diastolic);
+        maxDiastolic = Math.max(maxDiastolic, diastolic);
+        minMap = Math.min(minMap, map);
+        maxMap = Math.max(maxMap, map);
+        if (Float.isFinite(pulseRate)) {
+            pulseCount++;
+            sumPulse += pulseRate;
+            minPulse = Math.min(minPulse, pulseRate);
+            maxPulse = Math.max(maxPulse, pulseRate);
+        }
+        categories[BpCategory.of(systolic, diastolic).ordinal()]++;
+    }
+
+    public void merge(BpStats o) {
+        if (o.count == 0) return;
+        count += o.count;
+        sumSystolic += o.sumSystolic;
+        sumDiastolic += o.sumDiastolic;
+        sumMap += o.sumMap;
+        minSystolic = Math.min(minSystolic, o.minSystolic);
+        maxSystolic = Math.max(maxSystolic, o.maxSystolic);
+        minDiastolic = Math.min(minDiastolic, o.minDiastolic);
+        maxDiastolic = Math.max(maxDiastolic, o.maxDiastolic);
+        minMap = Math.min(minMap, o.minMap);
+        maxMap = Math.max(maxMap, o.maxMap);
+        pulseCount += o.pulseCount;
+        sumPulse += o.sumPulse;
+        minPulse = Math.min(minPulse, o.minPulse);
+        maxPulse = Math.max(maxPulse, o.maxPulse);
+        for (int i = 0; i < categories.length; i++) categories[i] += o.categories[i];
+    }
+
+    public BpStats copy() {
+        BpStats c = new BpStats();
+        c.merge(this);
+        return c;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long count(BpCategory category) {
+        return categories[category.ordinal()];
+    }
+
+    // Means, minima and maxima are NaN when there is no reading
+
+    public double meanSystolic() {
+        return count == 0 ? Double.NaN : sumSystolic / count;
+    }
+
+    public double meanDiastolic() {
+        return count == 0 ? Double.NaN : sumDiastolic / count;
+    }
+
+    public double meanMap() {
+        return count == 0 ? Double.NaN : sumMap / count;
+    }
+
+    public float minSystolic() {
+        return count == 0 ? Float.NaN : minSystolic;
+    }
+
+    public float maxSystolic() {
+        return count == 0 ? Float.NaN : maxSystolic;
+    }
+
+    public float minDiastolic() {
+        return count == 0 ? Float.NaN : minDiastolic;
+    }
+
+    public float maxDiastolic() {
+        return count == 0 ? Float.NaN : maxDiastolic;
+    }
+
+    public float minMap() {
+        return count == 0 ? Float.NaN : minMap;
+    }
+
+    public float maxMap() {
+        return count == 0 ? Float.NaN : maxMap;
+    }
+
+    public long pulseCount() {
+        return pulseCount;
+    }
+
+    public double meanPulse() {
+        return pulseCount == 0 ? Double.NaN : sumPulse / pulseCount;
+    }
+
+    public float minPulse() {
+        return pulseCount == 0 ? Float.NaN : minPulse;
+    }
+
+    public float maxPulse() {
+        return pulseCount == 0 ? Float.NaN : maxPulse;
+    }
+
+    /** e.g. "n=14 SYS 131 (118-152) DIA 84 (76-95) pulse 71 [NORMAL=2 ELEVATED=3 ...]" */
+    @Override
+    public String toString() {
+        if (count == 0) return "n=0";
+        StringBuilder sb = new StringBuilder(128).append(String.format(Locale.US,
+                "n=%d SYS %.0f (%.0f-%.0f) DIA %.0f (%.0f-%.0f) MAP %.0f", count, meanSystolic(), minSystolic,
+                maxSystolic, meanDiastolic(), minDiastolic, maxDiastolic, meanMap()));
+        if (pulseCount > 0) sb.append(String.format(Locale.US, " pulse %.0f", meanPulse()));
+        sb.append(" [");
+        for (BpCategory c : BpCategory.VALUES) {
+            if (c.ordinal() > 0) sb.append(' ');
+            sb.append(c).append('=').append(categories[c.ordinal()]);
+        }
+        return sb.append(']').toString();
+    }
+}
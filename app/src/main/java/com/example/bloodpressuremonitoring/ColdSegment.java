@@ -0,0 +1,520 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable, columnar file of measurement records: the cold tier of the history (see
+ * {@link MeasurementCompactor}).
+ * <p>
+ * Records are cut into blocks of {@value #BLOCK_RECORDS}. Each block stores one column
+ * per field, so values of the same kind sit together and shrink to a byte or two:
+ * <pre>
+ *   time       zigzag varint deltas from the block minimum (in seconds when every time
+ *              of the block is a whole second, else in ms)
+ *   device     runs: varint length, varint address
+ *   sequence   zigzag varint deltas
+ *   systolic, diastolic, MAP, pulse (present ones only)
+ *              the SFLOAT code (IEEE-11073, as received), zigzag varint deltas; raw
+ *              float32 instead for a block holding a value that is not an SFLOAT
+ *   bits       flags (8 bits), user id and status bitpacked with the narrowest width
+ *              that fits the block
+ * </pre>
+ * File layout, little-endian: a 32-byte header (magic, version, block count, record
+ * count, index offset), the blocks, then an index of 36 bytes per block (offset,
+ * length, record count, min and max time, CRC32). The index is read and every block
+ * CRC checked on open; a time range query decodes only the blocks whose [min, max]
+ * intersects it. Reads decode one block into reused arrays: sequential reads decode
+ * each block once and allocate nothing.
+ * <p>
+ * Written once with {@link #write} (temporary file, then rename), then read-only
+ * through a memory mapping. All methods are synchronized.
+ */
+public final class ColdSegment implements Closeable {
+
+    static final int BLOCK_RECORDS = 1024;
+
+    private static final int MAGIC = 0x53435042; // "BPCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int INDEX_ENTRY = 36;
+
+    // Block flags
+    private static final int TIME_SECONDS = 0x01;
+    private static final int FLOAT_VALUES = 0x02;
+
+    // Columns, in block order
+    private static final int TIME = 0;
+    private static final int DEVICE = 1;
+    private static final int SEQUENCE = 2;
+    private static final int VALUES = 3; // systolic, diastolic, MAP, pulse
+    private static final int BITS = 7;
+    private static final int COLUMNS = 8;
+
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer data;
+    private final long size;
+    private final int blocks;
+    private final int[] blockOffset;
+    private final long[] blockMin;
+    private final long[] blockMax;
+    private final long bytes;
+
+    // The decoded block
+    private final Columns block = new Columns();
+    private final int[] starts = new int[COLUMNS + 1];
+    private int decoded = -1;
+    private int pos;
+    private long blockDecodes;
+
+    private ColdSegment(RandomAccessFile raf) throws IOException {
+        this.raf = raf;
+        FileChannel ch = raf.getChannel();
+        bytes = ch.size();
+        if (bytes < HEADER_SIZE || bytes > Integer.MAX_VALUE) throw new IOException("not a cold segment");
+        data = ch.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("not a cold segment (or unsupported version)");
+        }
+        blocks = data.getInt(8);
+        size = data.getLong(16);
+        long indexOffset = data.getLong(24);
+        if (blocks < 0 || indexOffset < HEADER_SIZE || indexOffset + (long) blocks * INDEX_ENTRY != bytes
+                || size != (long) Math.max(0, blocks - 1) * BLOCK_RECORDS + lastBlockCount(indexOffset)) {
+            throw new IOException("cold segment index is inconsistent");
+        }
+
+        blockOffset = new int[blocks + 1];
+        blockMin = new long[blocks];
+        blockMax = new long[blocks];
+        CRC32 crc = new CRC32();
+        for (int b = 0; b < blocks; b++) {
+            int e = (int) indexOffset + b * INDEX_ENTRY;
+            blockOffset[b] = (int) data.getLong(e);
+            int length = data.getInt(e + 8);
+            blockMin[b] = data.getLong(e + 16);
+            blockMax[b] = data.getLong(e + 24);
+            if (blockOffset[b] < HEADER_SIZE || blockOffset[b] + (long) length > indexOffset) {
+                throw new IOException("cold segment block " + b + " out of bounds");
+            }
+            ByteBuffer slice = data.duplicate();
+            slice.position(blockOffset[b]).limit(blockOffset[b] + length);
+            crc.reset();
+            crc.update(slice);
+            if ((int) crc.getValue() != data.getInt(e + 32)) {
+                throw new IOException("cold segment block " + b + " is corrupted");
+            }
+        }
+        blockOffset[blocks] = (int) indexOffset;
+    }
+
+    private int lastBlockCount(long indexOffset) {
+        return blocks == 0 ? 0 : data.getInt((int) indexOffset + (blocks - 1) * INDEX_ENTRY + 12);
+    }
+
+    public static ColdSegment open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new ColdSegment(raf);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    // =========================
+    // Read
+    // =========================
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /** File size in bytes. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int blockCount() {
+        return blocks;
+    }
+
+    /** Blocks decoded so far (a range query decodes only the blocks it needs). */
+    synchronized long blockDecodes() {
+        return blockDecodes;
+    }
+
+    public synchronized MeasurementRecord read(long index, MeasurementRecord out) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        decode((int) (index / BLOCK_RECORDS));
+        block.get((int) (index % BLOCK_RECORDS), out);
+        return out;
+    }
+
+    /**
+     * Visits, in storage order, every record with {@code from <= timeMillis < to}; blocks
+     * whose time range misses {@code [from, to)} are not decoded.
+     *
+     * @return number of records visited
+     */
+    public synchronized long query(long from, long to, MeasurementRecord scratch, MeasurementStore.Visitor visitor) {
+        long visited = 0;
+        for (int b = 0; b < blocks && from < to; b++) {
+            if (blockMax[b] < from || blockMin[b] >= to) continue;
+            decode(b);
+            for (int i = 0; i < block.count; i++) {
+                long t = block.times[i];
+                if (t < from || t >= to) continue;
+                visited++;
+                block.get(i, scratch);
+                if (!visitor.visit((long) b * BLOCK_RECORDS + i, scratch)) return visited;
+            }
+        }
+        return visited;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        raf.close();
+    }
+
+    // =========================
+    // Block decoding
+    // =========================
+
+    private void decode(int b) {
+        if (decoded == b) return;
+        Columns c = block;
+        pos = blockOffset[b];
+        int flags = data.get(pos++) & 0xFF;
+        int userBits = data.get(pos++) & 0xFF;
+        int statusBits = data.get(pos++) & 0xFF;
+        int n = (int) varint();
+        c.count = n;
+        for (int col = 0; col < COLUMNS; col++) starts[col + 1] = starts[col] + (int) varint();
+        int base = pos;
+
+        pos = base + starts[BITS];
+        long acc = 0;
+        int bitsInAcc = 0;
+        int width = 8 + userBits + statusBits;
+        for (int i = 0; i < n; i++) {
+            while (bitsInAcc < width) {
+                acc |= (long) (data.get(pos++) & 0xFF) << bitsInAcc;
+                bitsInAcc += 8;
+            }
+            c.flags[i] = (int) (acc & 0xFF);
+            c.users[i] = (int) ((acc >>> 8) & ((1L << userBits) - 1));
+            c.statuses[i] = (int) ((acc >>> (8 + userBits)) & ((1L << statusBits) - 1));
+            acc >>>= width;
+            bitsInAcc -= width;
+        }
+
+        pos = base + starts[TIME];
+        long unit = (flags & TIME_SECONDS) != 0 ? 1000L : 1L;
+        long t = blockMin[b] / unit;
+        for (int i = 0; i < n; i++) {
+            t += unzigzag(varint());
+            c.times[i] = t * unit;
+        }
+
+        pos = base + starts[DEVICE];
+        for (int i = 0; i < n; ) {
+            int run = (int) varint();
+            long device = varint();
+            for (int k = 0; k < run; k++) c.devices[i++] = device;
+        }
+
+        pos = base + starts[SEQUENCE];
+        long seq = MeasurementRecord.NO_SEQUENCE;
+        for (int i = 0; i < n; i++) {
+            seq += unzigzag(varint());
+            c.sequences[i] = (int) seq;
+        }
+
+        for (int v = 0; v < 4; v++) {
+            pos = base + starts[VALUES + v];
+            float[] dst = c.values[v];
+            int code = 0;
+            for (int i = 0; i < n; i++) {
+                if (v == 3 && (c.flags[i] & BpsMeasurement.FLAG_PULSE_RATE) == 0) {
+                    dst[i] = Float.NaN;
+                } else if ((flags & FLOAT_VALUES) != 0) {
+                    dst[i] = data.getFloat(pos);
+                    pos += 4;
+                } else {
+                    code += (int) unzigzag(varint());
+                    dst[i] = Ieee11073.sfloat(code);
+                }
+            }
+        }
+        decoded = b;
+        blockDecodes++;
+    }
+
+    private long varint() {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data.get(pos++);
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // =========================
+    // Write
+    // =========================
+
+    /**
+     * Writes records {@code [from, to)} of {@code store} as a segment at {@code file}
+     * (through a temporary file, synced, then renamed).
+     *
+     * @return size of the segment in bytes
+     */
+    public static long write(File file, MeasurementStore store, long from, long to) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        Columns c = new Columns();
+        Encoder encoder = new Encoder();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY).order(ByteOrder.LITTLE_ENDIAN);
+        MeasurementRecord r = new MeasurementRecord();
+        CRC32 crc = new CRC32();
+        long offset = HEADER_SIZE;
+        int blocks = 0;
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(new byte[HEADER_SIZE]);
+            for (long i = from; i < to; ) {
+                c.count = 0;
+                for (; i < to && c.count < BLOCK_RECORDS; i++) c.set(c.count++, store.read(i, r));
+                byte[] encoded = encoder.encode(c);
+                int length = encoder.length;
+                out.write(encoded, 0, length);
+                crc.reset();
+                crc.update(encoded, 0, length);
+                entry.clear();
+                entry.putLong(offset).putInt(length).putInt(c.count)
+                        .putLong(c.minTime()).putLong(c.maxTime()).putInt((int) crc.getValue());
+                index.write(entry.array(), 0, INDEX_ENTRY);
+                offset += length;
+                blocks++;
+            }
+            index.writeTo(out);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(blocks).putInt(0).putLong(to - from).putLong(offset);
+            header.flip();
+            out.getChannel().write(header, 0);
+            out.getChannel().force(true);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("cannot create " + file);
+        }
+        return offset + (long) blocks * INDEX_ENTRY;
+    }
+
+    // One block, one array per field
+    private static final class Columns {
+        final long[] times = new long[BLOCK_RECORDS];
+        final long[] devices = new long[BLOCK_RECORDS];
+        final int[] sequences = new int[BLOCK_RECORDS];
+        final float[][] values = new float[4][BLOCK_RECORDS];
+        final int[] flags = new int[BLOCK_RECORDS];
+        final int[] users = new int[BLOCK_RECORDS];
+        final int[] statuses = new int[BLOCK_RECORDS];
+        int count;
+
+        void set(int i, MeasurementRecord r) {
+            times[i] = r.timeMillis;
+            devices[i] = r.device;
+            sequences[i] = r.sequence;
+            values[0][i] = r.systolic;
+            values[1][i] = r.diastolic;
+            values[2][i] = r.map;
+            values[3][i] = r.pulseRate;
+            flags[i] = r.flags & 0xFF;
+            users[i] = r.hasUserId() ? r.userId & 0xFF : 0;
+            statuses[i] = r.hasStatus() ? r.status & 0xFFFF : 0;
+        }
+
+        void get(int i, MeasurementRecord out) {
+            out.timeMillis = times[i];
+            out.device = devices[i];
+            out.sequence = sequences[i];
+            out.flags = flags[i];
+            out.systolic = values[0][i];
+            out.diastolic = values[1][i];
+            out.map = values[2][i];
+            out.pulseRate = values[3][i];
+            out.userId = out.hasUserId() ? users[i] : BpsMeasurement.ABSENT;
+            out.status = out.hasStatus() ? statuses[i] : BpsMeasurement.ABSENT;
+        }
+
+        long minTime() {
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < count; i++) min = Math.min(min, times[i]);
+            return min;
+        }
+
+        long maxTime() {
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < count; i++) max = Math.max(max, times[i]);
+            return max;
+        }
+    }
+
+    // Encodes a block into reused column buffers
+    private static final class Encoder {
+        private final Buffer[] columns = new Buffer[COLUMNS];
+        private final Buffer out = new Buffer();
+        int length;
+
+        Encoder() {
+            for (int i = 0; i < COLUMNS; i++) columns[i] = new Buffer();
+        }
+
+        byte[] encode(Columns c) {
+            int n = c.count;
+            for (Buffer b : columns) b.length = 0;
+
+            int flags = 0;
+            long min = c.minTime();
+            boolean seconds = true;
+            for (int i = 0; i < n && seconds; i++) seconds = c.times[i] % 1000 == 0;
+            if (seconds) flags |= TIME_SECONDS;
+            if (!sfloatExact(c)) flags |= FLOAT_VALUES;
+            int userBits = 0;
+            int statusBits = 0;
+            for (int i = 0; i < n; i++) {
+                userBits = Math.max(userBits, 32 - Integer.numberOfLeadingZeros(c.users[i]));
+                statusBits = Math.max(statusBits, 32 - Integer.numberOfLeadingZeros(c.statuses[i]));
+            }
+
+            long unit = seconds ? 1000L : 1L;
+            long t = min / unit;
+            for (int i = 0; i < n; i++) {
+                long v = c.times[i] / unit;
+                columns[TIME].zigzag(v - t);
+                t = v;
+            }
+
+            for (int i = 0; i < n; ) {
+                int run = 1;
+                while (i + run < n && c.devices[i + run] == c.devices[i]) run++;
+                columns[DEVICE].varint(run);
+                columns[DEVICE].varint(c.devices[i]);
+                i += run;
+            }
+
+            long seq = MeasurementRecord.NO_SEQUENCE;
+            for (int i = 0; i < n; i++) {
+                columns[SEQUENCE].zigzag(c.sequences[i] - seq);
+                seq = c.sequences[i];
+            }
+
+            for (int v = 0; v < 4; v++) {
+                Buffer col = columns[VALUES + v];
+                int code = 0;
+                for (int i = 0; i < n; i++) {
+                    if (v == 3 && (c.flags[i] & BpsMeasurement.FLAG_PULSE_RATE) == 0) continue;
+                    float value = c.values[v][i];
+                    if ((flags & FLOAT_VALUES) != 0) {
+                        col.int32(Float.floatToRawIntBits(value));
+                    } else {
+                        int next = Ieee11073.toSfloat(value);
+                        col.zigzag(next - code);
+                        code = next;
+                    }
+                }
+            }
+
+            Buffer bits = columns[BITS];
+            long acc = 0;
+            int bitsInAcc = 0;
+            for (int i = 0; i < n; i++) {
+                long packed = c.flags[i] | ((long) c.users[i] << 8) | ((long) c.statuses[i] << (8 + userBits));
+                acc |= packed << bitsInAcc;
+                bitsInAcc += 8 + userBits + statusBits;
+                while (bitsInAcc >= 8) {
+                    bits.put((int) acc);
+                    acc >>>= 8;
+                    bitsInAcc -= 8;
+                }
+            }
+            if (bitsInAcc > 0) bits.put((int) acc);
+
+            out.length = 0;
+            out.put(flags);
+            out.put(userBits);
+            out.put(statusBits);
+            out.varint(n);
+            for (Buffer col : columns) out.varint(col.length);
+            for (Buffer col : columns) out.put(col.bytes, col.length);
+            length = out.length;
+            return out.bytes;
+        }
+
+        // Every present value decodes back from its SFLOAT code to the same float
+        private static boolean sfloatExact(Columns c) {
+            for (int v = 0; v < 4; v++) {
+                for (int i = 0; i < c.count; i++) {
+                    if (v == 3 && (c.flags[i] & BpsMeasurement.FLAG_PULSE_RATE) == 0) continue;
+                    float value = c.values[v][i];
+                    if (Float.floatToIntBits(Ieee11073.sfloat(Ieee11073.toSfloat(value)))
+                            != Float.floatToIntBits(value)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    // Growable byte array
+    private static final class Buffer {
+        byte[] bytes = new byte[4096];
+        int length;
+
+        void put(int b) {
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = (byte) b;
+        }
+
+        void put(byte[] src, int n) {
+            for (int i = 0; i < n; i++) put(src[i]);
+        }
+
+        void varint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                put((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            put((int) v);
+        }
+
+        void zigzag(long v) {
+            varint((v << 1) ^ (v >> 63));
+        }
+
+        void int32(int v) {
+            put(v);
+            put(v >>> 8);
+            put(v >>> 16);
+            put(v >>> 24);
+        }
+    }
+}
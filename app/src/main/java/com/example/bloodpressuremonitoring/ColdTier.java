@@ -0,0 +1,136 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The compacted part of the history: the {@link ColdSegment}s of a directory, in
+ * creation order, read as one sequence of records that comes before the hot
+ * {@link MeasurementStore}.
+ * <p>
+ * Segments are named {@code seg-<number>.bpc}; a segment that fails its checks on open
+ * is left on disk, counted in {@link #unreadable()} and skipped. Thread-safe.
+ */
+public final class ColdTier implements Closeable {
+
+    static final String PREFIX = "seg-";
+    static final String SUFFIX = ".bpc";
+
+    private final File dir;
+    private final List<ColdSegment> segments = new ArrayList<>();
+    // Index of the first record of each segment, plus the total
+    private long[] starts = {0};
+    private int lastNumber = -1;
+    private int unreadable;
+
+    private ColdTier(File dir) {
+        this.dir = dir;
+    }
+
+    public static ColdTier open(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        ColdTier tier = new ColdTier(dir);
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files != null) {
+            // Zero-padded numbers: name order is creation order
+            Arrays.sort(files);
+            for (File f : files) tier.add(f);
+        }
+        return tier;
+    }
+
+    /** File for the next segment; {@link #add} it once written. */
+    synchronized File nextFile() {
+        return new File(dir, String.format(Locale.US, "%s%08d%s", PREFIX, lastNumber + 1, SUFFIX));
+    }
+
+    synchronized void add(File file) {
+        String name = file.getName();
+        try {
+            lastNumber = Math.max(lastNumber,
+                    Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+        } catch (NumberFormatException e) {
+            // Not one of ours: still read, numbering unaffected
+        }
+        try {
+            ColdSegment s = ColdSegment.open(file);
+            if (s.size() == 0) {
+                s.close();
+                return;
+            }
+            segments.add(s);
+            starts = Arrays.copyOf(starts, starts.length + 1);
+            starts[starts.length - 1] = starts[starts.length - 2] + s.size();
+        } catch (IOException e) {
+            unreadable++;
+        }
+    }
+
+    /** The newest segment, null if none. */
+    synchronized ColdSegment last() {
+        return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    }
+
+    // =========================
+    // Read
+    // =========================
+
+    public synchronized long size() {
+        return starts[starts.length - 1];
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /** Bytes on disk of the readable segments. */
+    public synchronized long bytes() {
+        long total = 0;
+        for (ColdSegment s : segments) total += s.bytes();
+        return total;
+    }
+
+    public synchronized int unreadable() {
+        return unreadable;
+    }
+
+    public synchronized MeasurementRecord read(long index, MeasurementRecord out) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        int s = Arrays.binarySearch(starts, index);
+        // Exact hit: first record of segment s; otherwise inside the segment before the insertion point
+        s = s >= 0 ? s : -s - 2;
+        return segments.get(s).read(index - starts[s], out);
+    }
+
+    /**
+     * Visits every record with {@code from <= timeMillis < to}, segment after segment;
+     * indices are tier-wide.
+     *
+     * @return number of records visited
+     */
+    public synchronized long query(long from, long to, MeasurementRecord scratch, MeasurementStore.Visitor visitor) {
+        long visited = 0;
+        boolean[] stopped = {false};
+        for (int s = 0; s < segments.size() && !stopped[0]; s++) {
+            long base = starts[s];
+            visited += segments.get(s).query(from, to, scratch, (index, r) -> {
+                if (visitor.visit(base + index, r)) return true;
+                stopped[0] = true;
+                return false;
+            });
+        }
+        return visited;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (ColdSegment s : segments) s.close();
+        segments.clear();
+        starts = new long[]{0};
+    }
+}
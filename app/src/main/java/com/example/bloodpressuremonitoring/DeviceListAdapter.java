@@ -0,0 +1,74 @@
+package com.example.bloodpressuremonitoring;
+
+import android.bluetooth.BluetoothDevice;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * List adapter over the scanned devices, updated by {@link ScanTable.Diff}s: rows keep
+ * their position (first seen first), added devices are appended, and the list is
+ * notified once per diff. UI thread only.
+ */
+final class DeviceListAdapter extends BaseAdapter {
+
+    private final LayoutInflater inflater;
+    private final ArrayList<ScanTable.Device<BluetoothDevice>> rows = new ArrayList<>();
+
+    DeviceListAdapter(LayoutInflater inflater) {
+        this.inflater = inflater;
+    }
+
+    void apply(ScanTable.Diff<BluetoothDevice> diff) {
+        if (!diff.removed.isEmpty()) {
+            Set<ScanTable.Device<BluetoothDevice>> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+            gone.addAll(diff.removed);
+            rows.removeIf(gone::contains);
+        }
+        rows.addAll(diff.added);
+        // Changed rows are the same objects, updated in place: a redraw is enough
+        notifyDataSetChanged();
+    }
+
+    void clear() {
+        rows.clear();
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return rows.size();
+    }
+
+    @Override
+    public ScanTable.Device<BluetoothDevice> getItem(int position) {
+        return rows.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return MeasurementRecord.deviceId(rows.get(position).address);
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView row = (TextView) (convertView != null
+                ? convertView
+                : inflater.inflate(android.R.layout.simple_list_item_1, parent, false));
+        ScanTable.Device<BluetoothDevice> d = rows.get(position);
+        row.setText((d.name != null ? d.name : "(no name)") + "\n" + d.address + "  " + d.rssi + " dBm");
+        return row;
+    }
+}
@@ -0,0 +1,950 @@
+package com.example.bloodpressuremonitoring;
+
+import com.example.bloodpressuremonitoring.Trace.Category;
+import com.example.bloodpressuremonitoring.Trace.Level;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One connected blood pressure monitor: its transport, operation queue, setup state,
+ * record reassembly and RACP sync.
+ * <p>
+ * Transport callbacks may arrive on any thread. Connection, discovery and operation
+ * callbacks are replayed in order on the shared executor through a per-session serial
+ * lane. Notifications take a shorter path: the callback only copies the value and its
+ * receive time into the session's {@link IngestRing}, and the {@link IngestPipeline}
+ * thread decodes, deduplicates, persists and publishes them. RACP indications go through
+ * the same ring so they stay ordered with the records they conclude. The reusable
+ * decode structs belong to the ingest thread and are never shared.
+ * <p>
+ * Log lines go through a {@link Trace.Tracer}: per-frame lines (hex dumps, decoded
+ * records) are only built when their category and level are enabled.
+ */
+public final class DeviceSession {
+
+    // --- Blood Pressure UUIDs ---
+    public static final UUID BPS_SERVICE_UUID =
+            UUID.fromString("00001810-0000-1000-8000-00805f9b34fb"); // 0x1810
+    public static final UUID BPS_MEASUREMENT_UUID =
+            UUID.fromString("00002a35-0000-1000-8000-00805f9b34fb"); // 0x2A35
+    public static final UUID BPS_FEATURE_UUID =
+            UUID.fromString("00002a49-0000-1000-8000-00805f9b34fb"); // 0x2A49
+    public static final UUID RACP_UUID =
+            UUID.fromString("00002a52-0000-1000-8000-00805f9b34fb"); // Record Access Control Point
+    public static final UUID BP_RECORD_UUID =
+            UUID.fromString("00002b36-0000-1000-8000-00805f9b34fb"); // Blood Pressure Record (Enhanced BLS)
+
+    // CCCD values and characteristic property bits (same values as the Android constants)
+    static final byte[] ENABLE_NOTIFICATION_VALUE = {0x01, 0x00};
+    static final byte[] ENABLE_INDICATION_VALUE = {0x02, 0x00};
+    static final int PROPERTY_READ = 0x02;
+
+    // Ingest ring: 244 B = notification payload at ATT MTU 247; longer frames are counted as truncated
+    static final int INGEST_CAPACITY = 512;
+    static final int INGEST_FRAME_LENGTH = 244;
+    static final int CHANNEL_OTHER = 0;
+    static final int CHANNEL_MEASUREMENT = 1;
+    static final int CHANNEL_RECORD = 2;
+    static final int CHANNEL_RACP = 3;
+
+    public enum State { CONNECTING, DISCOVERING, SETUP, READY, DISCONNECTED, CLOSED }
+
+    /**
+     * Session events. State, feature and most log events come from the session lane,
+     * measurements from the ingest thread; each kind arrives one at a time per session.
+     */
+    public interface Listener {
+        void onStateChanged(DeviceSession session, State state);
+
+        /** A new (not duplicate) measurement: live 0x2A35 or a 0x2B36 record. */
+        void onMeasurement(DeviceSession session, MeasurementSnapshot snapshot);
+
+        default void onFeature(DeviceSession session, int feature) {
+        }
+
+        default void onLog(DeviceSession session, String message) {
+        }
+    }
+
+    /**
+     * Per-session counters and latency histograms. Readable from any thread; recording is
+     * lock-free (striped counters, fixed-bucket histograms). Latencies start when the frame
+     * reached the GATT callback.
+     */
+    public static final class Metrics {
+        private final IngestRing ring;
+        private final GattOperationQueue queue;
+        private final BpRecordReassembler reassembler;
+
+        public final LongAdder notifications = new LongAdder();
+        public final LongAdder notificationBytes = new LongAdder();
+        public final LongAdder measurements = new LongAdder();
+        public final LongAdder records = new LongAdder();
+        public final LongAdder gattFailures = new LongAdder();
+        public final LongAdder duplicates = new LongAdder();  // records / live frames not stored again
+        private final LongAdder[] frames = new LongAdder[CHANNEL_RACP + 1]; // by CHANNEL_*
+        public volatile long connectMillis = -1; // connect() -> connected
+        public volatile long setupMillis = -1;   // connected -> setup + RACP transfer done
+        public volatile long firstIndicationMillis = -1; // connect() -> first notification / indication
+        public volatile boolean gattCacheHit;     // Feature / CCCDs taken from the GattCache
+        public final LongAdder serviceChanges = new LongAdder();
+        public volatile int mtu = LinkTuner.DEFAULT_MTU;
+        public volatile double recordsPerSecond; // last RACP transfer
+        public volatile double bytesPerSecond;   // last RACP transfer, record notification bytes
+
+        public final LatencyHistogram ingestLatency = new LatencyHistogram();   // -> ingest thread
+        public final LatencyHistogram decodeLatency = new LatencyHistogram();   // -> decoded
+        public final LatencyHistogram persistLatency = new LatencyHistogram();  // -> in the store
+        public final LatencyHistogram renderLatency = new LatencyHistogram();   // -> on screen
+
+        Metrics(IngestRing ring, GattOperationQueue queue, BpRecordReassembler reassembler) {
+            this.ring = ring;
+            this.queue = queue;
+            this.reassembler = reassembler;
+            for (int i = 0; i < frames.length; i++) frames[i] = new LongAdder();
+        }
+
+        /** Notifications received on {@code channel} ({@code CHANNEL_*}). */
+        public long frames(int channel) {
+            return frames[channel].sum();
+        }
+
+        /** Notifications dropped because the ingest ring was full. */
+        public long framesDropped() {
+            return ring.dropped();
+        }
+
+        /** Highest number of notifications waiting for the ingest thread. */
+        public int maxQueueDepth() {
+            return ring.maxDepth();
+        }
+
+        /** Records lost in reassembly (missing segment, overflow, undecodable). */
+        public long recordsDropped() {
+            return reassembler.droppedRecords();
+        }
+
+        /** Segments received twice (same rolling counter). */
+        public long duplicateSegments() {
+            return reassembler.duplicateSegments();
+        }
+
+        public int gattQueueDepth() {
+            return queue.pendingCount();
+        }
+
+        public int gattQueueMaxDepth() {
+            return queue.maxPendingCount();
+        }
+
+        /** Enqueue -> start of the GATT operations. */
+        public LatencyHistogram gattQueueWait() {
+            return queue.waitTimes();
+        }
+
+        /** Start -> callback of the GATT operations. */
+        public LatencyHistogram gattOperationTime() {
+            return queue.serviceTimes();
+        }
+
+        /** To call once {@code snapshot} is displayed (UI thread). */
+        public void onRendered(MeasurementSnapshot snapshot) {
+            renderLatency.recordSince(snapshot.receivedNanos);
+        }
+
+        void onFrame(int channel, int length) {
+            notifications.increment();
+            notificationBytes.add(length);
+            frames[channel].increment();
+        }
+
+        @Override
+        public String toString() {
+            return "connect=" + connectMillis + "ms setup=" + setupMillis + "ms firstIndication="
+                    + firstIndicationMillis + "ms cache=" + (gattCacheHit ? "hit" : "miss")
+                    + " notif=" + notifications.sum()
+                    + " (" + notificationBytes.sum() + " B) live=" + measurements.sum()
+                    + " records=" + records.sum() + " dup=" + duplicates.sum()
+                    + " gattFailures=" + gattFailures.sum() + " ingest(dropped=" + framesDropped()
+                    + " maxDepth=" + maxQueueDepth() + "/" + ring.capacity()
+                    + " maxLatency=" + ingestLatency.max() + "us) mtu=" + mtu
+                    + String.format(Locale.US, " transfer=%.1f rec/s %.1f kB/s", recordsPerSecond,
+                    bytesPerSecond / 1000);
+        }
+    }
+
+    private final GattTransport transport;
+    private final String address;
+    private final long deviceId;
+    private final MeasurementStore store;
+    private final SyncWatermarks watermarks;
+    private final ZoneId zone;
+    private final Listener listener;
+    private final Lane lane;
+    private final IngestPipeline ingest;
+    private final IngestRing ring = new IngestRing(INGEST_CAPACITY, INGEST_FRAME_LENGTH);
+
+    private final GattOperationQueue queue;
+    private final RacpClient racp;
+    private final RecordSync recordSync;
+    private final BpRecordReassembler reassembler;
+    private final LinkTuner link;
+    private final ThroughputMeter transferMeter = new ThroughputMeter();
+    private final Metrics metrics;
+    private final Trace.Tracer trace;
+    private final GattCache gattCache; // null: every connection does the full setup
+    private final MeasurementDeduplicator dedup; // null: only duplicates within a session are dropped
+    private final ColdTier cold; // null: no cold tier, or the deduplicator already checks it
+
+    // Receive times are taken with nanoTime() in the callback, turned into wall clock here
+    private final long wallBaseMillis = System.currentTimeMillis();
+    private final long nanoBase = System.nanoTime();
+
+    // Ingest thread only
+    private final BpsMeasurement measurement = new BpsMeasurement();
+    private final BpsMeasurement lastLive = new BpsMeasurement();
+    private final MeasurementRecord storeRecord = new MeasurementRecord();
+    private final BitSet seenRecords = new BitSet(1 << 16); // sequence numbers of the current sync
+    private int seenGeneration;
+    private long frameReceivedMillis;
+    private long frameReceivedNanos;
+
+    // Written by syncRecords(), read by the ingest thread
+    private volatile int syncGeneration;
+    private volatile int syncCanary = MeasurementRecord.NO_SEQUENCE;
+
+    private volatile State state = State.CONNECTING;
+    private volatile boolean permanentFailure;
+    private volatile long connectStartNanos;
+    private volatile long connectedNanos;
+
+    // Session lane: what the GattCache gave for this connection
+    private GattCache.Entry cached;
+
+    public DeviceSession(GattTransport transport, ScheduledExecutorService executor, IngestPipeline ingest,
+                         MeasurementStore store, SyncWatermarks watermarks, ZoneId zone, Listener listener) {
+        this(transport, executor, ingest, store, watermarks, zone, listener, LinkTuner.Settings.DEFAULT,
+                null, null, null, new Trace());
+    }
+
+    DeviceSession(GattTransport transport, ScheduledExecutorService executor, IngestPipeline ingest,
+                  MeasurementStore store, SyncWatermarks watermarks, ZoneId zone, Listener listener,
+                  LinkTuner.Settings linkSettings, GattCache gattCache, MeasurementDeduplicator dedup,
+                  ColdTier cold, Trace trace) {
+        this.transport = transport;
+        this.address = transport.address();
+        this.deviceId = MeasurementRecord.deviceId(address);
+        this.store = store;
+        this.watermarks = watermarks;
+        this.gattCache = gattCache;
+        this.dedup = dedup;
+        this.cold = cold;
+        this.zone = zone;
+        this.listener = listener;
+        this.trace = trace.tracer(address, (category, level, message) -> listener.onLog(this, message));
+        this.lane = new Lane(executor);
+        this.ingest = ingest;
+        this.queue = new GattOperationQueue(executor);
+        this.racp = new RacpClient(this::writeRacp, executor);
+        this.recordSync = new RecordSync(watermarks, deviceId);
+        this.reassembler = new BpRecordReassembler(recordListener);
+        this.link = new LinkTuner(transport, queue, linkSettings);
+        this.metrics = new Metrics(ring, queue, reassembler);
+    }
+
+    public String address() {
+        return address;
+    }
+
+    public long deviceId() {
+        return deviceId;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * True if the session ended for a reason a new connection would not change (the
+     * peripheral has no Blood Pressure Service): it is not reconnected.
+     */
+    public boolean isPermanentFailure() {
+        return permanentFailure;
+    }
+
+    public BpRecordReassembler reassembler() {
+        return reassembler;
+    }
+
+    public IngestRing ingestRing() {
+        return ring;
+    }
+
+    /**
+     * Starts the connection, direct or in the background ({@link GattTransport#connect}).
+     * Returns false if the transport refused it.
+     */
+    boolean connect(boolean autoConnect) {
+        connectStartNanos = System.nanoTime();
+        trace.log(Category.GATT, Level.INFO, "GATT: connect(autoConnect={})", autoConnect);
+        ingest.register(ring, frameConsumer);
+        if (transport.connect(transportCallback, autoConnect)) return true;
+        ingest.unregister(ring);
+        return false;
+    }
+
+    /** Closes the connection. The session cannot be reused. */
+    void close() {
+        lane.execute(() -> shutdown(State.CLOSED, "closed"));
+    }
+
+    // =========================
+    // Transport events -> session lane / ingest ring
+    // =========================
+    private final GattTransport.Callback transportCallback = new GattTransport.Callback() {
+        @Override
+        public void onConnectionStateChanged(boolean connected, int status) {
+            lane.execute(() -> handleConnectionState(connected, status));
+        }
+
+        @Override
+        public void onServicesDiscovered(int status) {
+            lane.execute(() -> handleServicesDiscovered(status));
+        }
+
+        @Override
+        public void onCharacteristicRead(UUID c, int status, byte[] value) {
+            lane.execute(() -> queue.complete(GattOperationQueue.Type.READ, c, status, value));
+        }
+
+        @Override
+        public void onCharacteristicWrite(UUID c, int status) {
+            lane.execute(() -> queue.complete(GattOperationQueue.Type.WRITE, c, status, null));
+        }
+
+        @Override
+        public void onDescriptorWrite(UUID c, int status, byte[] value) {
+            lane.execute(() -> queue.complete(GattOperationQueue.Type.WRITE_DESCRIPTOR, c, status, value));
+        }
+
+        @Override
+        public void onMtuChanged(int mtu, int status) {
+            lane.execute(() -> {
+                link.onMtuChanged(mtu, status);
+                metrics.mtu = link.mtu();
+                trace.log(Category.LINK, Level.DEBUG, "GATT: onMtuChanged mtu={} status={}", mtu, status);
+            });
+        }
+
+        @Override
+        public void onPhyUpdate(int txPhy, int rxPhy, int status) {
+            lane.execute(() -> {
+                link.onPhyUpdate(txPhy, rxPhy, status);
+                trace.log(Category.LINK, Level.DEBUG, "GATT: onPhyUpdate tx={} rx={} status={}", txPhy, rxPhy, status);
+            });
+        }
+
+        @Override
+        public void onServiceChanged() {
+            lane.execute(() -> handleServiceChanged());
+        }
+
+        // Binder thread: copy into the ring and return, everything else runs on the ingest thread
+        @Override
+        public void onCharacteristicChanged(UUID c, byte[] value) {
+            if (ring.offer(channelOf(c), value, System.nanoTime())) ingest.signal();
+        }
+    };
+
+    private static int channelOf(UUID c) {
+        if (BP_RECORD_UUID.equals(c)) return CHANNEL_RECORD;
+        if (BPS_MEASUREMENT_UUID.equals(c)) return CHANNEL_MEASUREMENT;
+        if (RACP_UUID.equals(c)) return CHANNEL_RACP;
+        return CHANNEL_OTHER;
+    }
+
+    private void handleConnectionState(boolean connected, int status) {
+        if (state == State.CLOSED || state == State.DISCONNECTED) return;
+        trace.log(Category.GATT, Level.INFO, "GATT: connection state connected={} status={}", connected, status);
+        if (connected) {
+            connectedNanos = System.nanoTime();
+            metrics.connectMillis = (connectedNanos - connectStartNanos) / 1_000_000;
+            setState(State.DISCOVERING);
+            if (!transport.discoverServices()) {
+                trace.log(Category.GATT, Level.ERROR, "discoverServices() refused");
+                shutdown(State.DISCONNECTED, "discovery refused");
+            }
+        } else {
+            shutdown(State.DISCONNECTED, "disconnected");
+        }
+    }
+
+    private void handleServicesDiscovered(int status) {
+        if (state != State.DISCOVERING) return;
+        trace.log(Category.GATT, Level.INFO, "GATT: onServicesDiscovered status={}", status);
+        if (status != GattOperationQueue.GATT_SUCCESS) {
+            trace.log(Category.GATT, Level.ERROR, "Service discovery FAILED (status={})", status);
+            shutdown(State.DISCONNECTED, "service discovery failed");
+            return;
+        }
+        if (!transport.hasCharacteristic(BPS_MEASUREMENT_UUID)) {
+            // Not a blood pressure monitor: connecting again would find the same table
+            trace.log(Category.GATT, Level.ERROR, "Service BPS (0x1810) / Measurement: NOT FOUND");
+            permanentFailure = true;
+            shutdown(State.DISCONNECTED, "no blood pressure service");
+            return;
+        }
+        trace.log(Category.GATT, Level.INFO, "Char RACP (0x2A52): {}, BP Record (0x2B36): {}, Feature (0x2A49): {}",
+                found(RACP_UUID), found(BP_RECORD_UUID), found(BPS_FEATURE_UUID));
+        cached = lookUpCache();
+        setState(State.SETUP);
+        startSetup();
+    }
+
+    // The stack already rediscovers the handles; what we cached may no longer hold
+    private void handleServiceChanged() {
+        if (state == State.CLOSED || state == State.DISCONNECTED || state == State.CONNECTING) return;
+        trace.log(Category.GATT, Level.INFO, "GATT: Service Changed -> cache invalidated, discovering again");
+        metrics.serviceChanges.increment();
+        if (gattCache != null) {
+            gattCache.invalidate(address);
+            saveCache();
+        }
+        cached = null;
+        // The running setup fails on these; its completion sees DISCOVERING and leaves the state alone
+        queue.cancelAll("service changed");
+        racp.cancel("service changed");
+        setState(State.DISCOVERING);
+        if (!transport.discoverServices()) {
+            trace.log(Category.GATT, Level.ERROR, "discoverServices() refused");
+            shutdown(State.DISCONNECTED, "discovery refused");
+        }
+    }
+
+    // Compares the discovered layout with the cached one; null if nothing cached applies
+    private GattCache.Entry lookUpCache() {
+        if (gattCache == null) return null;
+        GattCache.Entry entry = gattCache.onDiscovered(address, layoutOf(transport));
+        metrics.gattCacheHit = entry != null;
+        if (entry == null) {
+            trace.log(Category.GATT, Level.INFO, "GATT cache: miss (unknown device or layout changed)");
+        } else {
+            trace.log(Category.GATT, Level.INFO, "GATT cache: hit (feature={}, CCCDs=0x{})",
+                    entry.hasFeature() ? "0x" + Integer.toHexString(entry.feature) : "none",
+                    Integer.toHexString(entry.cccds));
+        }
+        return entry;
+    }
+
+    /** "2A35=20,2A49=02,2B36=10,2A52=28": the properties of the characteristics we use. */
+    static String layoutOf(GattTransport transport) {
+        StringBuilder sb = new StringBuilder(48);
+        for (UUID c : new UUID[]{BPS_MEASUREMENT_UUID, BPS_FEATURE_UUID, BP_RECORD_UUID, RACP_UUID}) {
+            if (sb.length() > 0) sb.append(',');
+            int uuid16 = (int) (c.getMostSignificantBits() >>> 32) & 0xFFFF;
+            sb.append(String.format(Locale.US, "%04X=%02X", uuid16, transport.properties(c) & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private String found(UUID c) {
+        return transport.hasCharacteristic(c) ? "FOUND" : "NOT FOUND";
+    }
+
+    // =========================
+    // Ingest thread
+    // =========================
+    private final IngestRing.Consumer frameConsumer = this::handleFrame;
+
+    private void handleFrame(int channel, byte[] data, int length, long receivedNanos) {
+        if (state == State.CLOSED || state == State.DISCONNECTED) return;
+        metrics.ingestLatency.recordSince(receivedNanos);
+        frameReceivedNanos = receivedNanos;
+        frameReceivedMillis = wallBaseMillis + (receivedNanos - nanoBase) / 1_000_000;
+        metrics.onFrame(channel, length);
+        trace.frame(channel, data, length, receivedNanos);
+        if (metrics.firstIndicationMillis < 0) {
+            metrics.firstIndicationMillis = (receivedNanos - connectStartNanos) / 1_000_000;
+            trace.log(Category.GATT, Level.INFO, "First indication {} ms after connect()", metrics.firstIndicationMillis);
+        }
+
+        switch (channel) {
+            case CHANNEL_RACP:
+                trace.hex(Category.FRAMES, Level.VERBOSE, "RACP INDICATION raw: ", data, length);
+                racp.onIndication(Arrays.copyOf(data, length));
+                break;
+            case CHANNEL_RECORD:
+                transferMeter.onBytes(length);
+                trace.hex(Category.FRAMES, Level.VERBOSE, "BP RECORD NOTIFY raw: ", data, length);
+                // Segments are joined here; complete 0x2A35 payloads come back via recordListener
+                reassembler.accept(data, 0, length);
+                break;
+            case CHANNEL_MEASUREMENT:
+                trace.hex(Category.FRAMES, Level.VERBOSE, "Measurement raw: ", data, length);
+                if (!BpsMeasurementCodec.decode(data, 0, length, measurement)) {
+                    trace.hex(Category.DECODE, Level.WARN, "Measurement parsed: NULL, raw: ", data, length);
+                    return;
+                }
+                metrics.decodeLatency.recordSince(receivedNanos);
+                metrics.measurements.increment();
+                // A monitor re-indicates its last reading after a reconnection: same values and time
+                if (measurement.hasTimestamp() && measurement.sameAs(lastLive)) {
+                    metrics.duplicates.increment();
+                    trace.log(Category.DECODE, Level.DEBUG, "Measurement: duplicate ignored");
+                    return;
+                }
+                lastLive.copyFrom(measurement);
+                try {
+                    if (!persist(measurement, MeasurementRecord.NO_SEQUENCE)) {
+                        metrics.duplicates.increment();
+                        trace.log(Category.DECODE, Level.DEBUG, "Measurement: already stored");
+                        return;
+                    }
+                } catch (IOException e) {
+                    // Shown all the same; the cuff sends it again as a record at the next sync
+                    trace.log(Category.STORE, Level.ERROR, "Store: append FAILED -> {}", e.getMessage());
+                }
+                listener.onMeasurement(this, new MeasurementSnapshot(address, MeasurementRecord.NO_SEQUENCE,
+                        measurement, frameReceivedMillis, receivedNanos));
+                break;
+            default:
+                trace.log(Category.GATT, Level.DEBUG, "Changed ignored: not Measurement/RACP/Record");
+        }
+    }
+
+    // True if this sequence number was already received during the current sync
+    private boolean isDuplicateRecord(int sequenceNumber) {
+        int generation = syncGeneration;
+        if (generation != seenGeneration) {
+            seenGeneration = generation;
+            seenRecords.clear();
+        }
+        int bit = sequenceNumber & 0xFFFF;
+        if (seenRecords.get(bit)) return true;
+        seenRecords.set(bit);
+        return false;
+    }
+
+    // 0x2B36 reassembly (ingest thread)
+    private final BpRecordReassembler.Listener recordListener = new BpRecordReassembler.Listener() {
+        @Override
+        public void onMeasurement(int sequenceNumber, BpsMeasurement m) {
+            metrics.decodeLatency.recordSince(frameReceivedNanos);
+            if (isDuplicateRecord(sequenceNumber)) {
+                metrics.duplicates.increment();
+                recordSync.onRecord(sequenceNumber);
+                trace.log(Category.DECODE, Level.DEBUG, "BP RECORD #{}: already stored", sequenceNumber);
+                return;
+            }
+            if (sequenceNumber == syncCanary) {
+                if (isStoredCanary(m, sequenceNumber)) {
+                    metrics.duplicates.increment();
+                    recordSync.onRecord(sequenceNumber);
+                    trace.log(Category.DECODE, Level.DEBUG, "BP RECORD #{}: canary, as stored", sequenceNumber);
+                    return;
+                }
+                // Same number, other reading: the numbering started over. Stored as new below.
+                trace.log(Category.RACP, Level.WARN, "RACP: record #{} is not the stored reading (counter reset)",
+                        sequenceNumber);
+                recordSync.onCanaryChanged();
+            }
+            boolean stored;
+            try {
+                stored = persist(m, sequenceNumber);
+            } catch (IOException e) {
+                // Not counted: the watermark stays below it, and a later request may fetch it again
+                seenRecords.clear(sequenceNumber & 0xFFFF);
+                trace.log(Category.STORE, Level.ERROR, "BP RECORD #{}: append FAILED -> {}", sequenceNumber,
+                        e.getMessage());
+                return;
+            }
+            recordSync.onRecord(sequenceNumber);
+            if (!stored) {
+                metrics.duplicates.increment();
+                trace.log(Category.DECODE, Level.DEBUG, "BP RECORD #{}: already in the history", sequenceNumber);
+                return;
+            }
+            if (trace.on(Category.DECODE, Level.DEBUG)) {
+                trace.log(Category.DECODE, Level.DEBUG, String.format(Locale.US,
+                        "BP RECORD #%d: SYS=%.2f DIA=%.2f MAP=%.2f %s ts=%s pulse=%s user=%s",
+                        sequenceNumber, m.systolic, m.diastolic, m.map, m.unit(),
+                        m.hasTimestamp() ? BpsMeasurement.formatTimestamp(m.timestamp) : "null",
+                        m.hasPulseRate() ? String.valueOf(m.pulseRate) : "null",
+                        m.hasUserId() ? String.valueOf(m.userId) : "null"));
+            }
+            listener.onMeasurement(DeviceSession.this,
+                    new MeasurementSnapshot(address, sequenceNumber, m, frameReceivedMillis, frameReceivedNanos));
+        }
+
+        @Override
+        public void onRecord(int sequenceNumber, int uuid16, byte[] payload, int offset, int length) {
+            metrics.records.increment();
+            transferMeter.onRecord();
+            racp.onRecord();
+            if (uuid16 != BpRecordReassembler.UUID_BP_MEASUREMENT) {
+                // Nothing to store: received as far as the watermark is concerned
+                recordSync.onRecord(sequenceNumber);
+                trace.log(Category.DECODE, Level.WARN, "BP RECORD #{}: unsupported payload uuid=0x{} len={}",
+                        sequenceNumber, Integer.toHexString(uuid16), length);
+            }
+        }
+
+        @Override
+        public void onDropped(int sequenceNumber, int reason) {
+            trace.log(Category.DECODE, Level.WARN, "BP RECORD #{} dropped (reason={})", sequenceNumber, reason);
+            // Would be the same if fetched again; a lost segment (gap, interrupted) is a hole to fill
+            if (reason == BpRecordReassembler.DROP_UNDECODABLE || reason == BpRecordReassembler.DROP_OVERFLOW) {
+                recordSync.onRecord(sequenceNumber);
+            }
+        }
+    };
+
+    // =========================
+    // Setup pipeline
+    // =========================
+    // MTU -> Feature read -> Measurement CCCD -> RACP CCCD -> BP Record CCCD -> RACP record
+    // transfer (with the link boosted). Each step is a queued GATT operation: it starts
+    // when the previous callback arrives. A GattCache hit skips the Feature read and, for a
+    // bonded device, the CCCD writes.
+    private void startSetup() {
+        GattCache.Entry entry = cached;
+        // A refused MTU is not fatal: records are then segmented at 20 bytes
+        CompletableFuture<Void> tuned = track(link.negotiateMtu()).handle((mtu, e) -> {
+            if (e != null) {
+                trace.log(Category.LINK, Level.WARN, "MTU: request FAILED -> {}, staying at {}", causeOf(e), link.mtu());
+            } else {
+                trace.log(Category.LINK, Level.INFO, "MTU: {} (notification payload up to {} B)", mtu.intValue(),
+                        link.maxNotificationLength());
+            }
+            return null;
+        });
+
+        CompletableFuture<Void> feature;
+        if (entry != null && entry.hasFeature()) {
+            trace.log(Category.GATT, Level.DEBUG, "Feature: 0x{} from cache, not read", Integer.toHexString(entry.feature));
+            listener.onFeature(this, entry.feature);
+            feature = tuned;
+        } else if (transport.hasProperties(BPS_FEATURE_UUID, PROPERTY_READ)) {
+            feature = tuned.thenCompose(v -> read(BPS_FEATURE_UUID)).thenAccept(v -> {
+                trace.hex(Category.GATT, Level.DEBUG, "Feature raw: ", v, v == null ? 0 : v.length);
+                int bits = BpsFeature.parse(v);
+                if (bits < 0) return;
+                if (gattCache != null) gattCache.putFeature(address, bits);
+                listener.onFeature(this, bits);
+            });
+        } else {
+            trace.log(Category.GATT, Level.INFO, "Feature: not readable or missing");
+            feature = tuned;
+        }
+
+        // Even if the Feature read failed, subscribe anyway
+        feature.handle((v, e) -> {
+                    if (e != null) trace.log(Category.GATT, Level.WARN, "Feature: read FAILED -> {}", causeOf(e));
+                    return null;
+                })
+                .thenCompose(v -> subscribeAndTransfer(entry != null && transport.isBonded() ? entry.cccds : 0))
+                .whenComplete((v, e) -> lane.execute(() -> {
+                    saveCache();
+                    long ms = (System.nanoTime() - connectedNanos) / 1_000_000;
+                    metrics.setupMillis = ms;
+                    if (e != null) {
+                        trace.log(Category.GATT, Level.ERROR, "Setup: FAILED after {} ms -> {}", ms, causeOf(e));
+                    } else {
+                        trace.log(Category.GATT, Level.INFO, "Setup: DONE in {} ms (connected -> RACP transfer complete)", ms);
+                    }
+                    // Live measurements keep working even if the history sync failed
+                    if (state == State.SETUP) setState(State.READY);
+                }));
+    }
+
+    // CCCDs then the RACP transfer. With cached CCCDs nothing is written; if the transfer
+    // then fails, the peripheral may have lost them (bond removed on its side): write
+    // them and try once more.
+    private CompletableFuture<Void> subscribeAndTransfer(int cachedCccds) {
+        CompletableFuture<Void> f = subscribe(BPS_MEASUREMENT_UUID, ENABLE_INDICATION_VALUE, "Measurement",
+                GattCache.CCCD_MEASUREMENT, cachedCccds)
+                .thenCompose(v -> subscribe(RACP_UUID, ENABLE_INDICATION_VALUE, "RACP", GattCache.CCCD_RACP,
+                        cachedCccds))
+                .thenCompose(v -> subscribe(BP_RECORD_UUID, ENABLE_NOTIFICATION_VALUE, "BP Record",
+                        GattCache.CCCD_RECORD, cachedCccds))
+                .thenCompose(v -> transferRecords());
+        if (cachedCccds == 0) return f;
+        return f.handle((v, e) -> e).thenCompose(e -> {
+            if (e == null) return CompletableFuture.completedFuture(null);
+            if (state != State.SETUP) return failedFuture(causeOf(e));
+            trace.log(Category.GATT, Level.WARN, "Setup: FAILED with cached CCCDs ({}) -> writing them", causeOf(e));
+            if (gattCache != null) gattCache.forgetCccds(address);
+            return subscribeAndTransfer(0);
+        });
+    }
+
+    private CompletableFuture<Void> subscribe(UUID c, byte[] value, String label, int cccdBit, int cachedCccds) {
+        if ((cachedCccds & cccdBit) != 0 && transport.hasCharacteristic(c) && transport.enableLocalNotifications(c)) {
+            trace.log(Category.GATT, Level.DEBUG, "{}: CCCD kept by the bonded device, not written", label);
+            return CompletableFuture.completedFuture(null);
+        }
+        return enableCccd(c, value, label).thenRun(() -> {
+            // Only a bonded peripheral keeps the value for the next connection
+            if (gattCache != null && transport.isBonded()) gattCache.addCccd(address, cccdBit);
+        });
+    }
+
+    private CompletableFuture<byte[]> read(UUID c) {
+        return track(queue.enqueue("read " + c, GattOperationQueue.Type.READ, c,
+                GattOperationQueue.Priority.BULK, () -> transport.readCharacteristic(c)));
+    }
+
+    private CompletableFuture<Void> enableCccd(UUID c, byte[] value, String label) {
+        if (!transport.hasCharacteristic(c)) return failedFuture(label + ": characteristic missing");
+        return track(queue.enqueue(label + " CCCD", GattOperationQueue.Type.WRITE_DESCRIPTOR, c,
+                GattOperationQueue.Priority.CONTROL, () -> transport.enableNotifications(c, value)))
+                .thenAccept(v -> trace.hex(Category.GATT, Level.DEBUG, label + ": CCCD value written: ", v,
+                        v == null ? 0 : v.length));
+    }
+
+    // High priority / 2M PHY for the duration of the RACP transfer, measured, then back
+    // to balanced / 1M
+    private CompletableFuture<Void> transferRecords() {
+        if (!transport.hasCharacteristic(RACP_UUID)) return syncRecords();
+
+        return track(link.boost()).handle((v, e) -> {
+                    if (e != null) trace.log(Category.LINK, Level.WARN, "Link: PHY update FAILED -> {}", causeOf(e));
+                    trace.log(Category.LINK, Level.INFO, "Link: {} for the transfer", link.describe());
+                    transferMeter.start(System.nanoTime());
+                    return null;
+                })
+                .thenCompose(v -> syncRecords())
+                .whenComplete((v, e) -> {
+                    transferMeter.stop(System.nanoTime());
+                    metrics.recordsPerSecond = transferMeter.recordsPerSecond();
+                    metrics.bytesPerSecond = transferMeter.bytesPerSecond();
+                    trace.log(Category.RACP, Level.INFO, "RACP: throughput {} ({})", transferMeter, link.describe());
+                    if (state == State.CLOSED || state == State.DISCONNECTED) return;
+                    track(link.relax()).whenComplete((r, re) -> {
+                        if (re != null) trace.log(Category.LINK, Level.WARN, "Link: relax FAILED -> {}", causeOf(re));
+                        else trace.log(Category.LINK, Level.INFO, "Link: back to {}", link.describe());
+                    });
+                });
+    }
+
+    // RACP: Report Stored Records (0x01), either all records ("01 01") or, when the
+    // device was synced before, ">= last sequence number" ("01 03 01 lo hi"). See RecordSync.
+    // Completes when the device reports the end of the transfer (RacpClient).
+    private CompletableFuture<Void> syncRecords() {
+        // Seen-records set restarts with this sync
+        syncGeneration++;
+        return requestRecords();
+    }
+
+    // One transfer of syncRecords(). A restart after a counter reset keeps the seen-records
+    // set: the records of the first transfer are stored already.
+    private CompletableFuture<Void> requestRecords() {
+        if (!transport.hasCharacteristic(RACP_UUID)) return failedFuture("RACP: missing, cannot request records");
+
+        byte[] cmd = recordSync.start();
+        syncCanary = recordSync.isIncremental() ? recordSync.requestedFrom() : MeasurementRecord.NO_SEQUENCE;
+        if (recordSync.isIncremental()) {
+            trace.log(Category.RACP, Level.INFO, "RACP: incremental sync from #{}", recordSync.requestedFrom());
+        } else {
+            trace.log(Category.RACP, Level.INFO, "RACP: full sync");
+        }
+        return transfer(cmd);
+    }
+
+    // Sends one report request and acts on RecordSync's verdict: done, restart, or the
+    // next range of lost records
+    private CompletableFuture<Void> transfer(byte[] cmd) {
+        return racp.transfer(cmd, this::onRecordProgress).thenCompose(result -> {
+            trace.log(Category.RACP, Level.INFO, "RACP: transfer ended -> {}", result);
+            // An aborted transfer is incomplete: keep the previous watermark
+            int code = result.aborted ? Racp.RESPONSE_PROCEDURE_NOT_COMPLETED : result.responseCode;
+            switch (recordSync.finish(code)) {
+                case COMPLETE:
+                    trace.log(Category.RACP, Level.INFO, "RACP: sync COMPLETE, watermark #{}", watermarks.get(deviceId));
+                    saveWatermarks();
+                    return CompletableFuture.completedFuture(null);
+                case RESTART_FULL:
+                    trace.log(Category.RACP, Level.WARN, "RACP: record #{} {} (counter reset) -> full sync",
+                            recordSync.requestedFrom(), recordSync.isReset() ? "changed" : "gone");
+                    return requestRecords();
+                case FILL_GAPS:
+                    trace.log(Category.RACP, Level.INFO, "RACP: {} record(s) missing, asking for them again",
+                            recordSync.missing());
+                    return transfer(recordSync.nextGap());
+                default:
+                    return failedFuture("RACP: transfer failed (" + Racp.responseCodeName(code) + ")");
+            }
+        });
+    }
+
+    private CompletableFuture<?> writeRacp(byte[] cmd) {
+        String hex = Hex.toHex(cmd);
+        return track(queue.enqueue("RACP " + hex, GattOperationQueue.Type.WRITE, RACP_UUID,
+                GattOperationQueue.Priority.CONTROL, () -> {
+                    boolean ok = transport.writeCharacteristic(RACP_UUID, cmd);
+                    trace.log(Category.RACP, Level.DEBUG, "RACP: write cmd '{}' -> {}", hex, ok);
+                    return ok;
+                }));
+    }
+
+    // Every 10% when the count is known, every 100 records otherwise
+    private void onRecordProgress(int received, long expected) {
+        if (expected > 0 ? received * 10L / expected != (received - 1) * 10L / expected : received % 100 == 0) {
+            if (expected >= 0) {
+                trace.log(Category.RACP, Level.INFO, "RACP: progress {}/{} record(s)", received, expected);
+            } else {
+                trace.log(Category.RACP, Level.INFO, "RACP: progress {} record(s)", received);
+            }
+        }
+    }
+
+    private void saveCache() {
+        if (gattCache == null) return;
+        try {
+            gattCache.save();
+        } catch (IOException e) {
+            trace.log(Category.STORE, Level.ERROR, "GATT cache: save FAILED -> {}", e.getMessage());
+        }
+    }
+
+    private <T> CompletableFuture<T> track(CompletableFuture<T> f) {
+        return f.whenComplete((v, e) -> {
+            if (e != null) metrics.gattFailures.increment();
+        });
+    }
+
+    // =========================
+    // Persistence
+    // =========================
+    // Ingest thread only (storeRecord is reused); the store itself is shared and synchronized.
+    // False if the history already holds this reading (nothing written).
+    private boolean persist(BpsMeasurement m, int sequence) throws IOException {
+        if (store == null) return true;
+        storeRecord.set(m, deviceId, sequence, frameReceivedMillis, zone);
+        if (dedup != null) {
+            if (!dedup.append(storeRecord)) return false;
+        } else {
+            store.append(storeRecord);
+        }
+        metrics.persistLatency.recordSince(frameReceivedNanos);
+        return true;
+    }
+
+    // The watermark must not cover records that are not on disk yet: store first
+    private void saveWatermarks() {
+        if (store != null) store.flush();
+        try {
+            watermarks.save();
+        } catch (IOException e) {
+            trace.log(Category.STORE, Level.ERROR, "Sync: watermark save FAILED -> {}", e.getMessage());
+        }
+    }
+
+    // True if the canary of an incremental sync is the reading stored under its number,
+    // by the exact check of the deduplicator, or of the store and cold tier without one
+    private boolean isStoredCanary(BpsMeasurement m, int sequence) {
+        if (store == null) return true;
+        storeRecord.set(m, deviceId, sequence, frameReceivedMillis, zone);
+        return dedup != null ? dedup.contains(storeRecord) : MeasurementDeduplicator.inHistory(cold, store, storeRecord);
+    }
+
+    // =========================
+    // Lifecycle
+    // =========================
+    private void shutdown(State finalState, String reason) {
+        if (state == State.CLOSED || state == State.DISCONNECTED) return;
+        queue.cancelAll(reason);
+        racp.cancel(reason);
+        // A transfer cut short resumes from its last record at the next connection
+        int before = watermarks.get(deviceId);
+        boolean interrupted = recordSync.interrupt();
+        // Frames still in the ring are discarded; the reassembler belongs to the ingest thread.
+        // Records it is still handling move the watermark on: saved once it let go of the ring.
+        ingest.unregister(ring, () -> {
+            int resumeFrom = watermarks.get(deviceId);
+            if (!interrupted && resumeFrom == before) return;
+            trace.log(Category.RACP, Level.INFO, "RACP: transfer interrupted, resuming from #{} next time",
+                    resumeFrom);
+            saveWatermarks();
+        });
+        transport.close();
+        setState(finalState);
+    }
+
+    private void setState(State s) {
+        state = s;
+        listener.onStateChanged(this, s);
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(String message) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        f.completeExceptionally(new GattOperationException(message, GattOperationException.NO_STATUS));
+        return f;
+    }
+
+    private static String causeOf(Throwable e) {
+        Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+        return cause.getMessage();
+    }
+
+    /**
+     * Runs tasks one at a time, in submission order, on a shared executor: a session's
+     * events never run concurrently, while other sessions use the other threads.
+     */
+    private static final class Lane implements Executor {
+        private static final int BATCH = 64;
+
+        private final Executor executor;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Lane(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Executor shut down (app exiting): nothing left to deliver to
+                tasks.clear();
+                scheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            try {
+                // Bounded batch: a chatty session yields the thread to the others
+                Runnable task;
+                for (int i = 0; i < BATCH && (task = tasks.poll()) != null; i++) task.run();
+            } finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) schedule();
+            }
+        }
+    }
+}
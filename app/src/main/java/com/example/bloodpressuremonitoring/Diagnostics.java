@@ -0,0 +1,161 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Text report of the hot-path metrics: one {@code key=value} per line, grouped in
+ * {@code [sections]}, in a fixed order so two exports (builds, phones) can be diffed.
+ * <p>
+ * Latencies are measured from the GATT callback: {@code ingest} (ingest thread picked
+ * the frame up), {@code decode}, {@code persist} (in the store) and {@code render} (on
+ * screen). The {@code [total]} section sums the histograms of every session listed.
+ */
+final class Diagnostics {
+
+    static final DateTimeFormatter FILE_TIME =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.US).withZone(ZoneOffset.UTC);
+
+    private Diagnostics() {
+    }
+
+    /**
+     * @param environment device / build lines for the header (e.g. model, SDK, app version)
+     * @param store       may be null
+     * @param cold        may be null
+     */
+    static String report(SessionManager manager, MeasurementStore store, ColdTier cold,
+                         Map<String, String> environment) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("# Blood Pressure Monitoring diagnostics\n");
+        line(sb, "generated", Instant.now().toString());
+        for (Map.Entry<String, String> e : environment.entrySet()) line(sb, e.getKey(), e.getValue());
+
+        IngestPipeline ingest = manager.ingest();
+        section(sb, "ingest");
+        line(sb, "consumed", ingest.consumed());
+        line(sb, "failures", ingest.failures());
+        line(sb, "wakeups", ingest.wakeups());
+
+        section(sb, "sessions");
+        line(sb, "active", manager.size());
+        line(sb, "max", manager.maxSessions());
+        line(sb, "rejected", manager.rejected());
+        line(sb, "reconnects", manager.reconnects());
+        line(sb, "reconnects.pending", manager.pendingReconnects());
+
+        section(sb, "store");
+        line(sb, "records", store == null ? -1 : store.size());
+        line(sb, "bytes", store == null ? -1 : store.size() * MeasurementStore.RECORD_SIZE);
+        line(sb, "cold.records", cold == null ? -1 : cold.size());
+        line(sb, "cold.bytes", cold == null ? -1 : cold.bytes());
+        line(sb, "cold.segments", cold == null ? -1 : cold.segmentCount());
+        line(sb, "cold.unreadable", cold == null ? -1 : cold.unreadable());
+        MeasurementDeduplicator dedup = manager.deduplicator();
+        line(sb, "dedup.lookups", dedup == null ? -1 : dedup.lookups());
+        line(sb, "dedup.duplicates", dedup == null ? -1 : dedup.duplicates());
+        line(sb, "dedup.filter_hits", dedup == null ? -1 : dedup.filterHits());
+        line(sb, "dedup.false_positives", dedup == null ? -1 : dedup.falsePositives());
+        line(sb, "dedup.filter_bytes", dedup == null ? -1 : dedup.filterBytes());
+
+        TraceRecorder recorder = manager.trace().recorder();
+        section(sb, "trace");
+        line(sb, "recorder.records", recorder == null ? -1 : recorder.records());
+        line(sb, "recorder.dropped", recorder == null ? -1 : recorder.dropped());
+
+        LatencyHistogram ingestTotal = new LatencyHistogram();
+        LatencyHistogram decodeTotal = new LatencyHistogram();
+        LatencyHistogram persistTotal = new LatencyHistogram();
+        LatencyHistogram renderTotal = new LatencyHistogram();
+        LatencyHistogram gattWaitTotal = new LatencyHistogram();
+        long notifications = 0;
+        long dropped = 0;
+        long duplicates = 0;
+
+        List<DeviceSession> ended = manager.recentlyEnded();
+        List<DeviceSession> sessions = manager.sessions();
+        sessions.addAll(0, ended);
+        for (DeviceSession s : sessions) {
+            DeviceSession.Metrics m = s.metrics();
+            section(sb, "session " + s.address() + " " + s.state());
+            line(sb, "connect.ms", m.connectMillis);
+            line(sb, "setup.ms", m.setupMillis);
+            line(sb, "first_indication.ms", m.firstIndicationMillis);
+            line(sb, "gatt.cache", m.gattCacheHit ? "hit" : "miss");
+            line(sb, "gatt.service_changed", m.serviceChanges.sum());
+            line(sb, "link.mtu", m.mtu);
+            line(sb, "notifications", m.notifications.sum());
+            line(sb, "notification.bytes", m.notificationBytes.sum());
+            line(sb, "frames.measurement", m.frames(DeviceSession.CHANNEL_MEASUREMENT));
+            line(sb, "frames.record", m.frames(DeviceSession.CHANNEL_RECORD));
+            line(sb, "frames.racp", m.frames(DeviceSession.CHANNEL_RACP));
+            line(sb, "frames.other", m.frames(DeviceSession.CHANNEL_OTHER));
+            line(sb, "frames.dropped", m.framesDropped());
+            line(sb, "segments.duplicate", m.duplicateSegments());
+            line(sb, "records", m.records.sum());
+            line(sb, "records.dropped", m.recordsDropped());
+            line(sb, "live", m.measurements.sum());
+            line(sb, "duplicates", m.duplicates.sum());
+            line(sb, "racp.records_per_s", String.format(Locale.US, "%.1f", m.recordsPerSecond));
+            line(sb, "racp.bytes_per_s", String.format(Locale.US, "%.1f", m.bytesPerSecond));
+            line(sb, "ingest.max_depth", m.maxQueueDepth());
+            line(sb, "gatt.failures", m.gattFailures.sum());
+            line(sb, "gatt.queue.depth", m.gattQueueDepth());
+            line(sb, "gatt.queue.max_depth", m.gattQueueMaxDepth());
+            line(sb, "gatt.queue.wait", m.gattQueueWait());
+            line(sb, "gatt.operation", m.gattOperationTime());
+            line(sb, "latency.ingest", m.ingestLatency);
+            line(sb, "latency.decode", m.decodeLatency);
+            line(sb, "latency.persist", m.persistLatency);
+            line(sb, "latency.render", m.renderLatency);
+
+            ingestTotal.add(m.ingestLatency);
+            decodeTotal.add(m.decodeLatency);
+            persistTotal.add(m.persistLatency);
+            renderTotal.add(m.renderLatency);
+            gattWaitTotal.add(m.gattQueueWait());
+            notifications += m.notifications.sum();
+            dropped += m.framesDropped();
+            duplicates += m.duplicates.sum();
+        }
+
+        section(sb, "total");
+        line(sb, "sessions", sessions.size());
+        line(sb, "notifications", notifications);
+        line(sb, "frames.dropped", dropped);
+        line(sb, "duplicates", duplicates);
+        line(sb, "gatt.queue.wait", gattWaitTotal);
+        line(sb, "latency.ingest", ingestTotal);
+        line(sb, "latency.decode", decodeTotal);
+        line(sb, "latency.persist", persistTotal);
+        line(sb, "latency.render", renderTotal);
+        return sb.toString();
+    }
+
+    /** Writes {@code report} to {@code dir/diagnostics-<UTC time>.txt}. */
+    static File export(File dir, String report) throws IOException {
+        File file = new File(dir, "diagnostics-" + FILE_TIME.format(Instant.now()) + ".txt");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            w.write(report);
+        }
+        return file;
+    }
+
+    private static void section(StringBuilder sb, String name) {
+        sb.append('\n').append('[').append(name).append("]\n");
+    }
+
+    private static void line(StringBuilder sb, String key, Object value) {
+        sb.append(key).append('=').append(value).append('\n');
+    }
+}
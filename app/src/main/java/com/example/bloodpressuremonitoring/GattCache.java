@@ -0,0 +1,141 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Persistent per-device GATT knowledge, so a known cuff skips setup round trips:
+ * the 0x1810 attribute layout seen at discovery, the decoded 0x2A49 Feature bits, and
+ * which CCCDs were written.
+ * <p>
+ * A bonded peripheral keeps its CCCD values across connections, so cached CCCDs are
+ * only reused for bonded devices. The layout is compared at every discovery: any
+ * difference, or a Service Changed indication, drops the whole entry.
+ * <p>
+ * Same file scheme as {@link SyncWatermarks}: properties keyed by address, written to
+ * a temporary file then renamed. Thread-safe.
+ */
+public final class GattCache {
+
+    // CCCD bits
+    public static final int CCCD_MEASUREMENT = 0x01;
+    public static final int CCCD_RACP = 0x02;
+    public static final int CCCD_RECORD = 0x04;
+
+    /** Value of {@link Entry#feature} when the Feature was never read. */
+    public static final int NO_FEATURE = -1;
+
+    /** Immutable view of one device. */
+    public static final class Entry {
+        public final String layout;
+        public final int feature;
+        public final int cccds;
+
+        Entry(String layout, int feature, int cccds) {
+            this.layout = layout;
+            this.feature = feature;
+            this.cccds = cccds;
+        }
+
+        public boolean hasFeature() {
+            return feature != NO_FEATURE;
+        }
+
+        public boolean hasCccd(int bit) {
+            return (cccds & bit) != 0;
+        }
+
+        // "layout|feature|cccds"
+        String encode() {
+            return layout + '|' + feature + '|' + cccds;
+        }
+
+        static Entry decode(String v) {
+            String[] parts = v.split("\\|");
+            if (parts.length != 3) return null;
+            try {
+                return new Entry(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final File file;
+    private final Properties values = new Properties();
+    private boolean dirty;
+
+    public GattCache(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                values.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                // Unreadable: every device goes through a full setup once
+                values.clear();
+            }
+        }
+    }
+
+    /** @return null if the device is unknown (or its entry unreadable) */
+    public synchronized Entry get(String address) {
+        String v = values.getProperty(address);
+        return v == null ? null : Entry.decode(v);
+    }
+
+    /**
+     * Records the layout found at discovery. A different layout than the cached one
+     * drops the Feature and CCCD state.
+     *
+     * @return the entry to use for this connection, null if nothing cached still applies
+     */
+    public synchronized Entry onDiscovered(String address, String layout) {
+        Entry e = get(address);
+        if (e != null && e.layout.equals(layout)) return e;
+        put(address, new Entry(layout, NO_FEATURE, 0));
+        return null;
+    }
+
+    public synchronized void putFeature(String address, int feature) {
+        Entry e = get(address);
+        if (e != null && e.feature != feature) put(address, new Entry(e.layout, feature, e.cccds));
+    }
+
+    public synchronized void addCccd(String address, int bit) {
+        Entry e = get(address);
+        if (e != null && !e.hasCccd(bit)) put(address, new Entry(e.layout, e.feature, e.cccds | bit));
+    }
+
+    /** The peripheral lost our CCCD values (e.g. bond removed on its side). */
+    public synchronized void forgetCccds(String address) {
+        Entry e = get(address);
+        if (e != null && e.cccds != 0) put(address, new Entry(e.layout, e.feature, 0));
+    }
+
+    /** Service Changed, or anything else that makes the entry untrustworthy. */
+    public synchronized void invalidate(String address) {
+        dirty |= values.remove(address) != null;
+    }
+
+    public synchronized void save() throws IOException {
+        if (!dirty) return;
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            values.store(out, "GATT layout|feature|cccds per device");
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("cannot replace " + file);
+        }
+        dirty = false;
+    }
+
+    private void put(String address, Entry e) {
+        values.setProperty(address, e.encode());
+        dirty = true;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * A queued GATT operation failed: rejected by the stack, completed with a non-success
+ * status, or abandoned because the connection went away.
+ */
+public class GattOperationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /** {@link #getStatus()} when the failure did not come from a GATT status code. */
+    public static final int NO_STATUS = -1;
+
+    private final int status;
+
+    public GattOperationException(String message, int status) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
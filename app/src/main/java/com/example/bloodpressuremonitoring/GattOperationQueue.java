@@ -0,0 +1,373 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serialized GATT operation scheduler for one connection.
+ * <p>
+ * Android allows a single outstanding GATT operation per connection. Operations are
+ * queued here by priority (control before bulk, FIFO within a priority), started one
+ * at a time, and completed when the matching callback reports back through
+ * {@link #complete}. Each operation has a timeout and a bounded number of retries, so
+ * a lost callback can no longer hang the flow. Every operation returns a
+ * {@link CompletableFuture}, which lets the setup sequence be written as a pipeline.
+ * <p>
+ * Only transient failures are retried: a timeout, a start refused by the stack, and
+ * the GATT_ERROR / busy / congested statuses. A status from the peer (insufficient
+ * authentication, write not permitted, ...) fails at once. A refused start is tried
+ * again after a short backoff, growing with the attempts, since the stack stays busy
+ * for a while.
+ * <p>
+ * Callbacks carry no request id, so an attempt that timed out stays owed one for one
+ * more timeout: the next matching callback is taken as its late answer and dropped, and
+ * operations on the same characteristic (the retry included) wait meanwhile rather than
+ * take it as theirs. Past that, the callback is considered lost and the entry dropped;
+ * it is dropped too when its operation finally fails, so a lost callback never holds a
+ * characteristic for longer than that.
+ * <p>
+ * Transport-agnostic: the actual call ({@code gatt.writeDescriptor(...)}, ...) is the
+ * {@link Starter} given at enqueue time. Thread-safe.
+ */
+public final class GattOperationQueue {
+
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_RETRIES = 1;
+
+    /** Status reported by a successful GATT callback (BluetoothGatt.GATT_SUCCESS). */
+    public static final int GATT_SUCCESS = 0;
+
+    /** First backoff after a start refused by the stack; multiplied by the attempt number. */
+    static final long REJECTED_BACKOFF_MS = 20;
+
+    // Retried statuses (stack values: GATT_BUSY, GATT_ERROR, GATT_CONNECTION_CONGESTED)
+    static final int GATT_BUSY = 0x84;
+    static final int GATT_ERROR = 0x85;
+    static final int GATT_CONNECTION_CONGESTED = 0x8F;
+
+    public enum Priority { CONTROL, BULK }
+
+    /** Kind of callback that completes an operation. */
+    public enum Type { READ, WRITE, WRITE_DESCRIPTOR, MTU, PHY }
+
+    /** Issues the operation; returns {@code false} if the stack refused it. */
+    public interface Starter {
+        boolean start();
+    }
+
+    /** Timed-out attempt whose callback may still come, until {@code expiresNanos}. */
+    private static final class Owed {
+        final Op op;
+        final long expiresNanos;
+
+        Owed(Op op, long expiresNanos) {
+            this.op = op;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+
+    private static final class Op {
+        final long order;
+        final String name;
+        final Type type;
+        final UUID target;
+        final Priority priority;
+        final long timeoutMs;
+        final int maxRetries;
+        final Starter starter;
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+
+        int attempts;
+        long startedNanos;
+        long notBeforeNanos = System.nanoTime(); // backoff after a refused start
+        ScheduledFuture<?> timeout; // guarded by the queue lock
+
+        Op(long order, String name, Type type, UUID target, Priority priority,
+           long timeoutMs, int maxRetries, Starter starter) {
+            this.order = order;
+            this.name = name;
+            this.type = type;
+            this.target = target;
+            this.priority = priority;
+            this.timeoutMs = timeoutMs;
+            this.maxRetries = maxRetries;
+            this.starter = starter;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final PriorityQueue<Op> pending = new PriorityQueue<>((a, b) -> {
+        int c = a.priority.compareTo(b.priority);
+        return c != 0 ? c : Long.compare(a.order, b.order);
+    });
+
+    private long nextOrder;
+    private Op current;
+    // One entry per timed-out attempt whose callback may still come, oldest first
+    private final ArrayDeque<Owed> owed = new ArrayDeque<>();
+    // Next pump() for ops held back by a backoff or an owed callback
+    private ScheduledFuture<?> wakeup;
+    private long wakeupNanos;
+    private int maxPending; // guarded by this
+
+    // Enqueue -> first start, and start -> callback of the last attempt
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+
+    /** @param scheduler runs the per-operation timeouts */
+    public GattOperationQueue(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public CompletableFuture<byte[]> enqueue(String name, Type type, UUID target, Priority priority,
+                                             Starter starter) {
+        return enqueue(name, type, target, priority, DEFAULT_TIMEOUT_MS, DEFAULT_RETRIES, starter);
+    }
+
+    /**
+     * Queues an operation. The future completes with the value reported by the callback
+     * (read value, written descriptor value, or {@code null}), or exceptionally with a
+     * {@link GattOperationException} / {@link TimeoutException} once retries are exhausted.
+     */
+    public CompletableFuture<byte[]> enqueue(String name, Type type, UUID target, Priority priority,
+                                             long timeoutMs, int maxRetries, Starter starter) {
+        Op op;
+        synchronized (this) {
+            op = new Op(nextOrder++, name, type, target, priority, timeoutMs, maxRetries, starter);
+            pending.add(op);
+            if (pending.size() > maxPending) maxPending = pending.size();
+        }
+        pump();
+        return op.future;
+    }
+
+    /**
+     * Reports a GATT callback. Ignored (returns {@code false}) if it does not match the
+     * operation in flight, or if it is the late answer of an attempt that timed out.
+     */
+    public boolean complete(Type type, UUID target, int status, byte[] value) {
+        Op op;
+        synchronized (this) {
+            expireOwed(System.nanoTime());
+            for (Iterator<Owed> it = owed.iterator(); it.hasNext(); ) {
+                if (matches(it.next().op, type, target)) {
+                    it.remove();
+                    // Ops waiting on that callback may start now
+                    if (current == null) wakeUpAt(System.nanoTime());
+                    return false;
+                }
+            }
+            op = current;
+            if (op == null || !matches(op, type, target)) return false;
+        }
+        if (status == GATT_SUCCESS) {
+            finish(op, value);
+        } else {
+            fail(op, new GattOperationException(op.name + " failed", status), isTransient(status));
+        }
+        return true;
+    }
+
+    /** Fails the operation in flight and everything queued (e.g. on disconnect). */
+    public void cancelAll(String reason) {
+        Op inFlight;
+        Op[] queued;
+        ScheduledFuture<?> timeout;
+        ScheduledFuture<?> pendingWakeup;
+        synchronized (this) {
+            inFlight = current;
+            timeout = inFlight != null ? inFlight.timeout : null;
+            current = null;
+            queued = pending.toArray(new Op[0]);
+            pending.clear();
+            owed.clear();
+            pendingWakeup = wakeup;
+            wakeup = null;
+        }
+        if (pendingWakeup != null) pendingWakeup.cancel(false);
+        if (inFlight != null) {
+            if (timeout != null) timeout.cancel(false);
+            inFlight.future.completeExceptionally(
+                    new GattOperationException(inFlight.name + ": " + reason, GattOperationException.NO_STATUS));
+        }
+        for (Op op : queued) {
+            op.future.completeExceptionally(
+                    new GattOperationException(op.name + ": " + reason, GattOperationException.NO_STATUS));
+        }
+    }
+
+    /** Queued operations, not counting the one in flight. */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public synchronized boolean isBusy() {
+        return current != null;
+    }
+
+    /** Highest number of queued operations seen. */
+    public synchronized int maxPendingCount() {
+        return maxPending;
+    }
+
+    /** Time from enqueue to the first start of each operation. */
+    public LatencyHistogram waitTimes() {
+        return waitTimes;
+    }
+
+    /** Time from start to callback of completed operations. */
+    public LatencyHistogram serviceTimes() {
+        return serviceTimes;
+    }
+
+    // =========================
+    // Internals
+    // =========================
+
+    private void pump() {
+        while (true) {
+            final Op op;
+            synchronized (this) {
+                if (current != null) return;
+                op = nextReady(System.nanoTime());
+                if (op == null) return;
+                if (op.future.isDone()) continue; // cancelled by the caller while queued
+                current = op;
+                op.startedNanos = System.nanoTime();
+                if (op.attempts == 0) waitTimes.record((op.startedNanos - op.enqueuedNanos) / 1_000);
+                op.attempts++;
+                final int attempt = op.attempts;
+                op.timeout = scheduler.schedule(() -> onTimeout(op, attempt), op.timeoutMs, TimeUnit.MILLISECONDS);
+            }
+
+            boolean started;
+            try {
+                started = op.starter.start();
+            } catch (RuntimeException e) {
+                started = false;
+            }
+            if (!started) {
+                synchronized (this) {
+                    op.notBeforeNanos = System.nanoTime()
+                            + TimeUnit.MILLISECONDS.toNanos(REJECTED_BACKOFF_MS * op.attempts);
+                }
+                fail(op, new GattOperationException(op.name + " rejected by the stack",
+                        GattOperationException.NO_STATUS), true);
+            }
+            return;
+        }
+    }
+
+    private void onTimeout(Op op, int attempt) {
+        synchronized (this) {
+            if (current != op || op.attempts != attempt) return;
+            owed.add(new Owed(op, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(op.timeoutMs)));
+        }
+        fail(op, new TimeoutException(op.name + " timed out after " + op.timeoutMs + " ms"), true);
+    }
+
+    private void fail(Op op, Exception error, boolean retryable) {
+        boolean retry;
+        ScheduledFuture<?> timeout;
+        synchronized (this) {
+            if (current != op) return;
+            current = null;
+            timeout = op.timeout; // read before a concurrent pump() can restart the op
+            retry = retryable && op.attempts <= op.maxRetries && !op.future.isDone();
+            if (retry) {
+                pending.add(op);
+            } else {
+                // Nothing left to protect: a late answer now belongs to whoever asks next
+                owed.removeIf(o -> o.op == op);
+            }
+        }
+        if (timeout != null) timeout.cancel(false);
+        if (!retry) op.future.completeExceptionally(error);
+        pump();
+    }
+
+    private static boolean matches(Op op, Type type, UUID target) {
+        return op.type == type && (op.target == null || op.target.equals(target));
+    }
+
+    // Highest-priority op that may start now; schedules a pump() for the first one held back
+    private Op nextReady(long now) {
+        expireOwed(now);
+        Op best = null;
+        boolean held = false;
+        long heldUntil = 0;
+        for (Op op : pending) {
+            long readyAt = readyAt(op, now);
+            if (readyAt - now > 0) {
+                if (!held || readyAt - heldUntil < 0) heldUntil = readyAt;
+                held = true;
+            } else if (best == null || pending.comparator().compare(op, best) < 0) {
+                best = op;
+            }
+        }
+        if (best != null) {
+            pending.remove(best);
+        } else if (held) {
+            wakeUpAt(heldUntil);
+        }
+        return best;
+    }
+
+    // End of the backoff, or of the owed callbacks the op's own callback could be mistaken for
+    private long readyAt(Op op, long now) {
+        long at = now;
+        if (op.notBeforeNanos - at > 0) at = op.notBeforeNanos;
+        for (Owed o : owed) {
+            boolean sameCallback = o.op.type == op.type
+                    && (o.op.target == null || op.target == null || o.op.target.equals(op.target));
+            if (sameCallback && o.expiresNanos - at > 0) at = o.expiresNanos;
+        }
+        return at;
+    }
+
+    private void expireOwed(long now) {
+        owed.removeIf(o -> o.expiresNanos - now <= 0);
+    }
+
+    private void wakeUpAt(long atNanos) {
+        if (wakeup != null && !wakeup.isDone() && wakeupNanos - atNanos <= 0) return;
+        if (wakeup != null) wakeup.cancel(false);
+        wakeupNanos = atNanos;
+        wakeup = scheduler.schedule(() -> onWakeup(atNanos), Math.max(0, atNanos - System.nanoTime()),
+                TimeUnit.NANOSECONDS);
+    }
+
+    private void onWakeup(long atNanos) {
+        synchronized (this) {
+            // A later wakeUpAt() replaced this one: keep that one's handle
+            if (wakeupNanos == atNanos) wakeup = null;
+        }
+        pump();
+    }
+
+    /** Statuses worth another attempt; anything else is the peer's final answer. */
+    static boolean isTransient(int status) {
+        return status == GATT_ERROR || status == GATT_BUSY || status == GATT_CONNECTION_CONGESTED;
+    }
+
+    private void finish(Op op, byte[] value) {
+        ScheduledFuture<?> timeout;
+        synchronized (this) {
+            if (current != op) return;
+            current = null;
+            timeout = op.timeout;
+        }
+        serviceTimes.recordSince(op.startedNanos);
+        if (timeout != null) timeout.cancel(false);
+        op.future.complete(value);
+        pump();
+    }
+}
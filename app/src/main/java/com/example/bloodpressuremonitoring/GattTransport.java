@@ -0,0 +1,89 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.UUID;
+
+/**
+ * One GATT client connection, reduced to what a {@link DeviceSession} needs.
+ * <p>
+ * Operation methods only <em>start</em> an operation and return {@code false} if the
+ * stack refused it; the outcome arrives later through the {@link Callback}, on any
+ * thread. At most one operation is started at a time (the session's
+ * {@link GattOperationQueue} guarantees it). Characteristics are addressed by UUID
+ * within the Blood Pressure service; the transport keeps the actual handles.
+ */
+public interface GattTransport {
+
+    interface Callback {
+        void onConnectionStateChanged(boolean connected, int status);
+
+        void onServicesDiscovered(int status);
+
+        void onCharacteristicRead(UUID characteristic, int status, byte[] value);
+
+        void onCharacteristicWrite(UUID characteristic, int status);
+
+        /** CCCD write of {@code characteristic} completed. */
+        void onDescriptorWrite(UUID characteristic, int status, byte[] value);
+
+        void onCharacteristicChanged(UUID characteristic, byte[] value);
+
+        /** ATT MTU exchange done (requested, or started by the peripheral). */
+        void onMtuChanged(int mtu, int status);
+
+        /** LE PHY in use changed (requested, or by the peripheral). Values: 1 = 1M, 2 = 2M. */
+        void onPhyUpdate(int txPhy, int rxPhy, int status);
+
+        /** Service Changed (0x2A05) indicated: the attribute handles are stale, discover again. */
+        void onServiceChanged();
+    }
+
+    String address();
+
+    /**
+     * Starts connecting; all events go to {@code callback}. {@code autoConnect}: let the
+     * controller connect whenever the device advertises again (background, no timeout)
+     * instead of a direct attempt (fast, gives up after about 30 s).
+     */
+    boolean connect(Callback callback, boolean autoConnect);
+
+    boolean discoverServices();
+
+    /** After discovery: the characteristic exists in the service. */
+    boolean hasCharacteristic(UUID characteristic);
+
+    /** After discovery: the characteristic has all of {@code properties} (BluetoothGattCharacteristic.PROPERTY_*). */
+    boolean hasProperties(UUID characteristic, int properties);
+
+    /** After discovery: all properties of the characteristic, -1 if it is missing. */
+    int properties(UUID characteristic);
+
+    /** The peripheral is bonded, so it keeps its CCCD values across connections. */
+    boolean isBonded();
+
+    boolean readCharacteristic(UUID characteristic);
+
+    boolean writeCharacteristic(UUID characteristic, byte[] value);
+
+    /** Enables local notification routing and writes {@code cccdValue} to the CCCD. */
+    boolean enableNotifications(UUID characteristic, byte[] cccdValue);
+
+    /**
+     * Enables local notification routing only, for a CCCD the bonded peripheral already
+     * holds. Completes at once: no operation, no callback.
+     */
+    boolean enableLocalNotifications(UUID characteristic);
+
+    boolean requestMtu(int mtu);
+
+    /** Connection interval hint (BluetoothGatt.CONNECTION_PRIORITY_*). No callback. */
+    boolean requestConnectionPriority(int priority);
+
+    /** The local controller supports the LE 2M PHY. */
+    boolean isLe2MPhySupported();
+
+    /** Preferred PHYs (BluetoothDevice.PHY_LE_*_MASK); the outcome arrives via onPhyUpdate. */
+    boolean setPreferredPhy(int txPhyMask, int rxPhyMask, int phyOptions);
+
+    /** Disconnects and releases the connection; no callback is delivered after this. */
+    void close();
+}
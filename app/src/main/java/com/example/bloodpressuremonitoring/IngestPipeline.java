@@ -0,0 +1,170 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated consumer thread for notification frames.
+ * <p>
+ * Each session owns an {@link IngestRing} filled by its GATT callback; this thread
+ * drains all registered rings round-robin (bounded batch per ring, so one chatty
+ * device cannot starve the others) and hands the frames to the session for decoding,
+ * dedup and persistence. When every ring is empty the thread parks until a producer
+ * calls {@link #signal()}.
+ */
+public final class IngestPipeline implements AutoCloseable {
+
+    static final int BATCH = 64;
+    // Safety net against a lost wake-up; producers normally unpark the thread
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final class Source {
+        final IngestRing ring;
+        final IngestRing.Consumer consumer;
+
+        Source(IngestRing ring, IngestRing.Consumer consumer) {
+            this.ring = ring;
+            this.consumer = consumer;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Source> sources = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<Runnable> afterRemoval = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile boolean stopped;
+    private volatile boolean parked;
+
+    // Consumer thread only (published through volatile reads by the getters)
+    private volatile long consumed;
+    private volatile long failures;
+    private volatile long wakeups;
+
+    public IngestPipeline(String name) {
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Starts draining {@code ring} into {@code consumer} (on the pipeline thread). */
+    public void register(IngestRing ring, IngestRing.Consumer consumer) {
+        sources.add(new Source(ring, consumer));
+        signal();
+    }
+
+    /** Stops draining {@code ring}. Frames still queued are discarded. */
+    public void unregister(IngestRing ring) {
+        sources.removeIf(s -> s.ring == ring);
+    }
+
+    /**
+     * Stops draining {@code ring}, then runs {@code then} on the pipeline thread once the
+     * pass that may still be handing its frames to the consumer is over: no frame of it
+     * reaches the consumer after {@code then} started. Frames still queued are discarded.
+     */
+    public void unregister(IngestRing ring, Runnable then) {
+        unregister(ring);
+        afterRemoval.add(then);
+        if (stopped) {
+            runAfterRemoval(); // the thread ended: nothing drains any more
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /** Producer side: call after a successful {@link IngestRing#offer}. Cheap when the thread is busy. */
+    public void signal() {
+        if (parked) LockSupport.unpark(thread);
+    }
+
+    /** Stops the thread after it drained what is already queued. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() == thread) return;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /** Frames handed to consumers. */
+    public long consumed() {
+        return consumed;
+    }
+
+    /**
+     * Frames whose consumer threw (the frame is skipped, the pipeline goes on), and
+     * {@link #unregister(IngestRing, Runnable)} tasks that threw.
+     */
+    public long failures() {
+        return failures;
+    }
+
+    /** Times the thread was woken up after running out of work. */
+    public long wakeups() {
+        return wakeups;
+    }
+
+    private void run() {
+        while (running) {
+            if (drainOnce() + runAfterRemoval() > 0) continue;
+            parked = true;
+            // Re-check after publishing "parked": a frame offered just before is not missed
+            if (!hasWork() && running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                wakeups++;
+            }
+            parked = false;
+        }
+        // Last pass so close() does not lose frames already received
+        while (drainOnce() > 0) {
+        }
+        stopped = true;
+        runAfterRemoval();
+    }
+
+    // Between two passes: the rings removed before are not drained any more
+    private int runAfterRemoval() {
+        int n = 0;
+        for (Runnable r; (r = afterRemoval.poll()) != null; n++) {
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                failures++;
+            }
+        }
+        return n;
+    }
+
+    private int drainOnce() {
+        int total = 0;
+        for (Source s : sources) {
+            try {
+                total += s.ring.drain(s.consumer, BATCH);
+            } catch (RuntimeException e) {
+                failures++;
+                total++;
+            }
+        }
+        consumed += total;
+        return total;
+    }
+
+    private boolean hasWork() {
+        if (!afterRemoval.isEmpty()) return true;
+        for (Source s : sources) {
+            if (!s.ring.isEmpty()) return true;
+        }
+        return false;
+    }
+}
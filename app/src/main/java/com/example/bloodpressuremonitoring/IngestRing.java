@@ -0,0 +1,130 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer / single-consumer ring of raw notification frames.
+ * <p>
+ * Every slot is preallocated ({@code maxFrameLength} bytes): the producer (the GATT
+ * callback) only copies the value and a receive timestamp, and never blocks nor
+ * allocates. When the ring is full the frame is dropped and counted, so a stalled
+ * consumer shows up in {@link #dropped()} instead of delaying the Bluetooth stack.
+ * <p>
+ * The producer side may be called from different threads as long as calls do not
+ * overlap (binder callbacks of one connection are delivered one after another).
+ */
+public final class IngestRing {
+
+    /** Receives frames in order. {@code data} is the slot itself: copy what must outlive the call. */
+    public interface Consumer {
+        void onFrame(int channel, byte[] data, int length, long receivedNanos);
+    }
+
+    private final int mask;
+    private final int maxFrameLength;
+    private final byte[][] frames;
+    private final int[] lengths;
+    private final int[] channels;
+    private final long[] times;
+
+    // head: next slot to read (consumer), tail: next slot to write (producer)
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Backpressure counters
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private volatile int maxDepth;
+
+    public IngestRing(int capacity, int maxFrameLength) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = cap - 1;
+        this.maxFrameLength = maxFrameLength;
+        this.frames = new byte[cap][maxFrameLength];
+        this.lengths = new int[cap];
+        this.channels = new int[cap];
+        this.times = new long[cap];
+    }
+
+    /**
+     * Producer: copies {@code data} into the next slot.
+     *
+     * @return false if the ring was full (frame dropped)
+     */
+    public boolean offer(int channel, byte[] data, long receivedNanos) {
+        long t = tail.get();
+        long depth = t - head.get();
+        if (depth > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int i = (int) t & mask;
+        int n = data == null ? 0 : data.length;
+        if (n > maxFrameLength) {
+            truncated.incrementAndGet();
+            n = maxFrameLength;
+        }
+        if (n > 0) System.arraycopy(data, 0, frames[i], 0, n);
+        lengths[i] = n;
+        channels[i] = channel;
+        times[i] = receivedNanos;
+        // Volatile store, not lazySet: it must not pass the producer's next read of the
+        // consumer's "parked" flag (IngestPipeline#signal), or a wake-up can be lost
+        tail.set(t + 1);
+        if (depth + 1 > maxDepth) maxDepth = (int) (depth + 1);
+        return true;
+    }
+
+    /**
+     * Consumer: hands up to {@code max} frames to {@code consumer}, oldest first.
+     *
+     * @return number of frames consumed
+     */
+    public int drain(Consumer consumer, int max) {
+        long h = head.get();
+        long available = tail.get() - h;
+        int n = (int) Math.min(available, max);
+        for (int k = 0; k < n; k++) {
+            int i = (int) (h + k) & mask;
+            try {
+                consumer.onFrame(channels[i], frames[i], lengths[i], times[i]);
+            } finally {
+                head.lazySet(h + k + 1); // frees the slot, even if the consumer threw
+            }
+        }
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /** Frames waiting for the consumer. */
+    public int depth() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /** Frames accepted since creation. */
+    public long accepted() {
+        return tail.get();
+    }
+
+    /** Frames dropped because the ring was full. */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /** Frames longer than a slot (cut to {@code maxFrameLength}). */
+    public long truncated() {
+        return truncated.get();
+    }
+
+    /** Highest depth seen: how close the consumer came to falling behind. */
+    public int maxDepth() {
+        return maxDepth;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket latency histogram in microseconds, lock-free.
+ * <p>
+ * Log-linear buckets: four per power of two, so a bucket is at most 25% wide and a
+ * percentile is read to within that. Values from 0 to 2^40 µs (~12 days) map to
+ * {@value #BUCKETS} buckets; larger values land in the last one. Recording is one
+ * {@code numberOfLeadingZeros}, one atomic add on the bucket and a striped add on the
+ * sum: cheap enough for every notification. Readers see counts that may be a few
+ * records apart from each other while writers are active.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB + SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        if (micros < 0) micros = 0;
+        counts.incrementAndGet(bucketOf(micros));
+        sum.add(micros);
+        long m = max.get();
+        while (micros > m && !max.compareAndSet(m, micros)) m = max.get();
+    }
+
+    /** Records the time from {@code startNanos} ({@link System#nanoTime()}) to now. */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1_000);
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        return n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Upper bound of the bucket holding the {@code q} quantile (0..1), capped at the
+     * largest value recorded; 0 when empty.
+     */
+    public long percentile(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += snapshot[i] = counts.get(i);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** Adds the counts of {@code other} (e.g. to sum the sessions). */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        sum.add(other.sum.sum());
+        long o = other.max.get();
+        long m = max.get();
+        while (o > m && !max.compareAndSet(m, o)) m = max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        sum.reset();
+        max.set(0);
+    }
+
+    /** e.g. "n=1200 p50=180us p90=410us p99=1.2ms max=3.4ms" */
+    @Override
+    public String toString() {
+        long n = count();
+        if (n == 0) return "n=0";
+        return "n=" + n + " p50=" + format(percentile(0.50)) + " p90=" + format(percentile(0.90))
+                + " p99=" + format(percentile(0.99)) + " max=" + format(max());
+    }
+
+    static String format(long micros) {
+        if (micros < 1_000) return micros + "us";
+        if (micros < 1_000_000) return String.format(Locale.US, "%.1fms", micros / 1_000.0);
+        return String.format(Locale.US, "%.2fs", micros / 1_000_000.0);
+    }
+
+    static int bucketOf(long v) {
+        if (v < SUB) return (int) v;
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB) return bucket;
+        int exponent = bucket / SUB + SUB_BITS - 1;
+        return (long) (SUB + bucket % SUB) << (exponent - SUB_BITS);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Link parameters of one connection: ATT MTU, connection priority and LE PHY.
+ * <p>
+ * At the default 23-byte MTU a notification carries 20 bytes, so a 0x2B36 record with
+ * a full 0x2A35 payload (5 + 19 bytes) needs two segments; at MTU 247 every record
+ * fits in one. The MTU is negotiated once during setup. A high connection priority
+ * (short connection interval) and the 2M PHY only pay off while records stream in, so
+ * {@link #boost()} and {@link #relax()} bracket each RACP transfer and the link goes
+ * back to balanced / 1M afterwards to save power.
+ * <p>
+ * MTU and PHY changes are GATT operations completed by a callback, so they go through
+ * the session's {@link GattOperationQueue}; the connection priority request has no
+ * callback. The futures fail like any queued operation; the session logs the failure
+ * and goes on with the link as it is.
+ */
+final class LinkTuner {
+
+    // Same values as the Android constants
+    static final int DEFAULT_MTU = 23;
+    static final int CONNECTION_PRIORITY_BALANCED = 0;
+    static final int CONNECTION_PRIORITY_HIGH = 1;
+    static final int PHY_LE_1M = 1;
+    static final int PHY_LE_2M = 2;
+    static final int PHY_LE_1M_MASK = 1;
+    static final int PHY_LE_2M_MASK = 2;
+    static final int PHY_OPTION_NO_PREFERRED = 0;
+
+    /** What to tune; disable a setting to measure what it gains. */
+    static final class Settings {
+        static final Settings DEFAULT = new Settings(247, true, true);
+        static final Settings NONE = new Settings(DEFAULT_MTU, false, false);
+
+        final int mtu;                  // requested ATT MTU, DEFAULT_MTU to keep the default
+        final boolean highPriority;     // CONNECTION_PRIORITY_HIGH during transfers
+        final boolean le2m;             // 2M PHY during transfers, where supported
+
+        Settings(int mtu, boolean highPriority, boolean le2m) {
+            this.mtu = mtu;
+            this.highPriority = highPriority;
+            this.le2m = le2m;
+        }
+    }
+
+    private final GattTransport transport;
+    private final GattOperationQueue queue;
+    private final Settings settings;
+
+    private volatile int mtu = DEFAULT_MTU;
+    private volatile int txPhy = PHY_LE_1M;
+    private volatile int rxPhy = PHY_LE_1M;
+    private volatile int priority = CONNECTION_PRIORITY_BALANCED;
+
+    LinkTuner(GattTransport transport, GattOperationQueue queue, Settings settings) {
+        this.transport = transport;
+        this.queue = queue;
+        this.settings = settings;
+    }
+
+    /** Requests the configured MTU. Completes with the MTU in use. */
+    CompletableFuture<Integer> negotiateMtu() {
+        if (settings.mtu <= DEFAULT_MTU) return CompletableFuture.completedFuture(mtu);
+        return queue.enqueue("MTU " + settings.mtu, GattOperationQueue.Type.MTU, null,
+                        GattOperationQueue.Priority.CONTROL, () -> transport.requestMtu(settings.mtu))
+                .thenApply(v -> mtu);
+    }
+
+    /** High priority and 2M PHY for a bulk transfer. Completes when the PHY update is done. */
+    CompletableFuture<Void> boost() {
+        if (settings.highPriority) requestPriority(CONNECTION_PRIORITY_HIGH);
+        if (!settings.le2m || !transport.isLe2MPhySupported()) return CompletableFuture.completedFuture(null);
+        return setPhy(PHY_LE_2M_MASK);
+    }
+
+    /** Back to balanced priority and the 1M PHY. */
+    CompletableFuture<Void> relax() {
+        if (priority != CONNECTION_PRIORITY_BALANCED) requestPriority(CONNECTION_PRIORITY_BALANCED);
+        if (txPhy == PHY_LE_1M && rxPhy == PHY_LE_1M) return CompletableFuture.completedFuture(null);
+        return setPhy(PHY_LE_1M_MASK);
+    }
+
+    /** Transport callback; also reported when the peripheral starts the exchange. */
+    void onMtuChanged(int newMtu, int status) {
+        if (status == GattOperationQueue.GATT_SUCCESS) mtu = newMtu;
+        queue.complete(GattOperationQueue.Type.MTU, null, status, null);
+    }
+
+    /** Transport callback; also reported when the peripheral changes the PHY. */
+    void onPhyUpdate(int tx, int rx, int status) {
+        if (status == GattOperationQueue.GATT_SUCCESS) {
+            txPhy = tx;
+            rxPhy = rx;
+        }
+        queue.complete(GattOperationQueue.Type.PHY, null, status, null);
+    }
+
+    int mtu() {
+        return mtu;
+    }
+
+    /** Largest notification value at the current MTU (ATT header: 3 bytes). */
+    int maxNotificationLength() {
+        return mtu - 3;
+    }
+
+    /** e.g. "MTU 247, HIGH, 2M" */
+    String describe() {
+        return "MTU " + mtu + ", " + (priority == CONNECTION_PRIORITY_HIGH ? "HIGH" : "BALANCED")
+                + ", " + (txPhy == PHY_LE_2M ? "2M" : "1M");
+    }
+
+    private void requestPriority(int p) {
+        if (transport.requestConnectionPriority(p)) priority = p;
+    }
+
+    private CompletableFuture<Void> setPhy(int mask) {
+        return queue.enqueue("PHY " + (mask == PHY_LE_2M_MASK ? "2M" : "1M"), GattOperationQueue.Type.PHY, null,
+                        GattOperationQueue.Priority.CONTROL,
+                        () -> transport.setPreferredPhy(mask, mask, PHY_OPTION_NO_PREFERRED))
+                .thenApply(v -> null);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling (Steinarsson, 2013): keeps the visual
+ * shape of a line, peaks included, with a fixed number of points.
+ * <p>
+ * The range is cut into {@code threshold - 2} buckets between the first and last
+ * points; from each bucket the point forming the largest triangle with the point kept
+ * before it and the average of the next bucket is kept. O(n), and allocation-free: the
+ * caller owns the output buffer.
+ */
+final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Selects at most {@code threshold} indices of {@code [from, to)} into {@code out},
+     * in increasing order; every index when the range is not larger than that.
+     *
+     * @return number of indices written
+     */
+    static int select(long[] x, float[] y, int from, int to, int threshold, int[] out) {
+        int n = to - from;
+        if (n <= 0) return 0;
+        if (n <= threshold) {
+            for (int i = 0; i < n; i++) out[i] = from + i;
+            return n;
+        }
+        if (threshold < 3) {
+            // Too few points to keep a shape: the ends
+            out[0] = from;
+            if (threshold < 2) return 1;
+            out[1] = to - 1;
+            return 2;
+        }
+
+        long x0 = x[from]; // relative times keep the products small
+        double every = (double) (n - 2) / (threshold - 2);
+        int k = 0;
+        int a = from;
+        out[k++] = a;
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket (the last point for the last bucket)
+            int avgStart = from + (int) ((i + 1) * every) + 1;
+            int avgEnd = Math.min(from + (int) ((i + 2) * every) + 1, to);
+            if (avgStart >= avgEnd) avgStart = avgEnd - 1;
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += x[j] - x0;
+                avgY += y[j];
+            }
+            int count = avgEnd - avgStart;
+            avgX /= count;
+            avgY /= count;
+
+            // Point of this bucket with the largest triangle
+            int start = from + (int) (i * every) + 1;
+            int end = from + (int) ((i + 1) * every) + 1;
+            double ax = x[a] - x0;
+            double ay = y[a];
+            double maxArea = -1;
+            int best = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - avgX) * (y[j] - ay) - (ax - (x[j] - x0)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = j;
+                }
+            }
+            out[k++] = best;
+            a = best;
+        }
+        out[k++] = to - 1;
+        return k;
+    }
+}
@@ -1,28 +1,23 @@
 package com.example.bloodpressuremonitoring;
 
 import android.Manifest;
+import android.app.AlertDialog;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanResult;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.graphics.Typeface;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.widget.ArrayAdapter;
+import android.view.Choreographer;
 import android.widget.Button;
 import android.widget.ListView;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -31,10 +26,24 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -45,38 +54,21 @@ public class MainActivity extends AppCompatActivity {
     // --- Phase 2: Scan ---
     private static final long SCAN_PERIOD = 10000; // 10s
 
-    // --- Blood Pressure UUIDs ---
-    private static final UUID BPS_SERVICE_UUID =
-            UUID.fromString("00001810-0000-1000-8000-00805f9b34fb"); // 0x1810
-    private static final UUID BPS_MEASUREMENT_UUID =
-            UUID.fromString("00002a35-0000-1000-8000-00805f9b34fb"); // 0x2A35
-    private static final UUID BPS_FEATURE_UUID =
-            UUID.fromString("00002a49-0000-1000-8000-00805f9b34fb"); // 0x2A49
-    private static final UUID CCCD_UUID =
-            UUID.fromString("00002902-0000-1000-8000-00805f9b34fb"); // 0x2902
-    // RACP + BP Record
-    private static final UUID RACP_UUID =
-            UUID.fromString("00002a52-0000-1000-8000-00805f9b34fb"); // Record Access Control Point
-
-    private static final UUID BP_RECORD_UUID =
-            UUID.fromString("00002b36-0000-1000-8000-00805f9b34fb"); // Blood Pressure Record (Enhanced BLS)
-
-    private BluetoothGattCharacteristic racpChar;
-    private BluetoothGattCharacteristic bpRecordChar;
-
-    // --- Record flow state ---
-    private enum RecordSetupStep { NONE, ENABLE_RACP_CCCD, ENABLE_BP_RECORD_CCCD, SEND_RACP_CMD, DONE }
-    private RecordSetupStep recordStep = RecordSetupStep.NONE;
-
-
+    // --- Sessions: several cuffs at once, on one bounded pool ---
+    private static final int SESSION_THREADS = 2;
+    private final ScheduledThreadPoolExecutor sessionExecutor = new ScheduledThreadPoolExecutor(SESSION_THREADS);
+    private SessionManager sessionManager;
 
     // UI
     private TextView txtFeature;
 
     private Button btnEnableScan;
-    private TextView txtStatus;
+    private Button btnDiagnostics;
+    private Button btnStats;
+    private ListView statusListView;
 
     private TextView txtBp;
+    private String shownTime = "Date : --"; // UI thread
     private TextView txtPulse;
     private TextView txtTime;
 
@@ -84,18 +76,68 @@ public class MainActivity extends AppCompatActivity {
 
     // BLE
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothLeScanner bluetoothLeScanner;
+    private ScanEngine scanEngine;
     private boolean scanning = false;
+    private final Runnable scanTimeout = () -> {
+        scanning = false;
+        scanEngine.stop();
+        logStatus("Scan: timeout reached -> stop (" + scanSummary() + ")");
+    };
 
     private final Handler handler = new Handler(Looper.getMainLooper());
 
-    private final ArrayList<String> deviceList = new ArrayList<>();
-    private ArrayAdapter<String> listAdapter;
-    private final ArrayList<BluetoothDevice> discoveredDevices = new ArrayList<>();
+    // Status log: lock-free ring, drained into the list at most once per frame
+    private StatusLog statusLog;
+    private StatusLogFileSpill statusLogSpill;
+    private TraceRecorder traceRecorder;
+    private StatusLogAdapter statusLogAdapter;
+    private long statusLogCursor;
+    private Choreographer choreographer;
+    private final AtomicBoolean statusFramePending = new AtomicBoolean();
+    private final Choreographer.FrameCallback statusFrameCallback = frameTimeNanos -> {
+        statusFramePending.set(false);
+        statusLogCursor = statusLog.drain(statusLogCursor, statusLogAdapter);
+        statusLogAdapter.notifyDataSetChanged();
+    };
+
+    private DeviceListAdapter deviceListAdapter;
+
+    // Measurement history, loaded off the main thread once per process (survives rotations)
+    private MeasurementHistory history;
+    // Append-only, memory-mapped store and incremental sync state, shared by all sessions (once loaded)
+    private MeasurementStore measurementStore;
+    // Older history, compacted out of the store at startup (null if disabled or unreadable)
+    private ColdTier coldTier;
+    private SyncWatermarks syncWatermarks;
+    // History export: one at a time, off the session threads
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
+    private MeasurementExporter exporter;
+    private Future<Long> exportTask;
+
+    // Trend chart: stored records are queued by the writing thread and added once per frame
+    private TrendChartView trendChart;
+    private final ConcurrentLinkedQueue<MeasurementRecord> chartPending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean chartFramePending = new AtomicBoolean();
+    private final Choreographer.FrameCallback chartFrameCallback = frameTimeNanos -> {
+        chartFramePending.set(false);
+        MeasurementRecord r;
+        while ((r = chartPending.poll()) != null) trendChart.add(r);
+    };
 
-    private BluetoothGatt bluetoothGatt;
-    private BluetoothGattCharacteristic measurementChar;
-    private BluetoothGattCharacteristic featureChar;
+    // Measurement panel: live readings and records coalesced to at most one render per frame
+    private final UiCoalescer<LiveReading> readings = new UiCoalescer<>(this::postReadingsFrame, this::renderReading);
+    private final Choreographer.FrameCallback readingsFrameCallback = frameTimeNanos -> readings.onFrame();
+
+    /** Live measurement and the session it came from (render latency metrics). */
+    private static final class LiveReading {
+        final DeviceSession session;
+        final MeasurementSnapshot snapshot;
+
+        LiveReading(DeviceSession session, MeasurementSnapshot snapshot) {
+            this.session = session;
+            this.snapshot = snapshot;
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -103,27 +145,44 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         btnEnableScan = findViewById(R.id.btn_enable_scan);
-        txtStatus = findViewById(R.id.txt_status);
+        btnDiagnostics = findViewById(R.id.btn_diagnostics);
+        btnStats = findViewById(R.id.btn_stats);
+        statusListView = findViewById(R.id.status_list);
 
         txtBp = findViewById(R.id.txt_bp);
         txtPulse = findViewById(R.id.txt_pulse);
         txtTime = findViewById(R.id.txt_time);
         txtFeature = findViewById(R.id.txt_feature);
         txtFeature.setText("Features : --");
+        trendChart = findViewById(R.id.trend_chart);
 
 
         devicesListView = findViewById(R.id.devices_list);
 
-        listAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, deviceList);
-        devicesListView.setAdapter(listAdapter);
+        deviceListAdapter = new DeviceListAdapter(getLayoutInflater());
+        devicesListView.setAdapter(deviceListAdapter);
 
         // Init status log
-        txtStatus.setText("Status log:");
+        int logCapacity = getResources().getInteger(R.integer.status_log_capacity);
+        if (getResources().getBoolean(R.bool.status_log_spill_to_file)) {
+            statusLogSpill = new StatusLogFileSpill(new File(getFilesDir(), "status_log_spill.txt"));
+        }
+        statusLog = new StatusLog(logCapacity, statusLogSpill);
+        statusLogAdapter = new StatusLogAdapter(getLayoutInflater(), statusLog.capacity());
+        statusListView.setAdapter(statusLogAdapter);
+        choreographer = Choreographer.getInstance();
+
+        // Compaction, rollups, chart and dedup keys: read on the loader thread, the first time only
+        history = MeasurementHistory.shared(getFilesDir(), getResources().getBoolean(R.bool.cold_tier),
+                getResources().getInteger(R.integer.cold_tier_after_days),
+                getResources().getBoolean(R.bool.dedup_history), ZoneId.systemDefault());
+        history.loaded().thenRunAsync(this::onHistoryLoaded, getMainExecutor());
+        syncWatermarks = new SyncWatermarks(new File(getFilesDir(), "sync_watermarks.properties"));
 
         // Init measure UI
         txtBp.setText("Tension : -- / -- mmHg");
         txtPulse.setText("Pouls : -- bpm");
-        txtTime.setText("Date : --");
+        txtTime.setText(shownTime);
 
         final BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
         bluetoothAdapter = (bluetoothManager != null) ? bluetoothManager.getAdapter() : null;
@@ -133,29 +192,228 @@ public class MainActivity extends AppCompatActivity {
             activateBluetooth();
         });
 
+        btnDiagnostics.setOnClickListener(v -> showDiagnostics());
+        btnStats.setOnClickListener(v -> showStats());
+
         devicesListView.setOnItemClickListener((parent, view, position, id) -> {
             if (scanning) {
                 logStatus("Stop scan (user selected device)");
                 scanLeDevice(false);
             }
-            BluetoothDevice device = discoveredDevices.get(position);
+            BluetoothDevice device = deviceListAdapter.getItem(position).handle;
             logStatus("User selected: " + safeName(device) + " / " + device.getAddress());
             connectToDevice(device);
         });
+        // Long press: frees the slot and stops the reconnections
+        devicesListView.setOnItemLongClickListener((parent, view, position, id) -> {
+            disconnectDevice(deviceListAdapter.getItem(position).address);
+            return true;
+        });
 
         logStatus("App started");
     }
 
+    // UI thread, once the history is loaded: the sessions need the store and the deduplicator
+    private void onHistoryLoaded() {
+        if (isDestroyed()) return;
+        for (String message : history.messages()) logStatus(message);
+        measurementStore = history.store();
+        coldTier = history.coldTier();
+        if (measurementStore != null) {
+            trendChart.setLines(history.chartLines());
+            history.setOnStored((index, r) -> onStored(r));
+            exporter = new MeasurementExporter(coldTier, measurementStore, ZoneId.systemDefault(), exportExecutor);
+        }
+
+        // Timeouts left behind by closed sessions must not keep the pool alive
+        sessionExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        sessionManager = new SessionManager(
+                address -> new AndroidGattTransport(this, bluetoothAdapter.getRemoteDevice(address),
+                        DeviceSession.BPS_SERVICE_UUID),
+                sessionExecutor, getResources().getInteger(R.integer.max_sessions),
+                measurementStore, syncWatermarks, ZoneId.systemDefault(), sessionListener);
+        sessionManager.setLinkSettings(new LinkTuner.Settings(
+                getResources().getInteger(R.integer.link_mtu),
+                getResources().getBoolean(R.bool.link_high_priority),
+                getResources().getBoolean(R.bool.link_2m_phy)));
+        if (getResources().getBoolean(R.bool.gatt_cache)) {
+            sessionManager.setGattCache(new GattCache(new File(getFilesDir(), "gatt_cache.properties")));
+        }
+        sessionManager.setDeduplicator(history.deduplicator());
+        sessionManager.setColdTier(history.coldTier());
+        if (getResources().getBoolean(R.bool.reconnect)) {
+            sessionManager.setReconnectPolicy(new ReconnectPolicy(
+                    getResources().getInteger(R.integer.reconnect_base_delay_ms),
+                    getResources().getInteger(R.integer.reconnect_max_delay_ms),
+                    getResources().getInteger(R.integer.reconnect_direct_attempts)));
+        }
+        configureTrace(sessionManager.trace());
+        logStatus("History loaded: sessions ready");
+    }
+
     // =========================
     // Permanent log (append)
     // =========================
     private void logStatus(String s) {
-        runOnUiThread(() -> {
-            String old = txtStatus.getText().toString();
-            txtStatus.setText(old + "\n- " + s);
+        statusLog.append(s);
+        // Choreographer is thread-safe: schedule one render for everything appended before the next frame
+        if (statusFramePending.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(statusFrameCallback);
+        }
+    }
+
+    // Any thread: r is the store's, copy it
+    private void onStored(MeasurementRecord r) {
+        MeasurementRecord copy = new MeasurementRecord();
+        copy.copyFrom(r);
+        chartPending.add(copy);
+        if (chartFramePending.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(chartFrameCallback);
+        }
+    }
+
+    // =========================
+    // Diagnostics
+    // =========================
+    private void showDiagnostics() {
+        if (sessionManager == null) {
+            toast("Historique en cours de chargement");
+            return;
+        }
+        String report = Diagnostics.report(sessionManager, measurementStore, coldTier, environment());
+        TextView text = new TextView(this);
+        text.setTypeface(Typeface.MONOSPACE);
+        text.setTextSize(11);
+        text.setTextIsSelectable(true);
+        text.setPadding(32, 16, 32, 16);
+        text.setText(report);
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(text);
+        new AlertDialog.Builder(this)
+                .setTitle("Diagnostics")
+                .setView(scroll)
+                .setPositiveButton("Exporter", (d, which) -> exportDiagnostics(report))
+                .setNegativeButton("Fermer", null)
+                .show();
+    }
+
+    // =========================
+    // Statistics (pre-aggregated, no record is read)
+    // =========================
+    private void showStats() {
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder(1024);
+        MeasurementRollups rollups = history.rollups();
+        for (long user : rollups.users()) {
+            int userId = MeasurementRollups.userIdOf(user);
+            sb.append(MeasurementRecord.deviceAddress(MeasurementRollups.deviceOf(user)))
+                    .append(userId == BpsMeasurement.ABSENT ? "" : " / utilisateur " + userId).append('\n');
+            appendStats(sb, "7 jours", rollups.lastDays(user, 7, now));
+            appendStats(sb, "30 jours", rollups.lastDays(user, 30, now));
+            appendStats(sb, "Total", rollups.total(user));
+            sb.append('\n');
+        }
+        if (sb.length() == 0) sb.append("Aucune mesure");
+        TextView text = new TextView(this);
+        text.setTypeface(Typeface.MONOSPACE);
+        text.setTextSize(11);
+        text.setTextIsSelectable(true);
+        text.setPadding(32, 16, 32, 16);
+        text.setText(sb);
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(text);
+        AlertDialog.Builder dialog = new AlertDialog.Builder(this)
+                .setTitle("Statistiques")
+                .setView(scroll)
+                .setNegativeButton("Fermer", null);
+        if (exportTask != null && !exportTask.isDone()) {
+            dialog.setPositiveButton("Annuler l'export", (d, which) -> exportTask.cancel(true));
+        } else if (exporter != null) {
+            dialog.setPositiveButton("Exporter", (d, which) -> chooseExport());
+        }
+        dialog.show();
+    }
+
+    private static void appendStats(StringBuilder sb, String label, MeasurementRollups.Rollup r) {
+        sb.append("  ").append(label).append(" : ").append(r.all).append('\n');
+        if (r.morning.count() > 0 || r.evening.count() > 0) {
+            sb.append(String.format(Locale.US, "    matin %.0f/%.0f (n=%d)  soir %.0f/%.0f (n=%d)\n",
+                    r.morning.meanSystolic(), r.morning.meanDiastolic(), r.morning.count(),
+                    r.evening.meanSystolic(), r.evening.meanDiastolic(), r.evening.count()));
+        }
+    }
+
+    // =========================
+    // History export (streamed, whole history)
+    // =========================
+    private void chooseExport() {
+        MeasurementExporter.Format[] formats = MeasurementExporter.Format.values();
+        String[] labels = {"CSV (gzip)", "FHIR JSON (gzip)", "Trames IEEE-11073 brutes"};
+        new AlertDialog.Builder(this)
+                .setTitle("Exporter l'historique")
+                .setItems(labels, (d, which) -> startExport(formats[which]))
+                .setNegativeButton("Annuler", null)
+                .show();
+    }
+
+    private void startExport(MeasurementExporter.Format format) {
+        File external = getExternalFilesDir(null);
+        File dir = external != null ? external : getFilesDir();
+        MeasurementExporter.Request request =
+                MeasurementExporter.Request.all(format, format != MeasurementExporter.Format.IEEE_11073);
+        File file = new File(dir, request.fileName("measurements-" + Diagnostics.FILE_TIME.format(Instant.now())));
+        logStatus("Export: " + format + " -> " + file.getName());
+        int[] lastDecile = {0};
+        Future<Long> task = exporter.export(request, file, (done, total) -> {
+            int decile = total == 0 ? 10 : (int) (done * 10 / total);
+            if (decile > lastDecile[0]) {
+                lastDecile[0] = decile;
+                logStatus("Export: " + decile * 10 + " %");
+            }
+        });
+        exportTask = task;
+        // Single thread: runs once the export ended
+        exportExecutor.execute(() -> {
+            try {
+                logStatus("Export: " + task.get() + " records -> " + file);
+            } catch (CancellationException e) {
+                logStatus("Export: cancelled");
+            } catch (ExecutionException e) {
+                logStatus("Export: FAILED -> " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         });
     }
 
+    private void exportDiagnostics(String report) {
+        File external = getExternalFilesDir(null);
+        File dir = external != null ? external : getFilesDir();
+        sessionExecutor.execute(() -> {
+            try {
+                logStatus("Diagnostics: exported to " + Diagnostics.export(dir, report));
+            } catch (IOException e) {
+                logStatus("Diagnostics: export FAILED -> " + e.getMessage());
+            }
+        });
+    }
+
+    private Map<String, String> environment() {
+        Map<String, String> env = new LinkedHashMap<>();
+        env.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        env.put("android", Build.VERSION.RELEASE + " (SDK " + Build.VERSION.SDK_INT + ")");
+        try {
+            PackageInfo info = getPackageManager().getPackageInfo(getPackageName(), 0);
+            env.put("app", info.versionName + " (" + info.getLongVersionCode() + ")");
+        } catch (PackageManager.NameNotFoundException e) {
+            env.put("app", "?");
+        }
+        // Main-thread renders of the measurement panel against readings received
+        env.put("ui.readings", String.valueOf(readings.published()));
+        env.put("ui.frames", String.valueOf(readings.frames()));
+        return env;
+    }
+
     private void toast(String s) {
         Toast.makeText(this, s, Toast.LENGTH_SHORT).show();
     }
@@ -267,90 +525,55 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        if (bluetoothLeScanner == null) {
-            bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanEngine == null) {
+            scanEngine = new ScanEngine(this, bluetoothAdapter, DeviceSession.BPS_SERVICE_UUID, handler, scanListener);
         }
-        if (bluetoothLeScanner == null) {
-            logStatus("BLE scanner: NULL (unavailable)");
-            return;
-        }
-        logStatus("BLE scanner: OK");
 
         if (enable) {
-            handler.postDelayed(() -> {
-                scanning = false;
-                stopScanSafe();
-                logStatus("Scan: timeout reached -> stop");
-            }, SCAN_PERIOD);
+            handler.removeCallbacks(scanTimeout);
+            handler.postDelayed(scanTimeout, SCAN_PERIOD);
 
+            deviceListAdapter.clear();
+            if (!scanEngine.start()) {
+                handler.removeCallbacks(scanTimeout);
+                logStatus("Scan: cannot start (scanner unavailable or missing BLUETOOTH_SCAN)");
+                return;
+            }
             scanning = true;
-            discoveredDevices.clear();
-            listAdapter.clear();
-            logStatus("Scan: START (" + (SCAN_PERIOD / 1000) + "s)");
-
-            startScanSafe();
+            logStatus("Scan: START (" + (SCAN_PERIOD / 1000) + "s, service 0x1810, "
+                    + (scanEngine.isBatched() ? "batched" : "unbatched") + ")");
         } else {
             scanning = false;
-            stopScanSafe();
-            logStatus("Scan: STOP (manual)");
+            handler.removeCallbacks(scanTimeout);
+            scanEngine.stop();
+            logStatus("Scan: STOP (manual, " + scanSummary() + ")");
         }
     }
 
-    private void startScanSafe() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN)
-                    != PackageManager.PERMISSION_GRANTED) {
-                logStatus("startScan: missing BLUETOOTH_SCAN");
-                return;
-            }
-        }
-        bluetoothLeScanner.startScan(leScanCallback);
+    private String scanSummary() {
+        ScanTable<BluetoothDevice> t = scanEngine.table();
+        return t.size() + " device(s), " + t.results() + " advertisement(s)";
     }
 
-    private void stopScanSafe() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN)
-                    != PackageManager.PERMISSION_GRANTED) {
-                logStatus("stopScan: missing BLUETOOTH_SCAN");
-                return;
-            }
+    // Main thread: batches of results, diffs at most every ScanEngine.PUBLISH_INTERVAL_MS
+    private final ScanEngine.Listener scanListener = new ScanEngine.Listener() {
+        @Override
+        public void onDevicesChanged(ScanTable.Diff<BluetoothDevice> diff) {
+            deviceListAdapter.apply(diff);
         }
-        bluetoothLeScanner.stopScan(leScanCallback);
-    }
 
-    private final ScanCallback leScanCallback = new ScanCallback() {
         @Override
-        public void onScanResult(int callbackType, ScanResult result) {
-            super.onScanResult(callbackType, result);
-
-            BluetoothDevice device = result.getDevice();
-            if (device == null) return;
-
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                if (ActivityCompat.checkSelfPermission(MainActivity.this, Manifest.permission.BLUETOOTH_CONNECT)
-                        != PackageManager.PERMISSION_GRANTED) {
-                    logStatus("ScanResult ignored: missing BLUETOOTH_CONNECT");
-                    return;
-                }
-            }
-
-            String name = device.getName();
-            if (name == null) name = "(no name)";
-
-            if (!discoveredDevices.contains(device)) {
-                discoveredDevices.add(device);
-                listAdapter.add(name + "\n" + device.getAddress());
-                listAdapter.notifyDataSetChanged();
-            }
+        public void onScanFailed(int errorCode) {
+            scanning = false;
+            handler.removeCallbacks(scanTimeout);
+            logStatus("Scan: FAILED errorCode=" + errorCode);
         }
     };
 
     // =========================
-    // Phase 3: Connect GATT
+    // Phase 3: Sessions (one per cuff, up to R.integer.max_sessions)
     // =========================
     private void connectToDevice(BluetoothDevice device) {
-        closeGatt();
-
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT)
                     != PackageManager.PERMISSION_GRANTED) {
@@ -359,384 +582,161 @@ public class MainActivity extends AppCompatActivity {
             }
         }
 
-        logStatus("GATT: connectGatt() called");
-        bluetoothGatt = device.connectGatt(this, false, gattCallback);
+        if (sessionManager == null) {
+            logStatus("Session: history still loading, try again");
+            toast("Historique en cours de chargement");
+            return;
+        }
+        DeviceSession session = sessionManager.connect(device.getAddress());
+        if (session == null) {
+            logStatus("Session: cannot connect " + device.getAddress() + " ("
+                    + sessionManager.size() + "/" + sessionManager.maxSessions() + " sessions)");
+            if (sessionManager.size() >= sessionManager.maxSessions()) chooseDisconnect();
+        }
     }
 
-    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
-
-        @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            logStatus("GATT: onConnectionStateChange status=" + status + " newState=" + newState);
-
-            if (newState == BluetoothProfile.STATE_CONNECTED) {
-                logStatus("GATT: CONNECTED -> discoverServices()");
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                    if (ActivityCompat.checkSelfPermission(MainActivity.this, Manifest.permission.BLUETOOTH_CONNECT)
-                            != PackageManager.PERMISSION_GRANTED) {
-                        logStatus("discoverServices blocked: missing BLUETOOTH_CONNECT");
-                        return;
-                    }
-                }
-                gatt.discoverServices();
-            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                logStatus("GATT: DISCONNECTED");
-                runOnUiThread(() -> {
-                    txtBp.setText("Tension : -- / --");
-                    txtPulse.setText("Pouls : -- bpm");
-                    txtTime.setText("Date : --");
-                });
-            }
+    // Cap reached: the connected cuffs may no longer advertise, so they are listed here
+    private void chooseDisconnect() {
+        List<DeviceSession> sessions = sessionManager.sessions();
+        String[] labels = new String[sessions.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = sessions.get(i).address() + " (" + sessions.get(i).state() + ")";
         }
+        new AlertDialog.Builder(this)
+                .setTitle("Nombre maximal d’appareils connectés atteint : en déconnecter un")
+                .setItems(labels, (d, which) -> disconnectDevice(sessions.get(which).address()))
+                .setNegativeButton("Annuler", null)
+                .show();
+    }
 
-        @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            logStatus("GATT: onServicesDiscovered status=" + status);
-            if (status != BluetoothGatt.GATT_SUCCESS) {
-                logStatus("discoverServices FAILED");
-                return;
-            }
-
-            BluetoothGattService bps = gatt.getService(BPS_SERVICE_UUID);
-            logStatus("Service BPS (0x1810): " + (bps != null ? "FOUND" : "NOT FOUND"));
-            if (bps == null) return;
-            racpChar = bps.getCharacteristic(RACP_UUID);
-            bpRecordChar = bps.getCharacteristic(BP_RECORD_UUID);
-
-            logStatus("Char RACP (0x2A52): " + (racpChar != null ? "FOUND" : "NOT FOUND"));
-            logStatus("Char BP Record (0x2B36): " + (bpRecordChar != null ? "FOUND" : "NOT FOUND"));
-
-            measurementChar = bps.getCharacteristic(BPS_MEASUREMENT_UUID);
-            featureChar = bps.getCharacteristic(BPS_FEATURE_UUID);
-
-            logStatus("Char Measurement (0x2A35): " + (measurementChar != null ? "FOUND" : "NOT FOUND"));
-            logStatus("Char Feature (0x2A49): " + (featureChar != null ? "FOUND" : "NOT FOUND"));
-
-            // Read Feature (optional)
-            if (featureChar != null && (featureChar.getProperties() & BluetoothGattCharacteristic.PROPERTY_READ) != 0) {
-                logStatus("Feature: READ requested");
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                    if (ActivityCompat.checkSelfPermission(MainActivity.this, Manifest.permission.BLUETOOTH_CONNECT)
-                            != PackageManager.PERMISSION_GRANTED) {
-                        logStatus("readCharacteristic blocked: missing BLUETOOTH_CONNECT");
-                        return;
-                    }
-                }
-                boolean ok = gatt.readCharacteristic(featureChar);
-                logStatus("Feature: readCharacteristic() returned " + ok);
-            } else {
-                logStatus("Feature: not readable or missing");
-                // even if feature not readable, subscribe anyway
-                subscribeMeasurement(gatt);
-                // On démarre la config Record (RACP + BP Record) dès qu'on a le service
-
-
-            }
+    private void disconnectDevice(String address) {
+        if (sessionManager != null && sessionManager.disconnect(address)) {
+            logStatus("User disconnected: " + address);
+            toast("Appareil déconnecté");
+        } else {
+            toast("Appareil non connecté");
         }
-        private void subscribeRecordStuff(BluetoothGatt gatt) {
-            if (recordStep != RecordSetupStep.NONE) {
-                logStatus("Record flow already started: " + recordStep);
-                return;
-            }
-
-            if (ActivityCompat.checkSelfPermission(MainActivity.this, Manifest.permission.BLUETOOTH_CONNECT)
-                    != PackageManager.PERMISSION_GRANTED) return;
-
-            if (racpChar == null) {
-                logStatus("RACP: missing (0x2A52) -> record flow disabled");
-                return;
-            }
-            if (bpRecordChar == null) {
-                logStatus("BP Record: missing (0x2B36) -> record flow disabled");
-                return;
-            }
-
-            logStatus("Record flow: START");
-
-            // Step 1: enable indications on RACP (CCCD = 02 00)
-            recordStep = RecordSetupStep.ENABLE_RACP_CCCD;
-
-            boolean ok = gatt.setCharacteristicNotification(racpChar, true);
-            logStatus("RACP: setCharacteristicNotification(true) -> " + ok);
-
-            BluetoothGattDescriptor cccd = racpChar.getDescriptor(CCCD_UUID);
-            logStatus("RACP CCCD (0x2902): " + (cccd != null ? "FOUND" : "NOT FOUND"));
-            if (cccd == null) return;
+    }
 
-            cccd.setValue(BluetoothGattDescriptor.ENABLE_INDICATION_VALUE); // 02 00
-            boolean w = gatt.writeDescriptor(cccd);
-            logStatus("RACP: write CCCD (INDICATE) -> " + w);
+    // Session lanes and ingest thread: log, and post UI updates with the immutable snapshots
+    private final DeviceSession.Listener sessionListener = new DeviceSession.Listener() {
+        @Override
+        public void onStateChanged(DeviceSession session, DeviceSession.State state) {
+            boolean ended = state == DeviceSession.State.DISCONNECTED || state == DeviceSession.State.CLOSED;
+            logStatus(tag(session) + "Session: " + state + (ended || state == DeviceSession.State.READY
+                    ? " (" + session.metrics() + ")" : ""));
         }
 
-
-
         @Override
-        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            logStatus("GATT: onCharacteristicRead uuid=" + characteristic.getUuid() + " status=" + status);
-
-            if (status != BluetoothGatt.GATT_SUCCESS) {
-                subscribeMeasurement(gatt);
+        public void onMeasurement(DeviceSession session, MeasurementSnapshot m) {
+            if (!m.isLive()) {
+                // History records: logged by the session, only counted on screen
+                readings.count();
                 return;
             }
 
-            if (BPS_FEATURE_UUID.equals(characteristic.getUuid())) {
-                byte[] v = characteristic.getValue();
-                logStatus("Feature raw: " + bytesToHex(v));
-
-                String decoded = decodeBpsFeature(v);
-                logStatus("Feature decoded: " + decoded);
-
-                runOnUiThread(() -> txtFeature.setText("Features : " + decoded));
-
-                // ensuite tu t'abonnes à la measurement
-                subscribeMeasurement(gatt);
-
-
-            }
+            logStatus(tag(session) + "Measurement parsed: " + m);
+            // The snapshot is immutable; only the latest one before the next frame is shown
+            readings.publish(new LiveReading(session, m));
         }
 
-
-        private void subscribeMeasurement(BluetoothGatt gatt) {
-            if (measurementChar == null) {
-                logStatus("Measurement: missing, cannot subscribe");
-                return;
-            }
-
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                if (ActivityCompat.checkSelfPermission(MainActivity.this, Manifest.permission.BLUETOOTH_CONNECT)
-                        != PackageManager.PERMISSION_GRANTED) {
-                    logStatus("subscribe blocked: missing BLUETOOTH_CONNECT");
-                    return;
-                }
-            }
-
-            boolean notifOk = gatt.setCharacteristicNotification(measurementChar, true);
-            logStatus("Measurement: setCharacteristicNotification(true) -> " + notifOk);
-
-            BluetoothGattDescriptor cccd = measurementChar.getDescriptor(CCCD_UUID);
-            logStatus("Descriptor CCCD (0x2902): " + (cccd != null ? "FOUND" : "NOT FOUND"));
-            if (cccd == null) return;
-
-            // Most BP devices use INDICATE.
-            cccd.setValue(BluetoothGattDescriptor.ENABLE_INDICATION_VALUE); // 02 00
-            boolean writeOk = gatt.writeDescriptor(cccd);
-            logStatus("CCCD: writeDescriptor(ENABLE_INDICATION) -> " + writeOk);
+        @Override
+        public void onFeature(DeviceSession session, int feature) {
+            String decoded = BpsFeature.describe(feature);
+            logStatus(tag(session) + "Feature decoded: " + decoded);
+            runOnUiThread(() -> txtFeature.setText("Features : " + decoded));
         }
 
         @Override
-        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-            logStatus("GATT: onDescriptorWrite descUuid=" + descriptor.getUuid()
-                    + " charUuid=" + descriptor.getCharacteristic().getUuid()
-                    + " status=" + status);
-
-            if (status != BluetoothGatt.GATT_SUCCESS) {
-                logStatus("Descriptor write FAILED");
-                return;
-            }
-
-            // We only care about CCCD writes
-            if (!CCCD_UUID.equals(descriptor.getUuid())) {
-                return;
-            }
-
-            UUID charUuid = descriptor.getCharacteristic().getUuid();
-            byte[] v = descriptor.getValue();
-            logStatus("CCCD value written: " + bytesToHex(v));
-
-            // =========================================================
-            // (A) If Measurement CCCD is done, start Record flow
-            // =========================================================
-            if (BPS_MEASUREMENT_UUID.equals(charUuid)) {
-                if (recordStep == RecordSetupStep.NONE) {
-                    logStatus("Measurement CCCD done -> start Record flow (delayed)");
-                    handler.postDelayed(() -> subscribeRecordStuff(gatt), 200);
-                } else {
-                    logStatus("Measurement CCCD done -> recordStep already " + recordStep);
-                }
-                return;
-            }
-
-
-            // =========================================================
-            // (B) Record flow chaining
-            // =========================================================
-
-            // Step 1 done: RACP CCCD enabled -> enable BP Record CCCD
-            if (RACP_UUID.equals(charUuid) && recordStep == RecordSetupStep.ENABLE_RACP_CCCD) {
-                logStatus("Record flow: RACP CCCD enabled -> enable BP Record CCCD");
-                recordStep = RecordSetupStep.ENABLE_BP_RECORD_CCCD;
-
-                if (ActivityCompat.checkSelfPermission(MainActivity.this, Manifest.permission.BLUETOOTH_CONNECT)
-                        != PackageManager.PERMISSION_GRANTED) {
-                    logStatus("Missing BLUETOOTH_CONNECT (cannot enable BP Record)");
-                    return;
-                }
-
-                if (bpRecordChar == null) {
-                    logStatus("BP Record char is NULL");
-                    return;
-                }
-
-                boolean ok = gatt.setCharacteristicNotification(bpRecordChar, true);
-                logStatus("BP Record: setCharacteristicNotification(true) -> " + ok);
-
-                BluetoothGattDescriptor cccd = bpRecordChar.getDescriptor(CCCD_UUID);
-                logStatus("BP Record CCCD (0x2902): " + (cccd != null ? "FOUND" : "NOT FOUND"));
-                if (cccd == null) return;
-
-                cccd.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE); // 01 00
-                boolean w = gatt.writeDescriptor(cccd);
-                logStatus("BP Record: write CCCD (NOTIFY) -> " + w);
-                return;
-            }
-
-            // Step 2 done: BP Record CCCD enabled -> send RACP command 01 01
-            if (BP_RECORD_UUID.equals(charUuid) && recordStep == RecordSetupStep.ENABLE_BP_RECORD_CCCD) {
-                logStatus("Record flow: BP Record CCCD enabled -> send RACP cmd (01 01)");
-                recordStep = RecordSetupStep.SEND_RACP_CMD;
-
-                requestAllRecords(gatt);
-
-                recordStep = RecordSetupStep.DONE;
-                logStatus("Record flow: DONE");
-                return;
-            }
-
-            // If we reach here, it's a CCCD write we didn't expect in the current step
-            logStatus("CCCD write ignored (char=" + charUuid + ", recordStep=" + recordStep + ")");
+        public void onLog(DeviceSession session, String message) {
+            logStatus(tag(session) + message);
         }
+    };
 
+    // Any thread (Choreographer is thread-safe)
+    private void postReadingsFrame() {
+        choreographer.postFrameCallback(readingsFrameCallback);
+    }
 
-        private void requestAllRecords(BluetoothGatt gatt) {
-            if (ActivityCompat.checkSelfPermission(MainActivity.this, Manifest.permission.BLUETOOTH_CONNECT)
-                    != PackageManager.PERMISSION_GRANTED) return;
-
-            if (racpChar == null) {
-                logStatus("RACP: missing, cannot request records");
-                return;
+    // UI thread, at most once per frame: the latest live reading (null: keep the one shown)
+    // and how many readings arrived since the previous render
+    private void renderReading(LiveReading latest, long newReadings) {
+        if (latest != null) {
+            MeasurementSnapshot m = latest.snapshot;
+            txtBp.setText(String.format(Locale.US, "Tension : %.0f / %.0f %s", m.systolic, m.diastolic, m.unit()));
+            if (m.hasPulseRate()) {
+                txtPulse.setText(String.format(Locale.US, "Pouls : %.0f bpm", m.pulseRate));
+            } else {
+                txtPulse.setText("Pouls : -- bpm");
             }
-
-            // RACP: Report Stored Records (0x01), Operator: All records (0x01)
-            byte[] cmd = new byte[]{0x01, 0x01};
-            racpChar.setValue(cmd);
-
-            boolean ok = gatt.writeCharacteristic(racpChar);
-            logStatus("RACP: write cmd '01 01' -> " + ok);
+            shownTime = tag(latest.session) + "Date : "
+                    + (m.hasTimestamp() ? BpsMeasurement.formatTimestamp(m.timestamp) : "--");
+            latest.session.metrics().onRendered(m);
         }
+        txtTime.setText(newReadings > 1 ? shownTime + " (" + newReadings + " nouvelles mesures)" : shownTime);
+    }
 
+    // "[EE:FF] ": last two address bytes, enough to tell the cuffs apart in the log
+    private static String tag(DeviceSession session) {
+        String a = session.address();
+        return "[" + a.substring(Math.max(0, a.length() - 5)) + "] ";
+    }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (measurementStore != null) measurementStore.flush();
+    }
 
-        @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            UUID uuid = characteristic.getUuid();
-            byte[] data = characteristic.getValue();
-
-            logStatus("GATT: onCharacteristicChanged uuid=" + uuid);
-
-            // =========================
-            // (1) RACP (0x2A52) - Indication response
-            // =========================
-            if (RACP_UUID.equals(uuid)) {
-                logStatus("RACP INDICATION len=" + (data == null ? -1 : data.length));
-                logStatus("RACP INDICATION raw: " + bytesToHex(data));
-                // Optionnel: tu peux décoder plus tard (opcode response / number of records / etc.)
-                return;
-            }
-
-            // =========================
-            // (2) Blood Pressure Record (0x2B36) - Notify
-            // =========================
-            if (BP_RECORD_UUID.equals(uuid)) {
-                logStatus("BP RECORD NOTIFY len=" + (data == null ? -1 : data.length));
-                logStatus("BP RECORD NOTIFY raw: " + bytesToHex(data));
-                logStatus("BP RECORD header: " + parseBpRecordHeader(data));
-
-                // Optionnel: si le record transporte un BP Measurement (UUID 0x2A35),
-                // tu peux tenter de parser le payload ici plus tard.
-                return;
-            }
-
-            // =========================
-            // (3) Blood Pressure Measurement (0x2A35) - Indicate/Notify
-            // =========================
-            if (!BPS_MEASUREMENT_UUID.equals(uuid)) {
-                logStatus("Changed ignored: not Measurement/RACP/Record");
-                return;
-            }
-
-            // RAW log
-            logStatus("Measurement len=" + (data == null ? -1 : data.length));
-            logStatus("Measurement raw: " + bytesToHex(data));
-
-            // Parse measurement
-            ParsedBpsMeasurement parsed = parseBpsMeasurement(data);
-            logStatus("Measurement parsed: " + (parsed == null ? "NULL" :
-                    String.format(Locale.US,
-                            "SYS=%.2f DIA=%.2f MAP=%.2f %s ts=%s pulse=%s user=%s status=%s",
-                            parsed.systolic, parsed.diastolic, parsed.map, parsed.unit,
-                            String.valueOf(parsed.timestamp),
-                            String.valueOf(parsed.pulseRate),
-                            String.valueOf(parsed.userId),
-                            String.valueOf(parsed.status)
-                    )));
-
-            // UI update
-            runOnUiThread(() -> {
-                if (parsed == null) {
-                    txtBp.setText("Tension : -- / --");
-                    txtPulse.setText("Pouls : -- bpm");
-                    txtTime.setText("Date : --");
-                    return;
-                }
-
-                txtBp.setText(String.format(
-                        Locale.US,
-                        "Tension : %.0f / %.0f %s",
-                        parsed.systolic,
-                        parsed.diastolic,
-                        parsed.unit
-                ));
-
-                if (parsed.pulseRate != null) {
-                    txtPulse.setText(String.format(Locale.US, "Pouls : %.0f bpm", parsed.pulseRate));
-                } else {
-                    txtPulse.setText("Pouls : -- bpm");
-                }
-
-                if (parsed.timestamp != null) {
-                    txtTime.setText("Date : " + parsed.timestamp);
-                } else {
-                    txtTime.setText("Date : --");
-                }
-            });
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(scanTimeout);
+        if (scanEngine != null) scanEngine.stop();
+        history.setOnStored(null);
+        // Closes the sessions and stops the ingest thread once it caught up
+        if (sessionManager != null) sessionManager.close();
+        // A running export stops at its next interrupt check
+        exportExecutor.shutdownNow();
+        // Let the sessions run their close before the store goes away
+        sessionExecutor.shutdown();
+        try {
+            sessionExecutor.awaitTermination(500, TimeUnit.MILLISECONDS);
+            exportExecutor.awaitTermination(500, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-
-    };
-
-    // =========================
-    // Cleanup
-    // =========================
-    private void closeGatt() {
-        if (bluetoothGatt != null) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT)
-                        != PackageManager.PERMISSION_GRANTED) {
-                    logStatus("closeGatt blocked: missing BLUETOOTH_CONNECT");
-                    return;
-                }
+        // A rotation keeps the loaded history for the next activity
+        if (!isChangingConfigurations()) history.close();
+        choreographer.removeFrameCallback(statusFrameCallback);
+        choreographer.removeFrameCallback(readingsFrameCallback);
+        if (statusLogSpill != null) statusLogSpill.close();
+        if (traceRecorder != null) {
+            try {
+                traceRecorder.close();
+            } catch (IOException e) {
+                logStatus("Trace: close FAILED -> " + e.getMessage());
             }
-            logStatus("GATT: close()");
-            bluetoothGatt.close();
-            bluetoothGatt = null;
         }
-        measurementChar = null;
-        featureChar = null;
     }
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        closeGatt();
+    // Levels from resources; raw frames and the binary file are for field investigations
+    private void configureTrace(Trace trace) {
+        Trace.Level level = Trace.Level.values()[getResources().getInteger(R.integer.trace_level)];
+        trace.setLevel(level);
+        if (getResources().getBoolean(R.bool.trace_frames)) {
+            trace.setLevel(Trace.Category.FRAMES, Trace.Level.VERBOSE);
+        } else {
+            trace.off(Trace.Category.FRAMES);
+        }
+        if (getResources().getBoolean(R.bool.trace_to_file)) {
+            try {
+                traceRecorder = new TraceRecorder(new File(getFilesDir(), "trace.bin"));
+                trace.setRecorder(traceRecorder);
+            } catch (IOException e) {
+                logStatus("Trace: file FAILED -> " + e.getMessage());
+            }
+        }
     }
 
     private String safeName(BluetoothDevice d) {
@@ -748,153 +748,4 @@ public class MainActivity extends AppCompatActivity {
         String n = d.getName();
         return (n != null) ? n : "(no name)";
     }
-
-    // =========================
-    // Helpers
-    // =========================
-    private static String decodeBpsFeature(byte[] v) {
-        if (v == null || v.length < 2) return "(invalid feature length)";
-
-        int feature = (v[0] & 0xFF) | ((v[1] & 0xFF) << 8);
-
-        List<String> caps = new ArrayList<>();
-
-        // Bits selon la spec Blood Pressure Feature (0x2A49)
-        if ((feature & 0x0001) != 0) caps.add("Body Movement Detection");
-        if ((feature & 0x0002) != 0) caps.add("Cuff Fit Detection");
-        if ((feature & 0x0004) != 0) caps.add("Irregular Pulse Detection");
-        if ((feature & 0x0008) != 0) caps.add("Pulse Rate Range Detection");
-        if ((feature & 0x0010) != 0) caps.add("Measurement Position Detection");
-        if ((feature & 0x0020) != 0) caps.add("Multiple Bond");
-
-        if (caps.isEmpty()) return String.format(Locale.US, "0x%04X (no flags)", feature);
-
-        // Format compact
-        return String.format(Locale.US, "0x%04X (%s)", feature, joinWithComma(caps));
-    }
-
-    private static String joinWithComma(List<String> items) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < items.size(); i++) {
-            if (i > 0) sb.append(", ");
-            sb.append(items.get(i));
-        }
-        return sb.toString();
-    }
-    private static String parseBpRecordHeader(byte[] d) {
-        if (d == null) return "(null)";
-        if (d.length < 5) return "(too short: need >=5)";
-
-        int seg = d[0] & 0xFF;
-        boolean first = (seg & 0x80) != 0;
-        boolean last  = (seg & 0x40) != 0;
-        int counter   = (seg & 0x3F);
-
-        int seq = (d[1] & 0xFF) | ((d[2] & 0xFF) << 8);
-        int uuid16 = (d[3] & 0xFF) | ((d[4] & 0xFF) << 8);
-
-        int payloadLen = d.length - 5;
-
-        return String.format(Locale.US,
-                "seg[first=%s last=%s ctr=%d] seq=%d uuid=0x%04X payloadLen=%d",
-                first, last, counter, seq, uuid16, payloadLen);
-    }
-
-
-    private static String bytesToHex(byte[] data) {
-        if (data == null) return "(null)";
-        if (data.length == 0) return "(empty)";
-        StringBuilder sb = new StringBuilder(data.length * 3);
-        for (byte b : data) sb.append(String.format(Locale.US, "%02X ", b));
-        return sb.toString().trim();
-    }
-
-    // Complete parsing of 0x2A35 based on flags
-    private static ParsedBpsMeasurement parseBpsMeasurement(byte[] data) {
-        try {
-            if (data == null || data.length < 1 + 6) return null;
-
-            int flags = data[0] & 0xFF;
-            boolean unitKpa = (flags & 0x01) != 0;
-            boolean hasTimestamp = (flags & 0x02) != 0;
-            boolean hasPulse = (flags & 0x04) != 0;
-            boolean hasUserId = (flags & 0x08) != 0;
-            boolean hasStatus = (flags & 0x10) != 0;
-
-            int idx = 1;
-
-            float systolic = sfloatToFloat(data[idx], data[idx + 1]); idx += 2;
-            float diastolic = sfloatToFloat(data[idx], data[idx + 1]); idx += 2;
-            float map = sfloatToFloat(data[idx], data[idx + 1]); idx += 2;
-
-            ParsedBpsMeasurement p = new ParsedBpsMeasurement();
-            p.systolic = systolic;
-            p.diastolic = diastolic;
-            p.map = map;
-            p.unit = unitKpa ? "kPa" : "mmHg";
-
-            if (hasTimestamp) {
-                if (idx + 7 > data.length) return null;
-
-                int year = (data[idx] & 0xFF) | ((data[idx + 1] & 0xFF) << 8); idx += 2;
-                int month = data[idx++] & 0xFF;
-                int day = data[idx++] & 0xFF;
-                int hour = data[idx++] & 0xFF;
-                int minute = data[idx++] & 0xFF;
-                int second = data[idx++] & 0xFF;
-
-                p.timestamp = String.format(Locale.US,
-                        "%04d-%02d-%02d %02d:%02d:%02d",
-                        year, month, day, hour, minute, second);
-            }
-
-            if (hasPulse) {
-                if (idx + 2 > data.length) return null;
-                p.pulseRate = sfloatToFloat(data[idx], data[idx + 1]);
-                idx += 2;
-            }
-
-            if (hasUserId) {
-                if (idx + 1 > data.length) return null;
-                p.userId = data[idx++] & 0xFF;
-            }
-
-            if (hasStatus) {
-                if (idx + 2 > data.length) return null;
-                p.status = (data[idx] & 0xFF) | ((data[idx + 1] & 0xFF) << 8);
-                idx += 2;
-            }
-
-            return p;
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    // IEEE-11073 SFLOAT (16-bit): 12-bit mantissa + 4-bit exponent base10
-    private static float sfloatToFloat(byte b0, byte b1) {
-        int raw = ((b1 & 0xFF) << 8) | (b0 & 0xFF);
-
-        int mantissa = raw & 0x0FFF;
-        int exponent = (raw >> 12) & 0x000F;
-
-        // sign extend mantissa (12-bit signed)
-        if ((mantissa & 0x0800) != 0) mantissa |= 0xFFFFF000;
-        // sign extend exponent (4-bit signed)
-        if ((exponent & 0x08) != 0) exponent |= 0xFFFFFFF0;
-
-        return (float) (mantissa * Math.pow(10, exponent));
-    }
-
-    private static class ParsedBpsMeasurement {
-        float systolic;
-        float diastolic;
-        float map;
-        String unit;
-
-        String timestamp;   // optional
-        Float pulseRate;    // optional
-        Integer userId;     // optional
-        Integer status;     // optional
-    }
 }
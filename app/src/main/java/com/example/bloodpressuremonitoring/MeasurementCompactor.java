@@ -0,0 +1,75 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Moves the old part of the hot {@link MeasurementStore} into a new {@link ColdSegment}
+ * of a {@link ColdTier}, then rewrites the store without it.
+ * <p>
+ * The records moved are the leading records of the store (storage order) older than a
+ * cutoff, and only once there are at least {@code minRecords} of them: a segment is
+ * written rarely and is worth its index. RACP history appended after newer readings
+ * simply stays hot until the prefix reaches it.
+ * <p>
+ * Runs while the store is closed (at startup, before it is opened). Crash-safe: the
+ * segment is complete (renamed into place) before the store is rewritten, and a store
+ * that still starts with the newest segment's records, because the rewrite did not
+ * happen, is finished on the next run instead of being compacted twice.
+ */
+final class MeasurementCompactor {
+
+    /** Below this many old records, nothing is compacted. */
+    static final int MIN_RECORDS = 4 * ColdSegment.BLOCK_RECORDS;
+
+    private MeasurementCompactor() {
+    }
+
+    /**
+     * @param cutoffMillis records older than this (epoch ms) may be moved
+     * @return number of records moved out of the store
+     */
+    static long compact(File storeFile, ColdTier tier, long cutoffMillis, int minRecords) throws IOException {
+        File rest = new File(storeFile.getPath() + ".compact");
+        MeasurementStore store = MeasurementStore.open(storeFile);
+        long moved;
+        try {
+            moved = alreadyCompacted(store, tier.last());
+            if (moved == 0) {
+                long n = store.size();
+                while (moved < n && store.timeAt(moved) < cutoffMillis) moved++;
+                if (moved < minRecords) return 0;
+                File file = tier.nextFile();
+                ColdSegment.write(file, store, 0, moved);
+                tier.add(file);
+            }
+            // The records left go to a new store file that replaces the old one
+            if (rest.exists() && !rest.delete()) throw new IOException("cannot delete " + rest);
+            MeasurementRecord r = new MeasurementRecord();
+            try (MeasurementStore hot = MeasurementStore.open(rest)) {
+                for (long i = moved; i < store.size(); i++) hot.append(store.read(i, r));
+            }
+        } finally {
+            store.close();
+        }
+        if (!rest.renameTo(storeFile)) throw new IOException("cannot replace " + storeFile);
+        return moved;
+    }
+
+    // The store starts with the whole newest segment: its rewrite was interrupted
+    private static long alreadyCompacted(MeasurementStore store, ColdSegment last) {
+        if (last == null || store.size() < last.size()) return 0;
+        MeasurementRecord a = new MeasurementRecord();
+        MeasurementRecord b = new MeasurementRecord();
+        long n = last.size();
+        for (long i : new long[]{0, n / 2, n - 1}) {
+            if (!same(store.read(i, a), last.read(i, b))) return 0;
+        }
+        return n;
+    }
+
+    private static boolean same(MeasurementRecord a, MeasurementRecord b) {
+        return a.timeMillis == b.timeMillis && a.device == b.device && a.sequence == b.sequence
+                && a.flags == b.flags && Float.compare(a.systolic, b.systolic) == 0;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Appends measurements to the {@link MeasurementStore} unless the history (store and
+ * {@link ColdTier}) already holds them.
+ * <p>
+ * A reading taken while connected arrives as a live 0x2A35 indication and again as a
+ * 0x2B36 record at the next RACP sync; a full sync re-sends every record the cuff still
+ * has. Identity:
+ * <ul>
+ *   <li>with a device timestamp: device, time, systolic, diastolic, pulse rate and user,
+ *   so the live copy (no sequence number) and the record match. A {@link BloomFilter}
+ *   of these keys answers "new" for almost every new reading without touching storage;
+ *   a "maybe" is settled exactly by the time index of the user's store partition
+ *   ({@code [t, t + 1)}), then the cold tier's.</li>
+ *   <li>without one (the time is the receive time): device and record sequence number,
+ *   in an exact in-memory index of those few records, values compared on a hit so a
+ *   counter reset does not swallow new readings.</li>
+ *   <li>a live indication without timestamp has no identity and is always stored.</li>
+ * </ul>
+ * Loaded once from the history, then kept up to date by {@link #append}; the filter is
+ * rebuilt twice as large when it outgrows its capacity. The cold tier does not change
+ * while this is in use (compaction runs before). Thread-safe.
+ */
+public final class MeasurementDeduplicator {
+
+    /** Initial filter capacity, in keys. */
+    static final int MIN_CAPACITY = 64 * 1024;
+
+    private final ColdTier cold; // may be null
+    private final MeasurementStore store;
+    private final long coldSize;
+
+    private BloomFilter filter;
+    private long capacity;
+    private long keys;
+
+    // (device << 16 | sequence) -> history index (cold first), open addressing; -1 = empty
+    private long[] seqKeys = new long[64];
+    private long[] seqIndex = filled(64);
+    private int seqCount;
+
+    // Exact check, allocation-free
+    private final MeasurementRecord scratch = new MeasurementRecord();
+    private MeasurementRecord probe;
+    private boolean found;
+    private final MeasurementStore.Visitor matcher = (index, r) -> {
+        if (sameReading(probe, r)) {
+            found = true;
+            return false;
+        }
+        return true;
+    };
+
+    private long lookups;
+    private long filterHits;
+    private long falsePositives;
+    private long duplicates;
+
+    private MeasurementDeduplicator(ColdTier cold, MeasurementStore store, long capacity) {
+        this.cold = cold;
+        this.store = store;
+        this.coldSize = cold == null ? 0 : cold.size();
+        this.capacity = capacity;
+    }
+
+    /** Reads the keys of the whole history: at startup, before any session appends. */
+    public static MeasurementDeduplicator load(ColdTier cold, MeasurementStore store) {
+        return load(cold, store, MIN_CAPACITY);
+    }
+
+    static MeasurementDeduplicator load(ColdTier cold, MeasurementStore store, long minCapacity) {
+        long records = store.size() + (cold == null ? 0 : cold.size());
+        MeasurementDeduplicator d = new MeasurementDeduplicator(cold, store, Math.max(minCapacity, 2 * records));
+        synchronized (d) {
+            d.rebuild();
+        }
+        return d;
+    }
+
+    // =========================
+    // Append
+    // =========================
+
+    /**
+     * Appends {@code r} unless it is already in the history.
+     *
+     * @return false if it was a duplicate (nothing written)
+     */
+    public synchronized boolean append(MeasurementRecord r) throws IOException {
+        lookups++;
+        if (contains(r)) {
+            duplicates++;
+            return false;
+        }
+        long index = store.append(r);
+        remember(r, coldSize + index);
+        if (keys > capacity) {
+            capacity *= 2;
+            rebuild();
+        }
+        return true;
+    }
+
+    /** True if the history holds a record with the identity of {@code r}. */
+    public synchronized boolean contains(MeasurementRecord r) {
+        if (hasTimestamp(r)) {
+            if (!filter.mightContain(valueKey(r))) return false;
+            filterHits++;
+            probe = r;
+            found = false;
+            long user = MeasurementRollups.userKey(r.device, r.hasUserId() ? r.userId : BpsMeasurement.ABSENT);
+            store.query(user, r.timeMillis, r.timeMillis + 1, scratch, matcher);
+            if (!found && cold != null) cold.query(r.timeMillis, r.timeMillis + 1, scratch, matcher);
+            probe = null;
+            if (!found) falsePositives++;
+            return found;
+        }
+        if (r.sequence == MeasurementRecord.NO_SEQUENCE) return false;
+        long index = seqIndex[slot(sequenceKey(r))];
+        return index >= 0 && sameReading(r, read(index));
+    }
+
+    /**
+     * Exact check against the history alone, without a loaded deduplicator: a scan of the
+     * user's store partition, then of the cold tier ({@code [t, t + 1)} when {@code r} has a
+     * device timestamp). For a one-off question such as the canary record of an incremental
+     * RACP sync.
+     *
+     * @param cold null without a cold tier
+     */
+    static boolean inHistory(ColdTier cold, MeasurementStore store, MeasurementRecord r) {
+        long user = MeasurementRollups.userKey(r.device, r.hasUserId() ? r.userId : BpsMeasurement.ABSENT);
+        boolean timed = hasTimestamp(r);
+        long from = timed ? r.timeMillis : Long.MIN_VALUE;
+        long to = timed ? r.timeMillis + 1 : Long.MAX_VALUE;
+        boolean[] found = {false};
+        MeasurementStore.Visitor visitor = (index, stored) -> {
+            found[0] = sameReading(r, stored);
+            return !found[0];
+        };
+        MeasurementRecord scratch = new MeasurementRecord();
+        store.query(user, from, to, scratch, visitor);
+        if (!found[0] && cold != null) cold.query(from, to, scratch, visitor);
+        return found[0];
+    }
+
+    // =========================
+    // Statistics
+    // =========================
+
+    /** Records checked by {@link #append}. */
+    public synchronized long lookups() {
+        return lookups;
+    }
+
+    /** Lookups the filter could not answer alone (duplicates and false positives). */
+    public synchronized long filterHits() {
+        return filterHits;
+    }
+
+    /** Filter "maybe" answers that storage found to be new readings. */
+    public synchronized long falsePositives() {
+        return falsePositives;
+    }
+
+    public synchronized long duplicates() {
+        return duplicates;
+    }
+
+    /** Filter size in bytes. */
+    public synchronized long filterBytes() {
+        return filter.bitCount() / 8;
+    }
+
+    // =========================
+    // Internals
+    // =========================
+
+    private void rebuild() {
+        filter = new BloomFilter(capacity);
+        keys = 0;
+        seqKeys = new long[64];
+        seqIndex = filled(64);
+        seqCount = 0;
+        if (cold != null) {
+            cold.query(Long.MIN_VALUE, Long.MAX_VALUE, new MeasurementRecord(), (index, r) -> {
+                remember(r, index);
+                return true;
+            });
+        }
+        store.query(Long.MIN_VALUE, Long.MAX_VALUE, new MeasurementRecord(), (index, r) -> {
+            remember(r, coldSize + index);
+            return true;
+        });
+    }
+
+    private void remember(MeasurementRecord r, long index) {
+        if (hasTimestamp(r)) {
+            filter.add(valueKey(r));
+            keys++;
+        } else if (r.sequence != MeasurementRecord.NO_SEQUENCE) {
+            // Latest wins: after a counter reset the number belongs to the new reading
+            long key = sequenceKey(r);
+            int slot = slot(key);
+            if (seqIndex[slot] < 0) seqCount++;
+            seqKeys[slot] = key;
+            seqIndex[slot] = index;
+            if (seqCount * 2 > seqKeys.length) growSequences();
+        }
+    }
+
+    private MeasurementRecord read(long index) {
+        return index < coldSize ? cold.read(index, scratch) : store.read(index - coldSize, scratch);
+    }
+
+    private static boolean hasTimestamp(MeasurementRecord r) {
+        return (r.flags & BpsMeasurement.FLAG_TIMESTAMP) != 0;
+    }
+
+    private static long valueKey(MeasurementRecord r) {
+        long h = BloomFilter.mix(r.device ^ r.timeMillis * 0x9E3779B97F4A7C15L);
+        h = BloomFilter.mix(h ^ ((long) Float.floatToIntBits(r.systolic) << 32
+                | Float.floatToIntBits(r.diastolic) & 0xFFFFFFFFL));
+        int pulse = r.hasPulseRate() ? Float.floatToIntBits(r.pulseRate) : 0;
+        int user = r.hasUserId() ? r.userId : -1;
+        return h ^ ((long) pulse << 32 | user & 0xFFFFFFFFL);
+    }
+
+    // 48-bit address, 16-bit RACP sequence number
+    private static long sequenceKey(MeasurementRecord r) {
+        return r.device << 16 | (r.sequence & 0xFFFF);
+    }
+
+    private static boolean sameReading(MeasurementRecord a, MeasurementRecord b) {
+        // Sequence-keyed records have receive times: same number instead of same time
+        boolean sameTime = hasTimestamp(a) ? a.timeMillis == b.timeMillis : a.sequence == b.sequence;
+        return a.device == b.device
+                && sameTime
+                && Float.floatToIntBits(a.systolic) == Float.floatToIntBits(b.systolic)
+                && Float.floatToIntBits(a.diastolic) == Float.floatToIntBits(b.diastolic)
+                && a.hasPulseRate() == b.hasPulseRate()
+                && (!a.hasPulseRate() || Float.floatToIntBits(a.pulseRate) == Float.floatToIntBits(b.pulseRate))
+                && a.hasUserId() == b.hasUserId()
+                && (!a.hasUserId() || a.userId == b.userId);
+    }
+
+    // Slot of key, or the empty slot where it would go
+    private int slot(long key) {
+        int mask = seqKeys.length - 1;
+        int i = (int) BloomFilter.mix(key) & mask;
+        while (seqIndex[i] >= 0 && seqKeys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void growSequences() {
+        long[] oldKeys = seqKeys;
+        long[] oldIndex = seqIndex;
+        seqKeys = new long[oldKeys.length * 2];
+        seqIndex = filled(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldIndex[i] < 0) continue;
+            int s = slot(oldKeys[i]);
+            seqKeys[s] = oldKeys[i];
+            seqIndex[s] = oldIndex[i];
+        }
+    }
+
+    private static long[] filled(int n) {
+        long[] a = new long[n];
+        Arrays.fill(a, -1L);
+        return a;
+    }
+}
@@ -0,0 +1,400 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the measurement history out of the {@link ColdTier} then the
+ * {@link MeasurementStore}: CSV, a FHIR R4 Bundle of blood pressure Observations, or raw
+ * 0x2A35 frames (IEEE-11073 SFLOAT values).
+ * <p>
+ * Memory use does not depend on the history length: records are read one at a time into
+ * a scratch {@link MeasurementRecord} and formatted straight into a 64 KiB byte buffer
+ * (no String per field or per record), optionally through gzip. Each read takes the
+ * store lock only briefly, so sessions keep appending during an export; records appended
+ * after the start are not exported. Output follows storage order, which is time order
+ * except for RACP history synced after newer live readings.
+ * <p>
+ * {@link #export} runs on the given executor, reports progress and is cancelled with
+ * {@link Future#cancel(boolean) cancel(true)}; the file is written under a temporary name
+ * and renamed only once complete.
+ */
+public final class MeasurementExporter {
+
+    public enum Format {
+        CSV("csv"),
+        FHIR_JSON("json"),
+        /** Per record: length (u8), device address (6 bytes, big-endian), 0x2A35 frame. */
+        IEEE_11073("bin");
+
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /** Called on the export thread every {@value #PROGRESS_EVERY} records and at the end. */
+    public interface Progress {
+        void onProgress(long done, long total);
+    }
+
+    /** {@link Request#user} selecting every user. */
+    public static final long ALL_USERS = -1L;
+
+    /** Records with {@code from <= timeMillis < to} of one user ({@link MeasurementRollups#userKey}) or all. */
+    public static final class Request {
+        public final Format format;
+        public final boolean gzip;
+        public final long from;
+        public final long to;
+        public final long user;
+
+        public Request(Format format, boolean gzip, long from, long to, long user) {
+            this.format = format;
+            this.gzip = gzip;
+            this.from = from;
+            this.to = to;
+            this.user = user;
+        }
+
+        public static Request all(Format format, boolean gzip) {
+            return new Request(format, gzip, Long.MIN_VALUE, Long.MAX_VALUE, ALL_USERS);
+        }
+
+        /** {@code base} plus the format extension, and ".gz" when compressed. */
+        public String fileName(String base) {
+            return base + '.' + format.extension + (gzip ? ".gz" : "");
+        }
+    }
+
+    static final int PROGRESS_EVERY = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER =
+            "time_utc,device,user,systolic,diastolic,map,unit,pulse,status,sequence\n";
+    private static final String LOINC = "{\"system\":\"http://loinc.org\",\"code\":\"";
+
+    private final ColdTier cold;
+    private final MeasurementStore store;
+    private final ZoneRules rules;
+    private final ExecutorService executor;
+
+    public MeasurementExporter(MeasurementStore store, ZoneId zone, ExecutorService executor) {
+        this(null, store, zone, executor);
+    }
+
+    /**
+     * @param cold may be null
+     * @param zone local time of the raw frame timestamps, as the cuffs send them
+     */
+    public MeasurementExporter(ColdTier cold, MeasurementStore store, ZoneId zone, ExecutorService executor) {
+        this.cold = cold;
+        this.store = store;
+        this.rules = zone.getRules();
+        this.executor = executor;
+    }
+
+    /**
+     * Exports to {@code file} on the executor. The future yields the number of records
+     * written, or fails with the {@link IOException} ({@link InterruptedIOException} when
+     * cancelled); nothing is left at {@code file} unless the export completed.
+     */
+    public Future<Long> export(Request request, File file, Progress progress) {
+        return executor.submit(() -> {
+            File tmp = new File(file.getPath() + ".tmp");
+            boolean done = false;
+            try {
+                long n = write(request, new FileOutputStream(tmp), progress);
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("cannot replace " + file);
+                }
+                done = true;
+                return n;
+            } finally {
+                if (!done) tmp.delete();
+            }
+        });
+    }
+
+    /**
+     * Writes on the calling thread, then closes {@code out}. Checks the thread's interrupt
+     * flag every {@value #PROGRESS_EVERY} records.
+     *
+     * @return number of records written
+     */
+    public long write(Request request, OutputStream out, Progress progress) throws IOException {
+        try (OutputStream target = request.gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out) {
+            Sink sink = new Sink(target);
+            MeasurementRecord r = new MeasurementRecord();
+            byte[] frame = new byte[BpsMeasurementCodec.MAX_LENGTH];
+            BpsMeasurement m = new BpsMeasurement();
+            long coldSize = cold == null ? 0 : cold.size();
+            // One user: only that user's partition of the store is read
+            boolean oneUser = request.user != ALL_USERS;
+            long total = coldSize + (oneUser ? store.count(request.user) : store.size());
+            long written = 0;
+
+            begin(request.format, sink);
+            for (long i = 0; i < total; i++) {
+                if (i % PROGRESS_EVERY == 0 && i > 0) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("export cancelled after " + written + " records");
+                    }
+                    if (progress != null) progress.onProgress(i, total);
+                }
+                if (i < coldSize) {
+                    cold.read(i, r);
+                    if (oneUser && MeasurementRollups.userKey(r.device,
+                            r.hasUserId() ? r.userId : BpsMeasurement.ABSENT) != request.user) continue;
+                } else {
+                    long hot = i - coldSize;
+                    store.read(oneUser ? store.recordOf(request.user, hot) : hot, r);
+                }
+                if (r.timeMillis < request.from || r.timeMillis >= request.to) continue;
+                switch (request.format) {
+                    case CSV:
+                        csv(sink, r);
+                        break;
+                    case FHIR_JSON:
+                        if (written > 0) sink.put(',');
+                        fhir(sink, r);
+                        break;
+                    default:
+                        frame(sink, r, m, frame);
+                        break;
+                }
+                written++;
+            }
+            if (request.format == Format.FHIR_JSON) sink.put("]}\n");
+            sink.flush();
+            if (progress != null) progress.onProgress(total, total);
+            return written;
+        }
+    }
+
+    private static void begin(Format format, Sink sink) throws IOException {
+        if (format == Format.CSV) {
+            sink.put(CSV_HEADER);
+        } else if (format == Format.FHIR_JSON) {
+            sink.put("{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":[");
+        }
+    }
+
+    // =========================
+    // Formats
+    // =========================
+
+    // Absent optional fields are empty cells; sequence is empty for live readings
+    private static void csv(Sink s, MeasurementRecord r) throws IOException {
+        s.putIsoUtc(r.timeMillis);
+        s.put(',');
+        s.putAddress(r.device);
+        s.put(',');
+        if (r.hasUserId()) s.putLong(r.userId);
+        s.put(',');
+        s.putDecimal(r.systolic);
+        s.put(',');
+        s.putDecimal(r.diastolic);
+        s.put(',');
+        s.putDecimal(r.map);
+        s.put(',');
+        s.put(r.unit());
+        s.put(',');
+        if (r.hasPulseRate()) s.putDecimal(r.pulseRate);
+        s.put(',');
+        if (r.hasStatus()) s.putLong(r.status);
+        s.put(',');
+        if (r.sequence != MeasurementRecord.NO_SEQUENCE) s.putLong(r.sequence);
+        s.put('\n');
+    }
+
+    // LOINC 85354-9 panel with systolic / diastolic / mean / heart rate components.
+    // No subject: the receiving system knows which patient the file belongs to.
+    private static void fhir(Sink s, MeasurementRecord r) throws IOException {
+        s.put("\n{\"resource\":{\"resourceType\":\"Observation\",\"status\":\"final\",\"category\":[{\"coding\":"
+                + "[{\"system\":\"http://terminology.hl7.org/CodeSystem/observation-category\","
+                + "\"code\":\"vital-signs\"}]}],\"code\":{\"coding\":[" + LOINC + "85354-9\"}]},");
+        s.put("\"effectiveDateTime\":\"");
+        s.putIsoUtc(r.timeMillis);
+        s.put("\",\"device\":{\"display\":\"");
+        s.putAddress(r.device);
+        if (r.hasUserId()) {
+            s.put(" user ");
+            s.putLong(r.userId);
+        }
+        s.put("\"},\"component\":[");
+        boolean kpa = (r.flags & BpsMeasurement.FLAG_UNIT_KPA) != 0;
+        String unit = kpa ? "\"kPa\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"kPa\"}}"
+                : "\"mmHg\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"mm[Hg]\"}}";
+        boolean first = component(s, true, "8480-6", r.systolic, unit);
+        first = component(s, first, "8462-4", r.diastolic, unit);
+        first = component(s, first, "8478-0", r.map, unit);
+        if (r.hasPulseRate()) {
+            component(s, first, "8867-4", r.pulseRate,
+                    "\"/min\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"/min\"}}");
+        }
+        s.put("]}}");
+    }
+
+    // Skips non-numeric values (SFLOAT NaN / NRes); returns whether nothing was written yet
+    private static boolean component(Sink s, boolean first, String loinc, float value, String unit)
+            throws IOException {
+        if (!Float.isFinite(value)) return first;
+        if (!first) s.put(',');
+        s.put("{\"code\":{\"coding\":[" + LOINC);
+        s.put(loinc);
+        s.put("\"}]},\"valueQuantity\":{\"value\":");
+        s.putDecimal(value);
+        s.put(",\"unit\":");
+        s.put(unit);
+        return false;
+    }
+
+    // Always timestamped: the stored time (receive time when the cuff sent none), in local time
+    private void frame(Sink s, MeasurementRecord r, BpsMeasurement m, byte[] frame) throws IOException {
+        m.clear();
+        m.flags = r.flags | BpsMeasurement.FLAG_TIMESTAMP;
+        m.systolic = r.systolic;
+        m.diastolic = r.diastolic;
+        m.map = r.map;
+        m.timestamp = packLocal(r.timeMillis);
+        m.pulseRate = r.pulseRate;
+        m.userId = r.userId;
+        m.status = r.status;
+        int n = BpsMeasurementCodec.encode(m, frame, 0);
+        s.put((char) n);
+        for (int shift = 40; shift >= 0; shift -= 8) s.put((char) ((r.device >>> shift) & 0xFF));
+        s.put(frame, n);
+    }
+
+    private long packLocal(long timeMillis) {
+        int offsetSeconds = rules.isFixedOffset()
+                ? rules.getOffset(Instant.EPOCH).getTotalSeconds()
+                : rules.getOffset(Instant.ofEpochMilli(timeMillis)).getTotalSeconds();
+        long seconds = Math.floorDiv(timeMillis, 1000L) + offsetSeconds;
+        long day = Math.floorDiv(seconds, 86_400L);
+        int secondOfDay = (int) Math.floorMod(seconds, 86_400L);
+        int date = civil(day);
+        return BpsMeasurement.packTimestamp(date / 10_000, date / 100 % 100, date % 100,
+                secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60);
+    }
+
+    /** yyyyMMdd of an epoch day (proleptic Gregorian, years 0..9999). */
+    static int civil(long epochDay) {
+        long z = epochDay + 719_468; // days since 0000-03-01
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1_460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        return year * 10_000 + month * 100 + day;
+    }
+
+    // =========================
+    // Output buffer
+    // =========================
+
+    // ASCII only: every char is written as one byte
+    private static final class Sink {
+        private final OutputStream out;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private final char[] digits = new char[20];
+        private int pos;
+
+        Sink(OutputStream out) {
+            this.out = out;
+        }
+
+        void put(char c) throws IOException {
+            if (pos == buf.length) flush();
+            buf[pos++] = (byte) c;
+        }
+
+        void put(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) put(s.charAt(i));
+        }
+
+        void put(byte[] b, int n) throws IOException {
+            for (int i = 0; i < n; i++) put((char) (b[i] & 0xFF));
+        }
+
+        void putLong(long v) throws IOException {
+            if (v < 0) {
+                put('-');
+                v = -v;
+            }
+            int n = 0;
+            do {
+                digits[n++] = (char) ('0' + v % 10);
+                v /= 10;
+            } while (v != 0);
+            while (n > 0) put(digits[--n]);
+        }
+
+        // At most two decimals, trailing zeros dropped: 120, 15.9, 15.95; nothing for NaN
+        void putDecimal(float v) throws IOException {
+            if (!Float.isFinite(v)) return;
+            long hundredths = Math.round(v * 100.0);
+            if (hundredths < 0) {
+                put('-');
+                hundredths = -hundredths;
+            }
+            putLong(hundredths / 100);
+            int fraction = (int) (hundredths % 100);
+            if (fraction == 0) return;
+            put('.');
+            put((char) ('0' + fraction / 10));
+            if (fraction % 10 != 0) put((char) ('0' + fraction % 10));
+        }
+
+        void putAddress(long device) throws IOException {
+            for (int shift = 40; shift >= 0; shift -= 8) {
+                int b = (int) (device >>> shift) & 0xFF;
+                put(Character.toUpperCase(Character.forDigit(b >>> 4, 16)));
+                put(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+                if (shift > 0) put(':');
+            }
+        }
+
+        // yyyy-MM-ddTHH:mm:ssZ
+        void putIsoUtc(long timeMillis) throws IOException {
+            long seconds = Math.floorDiv(timeMillis, 1000L);
+            int date = civil(Math.floorDiv(seconds, 86_400L));
+            int secondOfDay = (int) Math.floorMod(seconds, 86_400L);
+            putPadded(date / 10_000, 4);
+            put('-');
+            putPadded(date / 100 % 100, 2);
+            put('-');
+            putPadded(date % 100, 2);
+            put('T');
+            putPadded(secondOfDay / 3600, 2);
+            put(':');
+            putPadded(secondOfDay / 60 % 60, 2);
+            put(':');
+            putPadded(secondOfDay % 60, 2);
+            put('Z');
+        }
+
+        private void putPadded(int v, int width) throws IOException {
+            for (int p = width == 4 ? 1000 : 10; p > 0; p /= 10) put((char) ('0' + v / p % 10));
+        }
+
+        void flush() throws IOException {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
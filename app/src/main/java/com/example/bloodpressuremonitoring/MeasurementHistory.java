@@ -0,0 +1,206 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measurement history of the process: store, {@link ColdTier}, {@link MeasurementRollups},
+ * {@link MeasurementDeduplicator} and trend chart lines, opened once and shared by the
+ * activities.
+ * <p>
+ * Opening moves old records to the cold tier, then reads the whole history for the
+ * rollups, the chart and the deduplication keys: seconds with years of readings. It runs
+ * on a background thread, once per process rather than in each {@code onCreate}, so a
+ * rotation gets the history already loaded; {@link #loaded()} completes when it is ready.
+ * Every history of the process opens and closes on the same thread, in order: a new one
+ * reopens the files only after the previous one closed them.
+ * <p>
+ * The store's append listener keeps the rollups up to date and hands each stored record
+ * to the {@link #setOnStored current listener} (the chart of the activity on screen).
+ */
+public final class MeasurementHistory {
+
+    static final String STORE_FILE = "measurements.bin";
+    static final String COLD_DIR = "cold";
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history");
+        t.setDaemon(true);
+        return t;
+    });
+    private static MeasurementHistory shared;
+
+    private final File dir;
+    private final boolean coldTierEnabled;
+    private final long coldAfterMillis;
+    private final boolean dedupEnabled;
+    private final Executor loader;
+    private final MeasurementRollups rollups;
+    private final CompletableFuture<MeasurementHistory> loaded = new CompletableFuture<>();
+    private final List<String> messages = new ArrayList<>();
+
+    // Written by the loader before loaded() completes
+    private MeasurementStore store;
+    private ColdTier cold;
+    private MeasurementDeduplicator dedup;
+    private TrendSeries[] chartLines;
+
+    private volatile MeasurementStore.AppendListener onStored;
+
+    MeasurementHistory(File dir, boolean coldTier, long coldAfterMillis, boolean dedup, ZoneId zone,
+                       Executor loader) {
+        this.dir = dir;
+        this.coldTierEnabled = coldTier;
+        this.coldAfterMillis = coldAfterMillis;
+        this.dedupEnabled = dedup;
+        this.loader = loader;
+        this.rollups = new MeasurementRollups(zone);
+    }
+
+    /**
+     * The history of the process, loading in the background on the first call, the same
+     * one on the next calls (e.g. after a rotation) until {@link #close()}.
+     *
+     * @param dir           holds {@value #STORE_FILE} and the {@value #COLD_DIR} tier
+     * @param coldAfterDays age of the records moved to the cold tier
+     */
+    public static synchronized MeasurementHistory shared(File dir, boolean coldTier, int coldAfterDays,
+                                                         boolean dedup, ZoneId zone) {
+        if (shared == null) {
+            shared = new MeasurementHistory(dir, coldTier, TimeUnit.DAYS.toMillis(coldAfterDays), dedup, zone, LOADER);
+            shared.load();
+        }
+        return shared;
+    }
+
+    /** Starts loading on the loader thread. */
+    void load() {
+        loader.execute(() -> {
+            try {
+                open();
+            } finally {
+                loaded.complete(this);
+            }
+        });
+    }
+
+    /** Completes on the loader thread when the history is ready (possibly without a store). */
+    public CompletableFuture<MeasurementHistory> loaded() {
+        return loaded;
+    }
+
+    /**
+     * Closes the files on the loader thread, after the loading if it still runs; the next
+     * {@link #shared} call opens the history again. Data was already flushed by then.
+     */
+    public void close() {
+        synchronized (MeasurementHistory.class) {
+            if (shared == this) shared = null;
+        }
+        onStored = null;
+        loader.execute(() -> {
+            closeQuietly(store);
+            closeQuietly(cold);
+        });
+    }
+
+    // =========================
+    // Loaded state (after loaded() completed)
+    // =========================
+
+    /** Null if the store could not be opened. */
+    public MeasurementStore store() {
+        return store;
+    }
+
+    /** Null if disabled or unreadable. */
+    public ColdTier coldTier() {
+        return cold;
+    }
+
+    /** Null if disabled or without a store. */
+    public MeasurementDeduplicator deduplicator() {
+        return dedup;
+    }
+
+    /** Kept up to date as records are stored. Thread-safe. */
+    public MeasurementRollups rollups() {
+        return rollups;
+    }
+
+    /** Chart lines of the whole history ({@link TrendSeries#lines}): UI thread only once shown. */
+    TrendSeries[] chartLines() {
+        return chartLines;
+    }
+
+    /** What the loading did or failed to do, for the status log. */
+    public List<String> messages() {
+        return messages;
+    }
+
+    /** Receives each stored record after the rollups, on the appending thread; null to stop. */
+    public void setOnStored(MeasurementStore.AppendListener listener) {
+        onStored = listener;
+    }
+
+    // =========================
+    // Loading (loader thread)
+    // =========================
+
+    private void open() {
+        File storeFile = new File(dir, STORE_FILE);
+        if (coldTierEnabled) openColdTier(storeFile);
+        try {
+            store = MeasurementStore.open(storeFile);
+        } catch (IOException e) {
+            messages.add("Store: open FAILED -> " + e.getMessage());
+            return;
+        }
+        long records = store.size() + (cold == null ? 0 : cold.size());
+        chartLines = TrendSeries.lines((int) Math.min(Integer.MAX_VALUE - 8, records));
+        MeasurementRecord scratch = new MeasurementRecord();
+        if (cold != null) {
+            rollups.addAll(cold);
+            for (long i = 0, n = cold.size(); i < n; i++) TrendSeries.add(chartLines, cold.read(i, scratch));
+        }
+        rollups.addAll(store);
+        for (long i = 0, n = store.size(); i < n; i++) TrendSeries.add(chartLines, store.read(i, scratch));
+        if (dedupEnabled) dedup = MeasurementDeduplicator.load(cold, store);
+        store.setAppendListener((index, r) -> {
+            rollups.add(r);
+            MeasurementStore.AppendListener listener = onStored;
+            if (listener != null) listener.onAppended(index, r);
+        });
+        messages.add("Store: " + records + " records loaded");
+    }
+
+    // Before the store is opened: moves old records to the cold tier, then opens the tier
+    private void openColdTier(File storeFile) {
+        try {
+            cold = ColdTier.open(new File(dir, COLD_DIR));
+            long moved = MeasurementCompactor.compact(storeFile, cold,
+                    System.currentTimeMillis() - coldAfterMillis, MeasurementCompactor.MIN_RECORDS);
+            if (moved > 0) messages.add("Store: " + moved + " records moved to the cold tier");
+            if (cold.unreadable() > 0) messages.add("Store: " + cold.unreadable() + " unreadable cold segment(s)");
+        } catch (IOException e) {
+            messages.add("Store: compaction FAILED -> " + e.getMessage());
+        }
+    }
+
+    // Nobody is left to tell: every record was flushed when the activity stopped
+    private static void closeQuietly(AutoCloseable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bloodpressuremonitoring;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * One persisted measurement: a decoded {@link BpsMeasurement} plus where and when it
+ * came from. Mutable and primitive-only so it can be reused as a read/write scratch.
+ */
+public final class MeasurementRecord {
+
+    /** {@link #sequence} for live 0x2A35 indications (no 0x2B36 record number). */
+    public static final int NO_SEQUENCE = -1;
+
+    public long timeMillis;      // epoch ms (device timestamp, or receive time if absent)
+    public long device;          // packed 48-bit Bluetooth address, see deviceId()
+    public int sequence = NO_SEQUENCE;
+
+    public int flags;            // BpsMeasurement flags
+    public float systolic;
+    public float diastolic;
+    public float map;
+    public float pulseRate = Float.NaN;
+    public int userId = BpsMeasurement.ABSENT;
+    public int status = BpsMeasurement.ABSENT;
+
+    /**
+     * Fills this record from a decoded measurement. The device timestamp (local time,
+     * no zone in 0x2A35) is converted with {@code zone}; {@code receivedMillis} is used
+     * when the frame carries none or an invalid one.
+     */
+    public MeasurementRecord set(BpsMeasurement m, long device, int sequence, long receivedMillis, ZoneId zone) {
+        this.timeMillis = m.hasTimestamp() ? epochMillis(m.timestamp, zone, receivedMillis) : receivedMillis;
+        this.device = device;
+        this.sequence = sequence;
+        this.flags = m.flags;
+        this.systolic = m.systolic;
+        this.diastolic = m.diastolic;
+        this.map = m.map;
+        this.pulseRate = m.pulseRate;
+        this.userId = m.userId;
+        this.status = m.status;
+        return this;
+    }
+
+    public void copyFrom(MeasurementRecord o) {
+        timeMillis = o.timeMillis;
+        device = o.device;
+        sequence = o.sequence;
+        flags = o.flags;
+        systolic = o.systolic;
+        diastolic = o.diastolic;
+        map = o.map;
+        pulseRate = o.pulseRate;
+        userId = o.userId;
+        status = o.status;
+    }
+
+    public boolean hasPulseRate() {
+        return (flags & BpsMeasurement.FLAG_PULSE_RATE) != 0;
+    }
+
+    public boolean hasUserId() {
+        return (flags & BpsMeasurement.FLAG_USER_ID) != 0;
+    }
+
+    public boolean hasStatus() {
+        return (flags & BpsMeasurement.FLAG_STATUS) != 0;
+    }
+
+    public String unit() {
+        return (flags & BpsMeasurement.FLAG_UNIT_KPA) != 0 ? "kPa" : "mmHg";
+    }
+
+    public static long epochMillis(long packedTimestamp, ZoneId zone, long fallback) {
+        try {
+            return LocalDateTime.of(
+                    BpsMeasurement.year(packedTimestamp),
+                    BpsMeasurement.month(packedTimestamp),
+                    BpsMeasurement.day(packedTimestamp),
+                    BpsMeasurement.hour(packedTimestamp),
+                    BpsMeasurement.minute(packedTimestamp),
+                    BpsMeasurement.second(packedTimestamp))
+                    .atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            // 0x2A35 allows "unknown" (0) year/month/day
+            return fallback;
+        }
+    }
+
+    // =========================
+    // Device address <-> long
+    // =========================
+
+    /** "AA:BB:CC:DD:EE:FF" -> 0xAABBCCDDEEFF; 0 if the address is not in that form. */
+    public static long deviceId(String address) {
+        if (address == null || address.length() != 17) return 0L;
+        long id = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = address.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') return 0L;
+                continue;
+            }
+            int d = Character.digit(c, 16);
+            if (d < 0) return 0L;
+            id = (id << 4) | d;
+        }
+        return id;
+    }
+
+    public static String deviceAddress(long id) {
+        char[] out = new char[17];
+        for (int i = 0; i < 6; i++) {
+            int b = (int) (id >>> (40 - 8 * i)) & 0xFF;
+            out[i * 3] = Character.toUpperCase(Character.forDigit(b >>> 4, 16));
+            out[i * 3 + 1] = Character.toUpperCase(Character.forDigit(b & 0xF, 16));
+            if (i < 5) out[i * 3 + 2] = ':';
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.bloodpressuremonitoring;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-aggregated statistics of the measurement history, per user, for the dashboard.
+ * <p>
+ * Every stored reading updates, in O(1), the all-time {@link Rollup} of its user and
+ * its hour, day and week buckets (local time, weeks start on Monday). Each rollup keeps
+ * all the readings plus the morning and evening ones, so averages, extremes,
+ * morning/evening comparison and category counts over any span of days are answered by
+ * merging at most a few dozen buckets, never by reading records back.
+ * <p>
+ * A user is a (device, 0x2A35 user id) pair ({@link #userKey}): user 1 of one cuff is
+ * not user 1 of another. Readings without a user id belong to the "unknown user" 0xFF.
+ * Hour buckets are kept for {@value #HOUR_RETENTION_DAYS} days after the newest reading,
+ * day and week buckets for the whole history.
+ * <p>
+ * Fed by {@link MeasurementStore#setAppendListener} and rebuilt once from the cold tier
+ * and the store on open ({@link #addAll}). Thread-safe.
+ */
+public final class MeasurementRollups {
+
+    public enum Period {
+        HOUR, DAY, WEEK
+    }
+
+    /** Local hours [start, end) counted as morning / evening readings. */
+    public static final int MORNING_START = 4;
+    public static final int MORNING_END = 12;
+    public static final int EVENING_START = 17;
+    public static final int EVENING_END = 24;
+
+    static final int HOUR_RETENTION_DAYS = 14;
+    static final int UNKNOWN_USER = 0xFF;
+
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    /** Statistics of all readings of a span, and of its morning and evening readings. */
+    public static final class Rollup {
+        public final BpStats all = new BpStats();
+        public final BpStats morning = new BpStats();
+        public final BpStats evening = new BpStats();
+
+        void add(MeasurementRecord r, int hourOfDay) {
+            all.add(r);
+            if (hourOfDay >= MORNING_START && hourOfDay < MORNING_END) morning.add(r);
+            else if (hourOfDay >= EVENING_START && hourOfDay < EVENING_END) evening.add(r);
+        }
+
+        void merge(Rollup o) {
+            all.merge(o.all);
+            morning.merge(o.morning);
+            evening.merge(o.evening);
+        }
+
+        Rollup copy() {
+            Rollup c = new Rollup();
+            c.merge(this);
+            return c;
+        }
+    }
+
+    // One user's buckets, keyed by epoch hour / epoch day / Monday-based epoch week (local time)
+    private static final class UserRollups {
+        final Rollup total = new Rollup();
+        final Map<Long, Rollup> hours = new HashMap<>();
+        final Map<Long, Rollup> days = new HashMap<>();
+        final Map<Long, Rollup> weeks = new HashMap<>();
+        long newestHour = Long.MIN_VALUE;
+
+        // Readings come in bursts for the same hour: skip the lookups
+        long lastHour = Long.MIN_VALUE;
+        Rollup hourBucket;
+        Rollup dayBucket;
+        Rollup weekBucket;
+    }
+
+    private final ZoneRules rules;
+    private final Map<Long, UserRollups> users = new HashMap<>();
+    private long readings;
+
+    public MeasurementRollups(ZoneId zone) {
+        this.rules = zone.getRules();
+    }
+
+    /** Key of user {@code userId} ({@link BpsMeasurement#ABSENT}: unknown) of device {@code device}. */
+    public static long userKey(long device, int userId) {
+        return (device << 8) | (userId == BpsMeasurement.ABSENT ? UNKNOWN_USER : userId & 0xFF);
+    }
+
+    public static long deviceOf(long userKey) {
+        return userKey >>> 8;
+    }
+
+    /** 0x2A35 user id of the key, {@link BpsMeasurement#ABSENT} for the unknown user. */
+    public static int userIdOf(long userKey) {
+        int id = (int) (userKey & 0xFF);
+        return id == UNKNOWN_USER ? BpsMeasurement.ABSENT : id;
+    }
+
+    // =========================
+    // Updates
+    // =========================
+
+    public synchronized void add(MeasurementRecord r) {
+        long key = userKey(r.device, r.hasUserId() ? r.userId : BpsMeasurement.ABSENT);
+        UserRollups u = users.get(key);
+        if (u == null) {
+            u = new UserRollups();
+            users.put(key, u);
+        }
+        long local = localMillis(r.timeMillis);
+        long hour = Math.floorDiv(local, HOUR_MS);
+        int hourOfDay = (int) Math.floorMod(hour, 24L);
+        if (hour != u.lastHour) {
+            long day = Math.floorDiv(hour, 24L);
+            u.hourBucket = bucket(u.hours, hour);
+            u.dayBucket = bucket(u.days, day);
+            u.weekBucket = bucket(u.weeks, weekOf(day));
+            u.lastHour = hour;
+            if (hour > u.newestHour) {
+                u.newestHour = hour;
+                pruneHours(u);
+            }
+        }
+        u.total.add(r, hourOfDay);
+        u.hourBucket.add(r, hourOfDay);
+        u.dayBucket.add(r, hourOfDay);
+        u.weekBucket.add(r, hourOfDay);
+        readings++;
+    }
+
+    /** Adds every record of {@code store}: one sequential pass, at open. Returns the count. */
+    public long addAll(MeasurementStore store) {
+        MeasurementRecord scratch = new MeasurementRecord();
+        long n = store.size();
+        for (long i = 0; i < n; i++) add(store.read(i, scratch));
+        return n;
+    }
+
+    /** Same for the compacted history. */
+    public long addAll(ColdTier tier) {
+        MeasurementRecord scratch = new MeasurementRecord();
+        long n = tier.size();
+        for (long i = 0; i < n; i++) add(tier.read(i, scratch));
+        return n;
+    }
+
+    // =========================
+    // Queries (copies: safe to keep)
+    // =========================
+
+    /** Users with at least one reading (see {@link #userKey}). */
+    public synchronized List<Long> users() {
+        return new ArrayList<>(users.keySet());
+    }
+
+    public synchronized long readings() {
+        return readings;
+    }
+
+    /** All-time statistics of {@code user}; empty if unknown. */
+    public synchronized Rollup total(long user) {
+        UserRollups u = users.get(user);
+        return u == null ? new Rollup() : u.total.copy();
+    }
+
+    /**
+     * One bucket: {@code index} is an epoch hour, epoch day or week (see {@link #epochDay}
+     * and {@link #weekOf}). Null if it holds no reading (or, for hours, was pruned).
+     */
+    public synchronized Rollup bucket(long user, Period period, long index) {
+        UserRollups u = users.get(user);
+        if (u == null) return null;
+        Rollup r = bucketsOf(u, period).get(index);
+        return r == null ? null : r.copy();
+    }
+
+    /**
+     * Statistics of {@code user} over the local days {@code [fromDay, toDay)} (epoch
+     * days): whole weeks are taken from the week buckets, the rest from day buckets.
+     */
+    public synchronized Rollup days(long user, long fromDay, long toDay) {
+        Rollup out = new Rollup();
+        UserRollups u = users.get(user);
+        if (u == null) return out;
+        long d = fromDay;
+        while (d < toDay) {
+            long week = weekOf(d);
+            if (d == weekStart(week) && d + 7 <= toDay) {
+                merge(out, u.weeks.get(week));
+                d += 7;
+            } else {
+                merge(out, u.days.get(d));
+                d++;
+            }
+        }
+        return out;
+    }
+
+    /** The last {@code n} local days up to and including the day of {@code nowMillis}. */
+    public Rollup lastDays(long user, int n, long nowMillis) {
+        long today = epochDay(nowMillis);
+        return days(user, today - n + 1, today + 1);
+    }
+
+    /** Local epoch day of {@code timeMillis}. */
+    public long epochDay(long timeMillis) {
+        return Math.floorDiv(localMillis(timeMillis), DAY_MS);
+    }
+
+    /** Monday-based week of an epoch day (epoch day 0 is a Thursday). */
+    public static long weekOf(long epochDay) {
+        return Math.floorDiv(epochDay + 3, 7L);
+    }
+
+    /** Epoch day of the Monday starting {@code week}. */
+    public static long weekStart(long week) {
+        return week * 7 - 3;
+    }
+
+    // =========================
+    // Internals (guarded by this)
+    // =========================
+
+    private long localMillis(long timeMillis) {
+        int offsetSeconds = rules.isFixedOffset()
+                ? rules.getOffset(Instant.EPOCH).getTotalSeconds()
+                : rules.getOffset(Instant.ofEpochMilli(timeMillis)).getTotalSeconds();
+        return timeMillis + offsetSeconds * 1000L;
+    }
+
+    private static Rollup bucket(Map<Long, Rollup> buckets, long index) {
+        Rollup r = buckets.get(index);
+        if (r == null) {
+            r = new Rollup();
+            buckets.put(index, r);
+        }
+        return r;
+    }
+
+    private static Map<Long, Rollup> bucketsOf(UserRollups u, Period period) {
+        switch (period) {
+            case HOUR: return u.hours;
+            case DAY: return u.days;
+            default: return u.weeks;
+        }
+    }
+
+    private static void merge(Rollup out, Rollup bucket) {
+        if (bucket != null) out.merge(bucket);
+    }
+
+    // Amortized: only once the map holds twice the retention
+    private static void pruneHours(UserRollups u) {
+        int retention = HOUR_RETENTION_DAYS * 24;
+        if (u.hours.size() <= 2 * retention) return;
+        long oldest = u.newestHour - retention;
+        for (Iterator<Long> it = u.hours.keySet().iterator(); it.hasNext(); ) {
+            if (it.next() <= oldest) it.remove();
+        }
+        // The cached bucket may be one of those removed
+        u.lastHour = Long.MIN_VALUE;
+    }
+}
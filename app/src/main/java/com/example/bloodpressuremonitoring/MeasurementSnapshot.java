@@ -0,0 +1,78 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Locale;
+
+/**
+ * Immutable copy of one decoded measurement, safe to hand to the UI thread.
+ * <p>
+ * The ingest thread decodes into a reused {@link BpsMeasurement}; listeners get one of
+ * these instead, so nothing they keep can be overwritten by the next frame.
+ */
+public final class MeasurementSnapshot {
+
+    public final String address;
+    /** 0x2B36 sequence number, or {@link MeasurementRecord#NO_SEQUENCE} for a live 0x2A35. */
+    public final int sequence;
+    public final int flags;
+    public final float systolic;
+    public final float diastolic;
+    public final float map;
+    public final long timestamp; // packed, see BpsMeasurement.packTimestamp()
+    public final float pulseRate;
+    public final int userId;
+    public final int status;
+    /** Phone wall clock when the frame reached the GATT callback. */
+    public final long receivedMillis;
+    /** {@link System#nanoTime()} at the GATT callback, for latency metrics. */
+    public final long receivedNanos;
+
+    public MeasurementSnapshot(String address, int sequence, BpsMeasurement m, long receivedMillis,
+                               long receivedNanos) {
+        this.address = address;
+        this.sequence = sequence;
+        this.flags = m.flags;
+        this.systolic = m.systolic;
+        this.diastolic = m.diastolic;
+        this.map = m.map;
+        this.timestamp = m.timestamp;
+        this.pulseRate = m.pulseRate;
+        this.userId = m.userId;
+        this.status = m.status;
+        this.receivedMillis = receivedMillis;
+        this.receivedNanos = receivedNanos;
+    }
+
+    public boolean isLive() {
+        return sequence == MeasurementRecord.NO_SEQUENCE;
+    }
+
+    public String unit() {
+        return (flags & BpsMeasurement.FLAG_UNIT_KPA) != 0 ? "kPa" : "mmHg";
+    }
+
+    public boolean hasTimestamp() {
+        return (flags & BpsMeasurement.FLAG_TIMESTAMP) != 0;
+    }
+
+    public boolean hasPulseRate() {
+        return (flags & BpsMeasurement.FLAG_PULSE_RATE) != 0;
+    }
+
+    public boolean hasUserId() {
+        return (flags & BpsMeasurement.FLAG_USER_ID) != 0;
+    }
+
+    public boolean hasStatus() {
+        return (flags & BpsMeasurement.FLAG_STATUS) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "SYS=%.2f DIA=%.2f MAP=%.2f %s ts=%s pulse=%s user=%s status=%s",
+                systolic, diastolic, map, unit(),
+                hasTimestamp() ? BpsMeasurement.formatTimestamp(timestamp) : "null",
+                hasPulseRate() ? String.valueOf(pulseRate) : "null",
+                hasUserId() ? String.valueOf(userId) : "null",
+                hasStatus() ? String.valueOf(status) : "null");
+    }
+}
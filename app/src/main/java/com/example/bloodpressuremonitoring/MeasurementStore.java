@@ -0,0 +1,393 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped measurement history.
+ * <p>
+ * File layout: a 32-byte header followed by fixed-width 48-byte records, little-endian:
+ * <pre>
+ *   0  long  timeMillis      24 long  device
+ *   8  float systolic        32 int   sequence (-1 = live indication)
+ *  12  float diastolic       36 short status (u16)
+ *  16  float map             38 byte  userId (u8)
+ *  20  float pulseRate       39 byte  flags (0x2A35 flags)
+ *  40  int   reserved        44 int   CRC32 of bytes 0..43
+ * </pre>
+ * Records are written through {@link MappedByteBuffer} chunks (no SQLite, no per-record
+ * syscall). The header keeps a checkpoint of the record count, updated on
+ * {@link #flush()}. On open, records after the checkpoint are re-validated with their
+ * CRC and the file is cut after the last valid one, so a torn or truncated tail write
+ * is dropped instead of being read back as garbage.
+ * <p>
+ * A sparse in-memory {@link TimeIndex} (per block of {@value #BLOCK_RECORDS} records: min/max,
+ * plus running prefix-max and suffix-min) answers range queries with two binary searches
+ * even when older records (RACP history) are appended after newer ones. It is rebuilt
+ * from the mapped times on open.
+ * <p>
+ * Records are also partitioned by user ({@link MeasurementRollups#userKey}: device and
+ * 0x2A35 user id): each partition keeps the indices of its records and its own time
+ * index over them, so a per-user query reads only that user's records, however many
+ * users share a cuff. About 4 bytes per record, rebuilt on open with the time index.
+ * <p>
+ * Single writer; all methods are synchronized.
+ */
+public final class MeasurementStore implements Closeable {
+
+    public static final int RECORD_SIZE = 48;
+    static final int HEADER_SIZE = 32;
+    static final int BLOCK_RECORDS = 256;
+    static final int PARTITION_BLOCK_RECORDS = 64;
+
+    private static final int MAGIC = 0x53504D42; // "BMPS"
+    private static final int VERSION = 1;
+    private static final int CHECKPOINT_OFFSET = 16;
+    private static final int CRC_OFFSET = 44;
+
+    private static final int CHUNK_RECORDS = 1 << 16;
+    private static final long CHUNK_BYTES = (long) CHUNK_RECORDS * RECORD_SIZE;
+
+    /** Visits query results; return {@code false} to stop. */
+    public interface Visitor {
+        boolean visit(long index, MeasurementRecord r);
+    }
+
+    /** Told of every appended record, under the store lock: keep it short, do not keep {@code r}. */
+    public interface AppendListener {
+        void onAppended(long index, MeasurementRecord r);
+    }
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final ByteBuffer scratchBuf = ByteBuffer.wrap(scratch).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    private long size;
+    private AppendListener appendListener;
+
+    private final TimeIndex timeIndex = new TimeIndex(BLOCK_RECORDS);
+
+    // Per-user partitions; the last one used is kept, appends come in runs of one user
+    private final Map<Long, Partition> partitions = new HashMap<>();
+    private long lastUser = -1;
+    private Partition lastPartition;
+
+    /** Indices (storage order) of one user's records, with their own time index. */
+    private static final class Partition {
+        int[] records = new int[16];
+        final TimeIndex index = new TimeIndex(PARTITION_BLOCK_RECORDS);
+
+        void add(long record, long t) {
+            int n = (int) index.size();
+            if (n == records.length) records = Arrays.copyOf(records, n * 2);
+            records[n] = (int) record;
+            index.add(t);
+        }
+    }
+
+    private MeasurementStore(RandomAccessFile raf) throws IOException {
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        this.header.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static MeasurementStore open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long recovered = recover(raf.getChannel());
+            MeasurementStore store = new MeasurementStore(raf);
+            store.init(recovered);
+            return store;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    // =========================
+    // Recovery
+    // =========================
+
+    /** Validates the tail after the checkpoint, cuts the file after the last valid record. */
+    private static long recover(FileChannel ch) throws IOException {
+        long length = ch.size();
+        ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (length < HEADER_SIZE) {
+            // New (or torn before the header was complete): start over
+            ch.truncate(0);
+            hdr.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE).putLong(CHECKPOINT_OFFSET, 0L);
+            ch.write(hdr, 0);
+            return 0;
+        }
+        readFully(ch, hdr, 0);
+        if (hdr.getInt(0) != MAGIC || hdr.getInt(4) != VERSION || hdr.getInt(8) != RECORD_SIZE) {
+            throw new IOException("not a measurement store (or unsupported version)");
+        }
+
+        long whole = (length - HEADER_SIZE) / RECORD_SIZE;
+        long n = Math.min(Math.max(hdr.getLong(CHECKPOINT_OFFSET), 0L), whole);
+
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        while (n < whole) {
+            rec.clear();
+            readFully(ch, rec, HEADER_SIZE + n * RECORD_SIZE);
+            crc.reset();
+            crc.update(rec.array(), 0, CRC_OFFSET);
+            if ((int) crc.getValue() != rec.getInt(CRC_OFFSET)) break;
+            n++;
+        }
+
+        // Drop the torn tail (and the zeroed, pre-mapped space after it)
+        ch.truncate(HEADER_SIZE + n * RECORD_SIZE);
+        hdr.putLong(CHECKPOINT_OFFSET, n);
+        hdr.position(CHECKPOINT_OFFSET).limit(CHECKPOINT_OFFSET + 8);
+        ch.write(hdr, CHECKPOINT_OFFSET);
+        ch.force(true);
+        return n;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int r = ch.read(dst, position + dst.position());
+            if (r < 0) throw new IOException("unexpected end of file");
+        }
+    }
+
+    private void init(long recovered) throws IOException {
+        size = recovered;
+        for (long i = 0; i < size; i++) {
+            MappedByteBuffer c = chunkAt(i);
+            int p = offsetInChunk(i);
+            int flags = c.get(p + 39) & 0xFF;
+            int userId = (flags & BpsMeasurement.FLAG_USER_ID) != 0 ? c.get(p + 38) & 0xFF : BpsMeasurement.ABSENT;
+            index(i, c.getLong(p), c.getLong(p + 24), userId);
+        }
+    }
+
+    // =========================
+    // Append
+    // =========================
+
+    public synchronized long append(MeasurementRecord r) throws IOException {
+        scratchBuf.putLong(0, r.timeMillis);
+        scratchBuf.putFloat(8, r.systolic);
+        scratchBuf.putFloat(12, r.diastolic);
+        scratchBuf.putFloat(16, r.map);
+        scratchBuf.putFloat(20, r.pulseRate);
+        scratchBuf.putLong(24, r.device);
+        scratchBuf.putInt(32, r.sequence);
+        scratchBuf.putShort(36, (short) r.status);
+        scratchBuf.put(38, (byte) r.userId);
+        scratchBuf.put(39, (byte) r.flags);
+        scratchBuf.putInt(40, 0);
+        crc.reset();
+        crc.update(scratch, 0, CRC_OFFSET);
+        scratchBuf.putInt(CRC_OFFSET, (int) crc.getValue());
+
+        long index = size;
+        MappedByteBuffer chunk = chunkFor(index);
+        chunk.position(offsetInChunk(index));
+        chunk.put(scratch);
+
+        size++;
+        index(index, r.timeMillis, r.device, r.hasUserId() ? r.userId : BpsMeasurement.ABSENT);
+        if (appendListener != null) appendListener.onAppended(index, r);
+        return index;
+    }
+
+    /** Null to remove. Records already stored are not replayed (see {@link MeasurementRollups#addAll}). */
+    public synchronized void setAppendListener(AppendListener listener) {
+        appendListener = listener;
+    }
+
+    /** Forces mapped pages to disk and advances the recovery checkpoint. */
+    public synchronized void flush() {
+        for (MappedByteBuffer chunk : chunks) chunk.force();
+        header.putLong(CHECKPOINT_OFFSET, size);
+        header.force();
+    }
+
+    // =========================
+    // Read
+    // =========================
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long timeAt(long index) {
+        checkIndex(index);
+        return chunkAt(index).getLong(offsetInChunk(index));
+    }
+
+    public synchronized MeasurementRecord read(long index, MeasurementRecord out) {
+        checkIndex(index);
+        MappedByteBuffer c = chunkAt(index);
+        int p = offsetInChunk(index);
+        out.timeMillis = c.getLong(p);
+        out.systolic = c.getFloat(p + 8);
+        out.diastolic = c.getFloat(p + 12);
+        out.map = c.getFloat(p + 16);
+        out.pulseRate = c.getFloat(p + 20);
+        out.device = c.getLong(p + 24);
+        out.sequence = c.getInt(p + 32);
+        out.flags = c.get(p + 39) & 0xFF;
+        out.status = out.hasStatus() ? c.getShort(p + 36) & 0xFFFF : BpsMeasurement.ABSENT;
+        out.userId = out.hasUserId() ? c.get(p + 38) & 0xFF : BpsMeasurement.ABSENT;
+        return out;
+    }
+
+    /**
+     * Visits, in storage order, every record with {@code from <= timeMillis < to}.
+     *
+     * @return number of records visited
+     */
+    public synchronized long query(long from, long to, MeasurementRecord scratch, Visitor visitor) {
+        if (size == 0 || from >= to) return 0;
+        // First block that can hold a time >= from, last block that can hold a time < to
+        int lo = timeIndex.firstBlock(from);
+        int hi = timeIndex.lastBlock(to);
+
+        long visited = 0;
+        for (int b = lo; b <= hi; b++) {
+            if (!timeIndex.overlaps(b, from, to)) continue;
+            long end = Math.min(size, (long) (b + 1) * BLOCK_RECORDS);
+            for (long i = (long) b * BLOCK_RECORDS; i < end; i++) {
+                long t = timeAt(i);
+                if (t < from || t >= to) continue;
+                visited++;
+                if (!visitor.visit(i, read(i, scratch))) return visited;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Visits, in storage order, every record of {@code user} ({@link MeasurementRollups#userKey})
+     * with {@code from <= timeMillis < to}, reading no other user's records.
+     *
+     * @return number of records visited
+     */
+    public synchronized long query(long user, long from, long to, MeasurementRecord scratch, Visitor visitor) {
+        Partition part = partitions.get(user);
+        if (part == null || from >= to) return 0;
+        TimeIndex index = part.index;
+        int lo = index.firstBlock(from);
+        int hi = index.lastBlock(to);
+
+        long visited = 0;
+        for (int b = lo; b <= hi; b++) {
+            if (!index.overlaps(b, from, to)) continue;
+            long end = Math.min(index.size(), (long) (b + 1) * PARTITION_BLOCK_RECORDS);
+            for (long k = (long) b * PARTITION_BLOCK_RECORDS; k < end; k++) {
+                long i = part.records[(int) k];
+                long t = timeAt(i);
+                if (t < from || t >= to) continue;
+                visited++;
+                if (!visitor.visit(i, read(i, scratch))) return visited;
+            }
+        }
+        return visited;
+    }
+
+    /** Number of records of {@code user}. */
+    public synchronized long count(long user) {
+        Partition part = partitions.get(user);
+        return part == null ? 0 : part.index.size();
+    }
+
+    /** Store index of the {@code position}-th record (storage order) of {@code user}. */
+    public synchronized long recordOf(long user, long position) {
+        Partition part = partitions.get(user);
+        long n = part == null ? 0 : part.index.size();
+        if (position < 0 || position >= n) {
+            throw new IndexOutOfBoundsException("position " + position + ", user records " + n);
+        }
+        return part.records[(int) position];
+    }
+
+    /** Users with at least one record, in key order. */
+    public synchronized long[] users() {
+        long[] keys = new long[partitions.size()];
+        int n = 0;
+        for (Long k : partitions.keySet()) keys[n++] = k;
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        chunks.clear();
+        raf.close();
+    }
+
+    // =========================
+    // Internals
+    // =========================
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+
+    private MappedByteBuffer chunkFor(long index) throws IOException {
+        int c = (int) (index / CHUNK_RECORDS);
+        while (chunks.size() <= c) {
+            // Mapping READ_WRITE past the end grows the file; unused space stays zero
+            MappedByteBuffer m = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + chunks.size() * CHUNK_BYTES, CHUNK_BYTES);
+            m.order(ByteOrder.LITTLE_ENDIAN);
+            chunks.add(m);
+        }
+        return chunks.get(c);
+    }
+
+    private MappedByteBuffer chunkAt(long index) {
+        int c = (int) (index / CHUNK_RECORDS);
+        if (c >= chunks.size()) {
+            try {
+                return chunkFor(index);
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot map record " + index, e);
+            }
+        }
+        return chunks.get(c);
+    }
+
+    private static int offsetInChunk(long index) {
+        return (int) (index % CHUNK_RECORDS) * RECORD_SIZE;
+    }
+
+    private void index(long index, long t, long device, int userId) {
+        timeIndex.add(t);
+        long user = MeasurementRollups.userKey(device, userId);
+        if (user != lastUser || lastPartition == null) {
+            lastPartition = partitions.get(user);
+            if (lastPartition == null) {
+                lastPartition = new Partition();
+                partitions.put(user, lastPartition);
+            }
+            lastUser = user;
+        }
+        lastPartition.add(index, t);
+    }
+}
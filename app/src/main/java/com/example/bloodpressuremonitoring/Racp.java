@@ -0,0 +1,198 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * Record Access Control Point (0x2A52) codec: builds every request and decodes every
+ * response of the BPS / GLS-style RACP.
+ * <p>
+ * Request layout: {@code [opcode][operator][operand...]}, where the operand of a
+ * filtered request is {@code [filter type][value(s)]}. Response layouts:
+ * {@code [0x05][0x00][count lo][count hi]} and
+ * {@code [0x06][0x00][request opcode][response code]}.
+ */
+public final class Racp {
+
+    private Racp() {
+    }
+
+    // =========================
+    // Opcodes
+    // =========================
+    public static final int OP_REPORT_STORED_RECORDS = 0x01;
+    public static final int OP_DELETE_STORED_RECORDS = 0x02;
+    public static final int OP_ABORT = 0x03;
+    public static final int OP_REPORT_NUMBER_OF_RECORDS = 0x04;
+    public static final int OP_NUMBER_OF_RECORDS_RESPONSE = 0x05;
+    public static final int OP_RESPONSE_CODE = 0x06;
+    public static final int OP_COMBINED_REPORT = 0x07;
+    public static final int OP_COMBINED_REPORT_RESPONSE = 0x08;
+
+    // =========================
+    // Operators
+    // =========================
+    public static final int OPERATOR_NULL = 0x00;
+    public static final int OPERATOR_ALL = 0x01;
+    public static final int OPERATOR_LESS_OR_EQUAL = 0x02;
+    public static final int OPERATOR_GREATER_OR_EQUAL = 0x03;
+    public static final int OPERATOR_RANGE = 0x04;
+    public static final int OPERATOR_FIRST = 0x05;
+    public static final int OPERATOR_LAST = 0x06;
+
+    // =========================
+    // Filter types
+    // =========================
+    public static final int FILTER_SEQUENCE_NUMBER = 0x01;
+    public static final int FILTER_USER_FACING_TIME = 0x02;
+
+    // =========================
+    // Response codes
+    // =========================
+    public static final int RESPONSE_SUCCESS = 0x01;
+    public static final int RESPONSE_OPCODE_NOT_SUPPORTED = 0x02;
+    public static final int RESPONSE_INVALID_OPERATOR = 0x03;
+    public static final int RESPONSE_OPERATOR_NOT_SUPPORTED = 0x04;
+    public static final int RESPONSE_INVALID_OPERAND = 0x05;
+    public static final int RESPONSE_NO_RECORDS_FOUND = 0x06;
+    public static final int RESPONSE_ABORT_UNSUCCESSFUL = 0x07;
+    public static final int RESPONSE_PROCEDURE_NOT_COMPLETED = 0x08;
+    public static final int RESPONSE_OPERAND_NOT_SUPPORTED = 0x09;
+
+    /** User facing time operand: date-time as in 0x2A08 (7 bytes). */
+    public static final int USER_FACING_TIME_LENGTH = 7;
+
+    // =========================
+    // Requests
+    // =========================
+
+    /** Request without operand: ALL, FIRST, LAST (or NULL for abort). */
+    public static byte[] request(int opcode, int operator) {
+        return new byte[]{(byte) opcode, (byte) operator};
+    }
+
+    /** {@code <=} or {@code >=} on the sequence number. */
+    public static byte[] sequenceFilter(int opcode, int operator, int sequence) {
+        return new byte[]{(byte) opcode, (byte) operator, FILTER_SEQUENCE_NUMBER,
+                (byte) sequence, (byte) (sequence >>> 8)};
+    }
+
+    /** Inclusive sequence number range. */
+    public static byte[] sequenceRange(int opcode, int from, int to) {
+        return new byte[]{(byte) opcode, OPERATOR_RANGE, FILTER_SEQUENCE_NUMBER,
+                (byte) from, (byte) (from >>> 8), (byte) to, (byte) (to >>> 8)};
+    }
+
+    /** {@code <=} or {@code >=} on the user facing time (packed as in {@link BpsMeasurement#packTimestamp}). */
+    public static byte[] timeFilter(int opcode, int operator, long packedTimestamp) {
+        byte[] out = new byte[3 + USER_FACING_TIME_LENGTH];
+        out[0] = (byte) opcode;
+        out[1] = (byte) operator;
+        out[2] = FILTER_USER_FACING_TIME;
+        putDateTime(out, 3, packedTimestamp);
+        return out;
+    }
+
+    /** Inclusive user facing time range. */
+    public static byte[] timeRange(int opcode, long from, long to) {
+        byte[] out = new byte[3 + 2 * USER_FACING_TIME_LENGTH];
+        out[0] = (byte) opcode;
+        out[1] = OPERATOR_RANGE;
+        out[2] = FILTER_USER_FACING_TIME;
+        putDateTime(out, 3, from);
+        putDateTime(out, 3 + USER_FACING_TIME_LENGTH, to);
+        return out;
+    }
+
+    public static byte[] abort() {
+        return request(OP_ABORT, OPERATOR_NULL);
+    }
+
+    /** Same operator and operand, another opcode (e.g. the 0x04 count before a 0x01 report). */
+    public static byte[] withOpcode(byte[] request, int opcode) {
+        byte[] out = request.clone();
+        out[0] = (byte) opcode;
+        return out;
+    }
+
+    private static void putDateTime(byte[] out, int off, long ts) {
+        int year = BpsMeasurement.year(ts);
+        out[off] = (byte) year;
+        out[off + 1] = (byte) (year >>> 8);
+        out[off + 2] = (byte) BpsMeasurement.month(ts);
+        out[off + 3] = (byte) BpsMeasurement.day(ts);
+        out[off + 4] = (byte) BpsMeasurement.hour(ts);
+        out[off + 5] = (byte) BpsMeasurement.minute(ts);
+        out[off + 6] = (byte) BpsMeasurement.second(ts);
+    }
+
+    // =========================
+    // Responses
+    // =========================
+
+    /** Decoded RACP indication. Mutable and reusable. */
+    public static final class Response {
+        public int opcode;          // OP_NUMBER_OF_RECORDS_RESPONSE, OP_RESPONSE_CODE or OP_COMBINED_REPORT_RESPONSE
+        public int requestOpcode;   // OP_RESPONSE_CODE only
+        public int responseCode;    // OP_RESPONSE_CODE only
+        public long count = -1;     // number responses only
+
+        public boolean isNumberOfRecords() {
+            return opcode == OP_NUMBER_OF_RECORDS_RESPONSE || opcode == OP_COMBINED_REPORT_RESPONSE;
+        }
+
+        public boolean isResponseCodeFor(int request) {
+            return opcode == OP_RESPONSE_CODE && requestOpcode == request;
+        }
+
+        void clear() {
+            opcode = 0;
+            requestOpcode = 0;
+            responseCode = 0;
+            count = -1;
+        }
+    }
+
+    /**
+     * Decodes a RACP indication into {@code out}.
+     *
+     * @return false if the value is not a well-formed response (out is then cleared)
+     */
+    public static boolean decode(byte[] v, Response out) {
+        out.clear();
+        if (v == null || v.length < 2) return false;
+        int opcode = v[0] & 0xFF;
+        switch (opcode) {
+            case OP_NUMBER_OF_RECORDS_RESPONSE:
+                if (v.length < 4) return false;
+                out.count = (v[2] & 0xFF) | ((v[3] & 0xFF) << 8);
+                break;
+            case OP_COMBINED_REPORT_RESPONSE:
+                if (v.length < 6) return false;
+                out.count = ((v[2] & 0xFF) | ((v[3] & 0xFF) << 8) | ((v[4] & 0xFF) << 16)
+                        | ((long) (v[5] & 0xFF) << 24));
+                break;
+            case OP_RESPONSE_CODE:
+                if (v.length < 4) return false;
+                out.requestOpcode = v[2] & 0xFF;
+                out.responseCode = v[3] & 0xFF;
+                break;
+            default:
+                return false;
+        }
+        out.opcode = opcode;
+        return true;
+    }
+
+    public static String responseCodeName(int code) {
+        switch (code) {
+            case RESPONSE_SUCCESS: return "success";
+            case RESPONSE_OPCODE_NOT_SUPPORTED: return "opcode not supported";
+            case RESPONSE_INVALID_OPERATOR: return "invalid operator";
+            case RESPONSE_OPERATOR_NOT_SUPPORTED: return "operator not supported";
+            case RESPONSE_INVALID_OPERAND: return "invalid operand";
+            case RESPONSE_NO_RECORDS_FOUND: return "no records found";
+            case RESPONSE_ABORT_UNSUCCESSFUL: return "abort unsuccessful";
+            case RESPONSE_PROCEDURE_NOT_COMPLETED: return "procedure not completed";
+            case RESPONSE_OPERAND_NOT_SUPPORTED: return "operand not supported";
+            default: return "0x" + Integer.toHexString(code);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Record Access Control Point client for one connection: one RACP procedure at a time,
+ * completed by the device's own response rather than by a fixed delay.
+ * <p>
+ * A record transfer ({@link #transfer}) first asks for the number of matching records
+ * (0x04 with the same operator/operand), then sends the report request (0x01) and
+ * completes when the device sends the Response Code for it. Records counted through
+ * {@link #onRecord()} are reported as received/expected progress. {@link #abort()}
+ * sends 0x03 and completes the transfer on the device's answer.
+ * <p>
+ * The timeout is an idle timeout: it fires when nothing (response or record) has been
+ * received for {@code timeoutMs}, so long transfers are not cut short. Thread-safe;
+ * writes go through the {@link Writer} (the GATT queue) outside the lock.
+ */
+public final class RacpClient {
+
+    public static final long DEFAULT_TIMEOUT_MS = 10_000;
+
+    /** Writes a command to the RACP characteristic; completes when the write is acknowledged. */
+    public interface Writer {
+        CompletableFuture<?> write(byte[] command);
+    }
+
+    /** {@code expected} is -1 when the device did not answer the count request. */
+    public interface ProgressListener {
+        void onProgress(int received, long expected);
+    }
+
+    /** Final state of a procedure, as reported by the device. */
+    public static final class Result {
+        public final int responseCode;  // Racp.RESPONSE_*
+        public final long count;        // 0x05 answer (or expected records), -1 if none
+        public final int received;      // records received during a transfer
+        public final boolean aborted;
+
+        Result(int responseCode, long count, int received, boolean aborted) {
+            this.responseCode = responseCode;
+            this.count = count;
+            this.received = received;
+            this.aborted = aborted;
+        }
+
+        public boolean isSuccess() {
+            return responseCode == Racp.RESPONSE_SUCCESS;
+        }
+
+        @Override
+        public String toString() {
+            return Racp.responseCodeName(responseCode) + (aborted ? " (aborted)" : "")
+                    + ", received " + received + (count >= 0 ? "/" + count : "");
+        }
+    }
+
+    private enum State { REQUEST, COUNTING, TRANSFERRING, ABORTING }
+
+    private static final class Procedure {
+        final byte[] command;
+        final ProgressListener listener;
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+
+        State state;
+        int received;
+        long expected = -1;
+        long lastActivityNanos;
+        ScheduledFuture<?> timeout;
+
+        Procedure(byte[] command, State state, ProgressListener listener) {
+            this.command = command;
+            this.state = state;
+            this.listener = listener;
+        }
+    }
+
+    private final Writer writer;
+    private final ScheduledExecutorService scheduler;
+    private final long timeoutMs;
+    private final Racp.Response response = new Racp.Response(); // guarded by this
+
+    private Procedure current; // guarded by this
+
+    public RacpClient(Writer writer, ScheduledExecutorService scheduler) {
+        this(writer, scheduler, DEFAULT_TIMEOUT_MS);
+    }
+
+    public RacpClient(Writer writer, ScheduledExecutorService scheduler, long timeoutMs) {
+        this.writer = writer;
+        this.scheduler = scheduler;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Counts then reports the records selected by {@code reportRequest} (a 0x01 request).
+     * A count of zero completes right away with {@link Racp#RESPONSE_NO_RECORDS_FOUND}.
+     */
+    public CompletableFuture<Result> transfer(byte[] reportRequest, ProgressListener listener) {
+        Procedure p = new Procedure(reportRequest, State.COUNTING, listener);
+        if (!begin(p)) return busy();
+        send(p, Racp.withOpcode(reportRequest, Racp.OP_REPORT_NUMBER_OF_RECORDS));
+        return p.future;
+    }
+
+    /** Any single-answer procedure: count (0x04), delete (0x02), ... */
+    public CompletableFuture<Result> request(byte[] command) {
+        Procedure p = new Procedure(command, State.REQUEST, null);
+        if (!begin(p)) return busy();
+        send(p, command);
+        return p.future;
+    }
+
+    /**
+     * Aborts the running transfer. Its future completes with {@code aborted} set once the
+     * device answers the abort (or exceptionally on timeout).
+     *
+     * @return false if no transfer is running
+     */
+    public boolean abort() {
+        Procedure p;
+        synchronized (this) {
+            p = current;
+            if (p == null || p.state == State.REQUEST || p.state == State.ABORTING) return false;
+            p.state = State.ABORTING;
+            p.lastActivityNanos = System.nanoTime();
+        }
+        send(p, Racp.abort());
+        return true;
+    }
+
+    /** A complete record (0x2B36) was received. */
+    public void onRecord() {
+        Procedure p;
+        int received;
+        long expected;
+        synchronized (this) {
+            p = current;
+            if (p == null || (p.state != State.TRANSFERRING && p.state != State.ABORTING)) return;
+            received = ++p.received;
+            expected = p.expected;
+            p.lastActivityNanos = System.nanoTime();
+        }
+        if (p.listener != null) p.listener.onProgress(received, expected);
+    }
+
+    /** RACP (0x2A52) indication. */
+    public void onIndication(byte[] value) {
+        Procedure p;
+        byte[] next = null;
+        Result done = null;
+        synchronized (this) {
+            p = current;
+            if (p == null || !Racp.decode(value, response)) return;
+            Racp.Response r = response;
+            p.lastActivityNanos = System.nanoTime();
+            switch (p.state) {
+                case REQUEST:
+                    if (r.isNumberOfRecords()) {
+                        done = new Result(Racp.RESPONSE_SUCCESS, r.count, 0, false);
+                    } else if (r.isResponseCodeFor(p.command[0] & 0xFF)) {
+                        done = new Result(r.responseCode, -1, 0, false);
+                    }
+                    break;
+                case COUNTING:
+                    if (r.isNumberOfRecords()) {
+                        p.expected = r.count;
+                        if (r.count == 0) {
+                            done = new Result(Racp.RESPONSE_NO_RECORDS_FOUND, 0, 0, false);
+                            break;
+                        }
+                    } else if (!r.isResponseCodeFor(Racp.OP_REPORT_NUMBER_OF_RECORDS)) {
+                        break;
+                    }
+                    // Count known (or not supported): ask for the records
+                    p.state = State.TRANSFERRING;
+                    next = p.command;
+                    break;
+                case TRANSFERRING:
+                    if (r.isResponseCodeFor(Racp.OP_REPORT_STORED_RECORDS)) {
+                        done = new Result(r.responseCode, p.expected, p.received, false);
+                    }
+                    break;
+                case ABORTING:
+                    if (r.isResponseCodeFor(Racp.OP_ABORT) || r.isResponseCodeFor(Racp.OP_REPORT_STORED_RECORDS)) {
+                        done = new Result(r.responseCode, p.expected, p.received, true);
+                    }
+                    break;
+            }
+            if (done != null) end(p);
+        }
+        if (next != null) send(p, next);
+        if (done != null) p.future.complete(done);
+    }
+
+    /** Fails the running procedure (disconnection, ...). */
+    public void cancel(String reason) {
+        fail(currentProcedure(), new GattOperationException("RACP: " + reason, GattOperationException.NO_STATUS));
+    }
+
+    public synchronized boolean isBusy() {
+        return current != null;
+    }
+
+    // =========================
+    // Internals
+    // =========================
+
+    private synchronized Procedure currentProcedure() {
+        return current;
+    }
+
+    private synchronized boolean begin(Procedure p) {
+        if (current != null) return false;
+        current = p;
+        p.lastActivityNanos = System.nanoTime();
+        p.timeout = scheduler.schedule(() -> onTimeout(p), timeoutMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    // Caller holds the lock
+    private void end(Procedure p) {
+        current = null;
+        if (p.timeout != null) p.timeout.cancel(false);
+    }
+
+    private void send(Procedure p, byte[] command) {
+        writer.write(command).whenComplete((v, e) -> {
+            if (e != null) fail(p, e);
+        });
+    }
+
+    private void fail(Procedure p, Throwable e) {
+        if (p == null) return;
+        synchronized (this) {
+            if (current != p) return;
+            end(p);
+        }
+        p.future.completeExceptionally(e);
+    }
+
+    private void onTimeout(Procedure p) {
+        boolean transferring;
+        String message;
+        synchronized (this) {
+            if (current != p) return;
+            long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - p.lastActivityNanos);
+            if (idleMs < timeoutMs) {
+                // Activity since this was armed: wait for the rest of the window
+                p.timeout = scheduler.schedule(() -> onTimeout(p), timeoutMs - idleMs, TimeUnit.MILLISECONDS);
+                return;
+            }
+            transferring = p.state == State.TRANSFERRING;
+            message = "RACP: no answer for " + timeoutMs + " ms (received " + p.received
+                    + (p.expected >= 0 ? "/" + p.expected : "") + ")";
+            end(p);
+        }
+        // Best effort: stop the device from streaming into a procedure nobody waits for
+        if (transferring) writer.write(Racp.abort());
+        p.future.completeExceptionally(new TimeoutException(message));
+    }
+
+    private static CompletableFuture<Result> busy() {
+        CompletableFuture<Result> f = new CompletableFuture<>();
+        f.completeExceptionally(new IllegalStateException("RACP: a procedure is already running"));
+        return f;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Random;
+
+/**
+ * When to try again after a link loss.
+ * <p>
+ * Exponential backoff with "equal jitter": attempt {@code n} waits a random time
+ * between half and all of {@code min(maxDelay, baseDelay * 2^(n-1))}, so cuffs lost
+ * together (out of range, Bluetooth toggled) do not all come back in the same
+ * connection event. The first {@code directAttempts} attempts are direct connections
+ * (fast when the cuff is still close); after that a single background connection
+ * ({@code autoConnect}) is left to the controller, which connects as soon as the cuff
+ * advertises again at no cost to the app.
+ */
+final class ReconnectPolicy {
+
+    static final ReconnectPolicy DEFAULT = new ReconnectPolicy(1_000, 60_000, 3);
+
+    final long baseDelayMillis;
+    final long maxDelayMillis;
+    final int directAttempts;
+
+    ReconnectPolicy(long baseDelayMillis, long maxDelayMillis, int directAttempts) {
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.directAttempts = directAttempts;
+    }
+
+    /** Delay before attempt {@code attempt} (1 for the first retry). */
+    long delayMillis(int attempt, Random random) {
+        int shift = Math.min(attempt - 1, 30);
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << shift);
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half + 1));
+    }
+
+    boolean autoConnect(int attempt) {
+        return attempt > directAttempts;
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+/**
+ * Incremental RACP transfer for one connection, driven by the per-device
+ * {@link SyncWatermarks high-watermark}.
+ * <p>
+ * Without a watermark the device is asked for all records ({@code 01 01}). Otherwise
+ * it is asked for records with a sequence number {@code >=} the watermark
+ * ({@code 01 03 01 lo hi}). The filter is inclusive on purpose: the last record we
+ * already have acts as a canary. The session compares it with the stored reading; if it
+ * differs ({@link #onCanaryChanged()}), or if the device answers "no records found", the
+ * counter was reset (memory cleared, battery swap) and the numbers now belong to other
+ * readings: the watermark is dropped and the transfer is restarted as a full sync.
+ * <p>
+ * Sequence numbers are 16-bit. A device returns ">= watermark" in numeric order, so
+ * after 0xFFFF nothing newer can be asked for by number: a watermark of 0xFFFF leads to
+ * a full sync, whose last record is found in serial-number order (after a wrap, 0x0002
+ * comes after 0xFFFE), which holds while a device keeps fewer than 32768 records.
+ * <p>
+ * The watermark only covers records received without a hole: it is the end of the run
+ * that starts at the canary (or at the first record of a full sync). Records lost in
+ * between (a lost segment, a missing notification) are asked for again with range
+ * requests ({@code 01 04 01 lo hi lo hi}, {@link Outcome#FILL_GAPS}), for a few rounds;
+ * what is still missing then is fetched by the next sync, which starts below it.
+ * <p>
+ * The watermark is committed when the device reports success. A transfer cut by a
+ * link loss is {@link #interrupt() interrupted}: the run received so far is committed,
+ * so the next connection resumes from its end (the canary again) rather than from the
+ * start. A rejected transfer keeps the previous watermark.
+ */
+public final class RecordSync {
+
+    public enum Outcome {
+        /** Transfer finished, watermark committed. */
+        COMPLETE,
+        /** Counter reset detected: send {@link #start()} again (now a full sync). */
+        RESTART_FULL,
+        /** Records are missing below the last one: send {@link #nextGap()}. */
+        FILL_GAPS,
+        /** The device rejected the request (or nothing was started). */
+        FAILED
+    }
+
+    /** Last RACP sequence number before the counter wraps to 0. */
+    static final int MAX_SEQUENCE = 0xFFFF;
+    /** Rounds of range requests before the rest is left to the next sync. */
+    static final int MAX_GAP_ROUNDS = 3;
+    /** Holes closer than this are asked for in one range (received records come again, dropped as seen). */
+    static final int MERGE_DISTANCE = 8;
+
+    private final SyncWatermarks watermarks;
+    private final long device;
+
+    private boolean running;
+    private boolean interrupted;
+    private boolean incremental;
+    private int requestedFrom = SyncWatermarks.NONE;
+    private int received;
+    private boolean reset;
+
+    // Records of this sync, by sequence number. Offsets are serial distances from base:
+    // the canary, or the first record received in a full sync.
+    private final BitSet seen = new BitSet(MAX_SEQUENCE + 1);
+    private int base = SyncWatermarks.NONE;
+    private int lowest;
+    private int highestOffset;
+
+    // Gap filling: ranges {from, to} still to request in this round
+    private final ArrayDeque<int[]> gaps = new ArrayDeque<>();
+    private int[] gap; // range of the transfer in progress, null for the main transfer
+    private int gapRounds;
+
+    public RecordSync(SyncWatermarks watermarks, long device) {
+        this.watermarks = watermarks;
+        this.device = device;
+    }
+
+    /** Builds the RACP command for a new transfer and arms the response handling. */
+    public synchronized byte[] start() {
+        int mark = watermarks.get(device);
+        running = true;
+        interrupted = false;
+        received = 0;
+        reset = false;
+        incremental = mark != SyncWatermarks.NONE && mark != MAX_SEQUENCE;
+        requestedFrom = incremental ? mark : SyncWatermarks.NONE;
+        seen.clear();
+        base = requestedFrom;
+        lowest = 0;
+        highestOffset = -1;
+        gaps.clear();
+        gap = null;
+        gapRounds = 0;
+        if (!incremental) {
+            return Racp.request(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_ALL);
+        }
+        return Racp.sequenceFilter(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_GREATER_OR_EQUAL, mark);
+    }
+
+    /**
+     * Builds the range request for the next hole after {@link Outcome#FILL_GAPS}, and arms
+     * the response handling as {@link #start()} does; null if there is none.
+     */
+    public synchronized byte[] nextGap() {
+        gap = gaps.poll();
+        if (gap == null) return null;
+        running = true;
+        return Racp.sequenceRange(Racp.OP_REPORT_STORED_RECORDS, gap[0], gap[1]);
+    }
+
+    /**
+     * A 0x2B36 record was received and dealt with (any order): stored, already in the
+     * history, or of no use if fetched again. A record whose append failed is not
+     * reported, so the watermark stays below it.
+     */
+    public synchronized void onRecord(int sequenceNumber) {
+        received++;
+        int seq = sequenceNumber & MAX_SEQUENCE;
+        if (base == SyncWatermarks.NONE) base = seq;
+        int offset = offsetOf(seq);
+        seen.set(seq);
+        if (offset < lowest) lowest = offset;
+        if (offset > highestOffset) highestOffset = offset;
+        // Completed on the ingest thread after the link was lost: stored all the same
+        if (interrupted && !reset) commit();
+    }
+
+    /**
+     * The canary record of this incremental transfer is not the reading stored under its
+     * number: the device counter was reset. The transfer ends in {@link Outcome#RESTART_FULL}.
+     */
+    public synchronized void onCanaryChanged() {
+        if (!incremental) return;
+        reset = true;
+        watermarks.set(device, SyncWatermarks.NONE);
+    }
+
+    /** The transfer ended with the device's RACP response code (see {@link RacpClient.Result}). */
+    public synchronized Outcome finish(int responseCode) {
+        if (!running) return Outcome.FAILED;
+        running = false;
+        if (reset) return Outcome.RESTART_FULL;
+        if (gap != null) {
+            // Gone from the device since (deleted): nothing to wait for
+            if (responseCode == Racp.RESPONSE_NO_RECORDS_FOUND) markGone(gap);
+            // Any other failure (e.g. ranges not supported) leaves the rest to the next sync
+            if (responseCode != Racp.RESPONSE_SUCCESS && responseCode != Racp.RESPONSE_NO_RECORDS_FOUND) {
+                gaps.clear();
+                gapRounds = MAX_GAP_ROUNDS;
+            }
+            return gaps.isEmpty() ? endRound() : Outcome.FILL_GAPS;
+        }
+        switch (responseCode) {
+            case Racp.RESPONSE_SUCCESS:
+                return endRound();
+            case Racp.RESPONSE_NO_RECORDS_FOUND:
+                if (incremental) {
+                    // Even the canary is gone: the device numbering started over
+                    watermarks.set(device, SyncWatermarks.NONE);
+                    return Outcome.RESTART_FULL;
+                }
+                return Outcome.COMPLETE; // empty device
+            default:
+                return Outcome.FAILED;
+        }
+    }
+
+    /**
+     * The transfer stopped before the device's response (link lost, session closed):
+     * commits the run received so far.
+     *
+     * @return true if the watermark moved
+     */
+    public synchronized boolean interrupt() {
+        if (!running) return false;
+        running = false;
+        interrupted = true;
+        // After a reset the watermark is already dropped: the next connection syncs in full
+        if (reset) return true;
+        return commit();
+    }
+
+    /** True once {@link #onCanaryChanged()} was reported for the current transfer. */
+    public synchronized boolean isReset() {
+        return reset;
+    }
+
+    public synchronized boolean isIncremental() {
+        return incremental;
+    }
+
+    /** Watermark the current transfer started from ({@link SyncWatermarks#NONE} for a full sync). */
+    public synchronized int requestedFrom() {
+        return requestedFrom;
+    }
+
+    /** Records received since the last {@link #start()}, canary and refetched records included. */
+    public synchronized int received() {
+        return received;
+    }
+
+    /** Records still missing below the last one received. */
+    public synchronized int missing() {
+        int n = 0;
+        for (int offset = lowest; offset <= highestOffset; offset++) {
+            if (!seen.get(sequenceAt(offset))) n++;
+        }
+        return n;
+    }
+
+    // =========================
+    // Internals
+    // =========================
+
+    // Next round of range requests, or the end of the sync with the run received committed
+    private Outcome endRound() {
+        if (gapRounds < MAX_GAP_ROUNDS) {
+            collectGaps();
+            if (!gaps.isEmpty()) {
+                gapRounds++;
+                return Outcome.FILL_GAPS;
+            }
+        }
+        commit();
+        return Outcome.COMPLETE;
+    }
+
+    // Watermark = end of the run from the start offset. Returns true if it moved.
+    private boolean commit() {
+        if (highestOffset < 0 || !seen.get(sequenceAt(lowest))) return false;
+        int offset = lowest;
+        while (offset < highestOffset && seen.get(sequenceAt(offset + 1))) offset++;
+        int end = sequenceAt(offset);
+        if (end == requestedFrom || end == watermarks.get(device)) return false;
+        watermarks.set(device, end);
+        return true;
+    }
+
+    private void collectGaps() {
+        gaps.clear();
+        int offset = lowest;
+        while (offset <= highestOffset) {
+            if (seen.get(sequenceAt(offset))) {
+                offset++;
+                continue;
+            }
+            int from = offset;
+            int to = offset;
+            // Extend over holes separated by fewer than MERGE_DISTANCE received records
+            for (int next = to + 1; next <= highestOffset && next - to <= MERGE_DISTANCE; next++) {
+                if (!seen.get(sequenceAt(next))) to = next;
+            }
+            addRange(sequenceAt(from), sequenceAt(to));
+            offset = to + 1;
+        }
+    }
+
+    // A range crossing 0xFFFF -> 0 is two requests: the device compares numbers
+    private void addRange(int from, int to) {
+        if (from <= to) {
+            gaps.add(new int[]{from, to});
+        } else {
+            gaps.add(new int[]{from, MAX_SEQUENCE});
+            gaps.add(new int[]{0, to});
+        }
+    }
+
+    private void markGone(int[] range) {
+        seen.set(range[0], range[1] + 1);
+    }
+
+    // Incremental: numeric, as the device filtered. Full: serial-number order (RFC 1982).
+    private int offsetOf(int seq) {
+        int d = (seq - base) & MAX_SEQUENCE;
+        return incremental ? d : (short) d;
+    }
+
+    private int sequenceAt(int offset) {
+        return (base + offset) & MAX_SEQUENCE;
+    }
+}
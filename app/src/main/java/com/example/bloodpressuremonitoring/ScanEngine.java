@@ -0,0 +1,161 @@
+package com.example.bloodpressuremonitoring;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+
+import androidx.core.app.ActivityCompat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * BLE scan restricted to one service, with batched results and throttled list updates.
+ * <p>
+ * The service UUID filter runs in the controller, so other advertisers never reach the
+ * app. When the controller supports offloaded batching, results are delivered every
+ * {@link #REPORT_DELAY_MS} as one batch instead of one callback per advertisement.
+ * Results go into a {@link ScanTable}, and the listener receives the diff at most once
+ * per {@link #PUBLISH_INTERVAL_MS}.
+ * <p>
+ * Scan callbacks and the listener run on the handler's thread (the main thread).
+ */
+final class ScanEngine {
+
+    static final long REPORT_DELAY_MS = 500;
+    static final long PUBLISH_INTERVAL_MS = 500;
+    static final long STALE_AFTER_MS = 15_000;
+    static final int RSSI_THRESHOLD_DB = 4;
+
+    interface Listener {
+        void onDevicesChanged(ScanTable.Diff<BluetoothDevice> diff);
+
+        void onScanFailed(int errorCode);
+    }
+
+    private final Context context;
+    private final BluetoothAdapter adapter;
+    private final List<ScanFilter> filters;
+    private final Handler handler;
+    private final Listener listener;
+    private final ScanTable<BluetoothDevice> table =
+            new ScanTable<>(PUBLISH_INTERVAL_MS, STALE_AFTER_MS, RSSI_THRESHOLD_DB);
+
+    private BluetoothLeScanner scanner;
+    private boolean scanning;
+    private boolean batched;
+
+    private final Runnable publishTick = new Runnable() {
+        @Override
+        public void run() {
+            publish();
+            if (scanning) handler.postDelayed(this, PUBLISH_INTERVAL_MS);
+        }
+    };
+
+    private final ScanCallback callback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            record(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (int i = 0, n = results.size(); i < n; i++) record(results.get(i));
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            scanning = false;
+            handler.removeCallbacks(publishTick);
+            listener.onScanFailed(errorCode);
+        }
+    };
+
+    ScanEngine(Context context, BluetoothAdapter adapter, UUID serviceUuid, Handler handler, Listener listener) {
+        this.context = context;
+        this.adapter = adapter;
+        this.filters = Collections.singletonList(
+                new ScanFilter.Builder().setServiceUuid(new ParcelUuid(serviceUuid)).build());
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    /** Starts a fresh scan (the table is cleared). Returns false if it could not start. */
+    boolean start() {
+        if (scanning) return true;
+        if (!hasScanPermission()) return false;
+        if (scanner == null) scanner = adapter.getBluetoothLeScanner();
+        if (scanner == null) return false;
+
+        // Without offloaded batching a report delay is not honoured: fall back to per-result callbacks
+        batched = adapter.isOffloadedScanBatchingSupported();
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+                .setReportDelay(batched ? REPORT_DELAY_MS : 0)
+                .build();
+
+        table.clear();
+        scanning = true;
+        scanner.startScan(filters, settings, callback);
+        handler.removeCallbacks(publishTick);
+        handler.postDelayed(publishTick, PUBLISH_INTERVAL_MS);
+        return true;
+    }
+
+    void stop() {
+        if (!scanning) return;
+        scanning = false;
+        handler.removeCallbacks(publishTick);
+        if (scanner != null && hasScanPermission()) {
+            if (batched) scanner.flushPendingScanResults(callback);
+            scanner.stopScan(callback);
+        }
+        // Last publish once the flushed batch has been delivered (the tick does not re-arm)
+        handler.postDelayed(publishTick, PUBLISH_INTERVAL_MS);
+    }
+
+    boolean isScanning() {
+        return scanning;
+    }
+
+    boolean isBatched() {
+        return batched;
+    }
+
+    ScanTable<BluetoothDevice> table() {
+        return table;
+    }
+
+    private void record(ScanResult result) {
+        BluetoothDevice device = result.getDevice();
+        if (device == null) return;
+        // Advertised name: no BLUETOOTH_CONNECT needed, unlike device.getName()
+        ScanRecord sr = result.getScanRecord();
+        String name = sr != null ? sr.getDeviceName() : null;
+        long seen = result.getTimestampNanos() / 1_000_000L; // elapsedRealtime base
+        table.onResult(device.getAddress(), device, name, result.getRssi(), seen);
+    }
+
+    private void publish() {
+        ScanTable.Diff<BluetoothDevice> diff = table.publish(SystemClock.elapsedRealtime());
+        if (diff != null) listener.onDevicesChanged(diff);
+    }
+
+    private boolean hasScanPermission() {
+        return ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+}
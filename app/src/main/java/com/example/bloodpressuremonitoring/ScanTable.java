@@ -0,0 +1,165 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Devices seen during a scan, keyed by Bluetooth address.
+ * <p>
+ * Each advertisement is an O(1) map update (RSSI, name, last-seen time). Changes are
+ * accumulated and handed out as a {@link Diff} by {@link #publish}, at most once per
+ * {@code minPublishIntervalMs}, so the list is not re-rendered per advertisement.
+ * Devices not heard from for {@code staleAfterMs} are dropped at publish time.
+ * <p>
+ * Not thread-safe: used from the thread the scan callbacks arrive on.
+ *
+ * @param <D> platform device handle (BluetoothDevice on Android)
+ */
+public final class ScanTable<D> {
+
+    /** One scanned device. Mutated in place by the table; read it on the same thread. */
+    public static final class Device<D> {
+        public final String address;
+        public final D handle;
+        public String name;
+        public int rssi;
+        public long firstSeenMillis;
+        public long lastSeenMillis;
+        public int advertisements;
+
+        boolean added;   // not yet published
+        boolean changed; // published, modified since
+
+        Device(String address, D handle) {
+            this.address = address;
+            this.handle = handle;
+        }
+    }
+
+    /** Changes since the previous publish. The lists are reused by the next publish. */
+    public static final class Diff<D> {
+        public final List<Device<D>> added = new ArrayList<>();
+        public final List<Device<D>> changed = new ArrayList<>();
+        public final List<Device<D>> removed = new ArrayList<>();
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        void clear() {
+            added.clear();
+            changed.clear();
+            removed.clear();
+        }
+    }
+
+    private final HashMap<String, Device<D>> devices = new HashMap<>();
+    private final Diff<D> diff = new Diff<>();
+    private final long minPublishIntervalMs;
+    private final long staleAfterMs;
+    private final int rssiThreshold;
+
+    private long lastPublishMillis = Long.MIN_VALUE / 2;
+    private boolean dirty;
+    private long results;
+
+    /**
+     * @param rssiThreshold RSSI moves smaller than this (dB) are recorded but not published
+     */
+    public ScanTable(long minPublishIntervalMs, long staleAfterMs, int rssiThreshold) {
+        this.minPublishIntervalMs = minPublishIntervalMs;
+        this.staleAfterMs = staleAfterMs;
+        this.rssiThreshold = rssiThreshold;
+    }
+
+    /** One advertisement. Returns true if it changes what the list shows. */
+    public boolean onResult(String address, D handle, String name, int rssi, long nowMillis) {
+        results++;
+        Device<D> d = devices.get(address);
+        if (d == null) {
+            d = new Device<>(address, handle);
+            d.name = name;
+            d.rssi = rssi;
+            d.firstSeenMillis = nowMillis;
+            d.lastSeenMillis = nowMillis;
+            d.advertisements = 1;
+            d.added = true;
+            devices.put(address, d);
+            dirty = true;
+            return true;
+        }
+        d.lastSeenMillis = nowMillis;
+        d.advertisements++;
+        boolean visible = false;
+        if (name != null && !name.equals(d.name)) {
+            d.name = name; // names often arrive only in the scan response
+            visible = true;
+        }
+        if (Math.abs(rssi - d.rssi) >= rssiThreshold) visible = true;
+        d.rssi = rssi;
+        if (visible && !d.added) {
+            d.changed = true;
+            dirty = true;
+        }
+        return visible;
+    }
+
+    /** Milliseconds until {@link #publish} may return changes, 0 if it may now. */
+    public long delayUntilPublish(long nowMillis) {
+        return Math.max(0, lastPublishMillis + minPublishIntervalMs - nowMillis);
+    }
+
+    /**
+     * Collects the changes since the previous publish (and expires stale devices).
+     *
+     * @return null if throttled or if nothing changed
+     */
+    public Diff<D> publish(long nowMillis) {
+        if (delayUntilPublish(nowMillis) > 0) return null;
+        diff.clear();
+        boolean expire = staleAfterMs > 0;
+        if (!dirty && !expire) return null;
+        for (Iterator<Device<D>> it = devices.values().iterator(); it.hasNext(); ) {
+            Device<D> d = it.next();
+            if (expire && nowMillis - d.lastSeenMillis > staleAfterMs) {
+                it.remove();
+                if (!d.added) diff.removed.add(d);
+            } else if (d.added) {
+                d.added = false;
+                diff.added.add(d);
+            } else if (d.changed) {
+                d.changed = false;
+                diff.changed.add(d);
+            }
+        }
+        dirty = false;
+        if (diff.isEmpty()) return null;
+        // Stable order for the list: first seen first
+        diff.added.sort((a, b) -> Long.compare(a.firstSeenMillis, b.firstSeenMillis));
+        lastPublishMillis = nowMillis;
+        return diff;
+    }
+
+    public Device<D> get(String address) {
+        return devices.get(address);
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    /** Advertisements processed since the last {@link #clear()}. */
+    public long results() {
+        return results;
+    }
+
+    public void clear() {
+        devices.clear();
+        diff.clear();
+        dirty = false;
+        results = 0;
+        lastPublishMillis = Long.MIN_VALUE / 2;
+    }
+}
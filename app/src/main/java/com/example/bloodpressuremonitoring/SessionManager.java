@@ -0,0 +1,349 @@
+package com.example.bloodpressuremonitoring;
+
+import com.example.bloodpressuremonitoring.Trace.Category;
+import com.example.bloodpressuremonitoring.Trace.Level;
+
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link DeviceSession} per peripheral, several connected at once.
+ * <p>
+ * All sessions share one bounded executor (GATT timeouts, RACP timeouts and the
+ * per-session event lanes), one {@link IngestPipeline} thread for their notifications,
+ * the {@link Trace} switches, the measurement store and the sync watermarks. The number
+ * of simultaneous connections is capped: Android controllers typically handle a handful
+ * of links well and degrade past that. Sessions leave the manager when they disconnect.
+ * <p>
+ * A cuff whose link is lost (not closed by the app) is reconnected with a new session
+ * per the {@link ReconnectPolicy}, until {@link #disconnect} is called for it. A session
+ * that reaches {@link DeviceSession.State#READY} resets the backoff; one that ended for
+ * a {@link DeviceSession#isPermanentFailure() permanent reason} is not reconnected.
+ * Thread-safe.
+ */
+public final class SessionManager implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_SESSIONS = 4;
+
+    /** Ended sessions kept for {@link #recentlyEnded()} (diagnostics). */
+    static final int ENDED_HISTORY = 8;
+
+    /** Creates the transport for a peripheral address. */
+    public interface TransportFactory {
+        GattTransport create(String address);
+    }
+
+    private final TransportFactory transports;
+    private final ScheduledExecutorService executor;
+    private final int maxSessions;
+    private final MeasurementStore store;
+    private final SyncWatermarks watermarks;
+    private final ZoneId zone;
+    private final DeviceSession.Listener listener;
+    private final IngestPipeline ingest = new IngestPipeline("bp-ingest");
+    private final Trace trace = new Trace();
+    private volatile LinkTuner.Settings linkSettings = LinkTuner.Settings.DEFAULT;
+    private volatile GattCache gattCache;
+    private volatile MeasurementDeduplicator dedup;
+    private volatile ColdTier cold;
+    private volatile ReconnectPolicy reconnectPolicy;
+
+    private final Map<String, DeviceSession> sessions = new LinkedHashMap<>(); // guarded by this
+    private final ArrayDeque<DeviceSession> ended = new ArrayDeque<>();         // guarded by this
+    private long rejected; // guarded by this
+
+    // Reconnection, guarded by this
+    private final Set<String> wanted = new HashSet<>();                      // connected by the user
+    private final Map<String, Integer> attempts = new HashMap<>();           // since the last READY
+    private final Map<String, ScheduledFuture<?>> pending = new HashMap<>(); // scheduled reconnects
+    private final Random jitter = new Random();
+    private long reconnects;
+
+    public SessionManager(TransportFactory transports, ScheduledExecutorService executor, int maxSessions,
+                          MeasurementStore store, SyncWatermarks watermarks, ZoneId zone,
+                          DeviceSession.Listener listener) {
+        this.transports = transports;
+        this.executor = executor;
+        this.maxSessions = maxSessions;
+        this.store = store;
+        this.watermarks = watermarks;
+        this.zone = zone;
+        this.listener = listener;
+    }
+
+    /**
+     * Connects to {@code address}, or returns its existing session.
+     *
+     * @return null if the connection cap is reached or the transport refused to connect
+     */
+    public DeviceSession connect(String address) {
+        DeviceSession session;
+        synchronized (this) {
+            DeviceSession existing = sessions.get(address);
+            if (existing != null) return existing;
+            if (sessions.size() >= maxSessions) {
+                rejected++;
+                return null;
+            }
+            // The user asks now: no need to wait for a scheduled attempt
+            cancelReconnect(address);
+            attempts.remove(address);
+            wanted.add(address);
+            session = newSession(address);
+        }
+        if (!session.connect(false)) {
+            synchronized (this) {
+                wanted.remove(address);
+            }
+            remove(session);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Closes the session of {@code address} and stops reconnecting it.
+     *
+     * @return false if it was neither connected nor waiting for a reconnection
+     */
+    public boolean disconnect(String address) {
+        DeviceSession session;
+        boolean known;
+        synchronized (this) {
+            known = wanted.remove(address);
+            cancelReconnect(address);
+            attempts.remove(address);
+            session = sessions.get(address);
+        }
+        if (session != null) session.close();
+        return known || session != null;
+    }
+
+    public void closeAll() {
+        synchronized (this) {
+            wanted.clear();
+            for (ScheduledFuture<?> f : pending.values()) f.cancel(false);
+            pending.clear();
+            attempts.clear();
+        }
+        for (DeviceSession s : sessions()) s.close();
+    }
+
+    /**
+     * Closes every session, then stops the ingest thread once it has handled the
+     * notifications already received. The manager cannot be reused.
+     */
+    @Override
+    public void close() {
+        closeAll();
+        ingest.close();
+    }
+
+    /** MTU / priority / PHY tuning of the next sessions. */
+    void setLinkSettings(LinkTuner.Settings settings) {
+        linkSettings = settings;
+    }
+
+    /** Reconnection after a link loss; null (the default) to stay disconnected. */
+    void setReconnectPolicy(ReconnectPolicy policy) {
+        reconnectPolicy = policy;
+    }
+
+    /** Per-device GATT cache of the next sessions; null for a full setup every time. */
+    void setGattCache(GattCache cache) {
+        gattCache = cache;
+    }
+
+    /**
+     * Duplicate check against the whole history for the next sessions (it must wrap the
+     * same store); null to only drop duplicates within a session.
+     */
+    void setDeduplicator(MeasurementDeduplicator deduplicator) {
+        dedup = deduplicator;
+    }
+
+    /**
+     * Cold tier of the store's history for the next sessions, checked with the store when
+     * there is no deduplicator (canary of an incremental sync); null without one.
+     */
+    void setColdTier(ColdTier tier) {
+        cold = tier;
+    }
+
+    /** Null if none was set. */
+    public MeasurementDeduplicator deduplicator() {
+        return dedup;
+    }
+
+    public IngestPipeline ingest() {
+        return ingest;
+    }
+
+    /** Trace levels and recorder, shared by every session (changes apply immediately). */
+    public Trace trace() {
+        return trace;
+    }
+
+    public synchronized DeviceSession get(String address) {
+        return sessions.get(address);
+    }
+
+    public synchronized List<DeviceSession> sessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    public int maxSessions() {
+        return maxSessions;
+    }
+
+    /** Connections refused because the cap was reached. */
+    public synchronized long rejected() {
+        return rejected;
+    }
+
+    /** Reconnection attempts started since the manager was created. */
+    public synchronized long reconnects() {
+        return reconnects;
+    }
+
+    /** Reconnections scheduled and not started yet. */
+    public synchronized int pendingReconnects() {
+        return pending.size();
+    }
+
+    /** The last {@value #ENDED_HISTORY} sessions that disconnected, oldest first. */
+    public synchronized List<DeviceSession> recentlyEnded() {
+        return new ArrayList<>(ended);
+    }
+
+    // Guarded by this
+    private DeviceSession newSession(String address) {
+        DeviceSession session = new DeviceSession(transports.create(address), executor, ingest, store, watermarks,
+                zone, sessionListener, linkSettings, gattCache, dedup, cold, trace);
+        sessions.put(address, session);
+        return session;
+    }
+
+    // =========================
+    // Reconnection
+    // =========================
+    private void scheduleReconnect(DeviceSession lost) {
+        ReconnectPolicy policy = reconnectPolicy;
+        String address = lost.address();
+        int attempt;
+        long delay;
+        synchronized (this) {
+            if (lost.isPermanentFailure()) {
+                // Not a cuff we can use: forget it, the user may pick it again
+                wanted.remove(address);
+                attempts.remove(address);
+                return;
+            }
+            if (policy == null || !wanted.contains(address) || pending.containsKey(address)
+                    || sessions.containsKey(address)) {
+                return;
+            }
+            attempt = attempts.merge(address, 1, Integer::sum);
+            delay = policy.delayMillis(attempt, jitter);
+            try {
+                pending.put(address, executor.schedule(() -> reconnect(address, attempt), delay,
+                        TimeUnit.MILLISECONDS));
+            } catch (RejectedExecutionException e) {
+                return; // shutting down
+            }
+        }
+        if (trace.on(Category.GATT, Level.INFO)) {
+            listener.onLog(lost, Trace.format("Reconnect: attempt {} in {} ms ({})", attempt, delay,
+                    policy.autoConnect(attempt) ? "background" : "direct"));
+        }
+    }
+
+    private void reconnect(String address, int attempt) {
+        ReconnectPolicy policy = reconnectPolicy;
+        DeviceSession session;
+        synchronized (this) {
+            pending.remove(address);
+            if (policy == null || !wanted.contains(address) || sessions.containsKey(address)) return;
+            if (sessions.size() >= maxSessions) {
+                // Slots taken by other cuffs meanwhile: try again later
+                rejected++;
+                attempts.merge(address, 1, Integer::sum);
+                long delay = policy.delayMillis(attempt + 1, jitter);
+                try {
+                    pending.put(address, executor.schedule(() -> reconnect(address, attempt + 1), delay,
+                            TimeUnit.MILLISECONDS));
+                } catch (RejectedExecutionException e) {
+                    // shutting down
+                }
+                return;
+            }
+            reconnects++;
+            session = newSession(address);
+        }
+        if (!session.connect(policy.autoConnect(attempt))) {
+            // Removed as a lost link, so the next attempt is scheduled
+            remove(session);
+            scheduleReconnect(session);
+        }
+    }
+
+    // Guarded by this
+    private void cancelReconnect(String address) {
+        ScheduledFuture<?> f = pending.remove(address);
+        if (f != null) f.cancel(false);
+    }
+
+    private synchronized void remove(DeviceSession session) {
+        // Only if it is still the registered one (a new session may reuse the address)
+        if (!sessions.remove(session.address(), session)) return;
+        if (ended.size() == ENDED_HISTORY) ended.removeFirst();
+        ended.addLast(session);
+    }
+
+    private final DeviceSession.Listener sessionListener = new DeviceSession.Listener() {
+        @Override
+        public void onStateChanged(DeviceSession session, DeviceSession.State state) {
+            if (state == DeviceSession.State.READY) {
+                synchronized (SessionManager.this) {
+                    attempts.remove(session.address());
+                }
+            } else if (state == DeviceSession.State.DISCONNECTED || state == DeviceSession.State.CLOSED) {
+                remove(session);
+            }
+            listener.onStateChanged(session, state);
+            // After the listener saw the session end
+            if (state == DeviceSession.State.DISCONNECTED) scheduleReconnect(session);
+        }
+
+        @Override
+        public void onMeasurement(DeviceSession session, MeasurementSnapshot snapshot) {
+            listener.onMeasurement(session, snapshot);
+        }
+
+        @Override
+        public void onFeature(DeviceSession session, int feature) {
+            listener.onFeature(session, feature);
+        }
+
+        @Override
+        public void onLog(DeviceSession session, String message) {
+            listener.onLog(session, message);
+        }
+    };
+}
@@ -0,0 +1,113 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring buffer of status log lines.
+ * <p>
+ * Any thread can {@link #append} without locking: a writer claims a sequence number,
+ * then publishes its entry into slot {@code seq % capacity}, evicting whatever was
+ * there. A single reader (the UI thread) {@link #drain}s what is new since its cursor.
+ * Evicted entries are counted and optionally handed to a {@link Spill}.
+ */
+public final class StatusLog {
+
+    public static final class Entry {
+        public final long seq;
+        public final long timeMillis;
+        public final String text;
+
+        Entry(long seq, long timeMillis, String text) {
+            this.seq = seq;
+            this.timeMillis = timeMillis;
+            this.text = text;
+        }
+    }
+
+    public interface Sink {
+        void onEntry(Entry e);
+    }
+
+    /** Receives entries overwritten by newer ones. Called on the appending thread. */
+    public interface Spill {
+        void onEvicted(Entry e);
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final Spill spill;
+
+    public StatusLog(int capacity) {
+        this(capacity, null);
+    }
+
+    /** {@code capacity} is rounded up to a power of two. */
+    public StatusLog(int capacity, Spill spill) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.spill = spill;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /** @return the sequence number of the new entry */
+    public long append(String text) {
+        final long seq = next.getAndIncrement();
+        final Entry e = new Entry(seq, System.currentTimeMillis(), text);
+        final int i = (int) seq & mask;
+        while (true) {
+            Entry old = slots.get(i);
+            if (old != null && old.seq > seq) {
+                // A writer one lap ahead already filled the slot: ours is the oldest, evict it
+                evict(e);
+                return seq;
+            }
+            if (slots.compareAndSet(i, old, e)) {
+                if (old != null) evict(old);
+                return seq;
+            }
+        }
+    }
+
+    /**
+     * Visits, in order, the entries appended since {@code cursor} that are still in the
+     * buffer and already published.
+     *
+     * @return the cursor to pass to the next call
+     */
+    public long drain(long cursor, Sink sink) {
+        final long end = next.get();
+        if (end - cursor > capacity()) {
+            cursor = end - capacity(); // older entries were overwritten
+        }
+        for (; cursor < end; cursor++) {
+            Entry e = slots.get((int) cursor & mask);
+            if (e == null || e.seq < cursor) break; // claimed, not yet published: next drain
+            if (e.seq > cursor) continue;           // already overwritten
+            sink.onEntry(e);
+        }
+        return cursor;
+    }
+
+    /** Number of entries appended so far (also the next sequence number). */
+    public long appended() {
+        return next.get();
+    }
+
+    public long evicted() {
+        return evicted.get();
+    }
+
+    private void evict(Entry e) {
+        evicted.incrementAndGet();
+        if (spill != null) spill.onEvicted(e);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bloodpressuremonitoring;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * List adapter over the last {@code capacity} status lines.
+ * <p>
+ * Lines are kept in a circular array (no shifting when the oldest is dropped) and rows
+ * are recycled through {@code convertView}. UI thread only.
+ */
+final class StatusLogAdapter extends BaseAdapter implements StatusLog.Sink {
+
+    private final LayoutInflater inflater;
+    private final StatusLog.Entry[] lines;
+    private int start;
+    private int size;
+
+    StatusLogAdapter(LayoutInflater inflater, int capacity) {
+        this.inflater = inflater;
+        this.lines = new StatusLog.Entry[capacity];
+    }
+
+    @Override
+    public void onEntry(StatusLog.Entry e) {
+        if (size < lines.length) {
+            lines[(start + size++) % lines.length] = e;
+        } else {
+            lines[start] = e;
+            start = (start + 1) % lines.length;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return size;
+    }
+
+    @Override
+    public StatusLog.Entry getItem(int position) {
+        return lines[(start + position) % lines.length];
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).seq;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView row = (TextView) (convertView != null
+                ? convertView
+                : inflater.inflate(R.layout.item_status_log, parent, false));
+        row.setText("- " + getItem(position).text);
+        return row;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link StatusLog.Spill} that appends evicted lines to a text file.
+ * <p>
+ * Appending threads only enqueue (lock-free); a background thread does the I/O.
+ */
+public final class StatusLogFileSpill implements StatusLog.Spill {
+
+    private final File file;
+    private final ConcurrentLinkedQueue<StatusLog.Entry> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "status-log-spill");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Runnable flushTask = this::flush;
+
+    private Writer writer;
+
+    public StatusLogFileSpill(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void onEvicted(StatusLog.Entry e) {
+        pending.offer(e);
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                io.execute(flushTask);
+            } catch (RejectedExecutionException closed) {
+                pending.clear();
+            }
+        }
+    }
+
+    /** Flushes what is pending and stops the writer thread. */
+    public void close() {
+        io.execute(() -> {
+            flush();
+            closeWriter();
+        });
+        io.shutdown();
+    }
+
+    private void flush() {
+        scheduled.set(false);
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            }
+            StatusLog.Entry e;
+            while ((e = pending.poll()) != null) {
+                writer.write(Long.toString(e.timeMillis));
+                writer.write(' ');
+                writer.write(e.text);
+                writer.write('\n');
+            }
+            writer.flush();
+        } catch (IOException ex) {
+            // Spilling is best effort: drop what we could not write
+            pending.clear();
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Persistent per-device high-watermark: the highest Blood Pressure Record (0x2B36)
+ * sequence number received from each device.
+ * <p>
+ * Stored as a small properties file keyed by device address; {@link #save()} writes
+ * a temporary file and renames it, so a crash never leaves a half-written file.
+ */
+public final class SyncWatermarks {
+
+    /** No record received from this device yet. */
+    public static final int NONE = -1;
+
+    private final File file;
+    private final Properties values = new Properties();
+    private boolean dirty;
+
+    public SyncWatermarks(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                values.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                // Unreadable: behave as if never synced (next sync is a full one)
+                values.clear();
+            }
+        }
+    }
+
+    public synchronized int get(long device) {
+        String v = values.getProperty(MeasurementRecord.deviceAddress(device));
+        if (v == null) return NONE;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            return NONE;
+        }
+    }
+
+    public synchronized void set(long device, int sequence) {
+        String key = MeasurementRecord.deviceAddress(device);
+        if (sequence == NONE) {
+            dirty |= values.remove(key) != null;
+        } else {
+            dirty |= !Integer.toString(sequence).equals(values.put(key, Integer.toString(sequence)));
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        if (!dirty) return;
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            values.store(out, "Highest 0x2B36 sequence number per device");
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("cannot replace " + file);
+        }
+        dirty = false;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records/s and bytes/s of one bulk transfer.
+ * <p>
+ * {@link #start} and {@link #stop} bracket the transfer (any thread); {@link #onRecord}
+ * and {@link #onBytes} are called by the ingest thread for every record and record
+ * notification. After {@link #stop} the rates stay readable until the next start.
+ */
+public final class ThroughputMeter {
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long elapsedNanos = -1; // -1 while running or never started
+    private volatile boolean running;
+
+    public void start(long nowNanos) {
+        records.set(0);
+        bytes.set(0);
+        startNanos = nowNanos;
+        elapsedNanos = -1;
+        running = true;
+    }
+
+    public void stop(long nowNanos) {
+        if (!running) return;
+        running = false;
+        elapsedNanos = Math.max(0, nowNanos - startNanos);
+    }
+
+    public void onRecord() {
+        if (running) records.incrementAndGet();
+    }
+
+    public void onBytes(int n) {
+        if (running) bytes.addAndGet(n);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long records() {
+        return records.get();
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+
+    /** Duration of the last completed transfer, -1 if none. */
+    public long elapsedMillis() {
+        long e = elapsedNanos;
+        return e < 0 ? -1 : e / 1_000_000;
+    }
+
+    public double recordsPerSecond() {
+        return rate(records.get());
+    }
+
+    public double bytesPerSecond() {
+        return rate(bytes.get());
+    }
+
+    private double rate(long count) {
+        long e = elapsedNanos;
+        return e <= 0 ? 0 : count * 1e9 / e;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d records, %d B in %d ms -> %.1f records/s, %.1f kB/s",
+                records(), bytes(), elapsedMillis(), recordsPerSecond(), bytesPerSecond() / 1000);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Arrays;
+
+/**
+ * Sparse time index over a sequence of timestamps in append order: per block of
+ * {@code blockRecords} positions, the min and max time, plus the running prefix-max and
+ * suffix-min. A range query finds its candidate blocks with two binary searches even
+ * when older times (RACP history) are appended after newer ones; blocks in between are
+ * then skipped on their own min/max. Appends in time order cost O(1).
+ * <p>
+ * Used by {@link MeasurementStore} for the whole store and for each user partition.
+ * Not thread-safe.
+ */
+final class TimeIndex {
+
+    private final int blockRecords;
+    private long size;
+
+    private long[] blockMin = new long[4];
+    private long[] blockMax = new long[4];
+    private long[] prefixMax = new long[4]; // max time in blocks [0..b], non-decreasing
+    private long[] suffixMin = new long[4]; // min time in blocks [b..end], non-decreasing
+
+    TimeIndex(int blockRecords) {
+        this.blockRecords = blockRecords;
+    }
+
+    int blockRecords() {
+        return blockRecords;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int blockCount() {
+        return (int) ((size + blockRecords - 1) / blockRecords);
+    }
+
+    /** Time of the next position (position {@link #size()}). */
+    void add(long t) {
+        long position = size++;
+        int b = (int) (position / blockRecords);
+        ensureCapacity(b + 1);
+        if (position % blockRecords == 0) {
+            blockMin[b] = t;
+            blockMax[b] = t;
+            prefixMax[b] = b > 0 ? Math.max(prefixMax[b - 1], t) : t;
+            suffixMin[b] = t;
+        } else {
+            blockMin[b] = Math.min(blockMin[b], t);
+            blockMax[b] = Math.max(blockMax[b], t);
+            prefixMax[b] = Math.max(prefixMax[b], t);
+            suffixMin[b] = Math.min(suffixMin[b], t);
+        }
+        // Out-of-order time: lower the suffix minima of earlier blocks. Stops at once for ordered appends.
+        for (int k = b - 1; k >= 0 && suffixMin[k] > t; k--) {
+            suffixMin[k] = t;
+        }
+    }
+
+    /** First block that can hold a time {@code >= from}; {@link #blockCount()} if none. */
+    int firstBlock(long from) {
+        int lo = 0, hi = blockCount(); // answer in [0, blocks]
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prefixMax[mid] >= from) hi = mid; else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /** Last block that can hold a time {@code < to}; -1 if none. */
+    int lastBlock(long to) {
+        int lo = -1, hi = blockCount() - 1; // answer in [-1, blocks - 1]
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (suffixMin[mid] < to) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /** True if block {@code b} may hold a time in {@code [from, to)}. */
+    boolean overlaps(int b, long from, long to) {
+        return blockMax[b] >= from && blockMin[b] < to;
+    }
+
+    private void ensureCapacity(int blocks) {
+        if (blocks <= blockMin.length) return;
+        int n = Math.max(blocks, blockMin.length * 2);
+        blockMin = Arrays.copyOf(blockMin, n);
+        blockMax = Arrays.copyOf(blockMax, n);
+        prefixMax = Arrays.copyOf(prefixMax, n);
+        suffixMin = Arrays.copyOf(suffixMin, n);
+    }
+}
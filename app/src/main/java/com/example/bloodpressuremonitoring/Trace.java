@@ -0,0 +1,175 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Arrays;
+
+/**
+ * Level-gated trace switches, shared by every session.
+ * <p>
+ * Each {@link Category} has its own threshold; a message is built only if its level
+ * passes. Sessions trace through a {@link Tracer}, whose overloads take the arguments
+ * unformatted (primitives stay primitives) and fill the {@code {}} placeholders only once
+ * the gate passed: with tracing off, a call costs a volatile read and a compare, no
+ * string work and no allocation. Per-frame work that needs more than that is wrapped in
+ * {@link Tracer#on} by the caller.
+ * <p>
+ * An optional {@link TraceRecorder} also gets the raw frames and the emitted lines in a
+ * compact binary file, decoded after the fact with {@link TraceRecorder#decode}.
+ */
+public final class Trace {
+
+    /** From most to least important; a threshold enables its level and all above. */
+    public enum Level {
+        ERROR, WARN, INFO, DEBUG, VERBOSE
+    }
+
+    public enum Category {
+        GATT,       // connection, discovery, CCCDs
+        LINK,       // MTU, connection priority, PHY
+        RACP,       // record access control point, sync progress
+        FRAMES,     // raw notification hex dumps
+        DECODE,     // parsed measurements and records, duplicates
+        STORE       // measurement store and watermarks
+    }
+
+    /** Where emitted lines go. Called on the tracing thread. */
+    public interface Sink {
+        void onTrace(Category category, Level level, String message);
+    }
+
+    private static final Category[] CATEGORIES = Category.values();
+    private static final Level[] LEVELS = Level.values();
+
+    // Number of enabled levels per category (0: off). Copy-on-write, so readers see a whole array
+    private volatile int[] thresholds;
+    private volatile TraceRecorder recorder;
+
+    /** Every category at {@link Level#INFO}, raw frames off. */
+    public Trace() {
+        int[] t = new int[CATEGORIES.length];
+        for (Category c : CATEGORIES) t[c.ordinal()] = Level.INFO.ordinal() + 1;
+        t[Category.FRAMES.ordinal()] = 0;
+        thresholds = t;
+    }
+
+    public boolean on(Category category, Level level) {
+        return level.ordinal() < thresholds[category.ordinal()];
+    }
+
+    public synchronized void setLevel(Category category, Level level) {
+        int[] t = thresholds.clone();
+        t[category.ordinal()] = level.ordinal() + 1;
+        thresholds = t;
+    }
+
+    /** Sets every category. */
+    public synchronized void setLevel(Level level) {
+        int[] t = new int[CATEGORIES.length];
+        Arrays.fill(t, level.ordinal() + 1);
+        thresholds = t;
+    }
+
+    public synchronized void off(Category category) {
+        int[] t = thresholds.clone();
+        t[category.ordinal()] = 0;
+        thresholds = t;
+    }
+
+    /** Highest enabled level of {@code category}, null if it is off. */
+    public Level level(Category category) {
+        int n = thresholds[category.ordinal()];
+        return n == 0 ? null : LEVELS[n - 1];
+    }
+
+    /** Binary recording of frames and emitted lines; null to stop. The caller closes it. */
+    public void setRecorder(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public TraceRecorder recorder() {
+        return recorder;
+    }
+
+    /** A tracer for one source (a session), emitting to {@code sink}. */
+    public Tracer tracer(String source, Sink sink) {
+        return new Tracer(this, source, sink);
+    }
+
+    /** Replaces each {@code {}} of {@code template} with the next argument. */
+    static String format(String template, Object... args) {
+        StringBuilder sb = new StringBuilder(template.length() + 16 * args.length);
+        int from = 0;
+        for (Object arg : args) {
+            int at = template.indexOf("{}", from);
+            if (at < 0) break;
+            sb.append(template, from, at).append(arg);
+            from = at + 2;
+        }
+        return sb.append(template, from, template.length()).toString();
+    }
+
+    /**
+     * Traces one source. Same thread rules as its sink; the gates are shared with the
+     * owning {@link Trace}, so level changes apply to every session at once.
+     */
+    public static final class Tracer {
+        private final Trace trace;
+        private final String source;
+        private final Sink sink;
+
+        Tracer(Trace trace, String source, Sink sink) {
+            this.trace = trace;
+            this.source = source;
+            this.sink = sink;
+        }
+
+        public boolean on(Category category, Level level) {
+            return trace.on(category, level);
+        }
+
+        public void log(Category category, Level level, String message) {
+            if (trace.on(category, level)) emit(category, level, message);
+        }
+
+        public void log(Category category, Level level, String template, long a) {
+            if (trace.on(category, level)) emit(category, level, format(template, a));
+        }
+
+        public void log(Category category, Level level, String template, long a, long b) {
+            if (trace.on(category, level)) emit(category, level, format(template, a, b));
+        }
+
+        public void log(Category category, Level level, String template, Object a) {
+            if (trace.on(category, level)) emit(category, level, format(template, a));
+        }
+
+        public void log(Category category, Level level, String template, Object a, Object b) {
+            if (trace.on(category, level)) emit(category, level, format(template, a, b));
+        }
+
+        public void log(Category category, Level level, String template, Object a, Object b, Object c) {
+            if (trace.on(category, level)) emit(category, level, format(template, a, b, c));
+        }
+
+        /** {@code label} followed by the hex dump of the first {@code length} bytes. */
+        public void hex(Category category, Level level, String label, byte[] data, int length) {
+            if (!trace.on(category, level)) return;
+            StringBuilder sb = new StringBuilder(label.length() + 3 * length);
+            sb.append(label);
+            if (data == null) sb.append("(null)");
+            else Hex.appendHex(sb, data, 0, length);
+            emit(category, level, sb.toString());
+        }
+
+        /** Records a raw frame if a recorder is attached; nothing is formatted. */
+        public void frame(int channel, byte[] data, int length, long receivedNanos) {
+            TraceRecorder r = trace.recorder;
+            if (r != null) r.frame(source, channel, data, length, receivedNanos);
+        }
+
+        private void emit(Category category, Level level, String message) {
+            sink.onTrace(category, level, message);
+            TraceRecorder r = trace.recorder;
+            if (r != null) r.event(source, category, level, message);
+        }
+    }
+}
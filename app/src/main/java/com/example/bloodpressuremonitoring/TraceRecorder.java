@@ -0,0 +1,337 @@
+package com.example.bloodpressuremonitoring;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compact binary trace file: raw notification frames and emitted trace lines, to decode
+ * field issues after the fact ({@link #decode}).
+ * <p>
+ * Records are appended under a short lock into one of two preallocated buffers; a full
+ * buffer is handed to a background thread for the write while the other one fills. If
+ * both are busy the record is dropped and counted rather than blocking the caller (the
+ * ingest thread).
+ * <p>
+ * Format: header {@code "BPTR"}, version (1 byte), start wall-clock millis (8 bytes,
+ * big-endian), then records, each starting with a type byte. Times are microseconds since
+ * the start and lengths are unsigned varints.
+ * <pre>
+ * SOURCE 0x01  id(1) length address(UTF-8)
+ * FRAME  0x02  time id(1) channel(1) length bytes
+ * EVENT  0x03  time id(1) category(1) level(1) length message(UTF-8)
+ * </pre>
+ */
+public final class TraceRecorder implements AutoCloseable {
+
+    static final int MAGIC = 0x42505452; // "BPTR"
+    static final int VERSION = 1;
+
+    static final int SOURCE = 0x01;
+    static final int FRAME = 0x02;
+    static final int EVENT = 0x03;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_SOURCES = 255;
+
+    private final OutputStream out;
+    private final long startNanos;
+    private final ArrayBlockingQueue<byte[]> free = new ArrayBlockingQueue<>(2);
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "trace-recorder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this
+    private final Map<String, Integer> sources = new HashMap<>();
+    private byte[] buffer;
+    private int position;
+    private boolean closed;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile IOException failure;
+
+    public TraceRecorder(File file) throws IOException {
+        this(new FileOutputStream(file, false));
+    }
+
+    TraceRecorder(OutputStream out) throws IOException {
+        this.out = out;
+        this.startNanos = System.nanoTime();
+        free.add(new byte[BUFFER_SIZE]);
+        buffer = new byte[BUFFER_SIZE];
+        putInt(MAGIC);
+        buffer[position++] = VERSION;
+        putLong(System.currentTimeMillis());
+    }
+
+    /** Raw frame as received ({@code receivedNanos} from {@link System#nanoTime()}). */
+    public synchronized void frame(String source, int channel, byte[] data, int length, long receivedNanos) {
+        int id = sourceId(source);
+        if (id < 0 || !reserve(1 + 5 + 1 + 1 + 5 + length)) return;
+        buffer[position++] = FRAME;
+        putVarint(micros(receivedNanos));
+        buffer[position++] = (byte) id;
+        buffer[position++] = (byte) channel;
+        putVarint(length);
+        if (length > 0) System.arraycopy(data, 0, buffer, position, length);
+        position += length;
+        records.incrementAndGet();
+    }
+
+    /** An emitted trace line. */
+    public synchronized void event(String source, Trace.Category category, Trace.Level level, String message) {
+        int id = sourceId(source);
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        if (id < 0 || !reserve(1 + 5 + 1 + 1 + 1 + 5 + text.length)) return;
+        buffer[position++] = EVENT;
+        putVarint(micros(System.nanoTime()));
+        buffer[position++] = (byte) id;
+        buffer[position++] = (byte) category.ordinal();
+        buffer[position++] = (byte) level.ordinal();
+        putVarint(text.length);
+        System.arraycopy(text, 0, buffer, position, text.length);
+        position += text.length;
+        records.incrementAndGet();
+    }
+
+    /** Records written or queued for writing. */
+    public long records() {
+        return records.get();
+    }
+
+    /** Records lost because both buffers were full, or too large for one. */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /** Writes what is buffered, waits for the writer thread and closes the file. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (position > 0) submit(buffer, position);
+            buffer = null;
+        }
+        io.shutdown();
+        try {
+            io.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (failure != null) throw failure;
+    }
+
+    // =========================
+    // Writing (guarded by this)
+    // =========================
+    private int sourceId(String source) {
+        if (closed) return -1;
+        Integer id = sources.get(source);
+        if (id != null) return id;
+        if (sources.size() >= MAX_SOURCES) {
+            dropped.incrementAndGet();
+            return -1;
+        }
+        byte[] name = source.getBytes(StandardCharsets.UTF_8);
+        if (!reserve(1 + 1 + 5 + name.length)) return -1;
+        int newId = sources.size();
+        sources.put(source, newId);
+        buffer[position++] = SOURCE;
+        buffer[position++] = (byte) newId;
+        putVarint(name.length);
+        System.arraycopy(name, 0, buffer, position, name.length);
+        position += name.length;
+        return newId;
+    }
+
+    // Makes room for n bytes, swapping buffers if needed; false (and counted) if there is none
+    private boolean reserve(int n) {
+        if (n > BUFFER_SIZE) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (position + n <= BUFFER_SIZE) return true;
+        byte[] next = free.poll();
+        if (next == null) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        submit(buffer, position);
+        buffer = next;
+        position = 0;
+        return true;
+    }
+
+    private void submit(byte[] full, int length) {
+        try {
+            io.execute(() -> {
+                try {
+                    if (failure == null) out.write(full, 0, length);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    free.offer(full);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private long micros(long nanos) {
+        return Math.max(0, (nanos - startNanos) / 1_000);
+    }
+
+    private void putVarint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[position++] = (byte) v;
+    }
+
+    private void putInt(int v) {
+        for (int shift = 24; shift >= 0; shift -= 8) buffer[position++] = (byte) (v >>> shift);
+    }
+
+    private void putLong(long v) {
+        for (int shift = 56; shift >= 0; shift -= 8) buffer[position++] = (byte) (v >>> shift);
+    }
+
+    // =========================
+    // Post-mortem decoding
+    // =========================
+
+    /** Decodes a trace file into text, one line per frame or event. */
+    public static void decode(File file, Appendable text) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            decode(in, text);
+        }
+    }
+
+    /**
+     * Decodes a trace stream into text: {@code +seconds [source] FRAME channel hex}, with
+     * the decoded values for measurement frames, or {@code +seconds [source] LEVEL CATEGORY message}.
+     * A truncated last record (crash while writing) ends the decoding quietly.
+     */
+    public static void decode(InputStream input, Appendable text) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != MAGIC) throw new IOException("not a trace file");
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("unsupported trace version " + version);
+        long startMillis = in.readLong();
+        text.append("# trace started at ").append(String.valueOf(startMillis)).append(" ms\n");
+
+        List<String> names = new ArrayList<>();
+        BpsMeasurement m = new BpsMeasurement();
+        Trace.Category[] categories = Trace.Category.values();
+        Trace.Level[] levels = Trace.Level.values();
+        try {
+            int type;
+            while ((type = in.read()) >= 0) {
+                switch (type) {
+                    case SOURCE: {
+                        int id = in.readUnsignedByte();
+                        String name = new String(readBytes(in), StandardCharsets.UTF_8);
+                        while (names.size() <= id) names.add("?");
+                        names.set(id, name);
+                        break;
+                    }
+                    case FRAME: {
+                        long micros = readVarint(in);
+                        String source = nameOf(names, in.readUnsignedByte());
+                        int channel = in.readUnsignedByte();
+                        byte[] data = readBytes(in);
+                        StringBuilder sb = line(micros, source).append("FRAME ").append(channelName(channel)).append(' ');
+                        Hex.appendHex(sb, data, 0, data.length);
+                        if (channel == DeviceSession.CHANNEL_MEASUREMENT) {
+                            sb.append(BpsMeasurementCodec.decode(data, m) ? " -> " + describe(m) : " -> MALFORMED");
+                        }
+                        text.append(sb).append('\n');
+                        break;
+                    }
+                    case EVENT: {
+                        long micros = readVarint(in);
+                        String source = nameOf(names, in.readUnsignedByte());
+                        Trace.Category category = categories[in.readUnsignedByte()];
+                        Trace.Level level = levels[in.readUnsignedByte()];
+                        String message = new String(readBytes(in), StandardCharsets.UTF_8);
+                        text.append(line(micros, source).append(level).append(' ').append(category).append(' ')
+                                .append(message)).append('\n');
+                        break;
+                    }
+                    default:
+                        throw new IOException("corrupt trace: record type " + type);
+                }
+            }
+        } catch (EOFException truncated) {
+            text.append("# truncated record at end of trace\n");
+        }
+    }
+
+    private static StringBuilder line(long micros, String source) {
+        return new StringBuilder(96).append(String.format(Locale.US, "+%d.%06d [", micros / 1_000_000, micros % 1_000_000))
+                .append(source).append("] ");
+    }
+
+    private static String nameOf(List<String> names, int id) {
+        return id < names.size() ? names.get(id) : "#" + id;
+    }
+
+    private static String channelName(int channel) {
+        switch (channel) {
+            case DeviceSession.CHANNEL_MEASUREMENT: return "measurement";
+            case DeviceSession.CHANNEL_RECORD: return "record";
+            case DeviceSession.CHANNEL_RACP: return "racp";
+            default: return "other";
+        }
+    }
+
+    private static String describe(BpsMeasurement m) {
+        return String.format(Locale.US, "SYS=%.1f DIA=%.1f MAP=%.1f %s", m.systolic, m.diastolic, m.map, m.unit())
+                + (m.hasTimestamp() ? " ts=" + BpsMeasurement.formatTimestamp(m.timestamp) : "")
+                + (m.hasPulseRate() ? " pulse=" + m.pulseRate : "")
+                + (m.hasUserId() ? " user=" + m.userId : "");
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        long n = readVarint(in);
+        if (n > BUFFER_SIZE) throw new IOException("corrupt trace: length " + n);
+        byte[] b = new byte[(int) n];
+        in.readFully(b);
+        return b;
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("corrupt trace: varint");
+    }
+}
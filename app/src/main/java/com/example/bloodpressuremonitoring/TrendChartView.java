@@ -0,0 +1,371 @@
+package com.example.bloodpressuremonitoring;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import java.util.TimeZone;
+
+/**
+ * Systolic / diastolic / pulse trend over time, for histories of tens of thousands of
+ * readings.
+ * <p>
+ * Only the visible time range is drawn, found with two binary searches per line, and a
+ * range holding more points than half the width in pixels is reduced with {@link Lttb}
+ * first: a frame never strokes more than a few hundred segments whatever the history.
+ * The selected indices, the {@link Path}s and the labels live in buffers allocated with
+ * the view (or on resize), so drawing, panning and zooming allocate nothing; the paths
+ * are rebuilt only when the range, the size or the data changed.
+ * <p>
+ * Drag to pan, pinch to zoom (one hour to the whole history), double tap to switch
+ * between the last 30 days and everything. While the newest reading is in view, the
+ * range follows new readings. UI thread only.
+ */
+public final class TrendChartView extends View {
+
+    private static final int SYSTOLIC = 0;
+    private static final int DIASTOLIC = 1;
+    private static final int PULSE = 2;
+    private static final int LINES = 3;
+
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final long MIN_SPAN = HOUR_MS;
+    private static final long DEFAULT_SPAN = 30 * DAY_MS;
+
+    // Reference lines (mmHg): ACC/AHA thresholds, see BpCategory
+    private static final float[] GRID = {80f, 120f, 140f};
+    private static final String[] GRID_LABELS = {"80", "120", "140"};
+
+    private TrendSeries[] series = TrendSeries.lines(1024);
+    private final Path[] paths = new Path[LINES];
+    private final Paint[] linePaints = new Paint[LINES];
+    private final int[] counts = new int[LINES];
+    private int[][] selected = new int[LINES][0];
+    private final Paint gridPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // Visible range, epoch ms
+    private long viewStart;
+    private long viewEnd;
+    private boolean followLatest = true;
+
+    // What the paths were built for
+    private boolean pathsValid;
+    private float yMin;
+    private float yMax;
+
+    private final TimeZone timeZone = TimeZone.getDefault();
+    private final char[] startLabel = new char[8]; // dd/MM/yy
+    private final char[] endLabel = new char[8];
+
+    private final float density;
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+
+    public TrendChartView(Context context) {
+        this(context, null);
+    }
+
+    public TrendChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        density = getResources().getDisplayMetrics().density;
+        int[] colors = {Color.rgb(0xC6, 0x28, 0x28), Color.rgb(0x15, 0x65, 0xC0), Color.rgb(0x75, 0x75, 0x75)};
+        for (int i = 0; i < LINES; i++) {
+            paths[i] = new Path();
+            Paint p = new Paint(Paint.ANTI_ALIAS_FLAG);
+            p.setStyle(Paint.Style.STROKE);
+            p.setStrokeWidth((i == PULSE ? 1f : 2f) * density);
+            p.setStrokeJoin(Paint.Join.ROUND);
+            p.setColor(colors[i]);
+            linePaints[i] = p;
+        }
+        gridPaint.setColor(Color.rgb(0xDD, 0xDD, 0xDD));
+        gridPaint.setStrokeWidth(density);
+        labelPaint.setColor(Color.rgb(0x55, 0x55, 0x55));
+        labelPaint.setTextSize(10 * density);
+
+        scaleDetector = new ScaleGestureDetector(context, scaleListener);
+        gestureDetector = new GestureDetector(context, gestureListener);
+    }
+
+    // =========================
+    // Data (UI thread)
+    // =========================
+
+    /** Adds one reading in mmHg ({@code pulseRate} NaN when absent). */
+    public void add(long timeMillis, float systolic, float diastolic, float pulseRate) {
+        boolean wasEmpty = series[SYSTOLIC].size() == 0;
+        series[SYSTOLIC].add(timeMillis, systolic);
+        series[DIASTOLIC].add(timeMillis, diastolic);
+        series[PULSE].add(timeMillis, pulseRate);
+        if (wasEmpty) {
+            showLast(DEFAULT_SPAN);
+        } else if (followLatest && timeMillis > viewEnd - (viewEnd - viewStart) / 20) {
+            // Keep the newest reading in view, with a small margin on the right
+            long span = viewEnd - viewStart;
+            viewEnd = timeMillis + span / 20;
+            viewStart = viewEnd - span;
+        }
+        invalidateChart();
+    }
+
+    /** Adds a stored record, converted to mmHg. */
+    public void add(MeasurementRecord r) {
+        float k = (r.flags & BpsMeasurement.FLAG_UNIT_KPA) != 0 ? BpStats.KPA_TO_MMHG : 1f;
+        add(r.timeMillis, r.systolic * k, r.diastolic * k, r.hasPulseRate() ? r.pulseRate : Float.NaN);
+    }
+
+    /**
+     * Shows {@code lines} ({@link TrendSeries#lines}), e.g. the history loaded off the main
+     * thread, instead of the current ones; they are this view's from now on.
+     */
+    void setLines(TrendSeries[] lines) {
+        series = lines;
+        showLast(DEFAULT_SPAN);
+        invalidateChart();
+    }
+
+    public void clear() {
+        for (TrendSeries s : series) s.clear();
+        followLatest = true;
+        invalidateChart();
+    }
+
+    /** Number of readings (systolic points). */
+    public int size() {
+        return series[SYSTOLIC].size();
+    }
+
+    private void showLast(long span) {
+        TrendSeries s = series[SYSTOLIC];
+        long last = s.size() == 0 ? System.currentTimeMillis() : s.time(s.size() - 1);
+        viewEnd = last + span / 20;
+        viewStart = viewEnd - span;
+        followLatest = true;
+    }
+
+    private void showAll() {
+        TrendSeries s = series[SYSTOLIC];
+        if (s.size() == 0) return;
+        long first = s.time(0);
+        long last = s.time(s.size() - 1);
+        long span = Math.max(MIN_SPAN, last - first);
+        viewStart = first - span / 20;
+        viewEnd = last + span / 20;
+        followLatest = true;
+    }
+
+    private void invalidateChart() {
+        pathsValid = false;
+        postInvalidateOnAnimation();
+    }
+
+    // =========================
+    // Drawing
+    // =========================
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int threshold = threshold(w);
+        // The visible range plus one point on each side
+        for (int i = 0; i < LINES; i++) selected[i] = new int[threshold + 2];
+        pathsValid = false;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float left = getPaddingLeft() + 24 * density;
+        float right = getWidth() - getPaddingRight();
+        float top = getPaddingTop();
+        float bottom = getHeight() - getPaddingBottom() - 14 * density;
+        if (right <= left || bottom <= top) return;
+
+        if (series[SYSTOLIC].size() == 0) {
+            canvas.drawText("Aucune mesure", left, (top + bottom) / 2, labelPaint);
+            return;
+        }
+        if (!pathsValid) rebuildPaths(left, right, top, bottom);
+
+        for (int g = 0; g < GRID.length; g++) {
+            if (GRID[g] < yMin || GRID[g] > yMax) continue;
+            float y = yOf(GRID[g], top, bottom);
+            canvas.drawLine(left, y, right, y, gridPaint);
+            canvas.drawText(GRID_LABELS[g], getPaddingLeft(), y + 4 * density, labelPaint);
+        }
+        for (int i = LINES - 1; i >= 0; i--) canvas.drawPath(paths[i], linePaints[i]);
+
+        float baseline = getHeight() - getPaddingBottom() - 2 * density;
+        canvas.drawText(startLabel, 0, startLabel.length, left, baseline, labelPaint);
+        float endWidth = labelPaint.measureText(endLabel, 0, endLabel.length);
+        canvas.drawText(endLabel, 0, endLabel.length, right - endWidth, baseline, labelPaint);
+    }
+
+    // Downsamples each line over the visible range, then maps the kept points
+    private void rebuildPaths(float left, float right, float top, float bottom) {
+        int threshold = selected[0].length - 2;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < LINES; i++) {
+            TrendSeries s = series[i];
+            int from = Math.max(0, s.lowerBound(viewStart) - 1);
+            int to = Math.min(s.size(), s.lowerBound(viewEnd) + 1);
+            counts[i] = to - from < 1 ? 0 : Lttb.select(s.times(), s.values(), from, to, threshold, selected[i]);
+            for (int k = 0; k < counts[i]; k++) {
+                float v = s.value(selected[i][k]);
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+        }
+        if (min > max) {
+            min = 60f;
+            max = 160f;
+        }
+        // Some headroom, and never flatter than 40 mmHg
+        float pad = Math.max(5f, (max - min) * 0.08f);
+        yMin = min - pad;
+        yMax = Math.max(max + pad, yMin + 40f);
+
+        double xScale = (right - left) / (double) (viewEnd - viewStart);
+        for (int i = 0; i < LINES; i++) {
+            Path p = paths[i];
+            p.rewind();
+            TrendSeries s = series[i];
+            for (int k = 0; k < counts[i]; k++) {
+                int index = selected[i][k];
+                float x = (float) (left + (s.time(index) - viewStart) * xScale);
+                float y = yOf(s.value(index), top, bottom);
+                if (k == 0) p.moveTo(x, y);
+                else p.lineTo(x, y);
+            }
+            // A lone point still shows as a dot
+            if (counts[i] == 1) p.lineTo(left + (float) ((s.time(selected[i][0]) - viewStart) * xScale) + 0.5f,
+                    yOf(s.value(selected[i][0]), top, bottom));
+        }
+        formatDate(viewStart, startLabel);
+        formatDate(viewEnd, endLabel);
+        pathsValid = true;
+    }
+
+    private float yOf(float value, float top, float bottom) {
+        return bottom - (value - yMin) / (yMax - yMin) * (bottom - top);
+    }
+
+    // One kept point per two pixels: beyond that, extra points only thicken the line
+    private static int threshold(int widthPixels) {
+        return Math.max(3, widthPixels / 2);
+    }
+
+    // "dd/MM/yy" in the default time zone, without Calendar or formatter objects
+    private void formatDate(long timeMillis, char[] out) {
+        long local = timeMillis + timeZone.getOffset(timeMillis);
+        long z = Math.floorDiv(local, DAY_MS) + 719_468; // days since 0000-03-01
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1_460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        twoDigits(out, 0, day);
+        out[2] = '/';
+        twoDigits(out, 3, month);
+        out[5] = '/';
+        twoDigits(out, 6, Math.floorMod(year, 100));
+    }
+
+    private static void twoDigits(char[] out, int at, int v) {
+        out[at] = (char) ('0' + v / 10);
+        out[at + 1] = (char) ('0' + v % 10);
+    }
+
+    // =========================
+    // Pan / zoom
+    // =========================
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN && getParent() != null) {
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    private final GestureDetector.SimpleOnGestureListener gestureListener =
+            new GestureDetector.SimpleOnGestureListener() {
+                @Override
+                public boolean onDown(MotionEvent e) {
+                    return true;
+                }
+
+                @Override
+                public boolean onScroll(MotionEvent e1, MotionEvent e2, float dx, float dy) {
+                    if (scaleDetector.isInProgress()) return false;
+                    long shift = (long) (dx * (double) (viewEnd - viewStart) / plotWidth());
+                    setRange(viewStart + shift, viewEnd + shift);
+                    return true;
+                }
+
+                @Override
+                public boolean onDoubleTap(MotionEvent e) {
+                    TrendSeries s = series[SYSTOLIC];
+                    boolean showingAll = s.size() > 0 && viewStart <= s.time(0) && viewEnd >= s.time(s.size() - 1);
+                    if (showingAll) showLast(DEFAULT_SPAN);
+                    else showAll();
+                    invalidateChart();
+                    return true;
+                }
+            };
+
+    private final ScaleGestureDetector.SimpleOnScaleGestureListener scaleListener =
+            new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                @Override
+                public boolean onScale(ScaleGestureDetector detector) {
+                    float factor = detector.getScaleFactor();
+                    if (factor <= 0f) return false;
+                    double span = viewEnd - viewStart;
+                    // The time under the fingers stays under the fingers
+                    float left = getPaddingLeft() + 24 * density;
+                    double focus = viewStart + (detector.getFocusX() - left) / plotWidth() * span;
+                    double newSpan = span / factor;
+                    setRange((long) (focus - (focus - viewStart) / span * newSpan),
+                            (long) (focus + (viewEnd - focus) / span * newSpan));
+                    return true;
+                }
+            };
+
+    private float plotWidth() {
+        return Math.max(1f, getWidth() - getPaddingLeft() - getPaddingRight() - 24 * density);
+    }
+
+    // Clamps the span to [MIN_SPAN, history + margins] and keeps some data in view
+    private void setRange(long start, long end) {
+        TrendSeries s = series[SYSTOLIC];
+        if (s.size() == 0) return;
+        long first = s.time(0);
+        long last = s.time(s.size() - 1);
+        long maxSpan = Math.max(DEFAULT_SPAN, (last - first) * 6 / 5);
+        long span = Math.max(MIN_SPAN, Math.min(maxSpan, end - start));
+        if (span != end - start) {
+            long center = start + (end - start) / 2;
+            start = center - span / 2;
+        }
+        start = Math.max(first - span + MIN_SPAN, Math.min(start, last - MIN_SPAN));
+        viewStart = start;
+        viewEnd = start + span;
+        followLatest = viewEnd >= last;
+        invalidateChart();
+    }
+}
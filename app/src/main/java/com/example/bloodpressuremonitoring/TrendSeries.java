@@ -0,0 +1,105 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Arrays;
+
+/**
+ * One time-ordered line of the trend chart (systolic, diastolic or pulse), as parallel
+ * primitive arrays that grow by doubling.
+ * <p>
+ * Appending a newer point is O(1) amortized; an older one (RACP history arriving after
+ * live readings) is inserted in place with one array shift. UI thread only, once handed
+ * to the view (the history lines are built on the loader thread, see {@link MeasurementHistory}).
+ */
+final class TrendSeries {
+
+    private long[] times;
+    private float[] values;
+    private int size;
+
+    TrendSeries(int initialCapacity) {
+        times = new long[Math.max(16, initialCapacity)];
+        values = new float[times.length];
+    }
+
+    /** Systolic, diastolic and pulse lines, in {@link TrendChartView}'s order. */
+    static TrendSeries[] lines(int initialCapacity) {
+        TrendSeries[] lines = new TrendSeries[3];
+        for (int i = 0; i < lines.length; i++) lines[i] = new TrendSeries(initialCapacity);
+        return lines;
+    }
+
+    /** Adds a stored record to {@link #lines}, converted to mmHg. */
+    static void add(TrendSeries[] lines, MeasurementRecord r) {
+        float k = (r.flags & BpsMeasurement.FLAG_UNIT_KPA) != 0 ? BpStats.KPA_TO_MMHG : 1f;
+        lines[0].add(r.timeMillis, r.systolic * k);
+        lines[1].add(r.timeMillis, r.diastolic * k);
+        lines[2].add(r.timeMillis, r.hasPulseRate() ? r.pulseRate : Float.NaN);
+    }
+
+    /** Non-finite values (e.g. an absent pulse) are ignored. */
+    void add(long timeMillis, float value) {
+        if (!Float.isFinite(value)) return;
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int at = size;
+        if (size > 0 && timeMillis < times[size - 1]) {
+            at = upperBound(timeMillis);
+            System.arraycopy(times, at, times, at + 1, size - at);
+            System.arraycopy(values, at, values, at + 1, size - at);
+        }
+        times[at] = timeMillis;
+        values[at] = value;
+        size++;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long time(int i) {
+        return times[i];
+    }
+
+    float value(int i) {
+        return values[i];
+    }
+
+    /** Backing arrays, valid up to {@link #size()} until the next {@link #add}. */
+    long[] times() {
+        return times;
+    }
+
+    float[] values() {
+        return values;
+    }
+
+    /** First index whose time is {@code >= t} ({@link #size()} if none). */
+    int lowerBound(long t) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index whose time is > t: equal times keep their arrival order
+    private int upperBound(long t) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] <= t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
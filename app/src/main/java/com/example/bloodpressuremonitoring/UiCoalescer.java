@@ -0,0 +1,79 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the latest of a burst of values to the UI thread at most once per frame.
+ * <p>
+ * Producers (ingest thread, session lanes) overwrite a "latest" slot and bump a counter;
+ * the first one after a render asks the {@link FrameScheduler} for a frame. The frame
+ * renders the latest value with the number of values published since the previous
+ * render, so a 10k-record RACP burst costs a few dozen main-thread callbacks instead of
+ * one message per frame received. Lock-free; {@link #publish} never blocks.
+ *
+ * @param <T> immutable value handed to the UI thread
+ */
+public final class UiCoalescer<T> {
+
+    /** Asks for one call of {@link #onFrame()} on the UI thread (e.g. next vsync). Any thread. */
+    public interface FrameScheduler {
+        void scheduleFrame();
+    }
+
+    /** Called on the UI thread; {@code latest} is null if only {@link #count()} was called. */
+    public interface Renderer<T> {
+        void render(T latest, long newValues);
+    }
+
+    private final FrameScheduler scheduler;
+    private final Renderer<T> renderer;
+
+    private final AtomicReference<T> latest = new AtomicReference<>();
+    private final AtomicLong unrendered = new AtomicLong();
+    private final AtomicBoolean framePending = new AtomicBoolean();
+
+    // Statistics
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+
+    public UiCoalescer(FrameScheduler scheduler, Renderer<T> renderer) {
+        this.scheduler = scheduler;
+        this.renderer = renderer;
+    }
+
+    /** Replaces the value to render and counts it. Any thread. */
+    public void publish(T value) {
+        latest.set(value);
+        count();
+    }
+
+    /** Counts a value without replacing the one to render (e.g. a history record). Any thread. */
+    public void count() {
+        unrendered.incrementAndGet();
+        published.incrementAndGet();
+        if (framePending.compareAndSet(false, true)) scheduler.scheduleFrame();
+    }
+
+    /** Renders what was published since the previous frame. UI thread, from the scheduler. */
+    public void onFrame() {
+        // Cleared first: a value published from here on schedules the next frame
+        framePending.set(false);
+        long n = unrendered.getAndSet(0);
+        // Already rendered by the frame that raced with its publish
+        if (n == 0) return;
+        frames.incrementAndGet();
+        renderer.render(latest.getAndSet(null), n);
+    }
+
+    /** Values published so far. */
+    public long published() {
+        return published.get();
+    }
+
+    /** Renders so far: the main-thread work, against {@link #published()} without coalescing. */
+    public long frames() {
+        return frames.get();
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ColdSegment}, {@link ColdTier} and
+ * {@link MeasurementCompactor}, with a size and scan comparison against the store.
+ */
+public class ColdSegmentTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long DEVICE = MeasurementRecord.deviceId("C0:FF:EE:12:34:56");
+    private static final long OTHER = MeasurementRecord.deviceId("C0:FF:EE:00:00:01");
+    // 2021-01-01T00:00:00Z
+    private static final long T0 = 1_609_459_200_000L;
+    private static final long HOUR_MS = 3_600_000L;
+
+    @Test
+    public void roundTrip_everyFieldExact() throws Exception {
+        Random random = new Random(11);
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            for (int i = 0; i < 3000; i++) {
+                MeasurementRecord r = reading(random, T0 + i * HOUR_MS, i);
+                switch (i % 7) {
+                    case 0: // live reading, receive time with ms, no user id
+                        r.timeMillis += 437;
+                        r.sequence = MeasurementRecord.NO_SEQUENCE;
+                        r.flags &= ~BpsMeasurement.FLAG_USER_ID;
+                        r.userId = BpsMeasurement.ABSENT;
+                        break;
+                    case 1: // kPa, "not a number" pulse, status bits
+                        r.flags |= BpsMeasurement.FLAG_UNIT_KPA | BpsMeasurement.FLAG_STATUS;
+                        r.systolic = 15.95f;
+                        r.diastolic = 10.6f;
+                        r.map = 12.4f;
+                        r.pulseRate = Float.NaN;
+                        r.status = 0x0125;
+                        break;
+                    case 2: // other cuff, older reading (RACP history after newer ones)
+                        r.device = OTHER;
+                        r.timeMillis -= 90 * 24 * HOUR_MS;
+                        break;
+                    default:
+                        break;
+                }
+                store.append(r);
+            }
+            // One block with a value that is not an SFLOAT: stored as float32, still exact
+            MeasurementRecord odd = reading(random, T0 + 5000 * HOUR_MS, 5000);
+            odd.map = (odd.systolic + 2 * odd.diastolic) / 3f + 0.001f;
+            store.append(odd);
+
+            File file = tmp.newFile("s.bpc");
+            ColdSegment.write(file, store, 0, store.size());
+            try (ColdSegment segment = ColdSegment.open(file)) {
+                assertEquals(store.size(), segment.size());
+                assertEquals((store.size() + ColdSegment.BLOCK_RECORDS - 1) / ColdSegment.BLOCK_RECORDS,
+                        segment.blockCount());
+                MeasurementRecord a = new MeasurementRecord();
+                MeasurementRecord b = new MeasurementRecord();
+                for (long i = 0; i < store.size(); i++) {
+                    assertSame("record " + i, store.read(i, a), segment.read(i, b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void query_decodesOnlyOverlappingBlocks() throws Exception {
+        Random random = new Random(5);
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            for (int i = 0; i < 20 * ColdSegment.BLOCK_RECORDS; i++) store.append(reading(random, T0 + i * HOUR_MS, i));
+            File file = tmp.newFile("s.bpc");
+            ColdSegment.write(file, store, 0, store.size());
+            try (ColdSegment segment = ColdSegment.open(file)) {
+                long from = T0 + 5_000 * HOUR_MS;
+                long to = T0 + 7_000 * HOUR_MS;
+                MeasurementRecord scratch = new MeasurementRecord();
+                long[] sum = new long[2];
+                long visited = segment.query(from, to, scratch, (index, r) -> {
+                    sum[0] += (long) r.systolic;
+                    return true;
+                });
+                store.query(from, to, new MeasurementRecord(), (index, r) -> {
+                    sum[1] += (long) r.systolic;
+                    return true;
+                });
+                assertEquals(2000, visited);
+                assertEquals(sum[1], sum[0]);
+                // Records 5000..6999: blocks 4 to 6
+                assertEquals(3, segment.blockDecodes());
+            }
+        }
+    }
+
+    @Test
+    public void fiveYears_atLeastFiveTimesSmaller_andScanMatchesTheStore() throws Exception {
+        Random random = new Random(3);
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            // Two users of one cuff, 3 readings a day each, for 5 years; then more for the scan
+            // (timings: ColdScanBenchmark in :bench)
+            int readings = 5 * 365 * 6;
+            for (int i = 0; i < readings; i++) {
+                long t = T0 + i * 4 * HOUR_MS + random.nextInt(1800) * 1000L;
+                store.append(reading(random, t, i));
+            }
+            File file = tmp.newFile("s.bpc");
+            long bytes = ColdSegment.write(file, store, 0, readings);
+            double ratio = (double) readings * MeasurementStore.RECORD_SIZE / bytes;
+            assertTrue("ratio " + ratio, ratio >= 5);
+
+            for (int i = readings; i < 200_000; i++) store.append(reading(random, T0 + i * 120_000L, i));
+            File big = tmp.newFile("big.bpc");
+            ColdSegment.write(big, store, 0, store.size());
+            try (ColdSegment segment = ColdSegment.open(big)) {
+                MeasurementRecord scratch = new MeasurementRecord();
+                double hot = meanSystolic(store.size(), (from, to, v) -> store.query(from, to, scratch, v));
+                double cold = meanSystolic(segment.size(), (from, to, v) -> segment.query(from, to, scratch, v));
+                assertEquals(hot, cold, 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void compactor_movesOldPrefix_andFinishesAnInterruptedRun() throws Exception {
+        File storeFile = tmp.newFile("measurements.bin");
+        File dir = tmp.newFolder("cold");
+        Random random = new Random(9);
+        long cutoff = T0 + 6_000 * HOUR_MS;
+        try (MeasurementStore store = MeasurementStore.open(storeFile)) {
+            for (int i = 0; i < 8_000; i++) store.append(reading(random, T0 + i * HOUR_MS, i));
+        }
+        MeasurementRollups before = new MeasurementRollups(ZoneOffset.UTC);
+        try (MeasurementStore store = MeasurementStore.open(storeFile)) {
+            before.addAll(store);
+        }
+
+        try (ColdTier tier = ColdTier.open(dir)) {
+            // Below the threshold: untouched
+            assertEquals(0, MeasurementCompactor.compact(storeFile, tier, cutoff, 10_000));
+            assertEquals(6_000, MeasurementCompactor.compact(storeFile, tier, cutoff, 4_096));
+            assertEquals(1, tier.segmentCount());
+        }
+        try (ColdTier tier = ColdTier.open(dir); MeasurementStore store = MeasurementStore.open(storeFile)) {
+            assertEquals(6_000, tier.size());
+            assertEquals(2_000, store.size());
+            assertEquals(T0 + 6_000 * HOUR_MS, store.timeAt(0));
+            MeasurementRollups after = new MeasurementRollups(ZoneOffset.UTC);
+            after.addAll(tier);
+            after.addAll(store);
+            long key = MeasurementRollups.userKey(DEVICE, 1);
+            assertEquals(before.total(key).all.toString(), after.total(key).all.toString());
+            // Nothing old enough left
+            assertEquals(0, MeasurementCompactor.compact(storeFile, tier, cutoff, 1));
+        }
+
+        // Crash between the segment and the store rewrite: the next run only rewrites
+        try (MeasurementStore store = MeasurementStore.open(storeFile)) {
+            for (int i = 8_000; i < 9_000; i++) store.append(reading(random, T0 + i * HOUR_MS, i));
+        }
+        try (ColdTier tier = ColdTier.open(dir)) {
+            File file = tier.nextFile();
+            try (MeasurementStore store = MeasurementStore.open(storeFile)) {
+                ColdSegment.write(file, store, 0, 1_500);
+            }
+            tier.add(file);
+            assertEquals(1_500, MeasurementCompactor.compact(storeFile, tier, Long.MIN_VALUE, 1_000_000));
+            assertEquals(2, tier.segmentCount());
+        }
+        try (ColdTier tier = ColdTier.open(dir); MeasurementStore store = MeasurementStore.open(storeFile)) {
+            assertEquals(7_500, tier.size());
+            assertEquals(1_500, store.size());
+            assertEquals(T0 + 7_500 * HOUR_MS, store.timeAt(0));
+            MeasurementRecord r = tier.read(7_499, new MeasurementRecord());
+            assertEquals(T0 + 7_499 * HOUR_MS, r.timeMillis);
+        }
+    }
+
+    @Test
+    public void corruptedSegment_isSkipped() throws Exception {
+        File dir = tmp.newFolder("cold");
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            Random random = new Random(1);
+            for (int i = 0; i < 3000; i++) store.append(reading(random, T0 + i * HOUR_MS, i));
+            ColdSegment.write(new File(dir, "seg-00000000.bpc"), store, 0, 1000);
+            ColdSegment.write(new File(dir, "seg-00000001.bpc"), store, 1000, 3000);
+        }
+        try (RandomAccessFile f = new RandomAccessFile(new File(dir, "seg-00000000.bpc"), "rw")) {
+            f.seek(100);
+            f.write(f.read() ^ 0x40);
+        }
+        try (ColdTier tier = ColdTier.open(dir)) {
+            assertEquals(1, tier.unreadable());
+            assertEquals(1, tier.segmentCount());
+            assertEquals(2000, tier.size());
+            assertEquals("seg-00000002.bpc", tier.nextFile().getName());
+        }
+    }
+
+    private interface Scan {
+        long run(long from, long to, MeasurementStore.Visitor visitor);
+    }
+
+    private static double meanSystolic(long n, Scan scan) {
+        double[] sum = {0};
+        long visited = scan.run(Long.MIN_VALUE, Long.MAX_VALUE, (index, r) -> {
+            sum[0] += r.systolic;
+            return true;
+        });
+        assertEquals(n, visited);
+        return sum[0] / visited;
+    }
+
+    private static void assertSame(String message, MeasurementRecord expected, MeasurementRecord actual) {
+        assertEquals(message, expected.timeMillis, actual.timeMillis);
+        assertEquals(message, expected.device, actual.device);
+        assertEquals(message, expected.sequence, actual.sequence);
+        assertEquals(message, expected.flags, actual.flags);
+        assertEquals(message, Float.floatToIntBits(expected.systolic), Float.floatToIntBits(actual.systolic));
+        assertEquals(message, Float.floatToIntBits(expected.diastolic), Float.floatToIntBits(actual.diastolic));
+        assertEquals(message, Float.floatToIntBits(expected.map), Float.floatToIntBits(actual.map));
+        assertEquals(message, Float.floatToIntBits(expected.pulseRate), Float.floatToIntBits(actual.pulseRate));
+        assertEquals(message, expected.userId, actual.userId);
+        assertEquals(message, expected.status, actual.status);
+    }
+
+    // Device-timestamped reading, whole mmHg as a cuff sends them, user 1 or 2
+    private static MeasurementRecord reading(Random random, long time, int sequence) {
+        MeasurementRecord r = new MeasurementRecord();
+        r.timeMillis = time - Math.floorMod(time, 1000L);
+        r.device = DEVICE;
+        r.sequence = sequence;
+        r.flags = BpsMeasurement.FLAG_TIMESTAMP | BpsMeasurement.FLAG_USER_ID | BpsMeasurement.FLAG_PULSE_RATE;
+        r.systolic = 110 + random.nextInt(40);
+        r.diastolic = 65 + random.nextInt(25);
+        r.map = Math.round((r.systolic + 2 * r.diastolic) / 3);
+        r.pulseRate = 55 + random.nextInt(40);
+        r.userId = 1 + sequence % 2;
+        return r;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GattCache}.
+ */
+public class GattCacheTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final String A = "C0:FF:EE:00:00:01";
+    private static final String LAYOUT = "2A35=20,2A49=02,2B36=10,2A52=28";
+
+    @Test
+    public void entry_survivesAReload() throws Exception {
+        File file = new File(tmp.getRoot(), "gatt.properties");
+        GattCache cache = new GattCache(file);
+        assertNull(cache.onDiscovered(A, LAYOUT));
+        cache.putFeature(A, 0x0023);
+        cache.addCccd(A, GattCache.CCCD_MEASUREMENT);
+        cache.addCccd(A, GattCache.CCCD_RECORD);
+        cache.save();
+
+        GattCache.Entry e = new GattCache(file).onDiscovered(A, LAYOUT);
+        assertNotNull(e);
+        assertEquals(0x0023, e.feature);
+        assertTrue(e.hasCccd(GattCache.CCCD_MEASUREMENT));
+        assertFalse(e.hasCccd(GattCache.CCCD_RACP));
+        assertTrue(e.hasCccd(GattCache.CCCD_RECORD));
+    }
+
+    @Test
+    public void otherLayout_dropsFeatureAndCccds() {
+        GattCache cache = new GattCache(new File(tmp.getRoot(), "gatt.properties"));
+        cache.onDiscovered(A, LAYOUT);
+        cache.putFeature(A, 0x0003);
+        cache.addCccd(A, GattCache.CCCD_RACP);
+
+        assertNull(cache.onDiscovered(A, "2A35=20,2A49=02,2B36=10,2A52=2C"));
+        GattCache.Entry e = cache.get(A);
+        assertFalse(e.hasFeature());
+        assertEquals(0, e.cccds);
+    }
+
+    @Test
+    public void forgetCccds_keepsTheFeature_invalidateDropsAll() throws Exception {
+        File file = new File(tmp.getRoot(), "gatt.properties");
+        GattCache cache = new GattCache(file);
+        cache.onDiscovered(A, LAYOUT);
+        cache.putFeature(A, 0x0003);
+        cache.addCccd(A, GattCache.CCCD_RACP);
+
+        cache.forgetCccds(A);
+        assertEquals(0x0003, cache.get(A).feature);
+        assertEquals(0, cache.get(A).cccds);
+
+        cache.save();
+        cache.invalidate(A);
+        cache.save();
+        assertNull(new GattCache(file).get(A));
+    }
+
+    @Test
+    public void unreadableEntry_isAMiss() throws Exception {
+        File file = new File(tmp.getRoot(), "gatt.properties");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write((A.replace(":", "\\:") + "=garbage\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+        GattCache cache = new GattCache(file);
+        assertNull(cache.get(A));
+        assertNull(cache.onDiscovered(A, LAYOUT));
+        assertNotNull(cache.get(A));
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GattOperationQueue}.
+ */
+public class GattOperationQueueTest {
+
+    private static final UUID A = UUID.fromString("00002a35-0000-1000-8000-00805f9b34fb");
+    private static final UUID B = UUID.fromString("00002a52-0000-1000-8000-00805f9b34fb");
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final GattOperationQueue queue = new GattOperationQueue(scheduler);
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void oneOperationInFlight_untilItsCallback() throws Exception {
+        CompletableFuture<byte[]> first = queue.enqueue("first", GattOperationQueue.Type.READ, A,
+                GattOperationQueue.Priority.CONTROL, starter("first"));
+        CompletableFuture<byte[]> second = queue.enqueue("second", GattOperationQueue.Type.WRITE, B,
+                GattOperationQueue.Priority.CONTROL, starter("second"));
+
+        assertEquals(List.of("first"), started);
+        assertEquals(1, queue.pendingCount());
+
+        // A callback that does not match the operation in flight is ignored
+        assertFalse(queue.complete(GattOperationQueue.Type.WRITE, B, 0, null));
+        assertTrue(queue.complete(GattOperationQueue.Type.READ, A, 0, new byte[]{42}));
+
+        assertArrayEquals(new byte[]{42}, first.get(1, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "second"), started);
+        assertFalse(second.isDone());
+
+        assertTrue(queue.complete(GattOperationQueue.Type.WRITE, B, 0, null));
+        assertNull(second.get(1, TimeUnit.SECONDS));
+        assertFalse(queue.isBusy());
+    }
+
+    @Test
+    public void controlOperations_runBeforeQueuedBulk() {
+        queue.enqueue("busy", GattOperationQueue.Type.READ, A, GattOperationQueue.Priority.BULK, starter("busy"));
+        queue.enqueue("bulk1", GattOperationQueue.Type.READ, A, GattOperationQueue.Priority.BULK, starter("bulk1"));
+        queue.enqueue("bulk2", GattOperationQueue.Type.READ, A, GattOperationQueue.Priority.BULK, starter("bulk2"));
+        queue.enqueue("ctrl", GattOperationQueue.Type.READ, A, GattOperationQueue.Priority.CONTROL, starter("ctrl"));
+
+        for (int i = 0; i < 4; i++) queue.complete(GattOperationQueue.Type.READ, A, 0, null);
+
+        assertEquals(List.of("busy", "ctrl", "bulk1", "bulk2"), started);
+    }
+
+    @Test
+    public void lostCallback_timesOut_thenQueueMovesOn() throws Exception {
+        CompletableFuture<byte[]> lost = queue.enqueue("lost", GattOperationQueue.Type.READ, A,
+                GattOperationQueue.Priority.CONTROL, 50, 0, starter("lost"));
+        CompletableFuture<byte[]> next = queue.enqueue("next", GattOperationQueue.Type.READ, B,
+                GattOperationQueue.Priority.CONTROL, starter("next"));
+
+        try {
+            lost.get(2, TimeUnit.SECONDS);
+            fail("expected timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        waitFor(() -> started.contains("next"));
+        assertTrue(queue.complete(GattOperationQueue.Type.READ, B, 0, null));
+        next.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void failures_areRetried_upToTheBound() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<byte[]> f = queue.enqueue("flaky", GattOperationQueue.Type.WRITE, A,
+                GattOperationQueue.Priority.CONTROL, 1000, 2, () -> attempts.incrementAndGet() > 2);
+
+        // Two rejected starts, third attempt is issued (after the backoffs) and succeeds
+        waitFor(() -> attempts.get() == 3);
+        assertTrue(queue.complete(GattOperationQueue.Type.WRITE, A, 0, null));
+        f.get(1, TimeUnit.SECONDS);
+
+        CompletableFuture<byte[]> g = queue.enqueue("error", GattOperationQueue.Type.WRITE, A,
+                GattOperationQueue.Priority.CONTROL, 1000, 1, starter("error"));
+        assertTrue(queue.complete(GattOperationQueue.Type.WRITE, A, 133, null));
+        assertTrue(queue.complete(GattOperationQueue.Type.WRITE, A, 133, null));
+        try {
+            g.get(1, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertEquals(133, ((GattOperationException) e.getCause()).getStatus());
+        }
+        assertEquals(List.of("error", "error"), started);
+    }
+
+    @Test
+    public void peerStatus_failsAtOnce() throws Exception {
+        CompletableFuture<byte[]> f = queue.enqueue("auth", GattOperationQueue.Type.WRITE_DESCRIPTOR, A,
+                GattOperationQueue.Priority.CONTROL, 1000, 3, starter("auth"));
+        // 0x05 insufficient authentication: another attempt would get the same answer
+        assertTrue(queue.complete(GattOperationQueue.Type.WRITE_DESCRIPTOR, A, 0x05, null));
+        try {
+            f.get(1, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertEquals(0x05, ((GattOperationException) e.getCause()).getStatus());
+        }
+        assertEquals(List.of("auth"), started);
+        assertFalse(queue.isBusy());
+    }
+
+    @Test
+    public void lateCallback_ofATimedOutAttempt_doesNotCompleteTheRetry() throws Exception {
+        CompletableFuture<byte[]> f = queue.enqueue("slow", GattOperationQueue.Type.READ, A,
+                GattOperationQueue.Priority.CONTROL, 200, 1, starter("slow"));
+        // Timed out: the retry waits for the late answer (up to one more timeout)
+        waitFor(() -> !queue.isBusy());
+        assertEquals(1, started.size());
+
+        // The first attempt answers after its timeout: dropped, then the retry starts
+        assertFalse(queue.complete(GattOperationQueue.Type.READ, A, 0, new byte[]{1}));
+        waitFor(() -> started.size() == 2);
+        assertFalse(f.isDone());
+        assertTrue(queue.complete(GattOperationQueue.Type.READ, A, 0, new byte[]{2}));
+        assertArrayEquals(new byte[]{2}, f.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void lostCallback_neverComes_retryAndNextOpsOnTheSameCharacteristicSucceed() throws Exception {
+        ScheduledExecutorService radio = Executors.newSingleThreadScheduledExecutor();
+        try {
+            // The first attempt is never answered; the peer answers everything else in 5 ms
+            AtomicInteger attempts = new AtomicInteger();
+            CompletableFuture<byte[]> retried = queue.enqueue("read", GattOperationQueue.Type.READ, A,
+                    GattOperationQueue.Priority.CONTROL, 100, 1, () -> {
+                        if (attempts.incrementAndGet() > 1) answer(radio, GattOperationQueue.Type.READ, A);
+                        return true;
+                    });
+            assertArrayEquals(new byte[]{7}, retried.get(2, TimeUnit.SECONDS));
+            assertEquals(2, attempts.get());
+
+            // Without retries: the op fails, its owed entry goes with it
+            CompletableFuture<byte[]> lost = queue.enqueue("lost", GattOperationQueue.Type.READ, A,
+                    GattOperationQueue.Priority.CONTROL, 100, 0, starter("lost"));
+            try {
+                lost.get(2, TimeUnit.SECONDS);
+                fail("expected timeout");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            for (int i = 0; i < 3; i++) {
+                CompletableFuture<byte[]> next = queue.enqueue("next", GattOperationQueue.Type.READ, A,
+                        GattOperationQueue.Priority.CONTROL, 100, 0, () -> {
+                            answer(radio, GattOperationQueue.Type.READ, A);
+                            return true;
+                        });
+                assertArrayEquals(new byte[]{7}, next.get(2, TimeUnit.SECONDS));
+            }
+        } finally {
+            radio.shutdownNow();
+        }
+    }
+
+    @Test
+    public void refusedStart_isRetriedAfterABackoff() throws Exception {
+        List<Long> starts = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<byte[]> f = queue.enqueue("busy", GattOperationQueue.Type.WRITE, A,
+                GattOperationQueue.Priority.CONTROL, 1000, 3, () -> {
+                    starts.add(System.nanoTime());
+                    return starts.size() > 3;
+                });
+        // Other characteristics are not held back
+        queue.enqueue("other", GattOperationQueue.Type.WRITE, B, GattOperationQueue.Priority.BULK, starter("other"));
+        assertEquals(List.of("other"), started);
+        assertTrue(queue.complete(GattOperationQueue.Type.WRITE, B, 0, null));
+
+        waitFor(() -> starts.size() == 4);
+        for (int i = 1; i < 4; i++) {
+            long gapMs = TimeUnit.NANOSECONDS.toMillis(starts.get(i) - starts.get(i - 1));
+            assertTrue("attempt " + i + " after " + gapMs + " ms", gapMs >= GattOperationQueue.REJECTED_BACKOFF_MS * i);
+        }
+        assertTrue(queue.complete(GattOperationQueue.Type.WRITE, A, 0, null));
+        f.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void pipeline_chainsOperations() throws Exception {
+        // Transport that answers every operation right away, from its own thread
+        ScheduledExecutorService radio = Executors.newSingleThreadScheduledExecutor();
+        try {
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            CompletableFuture<byte[]> done = queue
+                    .enqueue("cccd", GattOperationQueue.Type.WRITE_DESCRIPTOR, A, GattOperationQueue.Priority.CONTROL,
+                            answering(radio, order, "cccd", GattOperationQueue.Type.WRITE_DESCRIPTOR, A))
+                    .thenCompose(v -> queue.enqueue("racp", GattOperationQueue.Type.WRITE, B,
+                            GattOperationQueue.Priority.CONTROL,
+                            answering(radio, order, "racp", GattOperationQueue.Type.WRITE, B)));
+
+            done.get(2, TimeUnit.SECONDS);
+            assertEquals(List.of("cccd", "racp"), order);
+        } finally {
+            radio.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelAll_failsEverything() {
+        CompletableFuture<byte[]> a = queue.enqueue("a", GattOperationQueue.Type.READ, A,
+                GattOperationQueue.Priority.CONTROL, starter("a"));
+        CompletableFuture<byte[]> b = queue.enqueue("b", GattOperationQueue.Type.READ, A,
+                GattOperationQueue.Priority.CONTROL, starter("b"));
+
+        queue.cancelAll("disconnected");
+
+        assertTrue(a.isCompletedExceptionally());
+        assertTrue(b.isCompletedExceptionally());
+        assertFalse(queue.isBusy());
+        assertEquals(0, queue.pendingCount());
+        assertFalse(queue.complete(GattOperationQueue.Type.READ, A, 0, null));
+    }
+
+    private GattOperationQueue.Starter starter(String name) {
+        return () -> {
+            started.add(name);
+            return true;
+        };
+    }
+
+    private GattOperationQueue.Starter answering(ScheduledExecutorService radio, List<String> order, String name,
+                                                 GattOperationQueue.Type type, UUID target) {
+        return () -> {
+            order.add(name);
+            radio.schedule(() -> queue.complete(type, target, 0, null), 5, TimeUnit.MILLISECONDS);
+            return true;
+        };
+    }
+
+    private void answer(ScheduledExecutorService radio, GattOperationQueue.Type type, UUID target) {
+        radio.schedule(() -> queue.complete(type, target, 0, new byte[]{7}), 5, TimeUnit.MILLISECONDS);
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("condition not met");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link IngestRing} and {@link IngestPipeline}.
+ */
+public class IngestPipelineTest {
+
+    @Test
+    public void ring_keepsOrder_andCountsBackpressure() {
+        IngestRing ring = new IngestRing(3, 4);
+        assertEquals(4, ring.capacity());
+
+        for (int i = 0; i < 4; i++) assertTrue(ring.offer(i, new byte[]{(byte) i}, i));
+        assertFalse("full", ring.offer(9, new byte[]{9}, 9));
+        assertEquals(1, ring.dropped());
+        assertEquals(4, ring.maxDepth());
+
+        int[] next = {0};
+        assertEquals(2, ring.drain((channel, data, length, t) -> {
+            assertEquals(next[0], channel);
+            assertEquals(1, length);
+            assertEquals(next[0], data[0]);
+            assertEquals(next[0]++, t);
+        }, 2));
+        assertEquals(2, ring.depth());
+
+        // Frames longer than a slot are cut, not rejected
+        assertTrue(ring.offer(7, new byte[]{1, 2, 3, 4, 5, 6}, 7));
+        assertEquals(1, ring.truncated());
+        assertEquals(5, ring.accepted());
+    }
+
+    @Test
+    public void consumerFailure_skipsTheFrameOnly() throws Exception {
+        IngestRing ring = new IngestRing(8, 4);
+        AtomicInteger handled = new AtomicInteger();
+        try (IngestPipeline pipeline = new IngestPipeline("test-ingest")) {
+            pipeline.register(ring, (channel, data, length, t) -> {
+                if (channel == 1) throw new IllegalStateException("bad frame");
+                handled.incrementAndGet();
+            });
+            ring.offer(0, new byte[]{0}, 0);
+            ring.offer(1, new byte[]{1}, 0);
+            ring.offer(0, new byte[]{2}, 0);
+            pipeline.signal();
+            waitFor(() -> handled.get() == 2);
+            assertEquals(1, pipeline.failures());
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void fiveThousandFramesPerSecond_noLoss_inOrder() throws Exception {
+        final int rate = 5_000;
+        final int frames = 2 * rate; // 2 s
+        IngestRing ring = new IngestRing(DeviceSession.INGEST_CAPACITY, DeviceSession.INGEST_FRAME_LENGTH);
+        BpsMeasurement m = new BpsMeasurement();
+        AtomicInteger received = new AtomicInteger();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+
+        try (IngestPipeline pipeline = new IngestPipeline("test-ingest")) {
+            // Consumer does the real decode work of a live measurement
+            pipeline.register(ring, (channel, data, length, t) -> {
+                int n = received.getAndIncrement();
+                if (!BpsMeasurementCodec.decode(data, 0, length, m) || (int) m.systolic != n % 300) {
+                    outOfOrder.incrementAndGet();
+                }
+                if (n + 1 == frames) done.countDown();
+            });
+
+            long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            long start = System.nanoTime();
+            long slowestOffer = 0;
+            byte[] frame = {0x00, 0, 0, 0x50, 0x00, 0x5D, 0x00};
+            for (int i = 0; i < frames; i++) {
+                long due = start + i * periodNanos;
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+                frame[1] = (byte) (i % 300);
+                frame[2] = (byte) ((i % 300) >> 8);
+                long t0 = System.nanoTime();
+                if (ring.offer(DeviceSession.CHANNEL_MEASUREMENT, frame, t0)) pipeline.signal();
+                slowestOffer = Math.max(slowestOffer, System.nanoTime() - t0);
+            }
+            assertTrue("consumer did not keep up", done.await(10, TimeUnit.SECONDS));
+
+            assertEquals(0, ring.dropped());
+            assertEquals(frames, ring.accepted());
+            assertEquals(frames, received.get());
+            assertEquals(0, outOfOrder.get());
+            assertTrue("depth " + ring.maxDepth(), ring.maxDepth() < ring.capacity());
+            // The producer copies and returns: nothing in it may block for long
+            assertTrue("offer took " + slowestOffer + " ns", slowestOffer < TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Test
+    public void stalledConsumer_dropsAndCounts_withoutBlockingTheProducer() throws Exception {
+        IngestRing ring = new IngestRing(64, 8);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger received = new AtomicInteger();
+        try (IngestPipeline pipeline = new IngestPipeline("test-ingest")) {
+            pipeline.register(ring, (channel, data, length, t) -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.incrementAndGet();
+            });
+
+            long t0 = System.nanoTime();
+            int accepted = 0;
+            for (int i = 0; i < 1_000; i++) {
+                if (ring.offer(0, new byte[]{(byte) i}, System.nanoTime())) accepted++;
+                pipeline.signal();
+            }
+            assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(1));
+            assertEquals(1_000 - accepted, ring.dropped());
+            assertTrue(ring.dropped() > 0);
+            assertEquals(ring.capacity(), ring.maxDepth());
+
+            release.countDown();
+            int queued = accepted;
+            waitFor(() -> received.get() == queued);
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void unregister_runsTheTask_afterTheFrameBeingHandled() throws Exception {
+        IngestRing ring = new IngestRing(64, 8);
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger received = new AtomicInteger();
+        AtomicInteger receivedBeforeTask = new AtomicInteger(-1);
+        try (IngestPipeline pipeline = new IngestPipeline("test-ingest")) {
+            pipeline.register(ring, (channel, data, length, t) -> {
+                handling.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.incrementAndGet();
+            });
+            for (int i = 0; i < 3; i++) ring.offer(0, new byte[]{(byte) i}, 0);
+            pipeline.signal();
+            assertTrue(handling.await(10, TimeUnit.SECONDS));
+
+            // A frame is in the consumer: the task waits for the end of that pass
+            pipeline.unregister(ring, () -> receivedBeforeTask.set(received.get()));
+            Thread.sleep(20);
+            assertEquals(-1, receivedBeforeTask.get());
+            release.countDown();
+            waitFor(() -> receivedBeforeTask.get() >= 0);
+            // Nothing reached the consumer after the task
+            Thread.sleep(20);
+            assertEquals(received.get(), receivedBeforeTask.get());
+        }
+    }
+
+    @Test
+    public void unregister_afterClose_runsTheTaskAtOnce() {
+        IngestRing ring = new IngestRing(8, 4);
+        IngestPipeline pipeline = new IngestPipeline("test-ingest");
+        pipeline.register(ring, (channel, data, length, t) -> {
+        });
+        pipeline.close();
+        AtomicInteger ran = new AtomicInteger();
+        pipeline.unregister(ring, ran::incrementAndGet);
+        assertEquals(1, ran.get());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("condition not met");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValue_atMost25PercentWide() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        for (int b = 0; b < LatencyHistogram.BUCKETS - 1; b++) {
+            long lo = LatencyHistogram.lowerBound(b);
+            long hi = LatencyHistogram.upperBound(b);
+            assertEquals("bucket " + b, b, LatencyHistogram.bucketOf(lo));
+            assertEquals("bucket " + b, b, LatencyHistogram.bucketOf(hi));
+            assertEquals(hi + 1, LatencyHistogram.lowerBound(b + 1));
+            if (lo >= 4) assertTrue("bucket " + b, hi - lo + 1 <= lo / 4);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentile(0.5));
+        assertEquals("n=0", h.toString());
+        for (int i = 1; i <= 1000; i++) h.record(i);
+        assertEquals(1000, h.count());
+        assertEquals(1000, h.max());
+        assertEquals(500.5, h.mean(), 1e-9);
+        long p50 = h.percentile(0.5);
+        assertTrue("p50=" + p50, p50 >= 500 && p50 <= 500 * 1.25);
+        long p99 = h.percentile(0.99);
+        assertTrue("p99=" + p99, p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, h.percentile(1.0));
+        assertTrue(h.toString(), h.toString().startsWith("n=1000 p50="));
+
+        h.record(-5); // clock skew: counted as 0
+        assertEquals(0, h.percentile(0));
+    }
+
+    @Test
+    public void add_mergesCountsAndMax() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(3_000_000);
+        b.record(20);
+        a.add(b);
+        assertEquals(3, a.count());
+        assertEquals(3_000_000, a.max());
+        assertEquals("3.00s", LatencyHistogram.format(a.max()));
+        a.reset();
+        assertEquals(0, a.count());
+        assertEquals(0, a.max());
+    }
+
+    @Test
+    public void concurrentRecording_losesNothing() throws InterruptedException {
+        LatencyHistogram h = new LatencyHistogram();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int seed = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) h.record((i * 31L + seed) % 20_000);
+            });
+            writers[t].start();
+        }
+        for (Thread w : writers) w.join();
+        assertEquals(200_000, h.count());
+        assertTrue(h.max() < 20_000);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link Lttb} and {@link TrendSeries}.
+ */
+public class LttbTest {
+
+    private static final long HOUR_MS = 3_600_000L;
+
+    @Test
+    public void select_keepsEndsAndPeaks_withinThreshold() {
+        // Two years of readings every 4 h: noise around 125 mmHg, one 190 spike, one 95 dip
+        int n = 2 * 365 * 6;
+        long[] x = new long[n];
+        float[] y = new float[n];
+        Random random = new Random(3);
+        for (int i = 0; i < n; i++) {
+            x[i] = 1_700_000_000_000L + i * 4 * HOUR_MS;
+            y[i] = 120 + random.nextInt(10);
+        }
+        y[1234] = 190;
+        y[3000] = 95;
+
+        int threshold = 540;
+        int[] out = new int[threshold];
+        int k = Lttb.select(x, y, 0, n, threshold, out);
+
+        assertEquals(threshold, k);
+        assertEquals(0, out[0]);
+        assertEquals(n - 1, out[k - 1]);
+        for (int i = 1; i < k; i++) assertTrue(out[i] > out[i - 1]);
+        assertTrue(contains(out, k, 1234));
+        assertTrue(contains(out, k, 3000));
+    }
+
+    @Test
+    public void select_subRange_andSmallRanges() {
+        long[] x = new long[100];
+        float[] y = new float[100];
+        for (int i = 0; i < 100; i++) {
+            x[i] = i * HOUR_MS;
+            y[i] = i % 7;
+        }
+        int[] out = new int[20];
+        // Not larger than the threshold: every index
+        assertEquals(5, Lttb.select(x, y, 10, 15, 20, out));
+        assertArrayEquals(new int[]{10, 11, 12, 13, 14}, Arrays.copyOf(out, 5));
+
+        int k = Lttb.select(x, y, 40, 90, 10, out);
+        assertEquals(10, k);
+        assertEquals(40, out[0]);
+        assertEquals(89, out[k - 1]);
+        for (int i = 0; i < k; i++) assertTrue(out[i] >= 40 && out[i] < 90);
+
+        assertEquals(2, Lttb.select(x, y, 0, 100, 2, out));
+        assertEquals(99, out[1]);
+        assertEquals(0, Lttb.select(x, y, 50, 50, 10, out));
+    }
+
+    @Test
+    public void series_insertsOlderPointsInOrder_andSkipsAbsentValues() {
+        TrendSeries s = new TrendSeries(0);
+        for (int i = 0; i < 40; i++) s.add(100 + i * 10L, i);
+        // RACP history older than the live readings, and equal times
+        s.add(5, -1);
+        s.add(155, -2);
+        s.add(155, -3);
+        s.add(200, Float.NaN);
+
+        assertEquals(43, s.size());
+        for (int i = 1; i < s.size(); i++) assertTrue(s.time(i) >= s.time(i - 1));
+        assertEquals(5, s.time(0));
+        int at = s.lowerBound(155);
+        assertEquals(-2f, s.value(at), 0f);
+        assertEquals(-3f, s.value(at + 1), 0f);
+        assertEquals(0, s.lowerBound(Long.MIN_VALUE));
+        assertEquals(s.size(), s.lowerBound(10_000));
+
+        s.clear();
+        assertEquals(0, s.size());
+    }
+
+    private static boolean contains(int[] a, int n, int v) {
+        for (int i = 0; i < n; i++) if (a[i] == v) return true;
+        return false;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MeasurementDeduplicator} and {@link BloomFilter}.
+ */
+public class MeasurementDeduplicatorTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long DEVICE = MeasurementRecord.deviceId("C0:FF:EE:12:34:56");
+    private static final long OTHER = MeasurementRecord.deviceId("C0:FF:EE:00:00:01");
+    // 2026-03-02T07:00:00Z
+    private static final long T0 = 1_772_434_800_000L;
+    private static final long HOUR_MS = 3_600_000L;
+
+    @Test
+    public void liveIndication_thenSameRecord_isStoredOnce() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            MeasurementDeduplicator dedup = MeasurementDeduplicator.load(null, store);
+            MeasurementRecord live = reading(T0, 120, 80, 72, 1, MeasurementRecord.NO_SEQUENCE);
+            assertTrue(dedup.append(live));
+
+            // Same reading at the next sync, now with its record number
+            assertFalse(dedup.append(reading(T0, 120, 80, 72, 1, 17)));
+            // Any field of the identity differs: another reading
+            assertTrue(dedup.append(reading(T0, 120, 80, 72, 2, 18)));
+            assertTrue(dedup.append(reading(T0, 121, 80, 72, 1, 19)));
+            assertTrue(dedup.append(reading(T0 + 1000, 120, 80, 72, 1, 20)));
+            MeasurementRecord other = reading(T0, 120, 80, 72, 1, 17);
+            other.device = OTHER;
+            assertTrue(dedup.append(other));
+
+            assertEquals(5, store.size());
+            assertEquals(1, dedup.duplicates());
+        }
+    }
+
+    @Test
+    public void resentHistory_addsNothing_andNewReadingsSkipStorage() throws Exception {
+        File file = tmp.newFile("m.bin");
+        Random random = new Random(23);
+        int n = 5000;
+        MeasurementRecord[] history = new MeasurementRecord[n];
+        for (int i = 0; i < n; i++) {
+            history[i] = reading(T0 + i * 4 * HOUR_MS, 100 + random.nextInt(80), 60 + random.nextInt(40),
+                    50 + random.nextInt(50), 1 + i % 2, i);
+        }
+        try (MeasurementStore store = MeasurementStore.open(file)) {
+            for (MeasurementRecord r : history) store.append(r);
+        }
+        try (MeasurementStore store = MeasurementStore.open(file)) {
+            MeasurementDeduplicator dedup = MeasurementDeduplicator.load(null, store);
+            // Full re-sync of the same 5k records, three times (timings: DeduplicatorBenchmark)
+            for (int run = 0; run < 3; run++) {
+                for (MeasurementRecord r : history) assertFalse(dedup.append(r));
+            }
+            assertEquals(n, store.size());
+            assertEquals(3L * n, dedup.duplicates());
+
+            // New readings: the filter answers alone for (nearly) all of them
+            for (int i = 0; i < n; i++) {
+                assertTrue(dedup.append(reading(T0 + (n + i) * 4 * HOUR_MS, 100 + random.nextInt(80),
+                        60 + random.nextInt(40), 50 + random.nextInt(50), 1, n + i)));
+            }
+            long falsePositives = dedup.falsePositives();
+            assertTrue("false positives " + falsePositives, falsePositives < n / 50);
+            assertEquals(3L * n + falsePositives, dedup.filterHits());
+        }
+    }
+
+    @Test
+    public void withoutTimestamp_keyedBySequence_andCounterResetKept() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            MeasurementDeduplicator dedup = MeasurementDeduplicator.load(null, store);
+            for (int seq = 0; seq < 500; seq++) {
+                // No device timestamp: the time is the receive time, different at every sync
+                assertTrue(dedup.append(untimed(T0 + seq, 110 + seq % 30, seq)));
+            }
+            for (int seq = 0; seq < 500; seq++) {
+                assertFalse(dedup.append(untimed(T0 + HOUR_MS + seq, 110 + seq % 30, seq)));
+            }
+            // Counter reset: #3 is now another reading
+            assertTrue(dedup.append(untimed(T0 + 2 * HOUR_MS, 150, 3)));
+            assertFalse(dedup.append(untimed(T0 + 3 * HOUR_MS, 150, 3)));
+            // Live indication without timestamp: no identity, always stored
+            assertTrue(dedup.append(untimed(T0, 110, MeasurementRecord.NO_SEQUENCE)));
+            assertTrue(dedup.append(untimed(T0, 110, MeasurementRecord.NO_SEQUENCE)));
+            assertEquals(503, store.size());
+        }
+    }
+
+    @Test
+    public void coldTierAndGrowth_stillExact() throws Exception {
+        File storeFile = tmp.newFile("measurements.bin");
+        Random random = new Random(4);
+        int n = 3 * MeasurementCompactor.MIN_RECORDS;
+        MeasurementRecord[] history = new MeasurementRecord[n];
+        try (MeasurementStore store = MeasurementStore.open(storeFile)) {
+            for (int i = 0; i < n; i++) {
+                history[i] = reading(T0 + i * HOUR_MS, 100 + random.nextInt(80), 60 + random.nextInt(40),
+                        50 + random.nextInt(50), 1, i & 0xFFFF);
+                store.append(history[i]);
+            }
+        }
+        try (ColdTier tier = ColdTier.open(tmp.newFolder("cold"))) {
+            long moved = MeasurementCompactor.compact(storeFile, tier, T0 + n / 2 * HOUR_MS,
+                    MeasurementCompactor.MIN_RECORDS);
+            assertEquals(n / 2, moved);
+            try (MeasurementStore store = MeasurementStore.open(storeFile)) {
+                // Small filter: grows (and is rebuilt from both tiers) while appending
+                MeasurementDeduplicator dedup = MeasurementDeduplicator.load(tier, store, 1024);
+                for (int i = 0; i < 4 * n; i++) {
+                    assertTrue(dedup.append(reading(T0 + (n + i) * HOUR_MS, 120, 80, 70, 2, i & 0xFFFF)));
+                }
+                for (MeasurementRecord r : history) assertFalse(dedup.append(r));
+                assertEquals(n / 2 + 4L * n, store.size());
+            }
+        }
+    }
+
+    @Test
+    public void bloomFilter_noFalseNegatives_aboutOnePercentFalsePositives() {
+        int n = 100_000;
+        BloomFilter filter = new BloomFilter(n);
+        for (long k = 0; k < n; k++) filter.add(k * 31);
+        for (long k = 0; k < n; k++) assertTrue(filter.mightContain(k * 31));
+        int falsePositives = 0;
+        for (long k = 0; k < n; k++) if (filter.mightContain(-1 - k * 31)) falsePositives++;
+        assertTrue("false positives " + falsePositives, falsePositives < n * 2 / 100);
+    }
+
+    private static MeasurementRecord reading(long time, float sys, float dia, float pulse, int user, int sequence) {
+        MeasurementRecord r = new MeasurementRecord();
+        r.timeMillis = time;
+        r.device = DEVICE;
+        r.sequence = sequence;
+        r.flags = BpsMeasurement.FLAG_TIMESTAMP | BpsMeasurement.FLAG_PULSE_RATE | BpsMeasurement.FLAG_USER_ID;
+        r.systolic = sys;
+        r.diastolic = dia;
+        r.map = (sys + 2 * dia) / 3;
+        r.pulseRate = pulse;
+        r.userId = user;
+        return r;
+    }
+
+    private static MeasurementRecord untimed(long receivedTime, float sys, int sequence) {
+        MeasurementRecord r = new MeasurementRecord();
+        r.timeMillis = receivedTime;
+        r.device = DEVICE;
+        r.sequence = sequence;
+        r.systolic = sys;
+        r.diastolic = sys - 40;
+        r.map = sys - 25;
+        return r;
+    }
+}
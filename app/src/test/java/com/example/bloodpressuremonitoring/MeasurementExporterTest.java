@@ -0,0 +1,246 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MeasurementExporter}, including a 1M-record export in a
+ * separate JVM with a heap much smaller than the output.
+ */
+public class MeasurementExporterTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long DEVICE = MeasurementRecord.deviceId("C0:FF:EE:12:34:56");
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+    // 2026-03-02T07:00:00Z
+    private static final long T0 = 1_772_434_800_000L;
+
+    @Test
+    public void csv_formatsFieldsAndLeavesAbsentOnesEmpty() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            store.append(record(T0, 120, 80, 2, 17));
+            MeasurementRecord kpa = record(T0 + 61_500, 15.95f, 10.6f, BpsMeasurement.ABSENT,
+                    MeasurementRecord.NO_SEQUENCE);
+            kpa.flags |= BpsMeasurement.FLAG_UNIT_KPA;
+            kpa.map = Float.NaN;
+            store.append(kpa);
+            MeasurementRecord full = record(T0 + 3_600_000, 131, 85, 1, 18);
+            full.flags |= BpsMeasurement.FLAG_PULSE_RATE | BpsMeasurement.FLAG_STATUS;
+            full.pulseRate = 72;
+            full.status = 0x05;
+            store.append(full);
+
+            String csv = new String(export(store, MeasurementExporter.Request.all(
+                    MeasurementExporter.Format.CSV, false)), StandardCharsets.US_ASCII);
+            assertEquals("time_utc,device,user,systolic,diastolic,map,unit,pulse,status,sequence\n"
+                    + "2026-03-02T07:00:00Z,C0:FF:EE:12:34:56,2,120,80,93.33,mmHg,,,17\n"
+                    + "2026-03-02T07:01:01Z,C0:FF:EE:12:34:56,,15.95,10.6,,kPa,,,\n"
+                    + "2026-03-02T08:00:00Z,C0:FF:EE:12:34:56,1,131,85,100.33,mmHg,72,5,18\n", csv);
+        }
+    }
+
+    @Test
+    public void rawFrames_decodeBackToTheRecords_filteredByUserAndTime() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            for (int i = 0; i < 1000; i++) {
+                store.append(record(T0 + i * 3_600_000L, 100 + i % 80, 60 + i % 40, 1 + i % 2, i));
+            }
+            long user = MeasurementRollups.userKey(DEVICE, 2);
+            long from = T0 + 100 * 3_600_000L;
+            long to = T0 + 300 * 3_600_000L;
+            MeasurementExporter.Request request = new MeasurementExporter.Request(
+                    MeasurementExporter.Format.IEEE_11073, false, from, to, user);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(export(store, request)));
+
+            BpsMeasurement m = new BpsMeasurement();
+            byte[] frame = new byte[BpsMeasurementCodec.MAX_LENGTH];
+            int i = 101; // first odd hour (user 2) in the range
+            while (in.available() > 0) {
+                int n = in.readUnsignedByte();
+                long device = ((long) in.readUnsignedShort() << 32) | (in.readInt() & 0xFFFFFFFFL);
+                in.readFully(frame, 0, n);
+                assertTrue(BpsMeasurementCodec.decode(frame, 0, n, m));
+                assertEquals(DEVICE, device);
+                assertEquals(100 + i % 80, m.systolic, 0f);
+                assertEquals(60 + i % 40, m.diastolic, 0f);
+                assertEquals(2, m.userId);
+                LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(T0 + i * 3_600_000L), PARIS);
+                assertEquals(BpsMeasurement.packTimestamp(local.getYear(), local.getMonthValue(),
+                        local.getDayOfMonth(), local.getHour(), local.getMinute(), local.getSecond()), m.timestamp);
+                i += 2;
+            }
+            assertEquals(301, i);
+        }
+    }
+
+    @Test
+    public void fhir_gzip_isOneObservationPerRecord() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            for (int i = 0; i < 5000; i++) store.append(record(T0 + i * 60_000L, 120, 80, 1, i));
+            byte[] gz = export(store, MeasurementExporter.Request.all(MeasurementExporter.Format.FHIR_JSON, true));
+            String json = new String(gunzip(gz), StandardCharsets.US_ASCII);
+
+            assertTrue(json.startsWith("{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":["));
+            assertTrue(json.endsWith("]}\n"));
+            assertEquals(5000, occurrences(json, "\"resourceType\":\"Observation\""));
+            assertEquals(5000, occurrences(json, "\"code\":\"8480-6\"}]},\"valueQuantity\":{\"value\":120,"
+                    + "\"unit\":\"mmHg\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"mm[Hg]\"}}"));
+            assertEquals(1, occurrences(json, "\"effectiveDateTime\":\"2026-03-02T07:00:00Z\""));
+            assertEquals(occurrences(json, "{"), occurrences(json, "}"));
+            assertEquals(occurrences(json, "["), occurrences(json, "]"));
+            assertTrue(gz.length * 20 < json.length());
+        }
+    }
+
+    @Test
+    public void cancelledExport_leavesNoFile() throws Exception {
+        File out = new File(tmp.getRoot(), "export.csv");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            for (int i = 0; i < 3 * MeasurementExporter.PROGRESS_EVERY; i++) store.append(record(T0 + i, 120, 80, 1, i));
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch never = new CountDownLatch(1);
+            Future<Long> task = new MeasurementExporter(store, PARIS, executor).export(
+                    MeasurementExporter.Request.all(MeasurementExporter.Format.CSV, false), out, (done, total) -> {
+                        started.countDown();
+                        try {
+                            never.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertTrue(task.cancel(true));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertFalse(out.exists());
+        assertFalse(new File(out.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void millionRecords_streamUnderAFixedHeap() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process p = new ProcessBuilder(java, "-Xmx16m", "-cp", System.getProperty("java.class.path"),
+                MeasurementExporterTest.class.getName(), tmp.getRoot().getPath())
+                .redirectErrorStream(true)
+                .start();
+        String output;
+        try (InputStream in = p.getInputStream()) {
+            output = new String(readAll(in), StandardCharsets.UTF_8).trim();
+        }
+        assertTrue(p.waitFor(120, TimeUnit.SECONDS));
+        assertEquals(output, 0, p.exitValue());
+        String[] parts = output.split(" ");
+        assertEquals("1000000", parts[0]);
+        // The CSV alone is several times the heap
+        assertTrue(output, Long.parseLong(parts[1]) > 4 * 16L * 1024 * 1024);
+        assertTrue(output, Long.parseLong(parts[2]) > 0);
+    }
+
+    /** Child JVM of {@link #millionRecords_streamUnderAFixedHeap}: prints "records csvBytes gzipBytes". */
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args[0]);
+        try (MeasurementStore store = MeasurementStore.open(new File(dir, "million.bin"))) {
+            MeasurementRecord r = new MeasurementRecord();
+            for (int i = 0; i < 1_000_000; i++) {
+                r.timeMillis = T0 + i * 60_000L;
+                r.device = DEVICE;
+                r.sequence = i;
+                r.flags = BpsMeasurement.FLAG_USER_ID | BpsMeasurement.FLAG_PULSE_RATE;
+                r.systolic = 100 + i % 80;
+                r.diastolic = 60 + i % 40;
+                r.map = (r.systolic + 2 * r.diastolic) / 3;
+                r.pulseRate = 60 + i % 30;
+                r.userId = 1;
+                store.append(r);
+            }
+            MeasurementExporter exporter = new MeasurementExporter(store, PARIS, null);
+            CountingStream csv = new CountingStream();
+            long n = exporter.write(MeasurementExporter.Request.all(MeasurementExporter.Format.CSV, false), csv, null);
+            File gz = new File(dir, "million.csv.gz");
+            exporter.write(MeasurementExporter.Request.all(MeasurementExporter.Format.CSV, true),
+                    new FileOutputStream(gz), null);
+            System.out.println(n + " " + csv.count + " " + gz.length());
+        }
+    }
+
+    private static byte[] export(MeasurementStore store, MeasurementExporter.Request request) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MeasurementExporter(store, PARIS, null).write(request, out, null);
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] gz) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gz))) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
+    private static int occurrences(String s, String part) {
+        int n = 0;
+        for (int at = s.indexOf(part); at >= 0; at = s.indexOf(part, at + part.length())) n++;
+        return n;
+    }
+
+    private static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    private static MeasurementRecord record(long time, float sys, float dia, int user, int sequence) {
+        MeasurementRecord r = new MeasurementRecord();
+        r.timeMillis = time;
+        r.device = DEVICE;
+        r.sequence = sequence;
+        r.systolic = sys;
+        r.diastolic = dia;
+        r.map = (sys + 2 * dia) / 3;
+        if (user != BpsMeasurement.ABSENT) {
+            r.flags |= BpsMeasurement.FLAG_USER_ID;
+            r.userId = user;
+        }
+        return r;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MeasurementHistory}: loading off the calling thread, once.
+ */
+public class MeasurementHistoryTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long DEVICE = MeasurementRecord.deviceId("C0:FF:EE:12:34:56");
+    private static final long DAY_MS = 86_400_000L;
+
+    @Test
+    public void load_compactsAndReadsTheHistory_onTheLoaderThread() throws Exception {
+        File dir = tmp.newFolder();
+        // Two readings a day for ten years: everything but the last 180 days goes cold
+        int n = 2 * 3650;
+        long start = System.currentTimeMillis() - 3650 * DAY_MS;
+        try (MeasurementStore store = MeasurementStore.open(new File(dir, MeasurementHistory.STORE_FILE))) {
+            for (int i = 0; i < n; i++) store.append(reading(start + i * DAY_MS / 2, 110 + i % 40, i));
+        }
+
+        List<Runnable> loader = new ArrayList<>();
+        MeasurementHistory history = new MeasurementHistory(dir, true, 180 * DAY_MS, true, ZoneOffset.UTC,
+                loader::add);
+        history.load();
+        // Nothing is read on the calling thread
+        assertFalse(history.loaded().isDone());
+        assertNull(history.store());
+        Thread t = new Thread(loader.remove(0), "loader");
+        t.start();
+        assertSame(history, history.loaded().get(10, TimeUnit.SECONDS));
+        t.join();
+
+        assertTrue(history.coldTier().size() > 0);
+        assertEquals(n, history.coldTier().size() + history.store().size());
+        assertEquals(n, history.rollups().readings());
+        assertEquals(n, history.chartLines()[0].size());
+        assertFalse(history.deduplicator().append(reading(start, 110, 0)));
+
+        // New readings reach the rollups, then the listener
+        List<Long> stored = new ArrayList<>();
+        history.setOnStored((index, r) -> stored.add(index));
+        assertTrue(history.deduplicator().append(reading(System.currentTimeMillis(), 120, n)));
+        assertEquals(n + 1, history.rollups().readings());
+        assertEquals(1, stored.size());
+
+        history.close();
+        assertEquals(1, loader.size());
+        loader.remove(0).run();
+    }
+
+    @Test
+    public void shared_isLoadedOnce_untilClosed() throws Exception {
+        File dir = tmp.newFolder();
+        MeasurementHistory first = MeasurementHistory.shared(dir, false, 180, false, ZoneOffset.UTC);
+        // A rotation: the new activity gets the same history
+        assertSame(first, MeasurementHistory.shared(dir, false, 180, false, ZoneOffset.UTC));
+        first.loaded().get(10, TimeUnit.SECONDS);
+        assertNotNull(first.store());
+        assertNull(first.coldTier());
+        assertNull(first.deduplicator());
+        first.store().append(reading(System.currentTimeMillis(), 120, 1));
+        first.store().flush();
+
+        // Finished: the next activity opens it again, after the files were closed
+        first.close();
+        MeasurementHistory second = MeasurementHistory.shared(dir, false, 180, false, ZoneOffset.UTC);
+        assertNotSame(first, second);
+        second.loaded().get(10, TimeUnit.SECONDS);
+        assertEquals(1, second.store().size());
+        assertEquals(1, second.rollups().readings());
+        second.close();
+    }
+
+    private static MeasurementRecord reading(long time, int systolic, int sequence) {
+        MeasurementRecord r = new MeasurementRecord();
+        r.device = DEVICE;
+        r.timeMillis = time;
+        r.flags = BpsMeasurement.FLAG_TIMESTAMP;
+        r.systolic = systolic;
+        r.diastolic = 80;
+        r.sequence = sequence;
+        return r;
+    }
+}
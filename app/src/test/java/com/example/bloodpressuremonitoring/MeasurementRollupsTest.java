@@ -0,0 +1,167 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MeasurementRollups} and {@link BpStats}.
+ */
+public class MeasurementRollupsTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long DEVICE = 0xC0FFEE000001L;
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    @Test
+    public void stats_categoriesAndUnits() {
+        BpStats s = new BpStats();
+        s.add(record(0, 115, 75, 1, false));   // NORMAL
+        s.add(record(0, 125, 78, 1, false));   // ELEVATED
+        s.add(record(0, 118, 85, 1, false));   // STAGE_1 (diastolic)
+        s.add(record(0, 150, 70, 1, false));   // STAGE_2
+        s.add(record(0, 185, 100, 1, false));  // CRISIS
+        // 20.0 / 12.0 kPa = 150 / 90 mmHg: STAGE_2
+        MeasurementRecord kpa = record(0, 20f, 12f, 1, false);
+        kpa.flags |= BpsMeasurement.FLAG_UNIT_KPA;
+        s.add(kpa);
+
+        assertEquals(6, s.count());
+        assertEquals(1, s.count(BpCategory.NORMAL));
+        assertEquals(1, s.count(BpCategory.ELEVATED));
+        assertEquals(1, s.count(BpCategory.STAGE_1));
+        assertEquals(2, s.count(BpCategory.STAGE_2));
+        assertEquals(1, s.count(BpCategory.CRISIS));
+        assertEquals(115f, s.minSystolic(), 0f);
+        assertEquals(185f, s.maxSystolic(), 0f);
+        assertEquals(150.0, (20f * BpStats.KPA_TO_MMHG), 0.05);
+        assertEquals(0, s.pulseCount());
+        s.add(record(0, 120, 70, 1, true));
+        assertEquals(72.0, s.meanPulse(), 0.0);
+        assertTrue(Double.isNaN(new BpStats().meanSystolic()));
+    }
+
+    @Test
+    public void daysAndWeeks_matchABruteForceScan() {
+        MeasurementRollups rollups = new MeasurementRollups(PARIS);
+        Random random = new Random(7);
+        // 90 days across the March DST change, 1-4 readings a day at random hours
+        LocalDate first = LocalDate.of(2026, 2, 1);
+        MeasurementRecord[] all = new MeasurementRecord[400];
+        int n = 0;
+        for (int d = 0; d < 90 && n < all.length - 4; d++) {
+            int readings = 1 + random.nextInt(4);
+            for (int i = 0; i < readings; i++) {
+                long t = first.plusDays(d).atTime(random.nextInt(24), random.nextInt(60)).atZone(PARIS)
+                        .toInstant().toEpochMilli();
+                all[n++] = record(t, 100 + random.nextInt(80), 60 + random.nextInt(40), random.nextInt(3) + 1,
+                        random.nextBoolean());
+            }
+        }
+        // Arrival order is not time order (RACP history after live readings)
+        for (int i = n - 1; i >= 0; i--) rollups.add(all[i]);
+
+        long from = rollups.epochDay(at(2026, 2, 11, 12));   // a Wednesday
+        long to = rollups.epochDay(at(2026, 4, 17, 12));     // a Friday
+        for (int user = 1; user <= 3; user++) {
+            long key = MeasurementRollups.userKey(DEVICE, user);
+            MeasurementRollups.Rollup expected = new MeasurementRollups.Rollup();
+            for (int i = 0; i < n; i++) {
+                MeasurementRecord r = all[i];
+                LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(r.timeMillis), PARIS);
+                long day = local.toLocalDate().toEpochDay();
+                if (r.userId != user || day < from || day >= to) continue;
+                expected.all.add(r);
+                int h = local.getHour();
+                if (h >= MeasurementRollups.MORNING_START && h < MeasurementRollups.MORNING_END) {
+                    expected.morning.add(r);
+                } else if (h >= MeasurementRollups.EVENING_START) {
+                    expected.evening.add(r);
+                }
+            }
+            MeasurementRollups.Rollup actual = rollups.days(key, from, to);
+            assertEquals(expected.all.toString(), actual.all.toString());
+            assertEquals(expected.morning.toString(), actual.morning.toString());
+            assertEquals(expected.evening.toString(), actual.evening.toString());
+            assertEquals(expected.all.meanSystolic(), actual.all.meanSystolic(), 1e-9);
+            assertEquals(expected.all.meanPulse(), actual.all.meanPulse(), 1e-9);
+        }
+        assertEquals(n, rollups.readings());
+        assertEquals(3, rollups.users().size());
+    }
+
+    @Test
+    public void rebuiltFromTheStore_equalsFedOnAppend() throws Exception {
+        MeasurementRollups fed = new MeasurementRollups(ZoneOffset.UTC);
+        long base = at(2026, 3, 2, 7);
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            store.setAppendListener((index, r) -> fed.add(r));
+            for (int i = 0; i < 500; i++) {
+                store.append(record(base + i * 3_600_000L, 110 + i % 50, 70 + i % 25, 1, i % 3 == 0));
+            }
+            MeasurementRollups rebuilt = new MeasurementRollups(ZoneOffset.UTC);
+            assertEquals(500, rebuilt.addAll(store));
+
+            long key = MeasurementRollups.userKey(DEVICE, 1);
+            assertEquals(fed.total(key).all.toString(), rebuilt.total(key).all.toString());
+            long week = MeasurementRollups.weekOf(fed.epochDay(base));
+            assertEquals(fed.bucket(key, MeasurementRollups.Period.WEEK, week).all.toString(),
+                    rebuilt.bucket(key, MeasurementRollups.Period.WEEK, week).all.toString());
+            // Hourly readings from Monday 06:00 UTC
+            assertEquals(7 * 24 - 6, rebuilt.bucket(key, MeasurementRollups.Period.WEEK, week).all.count());
+        }
+    }
+
+    @Test
+    public void hourBuckets_arePruned_daysAreKept() {
+        MeasurementRollups rollups = new MeasurementRollups(ZoneOffset.UTC);
+        long base = at(2026, 1, 1, 0);
+        int hours = 3 * MeasurementRollups.HOUR_RETENTION_DAYS * 24;
+        for (int h = 0; h < hours; h++) rollups.add(record(base + h * 3_600_000L, 120, 80, 1, false));
+
+        long key = MeasurementRollups.userKey(DEVICE, 1);
+        long firstHour = base / 3_600_000L;
+        assertNull(rollups.bucket(key, MeasurementRollups.Period.HOUR, firstHour));
+        assertNotNull(rollups.bucket(key, MeasurementRollups.Period.HOUR, firstHour + hours - 1));
+        // base is 23:00 UTC: one reading that day, then full days
+        assertEquals(1, rollups.bucket(key, MeasurementRollups.Period.DAY, rollups.epochDay(base)).all.count());
+        assertEquals(24, rollups.bucket(key, MeasurementRollups.Period.DAY, rollups.epochDay(base) + 1).all.count());
+        assertEquals(hours, rollups.total(key).all.count());
+        // Unknown user (no user id) is its own user
+        rollups.add(record(base, 120, 80, BpsMeasurement.ABSENT, false));
+        assertEquals(1, rollups.total(MeasurementRollups.userKey(DEVICE, BpsMeasurement.ABSENT)).all.count());
+    }
+
+    private static long at(int year, int month, int day, int hour) {
+        return LocalDateTime.of(year, month, day, hour, 0).atZone(PARIS).toInstant().toEpochMilli();
+    }
+
+    private static MeasurementRecord record(long time, float sys, float dia, int user, boolean pulse) {
+        MeasurementRecord r = new MeasurementRecord();
+        r.timeMillis = time;
+        r.device = DEVICE;
+        r.systolic = sys;
+        r.diastolic = dia;
+        r.map = (sys + 2 * dia) / 3;
+        if (user != BpsMeasurement.ABSENT) {
+            r.flags |= BpsMeasurement.FLAG_USER_ID;
+            r.userId = user;
+        }
+        if (pulse) {
+            r.flags |= BpsMeasurement.FLAG_PULSE_RATE;
+            r.pulseRate = 72;
+        }
+        return r;
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MeasurementStore}, including recovery of torn tails.
+ */
+public class MeasurementStoreTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long DEVICE = MeasurementRecord.deviceId("C0:FF:EE:12:34:56");
+
+    @Test
+    public void deviceId_roundTrip() {
+        assertEquals(0xC0FFEE123456L, DEVICE);
+        assertEquals("C0:FF:EE:12:34:56", MeasurementRecord.deviceAddress(DEVICE));
+        assertEquals(0L, MeasurementRecord.deviceId("not an address"));
+    }
+
+    @Test
+    public void appendReadAndReopen() throws Exception {
+        File f = tmp.newFile("m.bin");
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            for (int i = 0; i < 1000; i++) store.append(record(1_000_000L + i, i));
+            assertEquals(1000, store.size());
+        }
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            assertEquals(1000, store.size());
+            MeasurementRecord r = store.read(999, new MeasurementRecord());
+            assertEquals(1_000_999L, r.timeMillis);
+            assertEquals(999, r.sequence);
+            assertEquals(DEVICE, r.device);
+            assertEquals(120f + 999 % 40, r.systolic, 0f);
+            assertEquals(72f, r.pulseRate, 0f);
+            assertEquals(2, r.userId);
+            assertEquals(BpsMeasurement.ABSENT, r.status);
+
+            // Appends continue after the recovered tail
+            store.append(record(2_000_000L, 1000));
+            assertEquals(1001, store.size());
+        }
+    }
+
+    @Test
+    public void recovery_dropsTruncatedRecord() throws Exception {
+        File f = tmp.newFile("m.bin");
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            for (int i = 0; i < 10; i++) store.append(record(i, i));
+        }
+        // Crash in the middle of the 10th record
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(MeasurementStore.HEADER_SIZE + 9L * MeasurementStore.RECORD_SIZE + 20);
+        }
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            assertEquals(9, store.size());
+            assertEquals(8, store.read(8, new MeasurementRecord()).sequence);
+        }
+    }
+
+    @Test
+    public void recovery_dropsTornTailAfterCheckpoint() throws Exception {
+        File f = tmp.newFile("m.bin");
+        MeasurementStore store = MeasurementStore.open(f);
+        for (int i = 0; i < 5; i++) store.append(record(i, i));
+        store.flush(); // checkpoint = 5
+        for (int i = 5; i < 8; i++) store.append(record(i, i));
+        // Crash: no close(), so the checkpoint still says 5
+
+        // Record 6 only partially reached the disk: its CRC no longer matches
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(MeasurementStore.HEADER_SIZE + 6L * MeasurementStore.RECORD_SIZE + 8);
+            raf.writeInt(0xDEADBEEF);
+        }
+        try (MeasurementStore reopened = MeasurementStore.open(f)) {
+            assertEquals(6, reopened.size());
+            reopened.append(record(100, 100));
+            assertEquals(100, reopened.read(6, new MeasurementRecord()).sequence);
+        }
+        try (MeasurementStore reopened = MeasurementStore.open(f)) {
+            assertEquals(7, reopened.size());
+        }
+    }
+
+    @Test
+    public void recovery_ofEmptyOrHeaderlessFile() throws Exception {
+        File f = tmp.newFile("m.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(10); // crash while writing the header
+        }
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            assertEquals(0, store.size());
+            store.append(record(1, 1));
+        }
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    public void rangeQuery_matchesBruteForce_withOutOfOrderAppends() throws Exception {
+        File f = tmp.newFile("m.bin");
+        Random rnd = new Random(42);
+        List<Long> times = new ArrayList<>();
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            // Live readings, then an older RACP history, then live again
+            long t = 10_000_000L;
+            for (int i = 0; i < 3000; i++) times.add(t += 1 + rnd.nextInt(1000));
+            long h = 1_000_000L;
+            for (int i = 0; i < 2000; i++) times.add(h += 1 + rnd.nextInt(1000));
+            for (int i = 0; i < 3000; i++) times.add(t += 1 + rnd.nextInt(1000));
+            for (int i = 0; i < times.size(); i++) store.append(record(times.get(i), i));
+
+            for (int q = 0; q < 200; q++) {
+                long from = 500_000L + rnd.nextInt(14_000_000);
+                long to = from + rnd.nextInt(2_000_000);
+                long expected = times.stream().filter(x -> x >= from && x < to).count();
+                final long[] seen = {0};
+                long visited = store.query(from, to, new MeasurementRecord(), (i, r) -> {
+                    assertTrue(r.timeMillis >= from && r.timeMillis < to);
+                    seen[0]++;
+                    return true;
+                });
+                assertEquals(expected, visited);
+                assertEquals(expected, seen[0]);
+            }
+        }
+    }
+
+    @Test
+    public void millionRecords_appendAndQuery() throws Exception {
+        File f = tmp.newFile("m.bin");
+        final int n = 1_000_000;
+        MeasurementRecord r = record(0, 0);
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            for (int i = 0; i < n; i++) {
+                r.timeMillis = 1_600_000_000_000L + i * 60_000L;
+                r.sequence = i;
+                store.append(r);
+            }
+
+            // One day in the middle of ~2 years of minute readings (timings: MeasurementStoreBenchmark)
+            long from = 1_600_000_000_000L + 500_000L * 60_000L;
+            long visited = store.query(from, from + 24 * 3_600_000L, r, (i, rec) -> true);
+
+            assertEquals(n, store.size());
+            assertEquals(24 * 60, visited);
+        }
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            assertEquals(n, store.size());
+        }
+    }
+
+    @Test
+    public void userQuery_matchesBruteForce_withHundredsOfUsers() throws Exception {
+        File f = tmp.newFile("m.bin");
+        Random rnd = new Random(8);
+        long[] devices = {DEVICE, MeasurementRecord.deviceId("C0:FF:EE:00:00:01")};
+        int n = 40_000;
+        long[] times = new long[n];
+        long[] users = new long[n];
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            long t = 10_000_000L;
+            for (int i = 0; i < n; i++) {
+                // Every third reading is older history (RACP) from a random user
+                times[i] = i % 3 == 0 ? rnd.nextInt(10_000_000) : (t += 1 + rnd.nextInt(1000));
+                MeasurementRecord r = record(times[i], i);
+                r.device = devices[i % 2];
+                int userId = rnd.nextInt(300);
+                if (userId >= 255) { // 255 is the key of the unknown user
+                    r.flags &= ~BpsMeasurement.FLAG_USER_ID;
+                    r.userId = BpsMeasurement.ABSENT;
+                } else {
+                    r.userId = userId;
+                }
+                users[i] = MeasurementRollups.userKey(r.device, r.userId);
+                store.append(r);
+            }
+            assertEquals(2 * 256, store.users().length);
+            checkUserQueries(store, times, users, rnd);
+        }
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            checkUserQueries(store, times, users, rnd);
+        }
+    }
+
+    private static void checkUserQueries(MeasurementStore store, long[] times, long[] users, Random rnd) {
+        long total = 0;
+        for (long user : store.users()) total += store.count(user);
+        assertEquals(times.length, total);
+        long[] keys = store.users();
+        for (int q = 0; q < 300; q++) {
+            long user = keys[rnd.nextInt(keys.length)];
+            long from = rnd.nextInt(30_000_000);
+            long to = from + rnd.nextInt(10_000_000);
+            long expected = 0;
+            for (int i = 0; i < times.length; i++) {
+                if (users[i] == user && times[i] >= from && times[i] < to) expected++;
+            }
+            long[] last = {-1};
+            long visited = store.query(user, from, to, new MeasurementRecord(), (i, r) -> {
+                assertEquals(user, MeasurementRollups.userKey(r.device, r.userId));
+                assertTrue(r.timeMillis >= from && r.timeMillis < to);
+                assertTrue(i > last[0]);
+                last[0] = i;
+                return true;
+            });
+            assertEquals(expected, visited);
+        }
+        long user = keys[0];
+        for (long k = 0; k < store.count(user); k++) {
+            assertEquals(user, users[(int) store.recordOf(user, k)]);
+        }
+    }
+
+    @Test
+    public void userQuery_readsOnlyThatUser_fiveHundredUsersPerDevice() throws Exception {
+        File f = tmp.newFile("m.bin");
+        int usersPerDevice = 250;
+        long[] devices = {DEVICE, MeasurementRecord.deviceId("C0:FF:EE:00:00:01")};
+        int n = 1_000_000;
+        MeasurementRecord r = record(0, 0);
+        try (MeasurementStore store = MeasurementStore.open(f)) {
+            // A ward: 500 patients across two cuffs, one reading a minute in turn
+            for (int i = 0; i < n; i++) {
+                r.timeMillis = 1_600_000_000_000L + i * 60_000L;
+                r.sequence = i;
+                r.device = devices[i % 2];
+                r.userId = (i / 2) % usersPerDevice;
+                store.append(r);
+            }
+            long user = MeasurementRollups.userKey(devices[1], 17);
+            long from = 1_600_000_000_000L;
+            long to = from + (long) n * 60_000L;
+            long[] filtered = {0};
+            store.query(from, to, r, (i, rec) -> {
+                if (MeasurementRollups.userKey(rec.device, rec.userId) == user) filtered[0]++;
+                return true;
+            });
+            // Same records, timings against the scan: MeasurementStoreBenchmark
+            long partitioned = store.query(user, from, to, r, (i, rec) -> true);
+            assertEquals(n / (2 * usersPerDevice), partitioned);
+            assertEquals(filtered[0], partitioned);
+            assertEquals(2 * usersPerDevice, store.users().length);
+
+            // One week of that patient: a handful of partition blocks
+            long week = store.query(user, to - 7 * 24 * 3_600_000L, to, r, (i, rec) -> true);
+            assertEquals(7 * 24 * 60 / (2 * usersPerDevice), week, 1);
+        }
+    }
+
+    private static MeasurementRecord record(long time, int seq) {
+        MeasurementRecord r = new MeasurementRecord();
+        r.timeMillis = time;
+        r.device = DEVICE;
+        r.sequence = seq;
+        r.flags = BpsMeasurement.FLAG_PULSE_RATE | BpsMeasurement.FLAG_USER_ID;
+        r.systolic = 120f + seq % 40;
+        r.diastolic = 80f;
+        r.map = 93f;
+        r.pulseRate = 72f;
+        r.userId = 2;
+        return r;
+    }
+}
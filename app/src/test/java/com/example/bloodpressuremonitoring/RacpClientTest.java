@@ -0,0 +1,224 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link Racp} and {@link RacpClient}.
+ */
+public class RacpClientTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<byte[]> written = Collections.synchronizedList(new ArrayList<>());
+    private final RacpClient.Writer writer = cmd -> {
+        written.add(cmd);
+        return CompletableFuture.completedFuture(null);
+    };
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    // =========================
+    // Codec
+    // =========================
+
+    @Test
+    public void encodesRequests() {
+        assertArrayEquals(new byte[]{0x01, 0x01}, Racp.request(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_ALL));
+        assertArrayEquals(new byte[]{0x04, 0x06}, Racp.request(Racp.OP_REPORT_NUMBER_OF_RECORDS, Racp.OPERATOR_LAST));
+        assertArrayEquals(new byte[]{0x03, 0x00}, Racp.abort());
+        assertArrayEquals(new byte[]{0x02, 0x02, 0x01, 0x34, 0x12},
+                Racp.sequenceFilter(Racp.OP_DELETE_STORED_RECORDS, Racp.OPERATOR_LESS_OR_EQUAL, 0x1234));
+        assertArrayEquals(new byte[]{0x01, 0x04, 0x01, 0x0A, 0x00, (byte) 0xFF, 0x00},
+                Racp.sequenceRange(Racp.OP_REPORT_STORED_RECORDS, 10, 255));
+        assertArrayEquals(new byte[]{0x01, 0x03, 0x02, (byte) 0xEA, 0x07, 3, 14, 15, 9, 26},
+                Racp.timeFilter(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_GREATER_OR_EQUAL,
+                        BpsMeasurement.packTimestamp(2026, 3, 14, 15, 9, 26)));
+        assertEquals(17, Racp.timeRange(Racp.OP_REPORT_STORED_RECORDS, 0, 0).length);
+
+        byte[] report = Racp.sequenceFilter(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_GREATER_OR_EQUAL, 5);
+        byte[] count = Racp.withOpcode(report, Racp.OP_REPORT_NUMBER_OF_RECORDS);
+        assertArrayEquals(new byte[]{0x04, 0x03, 0x01, 0x05, 0x00}, count);
+        assertEquals(0x01, report[0]); // untouched
+    }
+
+    @Test
+    public void decodesResponses() {
+        Racp.Response r = new Racp.Response();
+
+        assertTrue(Racp.decode(new byte[]{0x05, 0x00, (byte) 0xF4, 0x01}, r));
+        assertTrue(r.isNumberOfRecords());
+        assertEquals(500, r.count);
+
+        assertTrue(Racp.decode(new byte[]{0x06, 0x00, 0x01, 0x06}, r));
+        assertTrue(r.isResponseCodeFor(Racp.OP_REPORT_STORED_RECORDS));
+        assertFalse(r.isResponseCodeFor(Racp.OP_ABORT));
+        assertEquals(Racp.RESPONSE_NO_RECORDS_FOUND, r.responseCode);
+        assertEquals(-1, r.count);
+
+        assertTrue(Racp.decode(new byte[]{0x08, 0x00, 0x01, 0x00, 0x01, 0x00}, r));
+        assertEquals(65537, r.count);
+
+        assertFalse(Racp.decode(null, r));
+        assertFalse(Racp.decode(new byte[]{0x05, 0x00, 0x01}, r));
+        assertFalse(Racp.decode(new byte[]{0x01, 0x01}, r));
+        assertEquals(0, r.opcode);
+        assertEquals("operator not supported", Racp.responseCodeName(Racp.RESPONSE_OPERATOR_NOT_SUPPORTED));
+    }
+
+    // =========================
+    // Client
+    // =========================
+
+    @Test
+    public void transfer_countsThenReports_withProgress() throws Exception {
+        RacpClient client = new RacpClient(writer, scheduler);
+        List<String> progress = new ArrayList<>();
+        byte[] report = Racp.request(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_ALL);
+
+        CompletableFuture<RacpClient.Result> f = client.transfer(report, (n, expected) -> progress.add(n + "/" + expected));
+        assertArrayEquals(new byte[]{0x04, 0x01}, written.get(0));
+        assertTrue(client.isBusy());
+
+        client.onIndication(new byte[]{0x05, 0x00, 0x03, 0x00});
+        assertArrayEquals(report, written.get(1));
+        for (int i = 0; i < 3; i++) client.onRecord();
+        assertFalse(f.isDone());
+
+        client.onIndication(new byte[]{0x06, 0x00, 0x01, 0x01});
+        RacpClient.Result r = f.get(1, TimeUnit.SECONDS);
+        assertTrue(r.isSuccess());
+        assertFalse(r.aborted);
+        assertEquals(3, r.received);
+        assertEquals(3, r.count);
+        assertEquals(List.of("1/3", "2/3", "3/3"), progress);
+        assertFalse(client.isBusy());
+    }
+
+    @Test
+    public void transfer_zeroCount_endsWithoutReport() throws Exception {
+        RacpClient client = new RacpClient(writer, scheduler);
+        CompletableFuture<RacpClient.Result> f = client.transfer(
+                Racp.sequenceFilter(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_GREATER_OR_EQUAL, 42), null);
+
+        client.onIndication(new byte[]{0x05, 0x00, 0x00, 0x00});
+        assertEquals(Racp.RESPONSE_NO_RECORDS_FOUND, f.get(1, TimeUnit.SECONDS).responseCode);
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    public void transfer_countNotSupported_stillReports() throws Exception {
+        RacpClient client = new RacpClient(writer, scheduler);
+        List<Long> expected = new ArrayList<>();
+        CompletableFuture<RacpClient.Result> f = client.transfer(
+                Racp.request(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_ALL), (n, e) -> expected.add(e));
+
+        client.onIndication(new byte[]{0x06, 0x00, 0x04, 0x02});
+        assertEquals(2, written.size());
+        client.onRecord();
+        client.onIndication(new byte[]{0x06, 0x00, 0x01, 0x01});
+
+        assertEquals(1, f.get(1, TimeUnit.SECONDS).received);
+        assertEquals(List.of(-1L), expected);
+    }
+
+    @Test
+    public void abort_completesOnDeviceAnswer() throws Exception {
+        RacpClient client = new RacpClient(writer, scheduler);
+        CompletableFuture<RacpClient.Result> f = client.transfer(
+                Racp.request(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_ALL), null);
+        client.onIndication(new byte[]{0x05, 0x00, 0x64, 0x00});
+        client.onRecord();
+        client.onRecord();
+
+        assertTrue(client.abort());
+        assertFalse(client.abort());
+        assertArrayEquals(new byte[]{0x03, 0x00}, written.get(2));
+        client.onRecord(); // still in flight when the abort was sent
+        assertFalse(f.isDone());
+
+        client.onIndication(new byte[]{0x06, 0x00, 0x03, 0x01});
+        RacpClient.Result r = f.get(1, TimeUnit.SECONDS);
+        assertTrue(r.aborted);
+        assertEquals(3, r.received);
+        assertEquals(100, r.count);
+        assertFalse(client.abort());
+    }
+
+    @Test
+    public void idleTimeout_failsTransfer_butActivityKeepsItAlive() throws Exception {
+        RacpClient client = new RacpClient(writer, scheduler, 150);
+        CompletableFuture<RacpClient.Result> f = client.transfer(
+                Racp.request(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_ALL), null);
+        client.onIndication(new byte[]{0x05, 0x00, 0x0A, 0x00});
+
+        // Records keep arriving for twice the timeout: no timeout
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(50);
+            client.onRecord();
+        }
+        assertFalse(f.isDone());
+
+        try {
+            f.get(2, TimeUnit.SECONDS);
+            fail("expected timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        // Device told to stop streaming
+        assertArrayEquals(new byte[]{0x03, 0x00}, written.get(written.size() - 1));
+        assertFalse(client.isBusy());
+    }
+
+    @Test
+    public void request_singleAnswer_andBusy() throws Exception {
+        RacpClient client = new RacpClient(writer, scheduler);
+        CompletableFuture<RacpClient.Result> count = client.request(
+                Racp.request(Racp.OP_REPORT_NUMBER_OF_RECORDS, Racp.OPERATOR_ALL));
+
+        CompletableFuture<RacpClient.Result> busy = client.request(Racp.abort());
+        assertTrue(busy.isCompletedExceptionally());
+
+        client.onIndication(new byte[]{0x06, 0x00, 0x01, 0x01}); // not ours
+        assertFalse(count.isDone());
+        client.onIndication(new byte[]{0x05, 0x00, 0x07, 0x00});
+        assertEquals(7, count.get(1, TimeUnit.SECONDS).count);
+
+        CompletableFuture<RacpClient.Result> delete = client.request(
+                Racp.request(Racp.OP_DELETE_STORED_RECORDS, Racp.OPERATOR_ALL));
+        client.onIndication(new byte[]{0x06, 0x00, 0x02, 0x02});
+        assertEquals(Racp.RESPONSE_OPCODE_NOT_SUPPORTED, delete.get(1, TimeUnit.SECONDS).responseCode);
+    }
+
+    @Test
+    public void writeFailure_andCancel_failTheProcedure() {
+        RacpClient failing = new RacpClient(cmd -> {
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            f.completeExceptionally(new GattOperationException("write failed", 133));
+            return f;
+        }, scheduler);
+        assertTrue(failing.transfer(Racp.abort(), null).isCompletedExceptionally());
+        assertFalse(failing.isBusy());
+
+        RacpClient client = new RacpClient(writer, scheduler);
+        CompletableFuture<RacpClient.Result> f = client.transfer(
+                Racp.request(Racp.OP_REPORT_STORED_RECORDS, Racp.OPERATOR_ALL), null);
+        client.cancel("disconnected");
+        assertTrue(f.isCompletedExceptionally());
+        assertFalse(client.isBusy());
+    }
+}
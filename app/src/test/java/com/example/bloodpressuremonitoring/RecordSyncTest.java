@@ -0,0 +1,274 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RecordSync} and {@link SyncWatermarks}.
+ */
+public class RecordSyncTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long DEVICE = MeasurementRecord.deviceId("C0:FF:EE:12:34:56");
+    private static final long OTHER = MeasurementRecord.deviceId("C0:FF:EE:00:00:01");
+
+    @Test
+    public void firstSync_isFull_thenIncrementalFromWatermark() throws Exception {
+        File f = new File(tmp.getRoot(), "wm.properties");
+        SyncWatermarks wm = new SyncWatermarks(f);
+        RecordSync sync = new RecordSync(wm, DEVICE);
+
+        assertArrayEquals(new byte[]{0x01, 0x01}, sync.start());
+        assertFalse(sync.isIncremental());
+        for (int seq = 0; seq <= 300; seq++) sync.onRecord(seq);
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        wm.save();
+
+        // Survives a restart, and is per device
+        SyncWatermarks reloaded = new SyncWatermarks(f);
+        assertEquals(300, reloaded.get(DEVICE));
+        assertEquals(SyncWatermarks.NONE, reloaded.get(OTHER));
+
+        RecordSync next = new RecordSync(reloaded, DEVICE);
+        // >= 300 (0x012C), sequence number filter
+        assertArrayEquals(new byte[]{0x01, 0x03, 0x01, 0x2C, 0x01}, next.start());
+        assertTrue(next.isIncremental());
+        next.onRecord(300); // canary
+        next.onRecord(301);
+        assertEquals(RecordSync.Outcome.COMPLETE, next.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(301, reloaded.get(DEVICE));
+        assertEquals(2, next.received());
+    }
+
+    @Test
+    public void counterReset_fallsBackToFullSync() {
+        SyncWatermarks wm = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        wm.set(DEVICE, 500);
+        RecordSync sync = new RecordSync(wm, DEVICE);
+
+        sync.start();
+        // Record #500 is gone: the device started numbering again
+        assertEquals(RecordSync.Outcome.RESTART_FULL, sync.finish(Racp.RESPONSE_NO_RECORDS_FOUND));
+        assertEquals(SyncWatermarks.NONE, wm.get(DEVICE));
+
+        assertArrayEquals(new byte[]{0x01, 0x01}, sync.start());
+        sync.onRecord(0);
+        sync.onRecord(1);
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(1, wm.get(DEVICE));
+    }
+
+    @Test
+    public void changedCanary_dropsTheWatermark_andRestartsFull() {
+        SyncWatermarks wm = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        wm.set(DEVICE, 500);
+        RecordSync sync = new RecordSync(wm, DEVICE);
+
+        // Reset, then 600 new readings: #500 exists, but is another reading
+        sync.start();
+        for (int seq = 500; seq < 600; seq++) {
+            if (seq == 500) sync.onCanaryChanged();
+            sync.onRecord(seq);
+        }
+        assertTrue(sync.isReset());
+        assertEquals(SyncWatermarks.NONE, wm.get(DEVICE));
+        assertEquals(RecordSync.Outcome.RESTART_FULL, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(SyncWatermarks.NONE, wm.get(DEVICE));
+
+        assertArrayEquals(new byte[]{0x01, 0x01}, sync.start());
+        assertFalse(sync.isReset());
+        for (int seq = 0; seq < 600; seq++) sync.onRecord(seq);
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(599, wm.get(DEVICE));
+
+        // Interrupted after the reset was seen: nothing of the old numbering is committed
+        wm.set(DEVICE, 700);
+        RecordSync cut = new RecordSync(wm, DEVICE);
+        cut.start();
+        cut.onCanaryChanged();
+        cut.onRecord(700);
+        cut.onRecord(701);
+        assertTrue(cut.interrupt());
+        cut.onRecord(702);
+        assertEquals(SyncWatermarks.NONE, wm.get(DEVICE));
+    }
+
+    @Test
+    public void wrapAt0xFFFF_fullSync_thenIncrementalFromTheWrappedRecord() {
+        SyncWatermarks wm = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        wm.set(DEVICE, 0xFFF0);
+        RecordSync sync = new RecordSync(wm, DEVICE);
+
+        sync.start();
+        for (int seq = 0xFFF0; seq <= 0xFFFF; seq++) sync.onRecord(seq);
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(0xFFFF, wm.get(DEVICE));
+
+        // Nothing above 0xFFFF can be asked for by number
+        assertArrayEquals(new byte[]{0x01, 0x01}, sync.start());
+        assertFalse(sync.isIncremental());
+        for (int seq = 0xFFF8; seq <= 0xFFFF; seq++) sync.onRecord(seq);
+        for (int seq = 0; seq <= 5; seq++) sync.onRecord(seq);
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(5, wm.get(DEVICE));
+
+        // In whatever order the device lists them
+        wm.set(DEVICE, SyncWatermarks.NONE);
+        sync.start();
+        for (int seq = 0; seq <= 5; seq++) sync.onRecord(seq);
+        for (int seq = 0xFFF8; seq <= 0xFFFF; seq++) sync.onRecord(seq);
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(5, wm.get(DEVICE));
+
+        assertArrayEquals(new byte[]{0x01, 0x03, 0x01, 0x05, 0x00}, sync.start());
+    }
+
+    @Test
+    public void interruptedOrRejectedTransfer_keepsWatermark() {
+        SyncWatermarks wm = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        wm.set(DEVICE, 10);
+
+        RecordSync interrupted = new RecordSync(wm, DEVICE);
+        interrupted.start();
+        interrupted.onRecord(10);
+        interrupted.onRecord(11);
+        // Link lost before the response code: nothing committed
+        assertEquals(10, wm.get(DEVICE));
+
+        RecordSync rejected = new RecordSync(wm, DEVICE);
+        rejected.start();
+        rejected.onRecord(11);
+        assertEquals(RecordSync.Outcome.FAILED, rejected.finish(Racp.RESPONSE_OPERATOR_NOT_SUPPORTED));
+        assertEquals(10, wm.get(DEVICE));
+    }
+
+    @Test
+    public void interrupt_commitsTheRunReceived_lateRecordsToo() {
+        SyncWatermarks wm = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        wm.set(DEVICE, 10);
+
+        RecordSync sync = new RecordSync(wm, DEVICE);
+        sync.start();
+        sync.onRecord(10);
+        sync.onRecord(12);
+        sync.onRecord(11);
+        assertTrue(sync.interrupt());
+        assertEquals(12, wm.get(DEVICE));
+        // Completed on the ingest thread after the link loss
+        sync.onRecord(13);
+        assertEquals(13, wm.get(DEVICE));
+        assertFalse(sync.interrupt());
+        assertEquals(RecordSync.Outcome.FAILED, sync.finish(Racp.RESPONSE_SUCCESS));
+
+        // Nothing new (only the canary): nothing to commit
+        RecordSync next = new RecordSync(wm, DEVICE);
+        next.start();
+        next.onRecord(13);
+        assertFalse(next.interrupt());
+        assertEquals(13, wm.get(DEVICE));
+
+        // #15 lost: the next connection resumes below it
+        RecordSync holed = new RecordSync(wm, DEVICE);
+        holed.start();
+        holed.onRecord(13);
+        holed.onRecord(14);
+        holed.onRecord(16);
+        assertTrue(holed.interrupt());
+        assertEquals(14, wm.get(DEVICE));
+    }
+
+    @Test
+    public void lostRecords_areRequestedAgain_beforeTheWatermarkMoves() {
+        SyncWatermarks wm = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        wm.set(DEVICE, 10);
+        RecordSync sync = new RecordSync(wm, DEVICE);
+
+        sync.start();
+        for (int seq : new int[]{10, 11, 13, 14}) sync.onRecord(seq);
+        for (int seq = 20; seq <= 30; seq++) sync.onRecord(seq);
+        sync.onRecord(41);
+        sync.onRecord(40);
+        assertEquals(RecordSync.Outcome.FILL_GAPS, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(10, wm.get(DEVICE));
+        assertEquals(1 + 5 + 9, sync.missing());
+        // Close holes in one range (01 04 01 lo hi lo hi), the far one in another
+        assertArrayEquals(new byte[]{0x01, 0x04, 0x01, 12, 0, 19, 0}, sync.nextGap());
+        for (int seq = 12; seq <= 19; seq++) sync.onRecord(seq);
+        assertEquals(RecordSync.Outcome.FILL_GAPS, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertArrayEquals(new byte[]{0x01, 0x04, 0x01, 31, 0, 39, 0}, sync.nextGap());
+        for (int seq = 31; seq <= 39; seq++) {
+            if (seq != 35) sync.onRecord(seq);
+        }
+        // #35 lost again: next round
+        assertEquals(RecordSync.Outcome.FILL_GAPS, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertArrayEquals(new byte[]{0x01, 0x04, 0x01, 35, 0, 35, 0}, sync.nextGap());
+        sync.onRecord(35);
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(41, wm.get(DEVICE));
+        assertEquals(0, sync.missing());
+    }
+
+    @Test
+    public void stillMissingAfterTheLastRound_orRangesRejected_watermarkStopsBelow() {
+        SyncWatermarks wm = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        RecordSync sync = new RecordSync(wm, DEVICE);
+
+        sync.start();
+        for (int seq = 0; seq < 100; seq++) {
+            if (seq != 50) sync.onRecord(seq);
+        }
+        for (int round = 0; round < RecordSync.MAX_GAP_ROUNDS; round++) {
+            assertEquals(RecordSync.Outcome.FILL_GAPS, sync.finish(Racp.RESPONSE_SUCCESS));
+            assertNotNull(sync.nextGap());
+        }
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(49, wm.get(DEVICE));
+
+        // Resumes from #49; the device does not support ranges
+        assertArrayEquals(new byte[]{0x01, 0x03, 0x01, 49, 0}, sync.start());
+        for (int seq = 49; seq < 100; seq++) {
+            if (seq != 60) sync.onRecord(seq);
+        }
+        assertEquals(RecordSync.Outcome.FILL_GAPS, sync.finish(Racp.RESPONSE_SUCCESS));
+        sync.nextGap();
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_OPERATOR_NOT_SUPPORTED));
+        assertEquals(59, wm.get(DEVICE));
+
+        // Deleted from the device since: "no records found" fills the hole
+        sync.start();
+        for (int seq = 59; seq < 100; seq++) {
+            if (seq != 60) sync.onRecord(seq);
+        }
+        assertEquals(RecordSync.Outcome.FILL_GAPS, sync.finish(Racp.RESPONSE_SUCCESS));
+        sync.nextGap();
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_NO_RECORDS_FOUND));
+        assertEquals(99, wm.get(DEVICE));
+    }
+
+    @Test
+    public void finishWithoutStart_orTwice_isIgnored() {
+        SyncWatermarks wm = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        RecordSync sync = new RecordSync(wm, DEVICE);
+
+        assertEquals(RecordSync.Outcome.FAILED, sync.finish(Racp.RESPONSE_SUCCESS));
+        sync.start();
+        sync.onRecord(7);
+        assertEquals(RecordSync.Outcome.COMPLETE, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(RecordSync.Outcome.FAILED, sync.finish(Racp.RESPONSE_SUCCESS));
+        assertEquals(7, wm.get(DEVICE));
+    }
+
+    @Test
+    public void corruptFile_meansNeverSynced() throws Exception {
+        File f = tmp.newFile("wm.properties");
+        java.nio.file.Files.write(f.toPath(), "C0\\:FF\\:EE\\:12\\:34\\:56=garbage\n".getBytes("ISO-8859-1"));
+        assertEquals(SyncWatermarks.NONE, new SyncWatermarks(f).get(DEVICE));
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ScanTable}.
+ */
+public class ScanTableTest {
+
+    private final ScanTable<Object> table = new ScanTable<>(500, 15_000, 4);
+
+    @Test
+    public void newDevices_arePublishedOnce_inFirstSeenOrder() {
+        table.onResult("AA:00:00:00:00:02", null, "B", -60, 1000);
+        table.onResult("AA:00:00:00:00:01", null, "A", -50, 1001);
+        table.onResult("AA:00:00:00:00:02", null, "B", -61, 1002);
+
+        ScanTable.Diff<Object> d = table.publish(1100);
+        assertNotNull(d);
+        assertEquals(List.of("AA:00:00:00:00:02", "AA:00:00:00:00:01"), addresses(d.added));
+        assertTrue(d.changed.isEmpty());
+        assertEquals(2, table.get("AA:00:00:00:00:02").advertisements);
+
+        // Nothing new
+        assertNull(table.publish(2000));
+    }
+
+    @Test
+    public void publish_isThrottled() {
+        table.onResult("AA:00:00:00:00:01", null, "A", -50, 1000);
+        assertNotNull(table.publish(1000));
+
+        table.onResult("AA:00:00:00:00:02", null, "B", -50, 1100);
+        assertEquals(400, table.delayUntilPublish(1100));
+        assertNull(table.publish(1100));
+
+        ScanTable.Diff<Object> d = table.publish(1500);
+        assertNotNull(d);
+        assertEquals(List.of("AA:00:00:00:00:02"), addresses(d.added));
+    }
+
+    @Test
+    public void rssiJitter_isNotPublished_butNamesAndLargeMovesAre() {
+        table.onResult("AA:00:00:00:00:01", null, null, -70, 0);
+        table.publish(0);
+
+        assertFalse(table.onResult("AA:00:00:00:00:01", null, null, -72, 600));
+        assertNull(table.publish(600));
+        assertEquals(-72, table.get("AA:00:00:00:00:01").rssi);
+
+        assertTrue(table.onResult("AA:00:00:00:00:01", null, "Cuff", -72, 700)); // scan response name
+        assertTrue(table.onResult("AA:00:00:00:00:01", null, "Cuff", -60, 800));
+        ScanTable.Diff<Object> d = table.publish(1200);
+        assertEquals(1, d.changed.size());
+        assertEquals("Cuff", d.changed.get(0).name);
+        assertEquals(-60, d.changed.get(0).rssi);
+    }
+
+    @Test
+    public void staleDevices_areRemoved() {
+        table.onResult("AA:00:00:00:00:01", null, "A", -50, 0);
+        table.onResult("AA:00:00:00:00:02", null, "B", -50, 0);
+        table.publish(0);
+
+        table.onResult("AA:00:00:00:00:02", null, "B", -50, 10_000);
+        ScanTable.Diff<Object> d = table.publish(16_000);
+        assertEquals(List.of("AA:00:00:00:00:01"), addresses(d.removed));
+        assertEquals(1, table.size());
+        assertNull(table.get("AA:00:00:00:00:01"));
+    }
+
+    @Test
+    public void busyRoom_200Advertisers_fewPublishes() {
+        // 250 advertisers at ~10 Hz for 10 s, published every 500 ms
+        int publishes = 0;
+        int maxAdded = 0;
+        for (long t = 0; t < 10_000; t += 100) {
+            for (int i = 0; i < 250; i++) {
+                table.onResult(String.format("AA:00:00:00:%02X:%02X", i >> 8, i & 0xFF), null, null,
+                        -60 - (int) ((t / 100 + i) % 3), t);
+            }
+            if (t % 500 == 0) {
+                ScanTable.Diff<Object> d = table.publish(t);
+                if (d != null) {
+                    publishes++;
+                    maxAdded = Math.max(maxAdded, d.added.size());
+                }
+            }
+        }
+        assertEquals(250, table.size());
+        assertEquals(25_000, table.results());
+        assertEquals(250, maxAdded);
+        // RSSI jitter below the threshold: only the first publish carries anything
+        assertEquals(1, publishes);
+    }
+
+    private static List<String> addresses(List<ScanTable.Device<Object>> devices) {
+        List<String> out = new ArrayList<>();
+        for (ScanTable.Device<Object> d : devices) out.add(d.address);
+        return out;
+    }
+}
@@ -0,0 +1,461 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SessionManager} and {@link DeviceSession}, against
+ * simulated peripherals.
+ */
+public class SessionManagerTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final int RECORDS = 200;
+
+    private final ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(2);
+    private final ScheduledExecutorService radio = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, SimulatedBpPeripheral> peripherals = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger overlaps = new AtomicInteger();
+    private final AtomicInteger live = new AtomicInteger();
+
+    // Next peripherals created
+    private volatile boolean bonded;
+    private volatile int racpProperties = 0x28;
+    private volatile int rateLimit;                                     // record notifications/s, 0: none
+    private volatile int records = RECORDS;
+    private volatile int valueOffset;                                   // other readings (counter reset)
+    private volatile boolean bloodPressureService = true;
+    private final AtomicInteger unreachable = new AtomicInteger();   // next connection attempts that fail
+
+    private final DeviceSession.Listener listener = new DeviceSession.Listener() {
+        @Override
+        public void onStateChanged(DeviceSession session, DeviceSession.State state) {
+        }
+
+        @Override
+        public void onMeasurement(DeviceSession session, MeasurementSnapshot m) {
+            AtomicInteger n = inFlight.computeIfAbsent(session.address(), a -> new AtomicInteger());
+            if (n.incrementAndGet() > 1) overlaps.incrementAndGet();
+            Thread.yield();
+            n.decrementAndGet();
+            if (m.isLive()) live.incrementAndGet();
+        }
+    };
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        radio.shutdownNow();
+    }
+
+    @Test
+    public void eightSessions_syncInParallel() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 8, store, watermarks,
+                    ZoneOffset.UTC, listener);
+
+            List<DeviceSession> sessions = new ArrayList<>();
+            for (int i = 0; i < 8; i++) sessions.add(manager.connect(address(i)));
+            assertNull("cap reached", manager.connect(address(8)));
+            assertEquals(1, manager.rejected());
+            assertSame(sessions.get(3), manager.connect(address(3)));
+
+            waitFor(() -> sessions.stream().allMatch(s -> s.state() == DeviceSession.State.READY));
+
+            for (DeviceSession s : sessions) {
+                assertEquals(RECORDS, s.metrics().records.sum());
+                assertEquals(0, s.metrics().gattFailures.sum());
+                assertTrue(s.metrics().setupMillis >= 0);
+                assertEquals(RECORDS - 1, watermarks.get(s.deviceId()));
+                assertEquals(247, s.metrics().mtu);
+                assertTrue(s.metrics().recordsPerSecond > 0);
+                assertTrue(s.metrics().bytesPerSecond > s.metrics().recordsPerSecond);
+            }
+            assertEquals(8 * RECORDS, store.size());
+            assertEquals(0, overlaps.get());
+
+            // Live measurements keep flowing on every session
+            for (int i = 0; i < 8; i++) peripherals.get(address(i)).notifyLive(i);
+            waitFor(() -> live.get() == 8);
+
+            manager.closeAll();
+            waitFor(() -> manager.size() == 0);
+            for (SimulatedBpPeripheral p : peripherals.values()) assertTrue(p.closed);
+            assertNotNull(manager.connect(address(8)));
+            manager.close();
+        }
+    }
+
+    @Test
+    public void disconnect_freesTheSlot_andReconnectSyncsIncrementally() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+
+            DeviceSession first = manager.connect(address(0));
+            waitFor(() -> first.state() == DeviceSession.State.READY);
+            peripherals.get(address(0)).dropLink();
+            waitFor(() -> manager.size() == 0);
+            assertEquals(DeviceSession.State.DISCONNECTED, first.state());
+            // Kept for the diagnostics report
+            assertEquals(Collections.singletonList(first), manager.recentlyEnded());
+
+            DeviceSession second = manager.connect(address(0));
+            assertNotSame(first, second);
+            waitFor(() -> second.state() == DeviceSession.State.READY);
+            // Only the canary record was sent again, and it is not stored twice
+            assertEquals(1, second.metrics().records.sum());
+            assertEquals(1, second.metrics().duplicates.sum());
+            assertEquals(RECORDS, store.size());
+            assertEquals(0, second.metrics().framesDropped());
+            manager.close();
+        }
+    }
+
+    @Test
+    public void linkIsBoostedForTheTransfer_thenRelaxed() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+
+            DeviceSession session = manager.connect(address(0));
+            waitFor(() -> session.state() == DeviceSession.State.READY);
+            SimulatedBpPeripheral p = peripherals.get(address(0));
+            assertTrue("high priority + 2M while records streamed", p.boostedDuringTransfer);
+            waitFor(() -> p.priority == LinkTuner.CONNECTION_PRIORITY_BALANCED && p.phy == LinkTuner.PHY_LE_1M);
+            assertEquals(RECORDS, session.metrics().records.sum());
+            manager.close();
+        }
+    }
+
+    @Test
+    public void untunedLink_keepsTheDefaults() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+            manager.setLinkSettings(LinkTuner.Settings.NONE);
+
+            DeviceSession session = manager.connect(address(0));
+            waitFor(() -> session.state() == DeviceSession.State.READY);
+            SimulatedBpPeripheral p = peripherals.get(address(0));
+            assertFalse(p.boostedDuringTransfer);
+            assertEquals(0, p.mtuRequests);
+            assertEquals(LinkTuner.DEFAULT_MTU, session.metrics().mtu);
+            assertEquals(RECORDS, session.metrics().records.sum());
+            manager.close();
+        }
+    }
+
+    @Test
+    public void bondedReconnect_skipsFeatureReadAndCccdWrites() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            File cacheFile = new File(tmp.getRoot(), "gatt.properties");
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+            manager.setGattCache(new GattCache(cacheFile));
+            bonded = true;
+
+            DeviceSession first = manager.connect(address(0));
+            waitFor(() -> first.state() == DeviceSession.State.READY);
+            SimulatedBpPeripheral p1 = peripherals.get(address(0));
+            assertFalse(first.metrics().gattCacheHit);
+            assertEquals(1, p1.featureReads);
+            assertEquals(3, p1.cccdWrites);
+            assertTrue(first.metrics().firstIndicationMillis >= 0);
+            p1.dropLink();
+            waitFor(() -> manager.size() == 0);
+
+            // As after an app restart: the cache comes back from its file
+            manager.setGattCache(new GattCache(cacheFile));
+            DeviceSession second = manager.connect(address(0));
+            waitFor(() -> second.state() == DeviceSession.State.READY);
+            SimulatedBpPeripheral p2 = peripherals.get(address(0));
+            assertTrue(second.metrics().gattCacheHit);
+            assertEquals(0, p2.featureReads);
+            assertEquals(0, p2.cccdWrites);
+            assertEquals(3, p2.localSubscriptions);
+            assertEquals(1, second.metrics().records.sum());
+            assertEquals(0, second.metrics().gattFailures.sum());
+            manager.close();
+        }
+    }
+
+    @Test
+    public void changedLayout_orUnbondedDevice_getsAFullSetup() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            GattCache cache = new GattCache(new File(tmp.getRoot(), "gatt.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+            manager.setGattCache(cache);
+
+            // Not bonded: the Feature is cached, the CCCDs are not
+            DeviceSession first = manager.connect(address(0));
+            waitFor(() -> first.state() == DeviceSession.State.READY);
+            assertEquals(0, cache.get(address(0)).cccds);
+            peripherals.get(address(0)).dropLink();
+            waitFor(() -> manager.size() == 0);
+
+            DeviceSession second = manager.connect(address(0));
+            waitFor(() -> second.state() == DeviceSession.State.READY);
+            assertTrue(second.metrics().gattCacheHit);
+            assertEquals(0, peripherals.get(address(0)).featureReads);
+            assertEquals(3, peripherals.get(address(0)).cccdWrites);
+            peripherals.get(address(0)).dropLink();
+            waitFor(() -> manager.size() == 0);
+
+            // New firmware, different RACP properties: nothing cached applies
+            racpProperties = 0x2C;
+            DeviceSession third = manager.connect(address(0));
+            waitFor(() -> third.state() == DeviceSession.State.READY);
+            assertFalse(third.metrics().gattCacheHit);
+            assertEquals(1, peripherals.get(address(0)).featureReads);
+            assertTrue(cache.get(address(0)).layout.contains("2A52=2C"));
+            manager.close();
+        }
+    }
+
+    @Test
+    public void serviceChanged_invalidatesTheCache_andDiscoversAgain() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            GattCache cache = new GattCache(new File(tmp.getRoot(), "gatt.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+            manager.setGattCache(cache);
+            bonded = true;
+
+            DeviceSession session = manager.connect(address(0));
+            waitFor(() -> session.state() == DeviceSession.State.READY);
+            SimulatedBpPeripheral p = peripherals.get(address(0));
+            p.changeServices(0x2C);
+            waitFor(() -> p.discoveries == 2 && session.state() == DeviceSession.State.READY);
+
+            assertEquals(1, session.metrics().serviceChanges.sum());
+            // Full setup again on the same connection, with the new layout cached
+            assertEquals(2, p.featureReads);
+            assertEquals(6, p.cccdWrites);
+            assertTrue(cache.get(address(0)).layout.contains("2A52=2C"));
+            assertEquals(GattCache.CCCD_MEASUREMENT | GattCache.CCCD_RACP | GattCache.CCCD_RECORD,
+                    cache.get(address(0)).cccds);
+            assertEquals(RECORDS, store.size());
+            manager.close();
+        }
+    }
+
+    @Test
+    public void lostLink_reconnectsWithBackoff_thenInTheBackground() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+            manager.setReconnectPolicy(new ReconnectPolicy(5, 20, 2));
+
+            DeviceSession first = manager.connect(address(0));
+            waitFor(() -> first.state() == DeviceSession.State.READY);
+            assertFalse(peripherals.get(address(0)).autoConnect);
+
+            // Out of range for three attempts: two direct ones, then background
+            unreachable.set(3);
+            peripherals.get(address(0)).dropLink();
+            waitFor(() -> manager.reconnects() == 4 && manager.size() == 1
+                    && manager.get(address(0)).state() == DeviceSession.State.READY);
+            DeviceSession back = manager.get(address(0));
+            assertNotSame(first, back);
+            assertTrue("fourth attempt is a background connection", peripherals.get(address(0)).autoConnect);
+            assertEquals(1, back.metrics().records.sum()); // the canary only
+            assertEquals(RECORDS, store.size());
+
+            // READY reset the backoff: the next loss starts with a direct attempt again
+            peripherals.get(address(0)).dropLink();
+            waitFor(() -> manager.reconnects() == 5 && manager.get(address(0)) != null
+                    && manager.get(address(0)).state() == DeviceSession.State.READY);
+            assertFalse(peripherals.get(address(0)).autoConnect);
+
+            // Disconnected by the app: stays disconnected
+            manager.disconnect(address(0));
+            waitFor(() -> manager.size() == 0);
+            Thread.sleep(50);
+            assertEquals(5, manager.reconnects());
+            assertEquals(0, manager.pendingReconnects());
+            manager.close();
+        }
+    }
+
+    @Test
+    public void noBloodPressureService_isNotReconnected_andDisconnectFreesTheSlot() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+            manager.setReconnectPolicy(new ReconnectPolicy(5, 20, 2));
+
+            bloodPressureService = false;
+            DeviceSession other = manager.connect(address(0));
+            waitFor(() -> other.state() == DeviceSession.State.DISCONNECTED);
+            assertTrue(other.isPermanentFailure());
+            Thread.sleep(50);
+            assertEquals(0, manager.reconnects());
+            assertEquals(0, manager.pendingReconnects());
+            assertEquals(0, manager.size());
+            assertFalse(manager.disconnect(address(0)));
+
+            // The only slot, taken by a cuff, then given back by the user
+            bloodPressureService = true;
+            DeviceSession cuff = manager.connect(address(1));
+            waitFor(() -> cuff.state() == DeviceSession.State.READY);
+            assertFalse(cuff.isPermanentFailure());
+            assertNull(manager.connect(address(2)));
+            assertTrue(manager.disconnect(address(1)));
+            waitFor(() -> manager.size() == 0);
+            assertNotNull(manager.connect(address(2)));
+            manager.close();
+        }
+    }
+
+    @Test
+    public void interruptedTransfer_resumesFromTheLastRecord() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+            manager.setReconnectPolicy(new ReconnectPolicy(5, 20, 2));
+            rateLimit = 2_000;
+
+            DeviceSession first = manager.connect(address(0));
+            waitFor(() -> first.metrics().records.sum() >= RECORDS / 2);
+            peripherals.get(address(0)).dropLink();
+            waitFor(() -> first.state() == DeviceSession.State.DISCONNECTED);
+            int resumedFrom = watermarks.get(first.deviceId());
+            assertTrue(resumedFrom >= RECORDS / 2 - 1 && resumedFrom < RECORDS - 1);
+
+            waitFor(() -> manager.get(address(0)) != null
+                    && manager.get(address(0)).state() == DeviceSession.State.READY);
+            DeviceSession second = manager.get(address(0));
+            // From the last record received (the canary), not from the start
+            assertEquals(RECORDS - resumedFrom, second.metrics().records.sum());
+            assertEquals(1, second.metrics().duplicates.sum());
+            assertEquals(RECORDS, store.size());
+            assertEquals(RECORDS - 1, watermarks.get(first.deviceId()));
+            manager.close();
+        }
+    }
+
+    @Test
+    public void counterReset_thenMoreReadingsThanTheWatermark_syncsInFull() throws Exception {
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"))) {
+            SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+
+            DeviceSession first = manager.connect(address(0));
+            waitFor(() -> first.state() == DeviceSession.State.READY);
+            assertEquals(RECORDS - 1, watermarks.get(first.deviceId()));
+            manager.disconnect(address(0));
+            waitFor(() -> manager.size() == 0);
+
+            // Memory cleared, then 250 new readings: #199 exists again, with another reading
+            records = 250;
+            valueOffset = 1000;
+            DeviceSession second = manager.connect(address(0));
+            waitFor(() -> second.state() == DeviceSession.State.READY);
+            assertEquals(RECORDS + 250, store.size());
+            assertEquals(249, watermarks.get(first.deviceId()));
+            assertEquals(2, peripherals.get(address(0)).transfers);
+            // #199..#249 of the incremental transfer come again in the full one
+            assertEquals(51 + 250, second.metrics().records.sum());
+            assertEquals(51, second.metrics().duplicates.sum());
+
+            // Nothing new: the canary matches the reading stored
+            manager.disconnect(address(0));
+            waitFor(() -> manager.size() == 0);
+            DeviceSession third = manager.connect(address(0));
+            waitFor(() -> third.state() == DeviceSession.State.READY);
+            assertEquals(1, third.metrics().records.sum());
+            assertEquals(1, third.metrics().duplicates.sum());
+            assertEquals(RECORDS + 250, store.size());
+            manager.close();
+        }
+    }
+
+    @Test
+    public void canaryCompactedToTheColdTier_isFound_withoutADeduplicator() throws Exception {
+        File storeFile = tmp.newFile("m.bin");
+        SyncWatermarks watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        try (MeasurementStore store = MeasurementStore.open(storeFile)) {
+            SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                    ZoneOffset.UTC, listener);
+            DeviceSession first = manager.connect(address(0));
+            waitFor(() -> first.state() == DeviceSession.State.READY);
+            manager.close();
+        }
+
+        // Restart: the whole history, canary included, moves to the cold tier
+        try (ColdTier cold = ColdTier.open(tmp.newFolder("cold"))) {
+            assertEquals(RECORDS, MeasurementCompactor.compact(storeFile, cold, Long.MAX_VALUE, 1));
+            try (MeasurementStore store = MeasurementStore.open(storeFile)) {
+                assertEquals(0, store.size());
+                SessionManager manager = new SessionManager(this::peripheral, pool, 1, store, watermarks,
+                        ZoneOffset.UTC, listener);
+                manager.setColdTier(cold);
+
+                DeviceSession second = manager.connect(address(0));
+                waitFor(() -> second.state() == DeviceSession.State.READY);
+                // Found in the cold tier: not a counter reset, no full sync
+                assertEquals(1, peripherals.get(address(0)).transfers);
+                assertEquals(1, second.metrics().records.sum());
+                assertEquals(1, second.metrics().duplicates.sum());
+                assertEquals(0, store.size());
+                manager.close();
+            }
+        }
+    }
+
+    private GattTransport peripheral(String address) {
+        SimulatedBpPeripheral p = new SimulatedBpPeripheral(address, radio,
+                new SimulatedBpPeripheral.Config().records(records).valueOffset(valueOffset)
+                        .bloodPressureService(bloodPressureService).bonded(bonded).racpProperties(racpProperties)
+                        .rate(rateLimit).unreachable(unreachable.getAndUpdate(n -> Math.max(0, n - 1)) > 0));
+        peripherals.put(address, p);
+        return p;
+    }
+
+    private static String address(int i) {
+        return String.format("C0:FF:EE:00:00:%02X", i);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("condition not met");
+            Thread.sleep(5);
+        }
+    }
+}
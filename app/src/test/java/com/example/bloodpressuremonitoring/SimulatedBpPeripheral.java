@@ -0,0 +1,535 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * In-process Blood Pressure peripheral (service 0x1810) behind {@link GattTransport}:
+ * Measurement (0x2A35), Feature (0x2A49), Blood Pressure Record (0x2B36) and RACP
+ * (0x2A52), so the whole connect -> subscribe -> RACP -> decode path runs in plain JUnit.
+ * <p>
+ * All callbacks are delivered on the {@code radio} executor, which must be single
+ * threaded (one radio serializes everything, like the binder callbacks of a real
+ * stack). Records are streamed in paced chunks so an RACP abort written mid-transfer
+ * is seen, and configurable loss / reordering is applied to every record notification.
+ * Without a rate the peripheral streams as fast as the radio thread goes; with
+ * {@link #setReceiverBusy} it then runs at the pace the receiver sustains.
+ * Records are synthesized from their sequence number (see {@link #systolicOf}), so a
+ * test can check every decoded value without keeping the expected list.
+ */
+final class SimulatedBpPeripheral implements GattTransport {
+
+    /** Behaviour of one simulated monitor. Fluent setters, read when a transfer starts. */
+    static final class Config {
+        int records = 100;
+        int firstSequence = 0;
+        boolean fullPayload;               // timestamp + pulse + user + status: 19-byte 0x2A35
+        int maxMtu = 247;                  // what the peripheral accepts in the MTU exchange
+        int notificationsPerSecond;        // record notifications; 0 = as fast as possible
+        double lossRate;                   // probability that a record notification is lost
+        double reorderRate;                // probability that a notification is swapped with the next
+        long seed = 1;
+        int feature = 0x0003;
+        boolean bonded;                    // keeps its CCCD values across connections
+        int racpProperties = 0x28;         // write | indicate
+        boolean unreachable;               // connection attempts fail (out of range)
+        int valueOffset;                   // values of record n are those of n + offset (other readings)
+        boolean bloodPressureService = true; // false: another kind of peripheral
+
+        Config unreachable(boolean u) {
+            unreachable = u;
+            return this;
+        }
+
+        Config bloodPressureService(boolean present) {
+            bloodPressureService = present;
+            return this;
+        }
+
+        Config bonded(boolean b) {
+            bonded = b;
+            return this;
+        }
+
+        Config racpProperties(int properties) {
+            racpProperties = properties;
+            return this;
+        }
+
+        Config records(int n) {
+            records = n;
+            return this;
+        }
+
+        Config firstSequence(int seq) {
+            firstSequence = seq;
+            return this;
+        }
+
+        Config fullPayload(boolean full) {
+            fullPayload = full;
+            return this;
+        }
+
+        Config maxMtu(int mtu) {
+            maxMtu = mtu;
+            return this;
+        }
+
+        Config rate(int notificationsPerSecond) {
+            this.notificationsPerSecond = notificationsPerSecond;
+            return this;
+        }
+
+        Config loss(double rate) {
+            lossRate = rate;
+            return this;
+        }
+
+        Config reorder(double rate) {
+            reorderRate = rate;
+            return this;
+        }
+
+        Config valueOffset(int offset) {
+            valueOffset = offset;
+            return this;
+        }
+
+        Config seed(long s) {
+            seed = s;
+            return this;
+        }
+    }
+
+    // Paced streaming: at most this many notifications per radio task
+    private static final int CHUNK = 256;
+    // A late radio catches up by at most this many notifications (about one connection
+    // event), it never bursts above the link rate to make up for lost time
+    private static final int MAX_CATCH_UP = 8;
+    // Retry delay while the receiver reports itself busy (flow control)
+    private static final long BUSY_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final String address;
+    private final ScheduledExecutorService radio;
+    private final Config config;
+    private final Random random;
+
+    private volatile Callback callback;
+    private volatile boolean connected;
+    private int mtu = LinkTuner.DEFAULT_MTU; // radio thread
+    private int segmentCounter;              // radio thread
+    private boolean streaming;               // radio thread
+    private byte[] held;                     // radio thread: notification held back to be reordered
+    private boolean recordIntact;            // radio thread: no segment of the current record lost
+    private volatile boolean abortRequested;
+    // Link-layer flow control: while true the peripheral holds its notifications back,
+    // as a real link does when the receiver stops acknowledging
+    private volatile BooleanSupplier receiverBusy = () -> false;
+
+    // Ground truth, readable by the test
+    volatile boolean closed;
+    volatile int mtuRequests;
+    volatile int priority = LinkTuner.CONNECTION_PRIORITY_BALANCED;
+    volatile int phy = LinkTuner.PHY_LE_1M;
+    volatile boolean boostedDuringTransfer;
+    volatile int transfers;
+    volatile long recordNotifications;
+    volatile long lostNotifications;
+    volatile long reorderedNotifications;
+    volatile long recordsSent;
+    volatile long recordsIntact;         // records with none of their segments lost
+    volatile boolean autoConnect;         // how the last connection was requested
+    volatile int discoveries;
+    volatile int featureReads;
+    volatile int cccdWrites;
+    volatile int localSubscriptions;      // notifications routed without a CCCD write
+
+    SimulatedBpPeripheral(String address, ScheduledExecutorService radio, Config config) {
+        this.address = address;
+        this.radio = radio;
+        this.config = config;
+        this.random = new Random(config.seed);
+    }
+
+    // =========================
+    // Stored records
+    // =========================
+
+    /** Adds {@code n} records after the last one (a new measurement taken offline). */
+    synchronized void addRecords(int n) {
+        config.records += n;
+    }
+
+    /** Memory cleared: the next records start again at {@code firstSequence}. */
+    synchronized void resetRecords(int firstSequence, int n) {
+        config.firstSequence = firstSequence;
+        config.records = n;
+    }
+
+    /** As {@link #resetRecords}, with other readings under the old numbers. */
+    synchronized void resetRecords(int firstSequence, int n, int valueOffset) {
+        resetRecords(firstSequence, n);
+        config.valueOffset = valueOffset;
+    }
+
+    static int systolicOf(int seq) {
+        return 100 + seq % 60;
+    }
+
+    static int diastolicOf(int seq) {
+        return 60 + seq % 30;
+    }
+
+    static int pulseOf(int seq) {
+        return 55 + seq % 40;
+    }
+
+    /** 0x2A35 value of record {@code seq}: SFLOATs with exponent 0. */
+    static byte[] measurementOf(int seq, boolean full) {
+        int sys = systolicOf(seq);
+        int dia = diastolicOf(seq);
+        int map = (sys + 2 * dia) / 3;
+        if (!full) {
+            return new byte[]{0x00, (byte) sys, (byte) (sys >> 8), (byte) dia, (byte) (dia >> 8),
+                    (byte) map, (byte) (map >> 8)};
+        }
+        int flags = BpsMeasurement.FLAG_TIMESTAMP | BpsMeasurement.FLAG_PULSE_RATE
+                | BpsMeasurement.FLAG_USER_ID | BpsMeasurement.FLAG_STATUS;
+        int year = 2026;
+        int pulse = pulseOf(seq);
+        return new byte[]{(byte) flags, (byte) sys, (byte) (sys >> 8), (byte) dia, (byte) (dia >> 8),
+                (byte) map, (byte) (map >> 8),
+                (byte) year, (byte) (year >> 8), (byte) (1 + seq % 12), (byte) (1 + seq % 28),
+                (byte) (seq % 24), (byte) (seq % 60), (byte) ((seq / 60) % 60),
+                (byte) pulse, (byte) (pulse >> 8), 0x01, 0x00, 0x00};
+    }
+
+    /** Holds record notifications back while {@code busy} is true. */
+    void setReceiverBusy(BooleanSupplier busy) {
+        receiverBusy = busy;
+    }
+
+    void notifyLive(int seq) {
+        radio.execute(() -> {
+            Callback cb = callback;
+            if (cb != null && connected) {
+                cb.onCharacteristicChanged(DeviceSession.BPS_MEASUREMENT_UUID, measurementOf(seq + config.valueOffset, config.fullPayload));
+            }
+        });
+    }
+
+    /** Firmware update or similar: the attribute table changed, indicate Service Changed. */
+    void changeServices(int racpProperties) {
+        radio.execute(() -> {
+            config.racpProperties = racpProperties;
+            Callback cb = callback;
+            if (cb != null && connected) cb.onServiceChanged();
+        });
+    }
+
+    void dropLink() {
+        radio.execute(() -> {
+            connected = false;
+            Callback cb = callback;
+            if (cb != null) cb.onConnectionStateChanged(false, 8);
+        });
+    }
+
+    // =========================
+    // GattTransport
+    // =========================
+
+    @Override
+    public String address() {
+        return address;
+    }
+
+    @Override
+    public boolean connect(Callback callback, boolean autoConnect) {
+        this.callback = callback;
+        this.autoConnect = autoConnect;
+        if (config.unreachable) {
+            // GATT_ERROR (133), as Android reports a connection attempt that timed out
+            radio.schedule(() -> callback.onConnectionStateChanged(false, 133), 1, TimeUnit.MILLISECONDS);
+            return true;
+        }
+        radio.execute(() -> {
+            connected = true;
+            callback.onConnectionStateChanged(true, 0);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean discoverServices() {
+        discoveries++;
+        radio.execute(() -> callback.onServicesDiscovered(0));
+        return true;
+    }
+
+    @Override
+    public boolean hasCharacteristic(UUID characteristic) {
+        if (!config.bloodPressureService) return false;
+        return DeviceSession.BPS_MEASUREMENT_UUID.equals(characteristic)
+                || DeviceSession.BPS_FEATURE_UUID.equals(characteristic)
+                || DeviceSession.BP_RECORD_UUID.equals(characteristic)
+                || DeviceSession.RACP_UUID.equals(characteristic);
+    }
+
+    @Override
+    public boolean hasProperties(UUID characteristic, int properties) {
+        return (properties(characteristic) & properties) == properties;
+    }
+
+    @Override
+    public int properties(UUID characteristic) {
+        if (DeviceSession.BPS_MEASUREMENT_UUID.equals(characteristic)) return 0x20;
+        if (DeviceSession.BPS_FEATURE_UUID.equals(characteristic)) return 0x02;
+        if (DeviceSession.BP_RECORD_UUID.equals(characteristic)) return 0x10;
+        if (DeviceSession.RACP_UUID.equals(characteristic)) return config.racpProperties;
+        return -1;
+    }
+
+    @Override
+    public boolean isBonded() {
+        return config.bonded;
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID characteristic) {
+        if (!DeviceSession.BPS_FEATURE_UUID.equals(characteristic)) return false;
+        featureReads++;
+        int f = config.feature;
+        radio.execute(() -> callback.onCharacteristicRead(characteristic, 0, new byte[]{(byte) f, (byte) (f >> 8)}));
+        return true;
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID characteristic, byte[] value) {
+        if (!DeviceSession.RACP_UUID.equals(characteristic)) return false;
+        byte[] cmd = value.clone();
+        // Seen at once, like the controller receiving the write while it streams
+        if (cmd.length >= 1 && cmd[0] == Racp.OP_ABORT) abortRequested = true;
+        radio.execute(() -> {
+            callback.onCharacteristicWrite(characteristic, 0);
+            racp(cmd);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean enableNotifications(UUID characteristic, byte[] cccdValue) {
+        if (!hasCharacteristic(characteristic)) return false;
+        cccdWrites++;
+        radio.execute(() -> callback.onDescriptorWrite(characteristic, 0, cccdValue));
+        return true;
+    }
+
+    @Override
+    public boolean enableLocalNotifications(UUID characteristic) {
+        if (!hasCharacteristic(characteristic)) return false;
+        localSubscriptions++;
+        return true;
+    }
+
+    @Override
+    public boolean requestMtu(int requested) {
+        mtuRequests++;
+        radio.execute(() -> {
+            mtu = Math.max(LinkTuner.DEFAULT_MTU, Math.min(requested, config.maxMtu));
+            callback.onMtuChanged(mtu, 0);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int priority) {
+        this.priority = priority;
+        return true;
+    }
+
+    @Override
+    public boolean isLe2MPhySupported() {
+        return true;
+    }
+
+    @Override
+    public boolean setPreferredPhy(int txPhyMask, int rxPhyMask, int phyOptions) {
+        int selected = (txPhyMask & LinkTuner.PHY_LE_2M_MASK) != 0 ? LinkTuner.PHY_LE_2M : LinkTuner.PHY_LE_1M;
+        radio.execute(() -> {
+            phy = selected;
+            callback.onPhyUpdate(selected, selected, 0);
+        });
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        connected = false;
+    }
+
+    // =========================
+    // RACP (radio thread)
+    // =========================
+
+    private void racp(byte[] cmd) {
+        int op = cmd[0] & 0xFF;
+        if (op == Racp.OP_ABORT) {
+            // A running transfer answers for itself when it sees the flag
+            if (!streaming) {
+                abortRequested = false;
+                respond(Racp.OP_ABORT, Racp.RESPONSE_SUCCESS);
+            }
+            return;
+        }
+        if (op != Racp.OP_REPORT_STORED_RECORDS && op != Racp.OP_REPORT_NUMBER_OF_RECORDS) {
+            respond(op, Racp.RESPONSE_OPCODE_NOT_SUPPORTED);
+            return;
+        }
+
+        int first;
+        int last;
+        synchronized (this) {
+            first = config.firstSequence;
+            last = config.firstSequence + config.records - 1;
+        }
+        int from = first;
+        int operator = cmd.length >= 2 ? cmd[1] & 0xFF : Racp.OPERATOR_NULL;
+        if (operator == Racp.OPERATOR_GREATER_OR_EQUAL && cmd.length >= 5) {
+            from = Math.max(first, (cmd[3] & 0xFF) | ((cmd[4] & 0xFF) << 8));
+        } else if (operator == Racp.OPERATOR_RANGE && cmd.length >= 7) {
+            from = Math.max(first, (cmd[3] & 0xFF) | ((cmd[4] & 0xFF) << 8));
+            last = Math.min(last, (cmd[5] & 0xFF) | ((cmd[6] & 0xFF) << 8));
+        } else if (operator != Racp.OPERATOR_ALL) {
+            respond(op, Racp.RESPONSE_OPERATOR_NOT_SUPPORTED);
+            return;
+        }
+        int matching = Math.max(0, last - from + 1);
+
+        if (op == Racp.OP_REPORT_NUMBER_OF_RECORDS) {
+            callback.onCharacteristicChanged(DeviceSession.RACP_UUID,
+                    new byte[]{Racp.OP_NUMBER_OF_RECORDS_RESPONSE, 0x00, (byte) matching, (byte) (matching >> 8)});
+            return;
+        }
+        if (matching == 0) {
+            respond(op, Racp.RESPONSE_NO_RECORDS_FOUND);
+            return;
+        }
+        transfers++;
+        boostedDuringTransfer = priority == LinkTuner.CONNECTION_PRIORITY_HIGH && phy == LinkTuner.PHY_LE_2M;
+        abortRequested = false;
+        streaming = true;
+        stream(from, last, System.nanoTime());
+    }
+
+    // Sends up to CHUNK notifications that are due, then reschedules itself
+    private void stream(int next, int last, long dueNanos) {
+        if (!connected) {
+            streaming = false;
+            return;
+        }
+        long period = config.notificationsPerSecond > 0
+                ? TimeUnit.SECONDS.toNanos(1) / config.notificationsPerSecond : 0;
+        int seq = next;
+        long due = dueNanos;
+        for (int i = 0; i < CHUNK && seq <= last; i++) {
+            if (abortRequested) {
+                streaming = false;
+                abortRequested = false;
+                flushHeld();
+                respond(Racp.OP_ABORT, Racp.RESPONSE_SUCCESS);
+                return;
+            }
+            if (receiverBusy.getAsBoolean()) {
+                int s = seq;
+                radio.schedule(() -> stream(s, last, System.nanoTime()), BUSY_RETRY_NANOS, TimeUnit.NANOSECONDS);
+                return;
+            }
+            if (period > 0) {
+                long now = System.nanoTime();
+                if (due > now) {
+                    int s = seq;
+                    long d = due;
+                    radio.schedule(() -> stream(s, last, d), due - now, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                due = Math.max(due, now - MAX_CATCH_UP * period);
+            }
+            due += period * sendRecord(seq++);
+        }
+        if (seq <= last) {
+            int s = seq;
+            long d = due;
+            radio.execute(() -> stream(s, last, d));
+            return;
+        }
+        flushHeld();
+        streaming = false;
+        respond(Racp.OP_REPORT_STORED_RECORDS, Racp.RESPONSE_SUCCESS);
+    }
+
+    // Segments one record at the current MTU; returns the number of notifications
+    private int sendRecord(int seq) {
+        byte[] payload = measurementOf(seq + config.valueOffset, config.fullPayload);
+        int maxValue = mtu - 3;
+        int offset = 0;
+        int count = 0;
+        boolean first = true;
+        recordIntact = true;
+        while (first || offset < payload.length) {
+            int header = first ? BpRecordReassembler.FIRST_HEADER_LENGTH : 1;
+            int chunk = Math.min(payload.length - offset, maxValue - header);
+            boolean lastSegment = offset + chunk == payload.length;
+            byte[] v = new byte[header + chunk];
+            v[0] = (byte) ((first ? BpRecordReassembler.SEG_FIRST : 0) | (lastSegment ? BpRecordReassembler.SEG_LAST : 0)
+                    | (segmentCounter++ & BpRecordReassembler.SEG_COUNTER_MASK));
+            if (first) {
+                v[1] = (byte) seq;
+                v[2] = (byte) (seq >> 8);
+                v[3] = (byte) BpRecordReassembler.UUID_BP_MEASUREMENT;
+                v[4] = (byte) (BpRecordReassembler.UUID_BP_MEASUREMENT >> 8);
+            }
+            System.arraycopy(payload, offset, v, header, chunk);
+            offset += chunk;
+            first = false;
+            count++;
+            deliver(v);
+        }
+        recordsSent++;
+        if (recordIntact) recordsIntact++;
+        return count;
+    }
+
+    private void deliver(byte[] v) {
+        recordNotifications++;
+        if (config.lossRate > 0 && random.nextDouble() < config.lossRate) {
+            lostNotifications++;
+            recordIntact = false;
+            return;
+        }
+        if (held == null && config.reorderRate > 0 && random.nextDouble() < config.reorderRate) {
+            held = v;
+            reorderedNotifications++;
+            return;
+        }
+        callback.onCharacteristicChanged(DeviceSession.BP_RECORD_UUID, v);
+        flushHeld();
+    }
+
+    private void flushHeld() {
+        if (held == null) return;
+        byte[] h = held;
+        held = null;
+        callback.onCharacteristicChanged(DeviceSession.BP_RECORD_UUID, h);
+    }
+
+    private void respond(int requestOpcode, int code) {
+        callback.onCharacteristicChanged(DeviceSession.RACP_UUID,
+                new byte[]{Racp.OP_RESPONSE_CODE, 0x00, (byte) requestOpcode, (byte) code});
+    }
+}
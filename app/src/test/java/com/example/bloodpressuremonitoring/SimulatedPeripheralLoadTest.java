@@ -0,0 +1,207 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Connect -> subscribe -> RACP -> decode -> store, end to end against
+ * {@link SimulatedBpPeripheral}s: volume, segmentation, loss and reordering.
+ */
+public class SimulatedPeripheralLoadTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private final ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(2);
+    private final ScheduledExecutorService radio = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, SimulatedBpPeripheral> peripherals = new ConcurrentHashMap<>();
+
+    private final AtomicInteger decoded = new AtomicInteger();
+    private final AtomicInteger wrongValues = new AtomicInteger();
+    private SimulatedBpPeripheral.Config config = new SimulatedBpPeripheral.Config();
+    private SyncWatermarks watermarks;
+
+    // Every record is checked against the values the peripheral derived from its sequence number
+    private final DeviceSession.Listener listener = new DeviceSession.Listener() {
+        @Override
+        public void onStateChanged(DeviceSession session, DeviceSession.State state) {
+        }
+
+        @Override
+        public void onMeasurement(DeviceSession session, MeasurementSnapshot m) {
+            if (m.isLive()) return;
+            decoded.incrementAndGet();
+            boolean ok = m.systolic == SimulatedBpPeripheral.systolicOf(m.sequence)
+                    && m.diastolic == SimulatedBpPeripheral.diastolicOf(m.sequence)
+                    && (!m.hasPulseRate() || m.pulseRate == SimulatedBpPeripheral.pulseOf(m.sequence));
+            if (!ok) wrongValues.incrementAndGet();
+        }
+    };
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        radio.shutdownNow();
+    }
+
+    @Test
+    public void hundredThousandRecords_fromFourCuffs() throws Exception {
+        final int cuffs = 4;
+        final int perCuff = 25_000; // sequence numbers are uint16: 100k records need several cuffs
+        config = new SimulatedBpPeripheral.Config().records(perCuff).fullPayload(true);
+
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"));
+             SessionManager manager = newManager(store, cuffs)) {
+            long t0 = System.nanoTime();
+            List<DeviceSession> sessions = new ArrayList<>();
+            for (int i = 0; i < cuffs; i++) sessions.add(connectWithFlowControl(manager, address(i)));
+            waitFor(60, () -> sessions.stream().allMatch(s -> s.state() == DeviceSession.State.READY));
+            long elapsedMs = (System.nanoTime() - t0) / 1_000_000;
+
+            assertEquals(cuffs * perCuff, store.size());
+            assertEquals(cuffs * perCuff, decoded.get());
+            assertEquals(0, wrongValues.get());
+            for (DeviceSession s : sessions) {
+                assertEquals(perCuff, s.metrics().records.sum());
+                assertEquals(0, s.metrics().framesDropped());
+                assertEquals(0, s.metrics().gattFailures.sum());
+                assertEquals(0, s.reassembler().counterGaps());
+                // Every record went through decode and persist; one 0x2B36 frame per record at MTU 247
+                assertEquals(perCuff, s.metrics().frames(DeviceSession.CHANNEL_RECORD));
+                assertEquals(perCuff, s.metrics().decodeLatency.count());
+                assertEquals(perCuff, s.metrics().persistLatency.count());
+                assertTrue(s.metrics().gattQueueWait().count() > 0);
+            }
+            String report = Diagnostics.report(manager, store, null, Collections.singletonMap("device", "jvm"));
+            assertTrue(report, report.contains("\n[total]\nsessions=" + cuffs + "\n"));
+            assertTrue(report, report.contains("\nframes.record=" + perCuff + "\n"));
+            // Far above what a BLE link delivers (~1k notifications/s per cuff)
+            assertTrue("took " + elapsedMs + " ms", elapsedMs < 40_000);
+        }
+    }
+
+    @Test
+    public void defaultMtu_recordsAreSegmented_andReassembled() throws Exception {
+        config = new SimulatedBpPeripheral.Config().records(5_000).fullPayload(true).maxMtu(23);
+
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"));
+             SessionManager manager = newManager(store, 1)) {
+            DeviceSession session = connectWithFlowControl(manager, address(0));
+            waitFor(30, () -> session.state() == DeviceSession.State.READY);
+
+            SimulatedBpPeripheral p = peripherals.get(address(0));
+            assertEquals(LinkTuner.DEFAULT_MTU, session.metrics().mtu);
+            assertEquals(2 * 5_000, p.recordNotifications); // 24-byte record, 20-byte notifications
+            assertEquals(5_000, store.size());
+            assertEquals(0, wrongValues.get());
+            assertEquals(0, session.reassembler().droppedRecords());
+        }
+    }
+
+    @Test
+    public void lossyLink_lostRecordsAreRequestedAgain() throws Exception {
+        config = new SimulatedBpPeripheral.Config().records(5_000).fullPayload(true).maxMtu(23)
+                .loss(0.01).seed(42);
+
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"));
+             SessionManager manager = newManager(store, 1)) {
+            DeviceSession session = connectWithFlowControl(manager, address(0));
+            waitFor(30, () -> session.state() == DeviceSession.State.READY);
+
+            SimulatedBpPeripheral p = peripherals.get(address(0));
+            assertTrue(p.lostNotifications > 0);
+            // A record with a lost segment is detected (counter gap), never stored half-decoded,
+            // and fetched again by a range request
+            assertTrue(session.reassembler().counterGaps() > 0);
+            assertTrue(p.recordsIntact < p.recordsSent);
+            assertTrue(p.transfers > 1);
+            assertEquals(5_000, store.size());
+            assertEquals(5_000, decoded.get());
+            assertEquals(0, wrongValues.get());
+            assertEquals(4_999, watermarks.get(session.deviceId()));
+            assertEquals(0, session.metrics().framesDropped());
+        }
+    }
+
+    @Test
+    public void reorderedNotifications_singleSegmentRecords_allStored() throws Exception {
+        config = new SimulatedBpPeripheral.Config().records(5_000).reorder(0.05).seed(7);
+
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"));
+             SessionManager manager = newManager(store, 1)) {
+            DeviceSession session = connectWithFlowControl(manager, address(0));
+            waitFor(30, () -> session.state() == DeviceSession.State.READY);
+
+            SimulatedBpPeripheral p = peripherals.get(address(0));
+            assertTrue(p.reorderedNotifications > 0);
+            assertEquals(5_000, store.size());
+            assertEquals(0, wrongValues.get());
+            assertEquals(0, session.metrics().duplicates.sum());
+        }
+    }
+
+    @Test
+    public void pacedTransfer_isMeasuredAtTheLinkRate() throws Exception {
+        config = new SimulatedBpPeripheral.Config().records(1_000).rate(2_000);
+
+        try (MeasurementStore store = MeasurementStore.open(tmp.newFile("m.bin"));
+             SessionManager manager = newManager(store, 1)) {
+            DeviceSession session = connectWithFlowControl(manager, address(0));
+            waitFor(30, () -> session.state() == DeviceSession.State.READY);
+
+            assertEquals(1_000, store.size());
+            // 1000 single-segment records at 2000 notifications/s: ~0.5 s
+            double rate = session.metrics().recordsPerSecond;
+            assertTrue(session.metrics().toString(), rate > 500 && rate < 2_200);
+        }
+    }
+
+    private SessionManager newManager(MeasurementStore store, int maxSessions) {
+        watermarks = new SyncWatermarks(new File(tmp.getRoot(), "wm.properties"));
+        return new SessionManager(this::peripheral, pool, maxSessions, store, watermarks, ZoneOffset.UTC, listener);
+    }
+
+    // The peripheral holds back while the session's ingest ring is 3/4 full
+    private DeviceSession connectWithFlowControl(SessionManager manager, String address) {
+        DeviceSession session = manager.connect(address);
+        IngestRing ring = session.ingestRing();
+        peripherals.get(address).setReceiverBusy(() -> ring.depth() > ring.capacity() * 3 / 4);
+        return session;
+    }
+
+    private GattTransport peripheral(String address) {
+        SimulatedBpPeripheral p = new SimulatedBpPeripheral(address, radio, config);
+        peripherals.put(address, p);
+        return p;
+    }
+
+    private static String address(int i) {
+        return String.format("C0:FF:EE:00:01:%02X", i);
+    }
+
+    private static void waitFor(int seconds, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("condition not met");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link StatusLog}.
+ */
+public class StatusLogTest {
+
+    @Test
+    public void capacity_isRoundedUpToPowerOfTwo() {
+        assertEquals(8, new StatusLog(5).capacity());
+        assertEquals(8, new StatusLog(8).capacity());
+        assertEquals(1, new StatusLog(1).capacity());
+    }
+
+    @Test
+    public void drain_returnsNewLinesInOrder() {
+        StatusLog log = new StatusLog(8);
+        List<String> seen = new ArrayList<>();
+
+        log.append("a");
+        log.append("b");
+        long cursor = log.drain(0, e -> seen.add(e.text));
+        log.append("c");
+        cursor = log.drain(cursor, e -> seen.add(e.text));
+        cursor = log.drain(cursor, e -> seen.add(e.text));
+
+        assertEquals(List.of("a", "b", "c"), seen);
+        assertEquals(3, cursor);
+        assertEquals(0, log.evicted());
+    }
+
+    @Test
+    public void overflow_evictsOldest_andSpills() {
+        List<String> spilled = new ArrayList<>();
+        StatusLog log = new StatusLog(4, e -> spilled.add(e.text));
+        for (int i = 0; i < 10; i++) log.append("line" + i);
+
+        List<String> seen = new ArrayList<>();
+        long cursor = log.drain(0, e -> seen.add(e.text));
+
+        assertEquals(List.of("line6", "line7", "line8", "line9"), seen);
+        assertEquals(10, cursor);
+        assertEquals(6, log.evicted());
+        assertEquals(List.of("line0", "line1", "line2", "line3", "line4", "line5"), spilled);
+    }
+
+    @Test
+    public void concurrentAppenders_loseNothingButEvictions() throws Exception {
+        final int threads = 4;
+        final int perThread = 20_000;
+        final AtomicLong spilled = new AtomicLong();
+        final StatusLog log = new StatusLog(256, e -> spilled.incrementAndGet());
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final String prefix = "t" + t + ":";
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) log.append(prefix + i);
+            });
+            workers.add(w);
+            w.start();
+        }
+
+        // UI-like reader draining while writers run
+        start.countDown();
+        long cursor = 0;
+        final long[] lastSeq = {-1};
+        final long[] read = {0};
+        StatusLog.Sink sink = e -> {
+            assertTrue("out of order", e.seq > lastSeq[0]);
+            lastSeq[0] = e.seq;
+            read[0]++;
+        };
+        for (Thread w : workers) {
+            while (w.isAlive()) cursor = log.drain(cursor, sink);
+        }
+        for (Thread w : workers) w.join();
+        cursor = log.drain(cursor, sink);
+
+        long total = (long) threads * perThread;
+        assertEquals(total, log.appended());
+        assertEquals(total, cursor);
+        assertEquals(total - log.capacity(), log.evicted());
+        assertEquals(log.evicted(), spilled.get());
+        assertTrue(read[0] >= log.capacity());
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ThroughputMeter}.
+ */
+public class ThroughputMeterTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void ratesOverTheTransfer() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.start(1_000 * MS);
+        for (int i = 0; i < 50; i++) {
+            meter.onRecord();
+            meter.onBytes(24);
+        }
+        assertTrue(meter.isRunning());
+        assertEquals(0, meter.recordsPerSecond(), 0);
+
+        meter.stop(1_500 * MS);
+        assertEquals(500, meter.elapsedMillis());
+        assertEquals(100.0, meter.recordsPerSecond(), 1e-9);
+        assertEquals(2400.0, meter.bytesPerSecond(), 1e-9);
+
+        // Nothing counted once stopped; a new start resets
+        meter.onRecord();
+        assertEquals(50, meter.records());
+        meter.start(2_000 * MS);
+        assertEquals(0, meter.records());
+        assertEquals(-1, meter.elapsedMillis());
+    }
+
+    @Test
+    public void stopWithoutStart_isIgnored() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.stop(5 * MS);
+        assertEquals(-1, meter.elapsedMillis());
+        assertEquals(0, meter.bytesPerSecond(), 0);
+    }
+}
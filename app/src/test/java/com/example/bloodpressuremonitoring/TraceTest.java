@@ -0,0 +1,120 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link Trace} and {@link TraceRecorder}.
+ */
+public class TraceTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final Trace trace = new Trace();
+    private final Trace.Tracer tracer = trace.tracer("AA:BB", (c, l, m) -> lines.add(l + " " + c + " " + m));
+
+    @Test
+    public void defaults_infoEverywhere_framesOff() {
+        assertEquals(Trace.Level.INFO, trace.level(Trace.Category.GATT));
+        assertNull(trace.level(Trace.Category.FRAMES));
+        assertTrue(trace.on(Trace.Category.RACP, Trace.Level.ERROR));
+        assertTrue(trace.on(Trace.Category.RACP, Trace.Level.INFO));
+        assertFalse(trace.on(Trace.Category.RACP, Trace.Level.DEBUG));
+        assertFalse(trace.on(Trace.Category.FRAMES, Trace.Level.ERROR));
+    }
+
+    @Test
+    public void levelsPerCategory() {
+        trace.setLevel(Trace.Category.DECODE, Trace.Level.VERBOSE);
+        trace.off(Trace.Category.GATT);
+        assertTrue(trace.on(Trace.Category.DECODE, Trace.Level.VERBOSE));
+        assertFalse(trace.on(Trace.Category.GATT, Trace.Level.ERROR));
+        assertFalse(trace.on(Trace.Category.LINK, Trace.Level.DEBUG));
+
+        trace.setLevel(Trace.Level.WARN);
+        assertTrue(trace.on(Trace.Category.GATT, Trace.Level.WARN));
+        assertFalse(trace.on(Trace.Category.DECODE, Trace.Level.INFO));
+        assertTrue(trace.on(Trace.Category.FRAMES, Trace.Level.ERROR));
+    }
+
+    @Test
+    public void placeholders_filledOnlyWhenEnabled() {
+        Object noisy = new Object() {
+            @Override
+            public String toString() {
+                fail("formatted although disabled");
+                return "";
+            }
+        };
+        tracer.log(Trace.Category.DECODE, Trace.Level.DEBUG, "#{}: {}", noisy, noisy);
+        tracer.hex(Trace.Category.FRAMES, Trace.Level.VERBOSE, "raw: ", new byte[]{1}, 1);
+        assertTrue(lines.isEmpty());
+
+        tracer.log(Trace.Category.RACP, Trace.Level.INFO, "progress {}/{} record(s)", 5, 10);
+        tracer.log(Trace.Category.RACP, Trace.Level.WARN, "{} -> {} ({})", "a", "b", 3);
+        tracer.log(Trace.Category.RACP, Trace.Level.INFO, "no placeholder", 1);
+        trace.setLevel(Trace.Category.FRAMES, Trace.Level.VERBOSE);
+        tracer.hex(Trace.Category.FRAMES, Trace.Level.VERBOSE, "raw: ", new byte[]{0x01, (byte) 0xAB, 0x00}, 2);
+        assertEquals(Arrays.asList(
+                "INFO RACP progress 5/10 record(s)",
+                "WARN RACP a -> b (3)",
+                "INFO RACP no placeholder",
+                "VERBOSE FRAMES raw: 01 AB"), lines);
+    }
+
+    @Test
+    public void recorder_roundTrip() throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        TraceRecorder recorder = new TraceRecorder(file);
+        trace.setRecorder(recorder);
+
+        byte[] measurement = SimulatedBpPeripheral.measurementOf(3, true);
+        tracer.frame(DeviceSession.CHANNEL_MEASUREMENT, measurement, measurement.length, System.nanoTime());
+        tracer.frame(DeviceSession.CHANNEL_MEASUREMENT, measurement, 4, System.nanoTime());
+        tracer.log(Trace.Category.RACP, Trace.Level.INFO, "RACP: full sync");
+        tracer.log(Trace.Category.RACP, Trace.Level.DEBUG, "not emitted, not recorded");
+        trace.tracer("CC:DD", (c, l, m) -> { }).frame(DeviceSession.CHANNEL_RACP, new byte[]{0x06, 0x00}, 2, 0);
+        recorder.close();
+        assertEquals(4, recorder.records());
+        assertEquals(0, recorder.dropped());
+
+        StringBuilder text = new StringBuilder();
+        TraceRecorder.decode(new ByteArrayInputStream(file.toByteArray()), text);
+        String[] out = text.toString().split("\n");
+        assertEquals(5, out.length);
+        assertTrue(out[0].startsWith("# trace started at "));
+        assertTrue(out[1], out[1].matches("\\+\\d+\\.\\d{6} \\[AA:BB] FRAME measurement 1E .* -> SYS=103\\.0 DIA=63\\.0 .*"));
+        assertTrue(out[2], out[2].endsWith("[AA:BB] FRAME measurement 1E 67 00 3F -> MALFORMED"));
+        assertTrue(out[3], out[3].endsWith("[AA:BB] INFO RACP RACP: full sync"));
+        assertTrue(out[4], out[4].endsWith("[CC:DD] FRAME racp 06 00"));
+    }
+
+    @Test
+    public void recorder_truncatedFile_decodesWhatIsComplete() throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        TraceRecorder recorder = new TraceRecorder(file);
+        recorder.event("AA:BB", Trace.Category.GATT, Trace.Level.INFO, "GATT: connect()");
+        recorder.frame("AA:BB", DeviceSession.CHANNEL_RECORD, new byte[20], 20, System.nanoTime());
+        recorder.close();
+
+        byte[] bytes = file.toByteArray();
+        StringBuilder text = new StringBuilder();
+        TraceRecorder.decode(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 5)), text);
+        String[] out = text.toString().split("\n");
+        assertEquals(3, out.length);
+        assertTrue(out[1], out[1].endsWith("INFO GATT GATT: connect()"));
+        assertEquals("# truncated record at end of trace", out[2]);
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsOtherFiles() throws IOException {
+        TraceRecorder.decode(new ByteArrayInputStream(new byte[]{'P', 'K', 3, 4, 0, 0}), new StringBuilder());
+    }
+}
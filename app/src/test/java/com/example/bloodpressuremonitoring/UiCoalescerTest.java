@@ -0,0 +1,120 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link UiCoalescer}: a 10k-reading burst against a simulated vsync.
+ */
+public class UiCoalescerTest {
+
+    @Test
+    public void burst_rendersOncePerFrame_latestValueAndCount() {
+        AtomicInteger requested = new AtomicInteger();
+        List<Integer> shown = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        UiCoalescer<Integer> coalescer = new UiCoalescer<>(requested::incrementAndGet, (latest, n) -> {
+            shown.add(latest);
+            counts.add(n);
+        });
+
+        // 10k readings; a vsync every 250 of them (a fast RACP transfer, ~16 ms per frame)
+        int n = 10_000;
+        for (int i = 0; i < n; i++) {
+            coalescer.publish(i);
+            if (i % 250 == 249) coalescer.onFrame();
+        }
+        coalescer.onFrame();
+
+        assertEquals(n / 250, requested.get());
+        assertEquals(n / 250, coalescer.frames());
+        assertEquals(n, coalescer.published());
+        for (int f = 0; f < shown.size(); f++) {
+            assertEquals(250 * f + 249, (int) shown.get(f));
+            assertEquals(250L, (long) counts.get(f));
+        }
+    }
+
+    @Test
+    public void countOnly_keepsTheValueShown_andIdleFramesRenderNothing() {
+        List<Integer> shown = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        UiCoalescer<Integer> coalescer = new UiCoalescer<>(() -> { }, (latest, n) -> {
+            shown.add(latest);
+            counts.add(n);
+        });
+        coalescer.publish(7);
+        coalescer.count();
+        coalescer.count();
+        coalescer.onFrame();
+        coalescer.count();
+        coalescer.onFrame();
+        coalescer.onFrame();
+
+        assertEquals(2, shown.size());
+        assertEquals(Integer.valueOf(7), shown.get(0));
+        assertEquals(3L, (long) counts.get(0));
+        assertNull(shown.get(1));
+        assertEquals(1L, (long) counts.get(1));
+    }
+
+    @Test
+    public void concurrentProducers_nothingLost_fewFrames() throws Exception {
+        ScheduledExecutorService ui = Executors.newSingleThreadScheduledExecutor();
+        int producers = 4;
+        int perProducer = 10_000 / producers;
+        long[] rendered = {0};
+        int[] lastShown = {-1};
+        AtomicReference<UiCoalescer<Integer>> self = new AtomicReference<>();
+        // "vsync": the frame runs 1 ms after it is requested, on the single UI thread
+        UiCoalescer<Integer> coalescer = new UiCoalescer<>(
+                () -> ui.schedule(() -> self.get().onFrame(), 1, TimeUnit.MILLISECONDS),
+                (latest, n) -> {
+                    rendered[0] += n;
+                    if (latest != null) lastShown[0] = latest;
+                });
+        self.set(coalescer);
+
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            Thread t = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    coalescer.publish(base + i);
+                    // Yield now and then: the burst spans several frames
+                    if (i % 50 == 0) Thread.yield();
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        go.countDown();
+        for (Thread t : threads) t.join();
+        // The last requested frame (1 ms) runs before this one
+        ui.schedule(() -> { }, 5, TimeUnit.MILLISECONDS).get();
+        ui.shutdown();
+        assertTrue(ui.awaitTermination(5, TimeUnit.SECONDS));
+
+        long total = (long) producers * perProducer;
+        assertEquals(total, coalescer.published());
+        assertEquals(total, rendered[0]);
+        assertTrue(lastShown[0] >= 0);
+        assertTrue("frames " + coalescer.frames(), coalescer.frames() < total / 10);
+    }
+}
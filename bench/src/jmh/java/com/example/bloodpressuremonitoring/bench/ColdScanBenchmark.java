@@ -0,0 +1,67 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.ColdSegment;
+import com.example.bloodpressuremonitoring.MeasurementRecord;
+import com.example.bloodpressuremonitoring.MeasurementStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan of 1M records (mean systolic, as the statistics rebuild reads them) from the
+ * memory-mapped store or from a {@link ColdSegment} of the same records, about five
+ * times smaller: decoding the blocks against reading 48-byte records. One op is one scan.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ColdScanBenchmark {
+
+    static final int RECORDS = 1_000_000;
+
+    @Param({"store", "cold"})
+    public String source;
+
+    private File dir;
+    private MeasurementStore store;
+    private ColdSegment segment;
+    private final MeasurementRecord scratch = new MeasurementRecord();
+    private double sum;
+    private final MeasurementStore.Visitor addSystolic = (index, r) -> {
+        sum += r.systolic;
+        return true;
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Records.tempDir();
+        store = Records.ward(new File(dir, "m.bin"), RECORDS, 1);
+        File file = new File(dir, "s.bpc");
+        ColdSegment.write(file, store, 0, store.size());
+        segment = ColdSegment.open(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        segment.close();
+        store.close();
+        Records.delete(dir);
+    }
+
+    @Benchmark
+    public double meanSystolic() {
+        sum = 0;
+        long n = "cold".equals(source)
+                ? segment.query(Long.MIN_VALUE, Long.MAX_VALUE, scratch, addSystolic)
+                : store.query(Long.MIN_VALUE, Long.MAX_VALUE, scratch, addSystolic);
+        return sum / n;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.MeasurementDeduplicator;
+import com.example.bloodpressuremonitoring.MeasurementRecord;
+import com.example.bloodpressuremonitoring.MeasurementStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MeasurementDeduplicator} against a history of {@link #history} readings, 4 h
+ * apart. One op is one record: a re-sent one (filter hit, then the exact check in the
+ * user's partition) or a new one, which the filter should answer alone. {@code load} is
+ * the startup cost of reading the keys of the whole history.
+ */
+@State(Scope.Thread)
+public class DeduplicatorBenchmark {
+
+    private static final long FOUR_HOURS_MS = 4 * 60 * Records.MINUTE_MS;
+
+    @Param({"5000", "100000"})
+    public int history;
+
+    private File dir;
+    private MeasurementStore store;
+    private MeasurementDeduplicator dedup;
+    private MeasurementRecord[] stored;
+    private MeasurementRecord[] fresh;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Records.tempDir();
+        Random random = new Random(23);
+        store = MeasurementStore.open(new File(dir, "m.bin"));
+        stored = new MeasurementRecord[history];
+        fresh = new MeasurementRecord[history];
+        for (int i = 0; i < history; i++) {
+            stored[i] = Records.reading(random, Records.T0 + i * FOUR_HOURS_MS, Records.DEVICE, 1 + i % 2, i & 0xFFFF);
+            store.append(stored[i]);
+        }
+        for (int i = 0; i < history; i++) {
+            fresh[i] = Records.reading(random, Records.T0 + (history + i) * FOUR_HOURS_MS, Records.DEVICE, 1,
+                    (history + i) & 0xFFFF);
+        }
+        dedup = MeasurementDeduplicator.load(null, store);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        Records.delete(dir);
+    }
+
+    /** A full re-sync: every record is already stored, nothing is written. */
+    @Benchmark
+    public boolean resentRecord() throws IOException {
+        return dedup.append(stored[next++ % history]);
+    }
+
+    /** A reading not in the history (checked, not appended, so the history stays the same). */
+    @Benchmark
+    public boolean newReading() {
+        return dedup.contains(fresh[next++ % history]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public MeasurementDeduplicator load() {
+        return MeasurementDeduplicator.load(null, store);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.MeasurementExporter;
+import com.example.bloodpressuremonitoring.MeasurementStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MeasurementExporter#write} of the whole history of {@link #RECORDS} readings to
+ * a stream that drops the bytes: formatting (and gzip) only, no disk. One op is one
+ * export; gc.alloc.rate.norm should stay flat as the history grows (records streamed,
+ * no string per field).
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExportBenchmark {
+
+    static final int RECORDS = 100_000;
+
+    @Param({"CSV", "FHIR_JSON", "IEEE_11073"})
+    public MeasurementExporter.Format format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private File dir;
+    private MeasurementStore store;
+    private MeasurementExporter exporter;
+    private MeasurementExporter.Request request;
+    private final CountingStream out = new CountingStream();
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Records.tempDir();
+        store = Records.ward(new File(dir, "m.bin"), RECORDS, 4);
+        exporter = new MeasurementExporter(store, ZoneId.of("Europe/Paris"), null);
+        request = MeasurementExporter.Request.all(format, gzip);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        Records.delete(dir);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        out.count = 0;
+        exporter.write(request, out, null);
+        return out.count;
+    }
+
+    private static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        // Closed by the exporter after each export: nothing to release
+        @Override
+        public void close() {
+        }
+    }
+}
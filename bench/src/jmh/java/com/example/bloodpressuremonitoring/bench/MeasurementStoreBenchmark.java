@@ -0,0 +1,107 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.MeasurementRecord;
+import com.example.bloodpressuremonitoring.MeasurementRollups;
+import com.example.bloodpressuremonitoring.MeasurementStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * {@link MeasurementStore} on a ward history: 1M readings a minute apart from two cuffs
+ * shared by 500 patients. One op is one append, or one query returning its record count.
+ * A user's whole history through its partition should cost a small fraction of the
+ * filtered scan it replaces; appends and queries reuse the caller's record (~0 B/op).
+ */
+@State(Scope.Thread)
+public class MeasurementStoreBenchmark {
+
+    static final int RECORDS = 1_000_000;
+    static final int USERS_PER_DEVICE = 250;
+    private static final long DAY_MS = 24 * 60 * Records.MINUTE_MS;
+
+    private File dir;
+    private MeasurementStore ward;
+    private MeasurementStore appendStore;
+    private final MeasurementRecord scratch = new MeasurementRecord();
+    private MeasurementRecord next;
+    private long user;
+    private long to;
+    private long filtered;
+
+    private final MeasurementStore.Visitor count = (index, r) -> true;
+    private final MeasurementStore.Visitor filter = (index, r) -> {
+        if (MeasurementRollups.userKey(r.device, r.userId) == user) filtered++;
+        return true;
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Records.tempDir();
+        ward = Records.ward(new File(dir, "ward.bin"), RECORDS, USERS_PER_DEVICE);
+        user = MeasurementRollups.userKey(Records.OTHER_DEVICE, 17);
+        to = Records.T0 + RECORDS * Records.MINUTE_MS;
+        next = Records.reading(new Random(11), Records.T0, Records.DEVICE, 1, 0);
+    }
+
+    // A fresh file per iteration: appends measure the steady state, not a file of hundreds of MB
+    @Setup(Level.Iteration)
+    public void openAppendStore() throws IOException {
+        File file = new File(dir, "append.bin");
+        file.delete();
+        appendStore = MeasurementStore.open(file);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeAppendStore() throws IOException {
+        appendStore.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ward.close();
+        Records.delete(dir);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        next.timeMillis += Records.MINUTE_MS;
+        next.sequence = (next.sequence + 1) & 0xFFFF;
+        return appendStore.append(next);
+    }
+
+    /** One day in the middle of the history: the time index finds its first block. */
+    @Benchmark
+    public long dayQuery() {
+        long from = Records.T0 + RECORDS / 2 * Records.MINUTE_MS;
+        return ward.query(from, from + DAY_MS, scratch, count);
+    }
+
+    /** One patient's whole history, the way it was read before partitions. */
+    @Benchmark
+    public long userScanAndFilter() {
+        filtered = 0;
+        ward.query(Records.T0, to, scratch, filter);
+        return filtered;
+    }
+
+    /** The same history through the user's partition. */
+    @Benchmark
+    public long userPartition() {
+        return ward.query(user, Records.T0, to, scratch, count);
+    }
+
+    /** The patient's last week, through the partition. */
+    @Benchmark
+    public long userWeek() {
+        return ward.query(user, to - 7 * DAY_MS, to, scratch, count);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.BpsMeasurement;
+import com.example.bloodpressuremonitoring.MeasurementRecord;
+import com.example.bloodpressuremonitoring.MeasurementStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Histories for the benchmarks, built once per trial with a fixed seed so runs compare.
+ */
+final class Records {
+
+    /** 2026-03-02T07:00:00Z */
+    static final long T0 = 1_772_434_800_000L;
+    static final long MINUTE_MS = 60_000L;
+    static final long DEVICE = MeasurementRecord.deviceId("C0:FF:EE:12:34:56");
+    static final long OTHER_DEVICE = MeasurementRecord.deviceId("C0:FF:EE:00:00:01");
+
+    private Records() {
+    }
+
+    /** Timed reading with pulse and user id, values derived from {@code random}. */
+    static MeasurementRecord reading(Random random, long time, long device, int userId, int sequence) {
+        MeasurementRecord r = new MeasurementRecord();
+        r.timeMillis = time;
+        r.device = device;
+        r.sequence = sequence;
+        r.flags = BpsMeasurement.FLAG_TIMESTAMP | BpsMeasurement.FLAG_PULSE_RATE | BpsMeasurement.FLAG_USER_ID;
+        r.systolic = 100 + random.nextInt(80);
+        r.diastolic = 60 + random.nextInt(40);
+        r.map = (r.systolic + 2 * r.diastolic) / 3;
+        r.pulseRate = 50 + random.nextInt(50);
+        r.userId = userId;
+        return r;
+    }
+
+    /**
+     * A ward: {@code n} readings a minute apart, in turn from two cuffs shared by
+     * {@code usersPerDevice} patients each.
+     */
+    static MeasurementStore ward(File file, int n, int usersPerDevice) throws IOException {
+        Random random = new Random(7);
+        MeasurementStore store = MeasurementStore.open(file);
+        for (int i = 0; i < n; i++) {
+            store.append(reading(random, T0 + i * MINUTE_MS, i % 2 == 0 ? DEVICE : OTHER_DEVICE,
+                    (i / 2) % usersPerDevice, i & 0xFFFF));
+        }
+        store.flush();
+        return store;
+    }
+
+    static File tempDir() throws IOException {
+        return Files.createTempDirectory("bench").toFile();
+    }
+
+    /** Removes a directory made by {@link #tempDir()} (flat). */
+    static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+}
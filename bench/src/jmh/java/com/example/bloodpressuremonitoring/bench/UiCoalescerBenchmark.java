@@ -0,0 +1,38 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.UiCoalescer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link UiCoalescer} under a burst: three producers (ingest thread, session lanes)
+ * publish while one "UI thread" renders as fast as it can. One op is one publish or one
+ * frame; publish must stay lock-free and allocation-free whatever the frame rate.
+ */
+@State(Scope.Group)
+public class UiCoalescerBenchmark {
+
+    private final Integer value = 120;
+    private long rendered;
+    private final UiCoalescer<Integer> coalescer = new UiCoalescer<>(() -> { },
+            (latest, n) -> rendered += n);
+
+    @Benchmark
+    @Group("burst")
+    @GroupThreads(3)
+    public void publish() {
+        coalescer.publish(value);
+    }
+
+    @Benchmark
+    @Group("burst")
+    @GroupThreads(1)
+    public long frame() {
+        coalescer.onFrame();
+        return rendered;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.BpsFeature;
+import com.example.bloodpressuremonitoring.Hex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Text paths: Feature description (once per connection) and the hex dumps logged for
+ * notifications. These allocate by nature; the numbers show what logging a frame costs.
+ */
+@State(Scope.Thread)
+public class FeatureAndHexBenchmark {
+
+    private byte[] measurement;
+    private byte[] fullNotification;
+    private int feature;
+
+    @Setup
+    public void setUp() {
+        measurement = Frames.measurement(0x1E, 42);
+        fullNotification = new byte[244]; // MTU 247
+        for (int i = 0; i < fullNotification.length; i++) fullNotification[i] = (byte) (i * 31);
+    }
+
+    @Benchmark
+    public String describeFeature() {
+        feature = (feature + 1) & 0x3F;
+        return BpsFeature.describe(feature);
+    }
+
+    @Benchmark
+    public int parseFeature() {
+        return BpsFeature.parse(measurement);
+    }
+
+    /** 19-byte 0x2A35 frame. */
+    @Benchmark
+    public String hexMeasurement() {
+        return Hex.toHex(measurement, measurement.length);
+    }
+
+    /** Largest notification at MTU 247. */
+    @Benchmark
+    public String hexFullNotification() {
+        return Hex.toHex(fullNotification, fullNotification.length);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.BpRecordReassembler;
+import com.example.bloodpressuremonitoring.BpsMeasurement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Frame mixes for the benchmarks, built once per trial with a fixed seed so runs compare.
+ */
+final class Frames {
+
+    /** Every combination of the five 0x2A35 flag bits. */
+    static final int FLAG_COMBINATIONS = 32;
+
+    private Frames() {
+    }
+
+    /** 0x2A35 value with the given flags; every optional field present when flagged. */
+    static byte[] measurement(int flags, int seq) {
+        int sys = 100 + seq % 80;
+        int dia = 60 + seq % 30;
+        int map = (sys + 2 * dia) / 3;
+        int length = 7;
+        if ((flags & BpsMeasurement.FLAG_TIMESTAMP) != 0) length += 7;
+        if ((flags & BpsMeasurement.FLAG_PULSE_RATE) != 0) length += 2;
+        if ((flags & BpsMeasurement.FLAG_USER_ID) != 0) length += 1;
+        if ((flags & BpsMeasurement.FLAG_STATUS) != 0) length += 2;
+
+        byte[] v = new byte[length];
+        int i = 0;
+        v[i++] = (byte) flags;
+        i = sfloat(v, i, sys, 0);
+        i = sfloat(v, i, dia, 0);
+        // MAP with one decimal (exponent -1) so the scaled path runs as well
+        i = sfloat(v, i, map * 10 + seq % 10, -1);
+        if ((flags & BpsMeasurement.FLAG_TIMESTAMP) != 0) {
+            int year = 2026;
+            v[i++] = (byte) year;
+            v[i++] = (byte) (year >> 8);
+            v[i++] = (byte) (1 + seq % 12);
+            v[i++] = (byte) (1 + seq % 28);
+            v[i++] = (byte) (seq % 24);
+            v[i++] = (byte) (seq % 60);
+            v[i++] = (byte) ((seq / 60) % 60);
+        }
+        if ((flags & BpsMeasurement.FLAG_PULSE_RATE) != 0) i = sfloat(v, i, 55 + seq % 40, 0);
+        if ((flags & BpsMeasurement.FLAG_USER_ID) != 0) v[i++] = (byte) (1 + seq % 4);
+        if ((flags & BpsMeasurement.FLAG_STATUS) != 0) {
+            v[i++] = (byte) (seq % 3 == 0 ? 0x01 : 0x00);
+            v[i] = 0;
+        }
+        return v;
+    }
+
+    /** One frame per flag combination. */
+    static byte[][] allFlagCombinations() {
+        byte[][] frames = new byte[FLAG_COMBINATIONS][];
+        for (int flags = 0; flags < FLAG_COMBINATIONS; flags++) frames[flags] = measurement(flags, flags);
+        return frames;
+    }
+
+    /**
+     * Frames the codec must reject: every flag combination cut one byte short of what its
+     * flags announce, plus frames shorter than the mandatory fields.
+     */
+    static byte[][] malformed() {
+        List<byte[]> out = new ArrayList<>();
+        for (int flags = 0; flags < FLAG_COMBINATIONS; flags++) {
+            byte[] full = measurement(flags, flags);
+            byte[] cut = new byte[full.length - 1];
+            System.arraycopy(full, 0, cut, 0, cut.length);
+            out.add(cut);
+        }
+        out.add(new byte[0]);
+        out.add(new byte[]{0x1E});
+        out.add(new byte[]{0x00, 0x78, 0x00, 0x50});
+        return out.toArray(new byte[0][]);
+    }
+
+    /**
+     * RACP transfer of {@code records} 0x2B36 records, each carrying a full 0x2A35 payload
+     * (19 bytes), segmented for notifications of {@code mtu - 3} bytes: one segment per record
+     * at MTU 247, two at the default MTU 23.
+     */
+    static byte[][] recordStream(int records, int mtu) {
+        List<byte[]> out = new ArrayList<>();
+        int fullFlags = BpsMeasurement.FLAG_TIMESTAMP | BpsMeasurement.FLAG_PULSE_RATE
+                | BpsMeasurement.FLAG_USER_ID | BpsMeasurement.FLAG_STATUS;
+        int counter = 0;
+        for (int seq = 0; seq < records; seq++) {
+            byte[] payload = measurement(fullFlags, seq);
+            int maxValue = mtu - 3;
+            int offset = 0;
+            boolean first = true;
+            while (first || offset < payload.length) {
+                int header = first ? BpRecordReassembler.FIRST_HEADER_LENGTH : 1;
+                int chunk = Math.min(payload.length - offset, maxValue - header);
+                boolean last = offset + chunk == payload.length;
+                byte[] v = new byte[header + chunk];
+                v[0] = (byte) ((first ? BpRecordReassembler.SEG_FIRST : 0) | (last ? BpRecordReassembler.SEG_LAST : 0)
+                        | (counter++ & BpRecordReassembler.SEG_COUNTER_MASK));
+                if (first) {
+                    v[1] = (byte) seq;
+                    v[2] = (byte) (seq >> 8);
+                    v[3] = (byte) BpRecordReassembler.UUID_BP_MEASUREMENT;
+                    v[4] = (byte) (BpRecordReassembler.UUID_BP_MEASUREMENT >> 8);
+                }
+                System.arraycopy(payload, offset, v, header, chunk);
+                out.add(v);
+                offset += chunk;
+                first = false;
+            }
+        }
+        return out.toArray(new byte[0][]);
+    }
+
+    /**
+     * The same stream as seen on a bad link: about 2% of the notifications lost, 1%
+     * delivered twice and 1% replaced by a truncated first segment.
+     */
+    static byte[][] lossy(byte[][] stream, long seed) {
+        Random random = new Random(seed);
+        List<byte[]> out = new ArrayList<>();
+        for (byte[] v : stream) {
+            double p = random.nextDouble();
+            if (p < 0.02) continue;
+            if (p < 0.03) {
+                out.add(v);
+                out.add(v);
+            } else if (p < 0.04) {
+                out.add(new byte[]{(byte) (v[0] | BpRecordReassembler.SEG_FIRST), v.length > 1 ? v[1] : 0});
+            } else {
+                out.add(v);
+            }
+        }
+        return out.toArray(new byte[0][]);
+    }
+
+    /** {@code count} little-endian SFLOATs: mostly readings, with every special value mixed in. */
+    static byte[] sfloats(int count, long seed) {
+        int[] specials = {0x07FF, 0x0800, 0x07FE, 0x0802, 0x0801};
+        Random random = new Random(seed);
+        byte[] v = new byte[2 * count];
+        for (int i = 0; i < count; i++) {
+            int raw = i % 16 == 15
+                    ? specials[random.nextInt(specials.length)]
+                    : ((-(random.nextInt(3)) & 0xF) << 12) | random.nextInt(2000);
+            v[2 * i] = (byte) raw;
+            v[2 * i + 1] = (byte) (raw >> 8);
+        }
+        return v;
+    }
+
+    private static int sfloat(byte[] v, int i, int mantissa, int exponent) {
+        int raw = ((exponent & 0xF) << 12) | (mantissa & 0x0FFF);
+        v[i] = (byte) raw;
+        v[i + 1] = (byte) (raw >> 8);
+        return i + 2;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.bloodpressuremonitoring.bench;
+
+import com.example.bloodpressuremonitoring.BpsMeasurement;
+import com.example.bloodpressuremonitoring.BpsMeasurementCodec;
+import com.example.bloodpressuremonitoring.Ieee11073;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 0x2A35 decoding: one op is one frame (or one SFLOAT). The decode paths are expected
+ * to allocate nothing: gc.alloc.rate.norm should stay at ~0 B/op.
+ */
+@State(Scope.Thread)
+public class MeasurementDecodeBenchmark {
+
+    private static final int SFLOATS = 256;
+
+    private byte[][] allFlags;
+    private byte[][] malformed;
+    private byte[] sfloats;
+    private float[] decoded;
+    private final BpsMeasurement out = new BpsMeasurement();
+
+    @Setup
+    public void setUp() {
+        allFlags = Frames.allFlagCombinations();
+        malformed = Frames.malformed();
+        sfloats = Frames.sfloats(SFLOATS, 11);
+        decoded = new float[SFLOATS];
+    }
+
+    /** Every flag combination once: 32 frames from 7 to 19 bytes. */
+    @Benchmark
+    @OperationsPerInvocation(Frames.FLAG_COMBINATIONS)
+    public void decodeAllFlagCombinations(Blackhole bh) {
+        for (byte[] frame : allFlags) {
+            bh.consume(BpsMeasurementCodec.decode(frame, out));
+            bh.consume(out.systolic);
+        }
+    }
+
+    /** Frames rejected by the bounds checks (truncated or too short). */
+    @Benchmark
+    @OperationsPerInvocation(Frames.FLAG_COMBINATIONS + 3)
+    public void decodeMalformed(Blackhole bh) {
+        for (byte[] frame : malformed) bh.consume(BpsMeasurementCodec.decode(frame, out));
+    }
+
+    /** One SFLOAT at a time, as the codec reads each field. */
+    @Benchmark
+    @OperationsPerInvocation(SFLOATS)
+    public void sfloat(Blackhole bh) {
+        for (int i = 0; i < SFLOATS; i++) bh.consume(Ieee11073.sfloat(sfloats, 2 * i));
+    }
+
+    /** The batch decoder over the same values. */
+    @Benchmark
+    @OperationsPerInvocation(SFLOATS)
+    public float[] sfloatBatch() {
+        Ieee11073.decodeSfloats(sfloats, 0, decoded, 0, SFLOATS);
+        return decoded;
+    }
+
+    /** Former {@code sfloatToFloat} (Math.pow per value), kept as the baseline. */
+    @Benchmark
+    @OperationsPerInvocation(SFLOATS)
+    public void sfloatMathPow(Blackhole bh) {
+        for (int i = 0; i < SFLOATS; i++) bh.consume(mathPowSfloat(sfloats[2 * i], sfloats[2 * i + 1]));
+    }
+
+    private static float mathPowSfloat(byte b0, byte b1) {
+        int raw = ((b1 & 0xFF) << 8) | (b0 & 0xFF);
+
+        int mantissa = raw & 0x0FFF;
+        int exponent = (raw >> 12) & 0x000F;
+
+        if ((mantissa & 0x0800) != 0) mantissa |= 0xFFFFF000;
+        if ((exponent & 0x08) != 0) exponent |= 0xFFFFFFF0;
+
+        return (float) (mantissa * Math.pow(10, exponent));
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * Reassembles Blood Pressure Record (0x2B36) notifications into complete records.
+ * <p>
+ * Every notification starts with the segmentation byte (bit 7 = first segment,
+ * bit 6 = last segment, bits 0-5 = rolling segment counter). The first segment then
+ * carries the record sequence number (uint16) and the payload UUID (uint16); the rest
+ * of the record value is split over the following segments:
+ * <pre>
+ *   first:        [seg][seq lo][seq hi][uuid lo][uuid hi][payload...]
+ *   continuation: [seg][payload...]
+ * </pre>
+ * Segments are joined into a single buffer allocated once, so memory stays bounded
+ * whatever the length of the burst. A repeated counter is a duplicate and is ignored;
+ * a missing counter drops the partial record. Complete 0x2A35 payloads are decoded
+ * with {@link BpsMeasurementCodec} into a reused {@link BpsMeasurement}.
+ * <p>
+ * Not thread-safe: feed it from the GATT callback thread only.
+ */
+public final class BpRecordReassembler {
+
+    public static final int DEFAULT_MAX_RECORD_LENGTH = 512;
+
+    public static final int SEG_FIRST = 0x80;
+    public static final int SEG_LAST = 0x40;
+    public static final int SEG_COUNTER_MASK = 0x3F;
+
+    /** Segmentation byte + sequence number + UUID. */
+    public static final int FIRST_HEADER_LENGTH = 5;
+
+    public static final int UUID_BP_MEASUREMENT = 0x2A35;
+
+    // Drop reasons
+    public static final int DROP_GAP = 1;           // a continuation segment is missing
+    public static final int DROP_INTERRUPTED = 2;   // a new record started before the last segment
+    public static final int DROP_OVERFLOW = 3;      // record longer than maxRecordLength
+    public static final int DROP_UNDECODABLE = 4;   // 0x2A35 payload rejected by the codec
+
+    public interface Listener {
+        /** A 0x2A35 payload was reassembled and decoded. {@code m} is reused after the call. */
+        void onMeasurement(int sequenceNumber, BpsMeasurement m);
+
+        /** Any complete record; {@code payload} is only valid during the call. */
+        default void onRecord(int sequenceNumber, int uuid16, byte[] payload, int offset, int length) {
+        }
+
+        default void onDropped(int sequenceNumber, int reason) {
+        }
+    }
+
+    private final Listener listener;
+    private final byte[] buffer;
+    private final BpsMeasurement measurement = new BpsMeasurement();
+
+    // Current record
+    private boolean inProgress;
+    private int sequenceNumber;
+    private int uuid16;
+    private int length;
+
+    private int lastCounter = -1;
+
+    // Stats
+    private long segments;
+    private long records;
+    private long measurements;
+    private long duplicateSegments;
+    private long counterGaps;
+    private long droppedRecords;
+    private long malformedSegments;
+
+    public BpRecordReassembler(Listener listener) {
+        this(DEFAULT_MAX_RECORD_LENGTH, listener);
+    }
+
+    public BpRecordReassembler(int maxRecordLength, Listener listener) {
+        if (maxRecordLength <= 0) throw new IllegalArgumentException("maxRecordLength must be > 0");
+        this.buffer = new byte[maxRecordLength];
+        this.listener = listener;
+    }
+
+    public void accept(byte[] data) {
+        if (data == null) {
+            malformedSegments++;
+            return;
+        }
+        accept(data, 0, data.length);
+    }
+
+    public void accept(byte[] data, int offset, int len) {
+        if (data == null || offset < 0 || len < 1 || offset > data.length - len) {
+            malformedSegments++;
+            return;
+        }
+
+        final int seg = data[offset] & 0xFF;
+        final boolean first = (seg & SEG_FIRST) != 0;
+        final boolean last = (seg & SEG_LAST) != 0;
+        final int counter = seg & SEG_COUNTER_MASK;
+
+        if (counter == lastCounter) {
+            duplicateSegments++;
+            return;
+        }
+        final int expected = (lastCounter + 1) & SEG_COUNTER_MASK;
+        final boolean inSequence = lastCounter < 0 || counter == expected;
+        segments++;
+
+        if (first) {
+            if (len < FIRST_HEADER_LENGTH) {
+                malformedSegments++;
+                if (inProgress) drop(DROP_INTERRUPTED);
+                lastCounter = counter;
+                return;
+            }
+            if (!inSequence) counterGaps++;
+            if (inProgress) drop(DROP_INTERRUPTED);
+
+            lastCounter = counter;
+            inProgress = true;
+            sequenceNumber = (data[offset + 1] & 0xFF) | ((data[offset + 2] & 0xFF) << 8);
+            uuid16 = (data[offset + 3] & 0xFF) | ((data[offset + 4] & 0xFF) << 8);
+            length = 0;
+            if (!append(data, offset + FIRST_HEADER_LENGTH, len - FIRST_HEADER_LENGTH)) return;
+        } else {
+            lastCounter = counter;
+            if (!inSequence) {
+                counterGaps++;
+                if (inProgress) drop(DROP_GAP);
+                return;
+            }
+            if (!inProgress) {
+                // Continuation of a record whose first segment we never saw
+                malformedSegments++;
+                return;
+            }
+            if (!append(data, offset + 1, len - 1)) return;
+        }
+
+        if (last) complete();
+    }
+
+    /** Forgets any partial record and the counter history (e.g. on disconnect). */
+    public void reset() {
+        inProgress = false;
+        length = 0;
+        lastCounter = -1;
+    }
+
+    private boolean append(byte[] data, int offset, int len) {
+        if (len > buffer.length - length) {
+            drop(DROP_OVERFLOW);
+            return false;
+        }
+        System.arraycopy(data, offset, buffer, length, len);
+        length += len;
+        return true;
+    }
+
+    private void complete() {
+        inProgress = false;
+        records++;
+        listener.onRecord(sequenceNumber, uuid16, buffer, 0, length);
+
+        if (uuid16 == UUID_BP_MEASUREMENT) {
+            if (BpsMeasurementCodec.decode(buffer, 0, length, measurement)) {
+                measurements++;
+                listener.onMeasurement(sequenceNumber, measurement);
+            } else {
+                droppedRecords++;
+                listener.onDropped(sequenceNumber, DROP_UNDECODABLE);
+            }
+        }
+        length = 0;
+    }
+
+    private void drop(int reason) {
+        inProgress = false;
+        length = 0;
+        droppedRecords++;
+        listener.onDropped(sequenceNumber, reason);
+    }
+
+    // =========================
+    // Stats
+    // =========================
+    public long segments() {
+        return segments;
+    }
+
+    public long records() {
+        return records;
+    }
+
+    public long measurements() {
+        return measurements;
+    }
+
+    public long duplicateSegments() {
+        return duplicateSegments;
+    }
+
+    public long counterGaps() {
+        return counterGaps;
+    }
+
+    public long droppedRecords() {
+        return droppedRecords;
+    }
+
+    public long malformedSegments() {
+        return malformedSegments;
+    }
+}
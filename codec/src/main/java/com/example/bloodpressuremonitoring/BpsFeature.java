@@ -0,0 +1,45 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Blood Pressure Feature characteristic (0x2A49): capability bits of the cuff. Pure Java.
+ */
+public final class BpsFeature {
+
+    public static final int BODY_MOVEMENT_DETECTION = 0x0001;
+    public static final int CUFF_FIT_DETECTION = 0x0002;
+    public static final int IRREGULAR_PULSE_DETECTION = 0x0004;
+    public static final int PULSE_RATE_RANGE_DETECTION = 0x0008;
+    public static final int MEASUREMENT_POSITION_DETECTION = 0x0010;
+    public static final int MULTIPLE_BOND = 0x0020;
+
+    private BpsFeature() {
+    }
+
+    /** e.g. "0x0005 (Body Movement Detection, Irregular Pulse Detection)" */
+    public static String describe(int feature) {
+        List<String> caps = new ArrayList<>();
+
+        // Bits selon la spec Blood Pressure Feature (0x2A49)
+        if ((feature & BODY_MOVEMENT_DETECTION) != 0) caps.add("Body Movement Detection");
+        if ((feature & CUFF_FIT_DETECTION) != 0) caps.add("Cuff Fit Detection");
+        if ((feature & IRREGULAR_PULSE_DETECTION) != 0) caps.add("Irregular Pulse Detection");
+        if ((feature & PULSE_RATE_RANGE_DETECTION) != 0) caps.add("Pulse Rate Range Detection");
+        if ((feature & MEASUREMENT_POSITION_DETECTION) != 0) caps.add("Measurement Position Detection");
+        if ((feature & MULTIPLE_BOND) != 0) caps.add("Multiple Bond");
+
+        if (caps.isEmpty()) return String.format(Locale.US, "0x%04X (no flags)", feature);
+
+        // Format compact
+        return String.format(Locale.US, "0x%04X (%s)", feature, String.join(", ", caps));
+    }
+
+    /** Reads the 16-bit little-endian feature value; -1 if {@code data} is too short. */
+    public static int parse(byte[] data) {
+        if (data == null || data.length < 2) return -1;
+        return (data[0] & 0xFF) | ((data[1] & 0xFF) << 8);
+    }
+}
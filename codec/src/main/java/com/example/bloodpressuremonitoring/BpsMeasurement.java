@@ -0,0 +1,139 @@
+package com.example.bloodpressuremonitoring;
+
+import java.util.Locale;
+
+/**
+ * Reusable, primitive-only holder for one decoded Blood Pressure Measurement (0x2A35).
+ * <p>
+ * Filled in place by {@link BpsMeasurementCodec#decode}: one instance can be reused for
+ * every frame of a transfer, nothing is boxed and nothing is allocated per decode.
+ * Optional fields are only meaningful when the matching flag bit is set.
+ */
+public final class BpsMeasurement {
+
+    // Flags (first byte of 0x2A35)
+    public static final int FLAG_UNIT_KPA = 0x01;
+    public static final int FLAG_TIMESTAMP = 0x02;
+    public static final int FLAG_PULSE_RATE = 0x04;
+    public static final int FLAG_USER_ID = 0x08;
+    public static final int FLAG_STATUS = 0x10;
+
+    /** Value of {@link #timestamp} when the frame carries no timestamp. */
+    public static final long NO_TIMESTAMP = 0L;
+    /** Value of {@link #userId} / {@link #status} when the field is absent. */
+    public static final int ABSENT = -1;
+
+    public int flags;
+
+    public float systolic;
+    public float diastolic;
+    public float map;
+
+    public long timestamp = NO_TIMESTAMP; // packed, see packTimestamp()
+    public float pulseRate = Float.NaN;   // optional
+    public int userId = ABSENT;           // optional
+    public int status = ABSENT;           // optional
+
+    public boolean isKpa() {
+        return (flags & FLAG_UNIT_KPA) != 0;
+    }
+
+    public String unit() {
+        return isKpa() ? "kPa" : "mmHg";
+    }
+
+    public boolean hasTimestamp() {
+        return (flags & FLAG_TIMESTAMP) != 0;
+    }
+
+    public boolean hasPulseRate() {
+        return (flags & FLAG_PULSE_RATE) != 0;
+    }
+
+    public boolean hasUserId() {
+        return (flags & FLAG_USER_ID) != 0;
+    }
+
+    public boolean hasStatus() {
+        return (flags & FLAG_STATUS) != 0;
+    }
+
+    public void clear() {
+        flags = 0;
+        systolic = 0f;
+        diastolic = 0f;
+        map = 0f;
+        timestamp = NO_TIMESTAMP;
+        pulseRate = Float.NaN;
+        userId = ABSENT;
+        status = ABSENT;
+    }
+
+    public void copyFrom(BpsMeasurement other) {
+        flags = other.flags;
+        systolic = other.systolic;
+        diastolic = other.diastolic;
+        map = other.map;
+        timestamp = other.timestamp;
+        pulseRate = other.pulseRate;
+        userId = other.userId;
+        status = other.status;
+    }
+
+    /** Same flags and field values (NaN pulse rates compare equal). */
+    public boolean sameAs(BpsMeasurement other) {
+        return flags == other.flags
+                && Float.compare(systolic, other.systolic) == 0
+                && Float.compare(diastolic, other.diastolic) == 0
+                && Float.compare(map, other.map) == 0
+                && timestamp == other.timestamp
+                && Float.compare(pulseRate, other.pulseRate) == 0
+                && userId == other.userId
+                && status == other.status;
+    }
+
+    // =========================
+    // Packed timestamp
+    // =========================
+    // Layout (most significant first): year:16 | month:8 | day:8 | hour:8 | minute:8 | second:8.
+    // The packed values sort in chronological order.
+
+    public static long packTimestamp(int year, int month, int day, int hour, int minute, int second) {
+        return ((long) (year & 0xFFFF) << 40)
+                | ((long) (month & 0xFF) << 32)
+                | ((long) (day & 0xFF) << 24)
+                | ((hour & 0xFF) << 16)
+                | ((minute & 0xFF) << 8)
+                | (second & 0xFF);
+    }
+
+    public static int year(long ts) {
+        return (int) (ts >>> 40) & 0xFFFF;
+    }
+
+    public static int month(long ts) {
+        return (int) (ts >>> 32) & 0xFF;
+    }
+
+    public static int day(long ts) {
+        return (int) (ts >>> 24) & 0xFF;
+    }
+
+    public static int hour(long ts) {
+        return (int) (ts >>> 16) & 0xFF;
+    }
+
+    public static int minute(long ts) {
+        return (int) (ts >>> 8) & 0xFF;
+    }
+
+    public static int second(long ts) {
+        return (int) ts & 0xFF;
+    }
+
+    /** "yyyy-MM-dd HH:mm:ss" of a packed timestamp (device local time). */
+    public static String formatTimestamp(long ts) {
+        return String.format(Locale.US, "%04d-%02d-%02d %02d:%02d:%02d",
+                year(ts), month(ts), day(ts), hour(ts), minute(ts), second(ts));
+    }
+}
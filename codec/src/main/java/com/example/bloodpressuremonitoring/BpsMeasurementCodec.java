@@ -0,0 +1,154 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * Decoder (and encoder, for exports) of the Blood Pressure Measurement characteristic
+ * (0x2A35).
+ * <p>
+ * Pure Java, no Android dependency. Decodes into a caller-owned {@link BpsMeasurement}
+ * so a bulk RACP transfer can run thousands of frames without allocating. Malformed
+ * frames are rejected by explicit bounds checks, never by catching exceptions.
+ */
+public final class BpsMeasurementCodec {
+
+    /** Flags (1) + systolic, diastolic, MAP (3 x SFLOAT). */
+    public static final int MIN_LENGTH = 1 + 6;
+
+    /** Every optional field present: timestamp, pulse rate, user id, status. */
+    public static final int MAX_LENGTH = MIN_LENGTH + 7 + 2 + 1 + 2;
+
+    private static final int TIMESTAMP_LENGTH = 7;
+
+    private BpsMeasurementCodec() {
+    }
+
+    public static boolean decode(byte[] data, BpsMeasurement out) {
+        return data != null && decode(data, 0, data.length, out);
+    }
+
+    /**
+     * Decodes {@code length} bytes of {@code data} starting at {@code offset}.
+     *
+     * @return {@code true} if the frame is complete for the fields its flags announce;
+     * {@code false} otherwise, in which case {@code out} is left cleared.
+     */
+    public static boolean decode(byte[] data, int offset, int length, BpsMeasurement out) {
+        out.clear();
+        if (data == null || offset < 0 || length < MIN_LENGTH || offset > data.length - length) {
+            return false;
+        }
+
+        int idx = offset;
+
+        final int flags = data[idx++] & 0xFF;
+
+        // Size check up front: every optional field has a fixed width.
+        int needed = MIN_LENGTH;
+        if ((flags & BpsMeasurement.FLAG_TIMESTAMP) != 0) needed += TIMESTAMP_LENGTH;
+        if ((flags & BpsMeasurement.FLAG_PULSE_RATE) != 0) needed += 2;
+        if ((flags & BpsMeasurement.FLAG_USER_ID) != 0) needed += 1;
+        if ((flags & BpsMeasurement.FLAG_STATUS) != 0) needed += 2;
+        if (needed > length) {
+            return false;
+        }
+
+        out.systolic = Ieee11073.sfloat(data, idx); idx += 2;
+        out.diastolic = Ieee11073.sfloat(data, idx); idx += 2;
+        out.map = Ieee11073.sfloat(data, idx); idx += 2;
+
+        if ((flags & BpsMeasurement.FLAG_TIMESTAMP) != 0) {
+            int year = (data[idx] & 0xFF) | ((data[idx + 1] & 0xFF) << 8);
+            out.timestamp = BpsMeasurement.packTimestamp(
+                    year,
+                    data[idx + 2] & 0xFF,
+                    data[idx + 3] & 0xFF,
+                    data[idx + 4] & 0xFF,
+                    data[idx + 5] & 0xFF,
+                    data[idx + 6] & 0xFF);
+            idx += TIMESTAMP_LENGTH;
+        }
+
+        if ((flags & BpsMeasurement.FLAG_PULSE_RATE) != 0) {
+            out.pulseRate = Ieee11073.sfloat(data, idx);
+            idx += 2;
+        }
+
+        if ((flags & BpsMeasurement.FLAG_USER_ID) != 0) {
+            out.userId = data[idx++] & 0xFF;
+        }
+
+        if ((flags & BpsMeasurement.FLAG_STATUS) != 0) {
+            out.status = (data[idx] & 0xFF) | ((data[idx + 1] & 0xFF) << 8);
+            idx += 2;
+        }
+
+        // Trailing bytes (e.g. future fields) are tolerated.
+        out.flags = flags;
+        return true;
+    }
+
+    /**
+     * Decodes straight into primitive sinks instead of a {@link BpsMeasurement}:
+     * {@code floats[floatOff..+4)} = systolic, diastolic, MAP, pulse (NaN if absent) and
+     * {@code longs[longOff..+4)} = flags, packed timestamp, userId, status.
+     */
+    public static boolean decode(byte[] data, int offset, int length,
+                                 float[] floats, int floatOff, long[] longs, int longOff,
+                                 BpsMeasurement scratch) {
+        if (!decode(data, offset, length, scratch)) {
+            return false;
+        }
+        floats[floatOff] = scratch.systolic;
+        floats[floatOff + 1] = scratch.diastolic;
+        floats[floatOff + 2] = scratch.map;
+        floats[floatOff + 3] = scratch.pulseRate;
+        longs[longOff] = scratch.flags;
+        longs[longOff + 1] = scratch.timestamp;
+        longs[longOff + 2] = scratch.userId;
+        longs[longOff + 3] = scratch.status;
+        return true;
+    }
+
+    /**
+     * Encodes {@code m} at {@code out[offset]}: the fields announced by {@code m.flags},
+     * values as SFLOAT ({@link Ieee11073#toSfloat}). The inverse of {@link #decode}.
+     *
+     * @return number of bytes written, at most {@link #MAX_LENGTH}
+     */
+    public static int encode(BpsMeasurement m, byte[] out, int offset) {
+        int flags = m.flags & 0x1F;
+        int idx = offset;
+        out[idx++] = (byte) flags;
+        Ieee11073.putSfloat(out, idx, m.systolic); idx += 2;
+        Ieee11073.putSfloat(out, idx, m.diastolic); idx += 2;
+        Ieee11073.putSfloat(out, idx, m.map); idx += 2;
+
+        if ((flags & BpsMeasurement.FLAG_TIMESTAMP) != 0) {
+            long ts = m.timestamp;
+            int year = BpsMeasurement.year(ts);
+            out[idx] = (byte) year;
+            out[idx + 1] = (byte) (year >>> 8);
+            out[idx + 2] = (byte) BpsMeasurement.month(ts);
+            out[idx + 3] = (byte) BpsMeasurement.day(ts);
+            out[idx + 4] = (byte) BpsMeasurement.hour(ts);
+            out[idx + 5] = (byte) BpsMeasurement.minute(ts);
+            out[idx + 6] = (byte) BpsMeasurement.second(ts);
+            idx += TIMESTAMP_LENGTH;
+        }
+
+        if ((flags & BpsMeasurement.FLAG_PULSE_RATE) != 0) {
+            Ieee11073.putSfloat(out, idx, m.pulseRate);
+            idx += 2;
+        }
+
+        if ((flags & BpsMeasurement.FLAG_USER_ID) != 0) {
+            out[idx++] = (byte) m.userId;
+        }
+
+        if ((flags & BpsMeasurement.FLAG_STATUS) != 0) {
+            out[idx] = (byte) m.status;
+            out[idx + 1] = (byte) (m.status >>> 8);
+            idx += 2;
+        }
+        return idx - offset;
+    }
+}
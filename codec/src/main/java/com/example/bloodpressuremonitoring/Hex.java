@@ -0,0 +1,57 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * Hex dumps of GATT values for the log ("01 7A 00 ..."). Pure Java.
+ * <p>
+ * Table-driven: one lookup per byte into a 256-entry table of digit pairs, written
+ * straight into a {@code char[]} of the final size. No formatter, no intermediate strings.
+ */
+public final class Hex {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // PAIRS[2 * b] and PAIRS[2 * b + 1]: the two digits of byte b
+    private static final char[] PAIRS = new char[512];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            PAIRS[2 * b] = DIGITS[b >>> 4];
+            PAIRS[2 * b + 1] = DIGITS[b & 0x0F];
+        }
+    }
+
+    private Hex() {
+    }
+
+    public static String toHex(byte[] data) {
+        return data == null ? "(null)" : toHex(data, data.length);
+    }
+
+    /** The first {@code length} bytes of {@code data}. */
+    public static String toHex(byte[] data, int length) {
+        if (length == 0) return "(empty)";
+        char[] out = new char[3 * length - 1];
+        write(data, 0, length, out, 0);
+        return new String(out);
+    }
+
+    /** Appends {@code length} bytes from {@code offset}, space separated, to {@code sb}. */
+    public static StringBuilder appendHex(StringBuilder sb, byte[] data, int offset, int length) {
+        if (length == 0) return sb.append("(empty)");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) sb.append(' ');
+            int b = data[offset + i] & 0xFF;
+            sb.append(PAIRS[2 * b]).append(PAIRS[2 * b + 1]);
+        }
+        return sb;
+    }
+
+    private static void write(byte[] data, int offset, int length, char[] out, int at) {
+        for (int i = 0; i < length; i++) {
+            if (i > 0) out[at++] = ' ';
+            int b = data[offset + i] & 0xFF;
+            out[at++] = PAIRS[2 * b];
+            out[at++] = PAIRS[2 * b + 1];
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.bloodpressuremonitoring;
+
+/**
+ * IEEE-11073-20601 numeric codec: 16-bit SFLOAT and 32-bit FLOAT.
+ * <p>
+ * Single conversion path for every medical float in the app (0x2A35 measurement,
+ * 0x2B36 record payloads). Powers of ten are precomputed once, so decoding is a
+ * sign extension, one table lookup and one multiply. Reserved values are mapped to
+ * {@link Float#NaN} / infinities instead of being read as numbers.
+ */
+public final class Ieee11073 {
+
+    // SFLOAT special values (exponent 0, reserved mantissas)
+    public static final int SFLOAT_NAN = 0x07FF;
+    public static final int SFLOAT_NRES = 0x0800;
+    public static final int SFLOAT_POSITIVE_INFINITY = 0x07FE;
+    public static final int SFLOAT_NEGATIVE_INFINITY = 0x0802;
+    public static final int SFLOAT_RESERVED = 0x0801;
+
+    // FLOAT special values (exponent 0, reserved mantissas)
+    public static final int FLOAT_NAN = 0x007FFFFF;
+    public static final int FLOAT_NRES = 0x00800000;
+    public static final int FLOAT_POSITIVE_INFINITY = 0x007FFFFE;
+    public static final int FLOAT_NEGATIVE_INFINITY = 0x00800002;
+    public static final int FLOAT_RESERVED = 0x00800001;
+
+    // 10^e for the signed 4-bit SFLOAT exponent, indexed by the raw nibble (0..7 = 0..7, 8..15 = -8..-1)
+    private static final double[] SFLOAT_POW10 = new double[16];
+    // 10^e for the signed 8-bit FLOAT exponent, indexed by e + 128
+    private static final double[] FLOAT_POW10 = new double[256];
+
+    static {
+        for (int nibble = 0; nibble < 16; nibble++) {
+            int exponent = nibble < 8 ? nibble : nibble - 16;
+            SFLOAT_POW10[nibble] = Math.pow(10, exponent);
+        }
+        for (int i = 0; i < 256; i++) {
+            FLOAT_POW10[i] = Math.pow(10, i - 128);
+        }
+    }
+
+    private Ieee11073() {
+    }
+
+    // =========================
+    // SFLOAT (16-bit): 12-bit mantissa + 4-bit exponent base10
+    // =========================
+
+    /** Decodes a raw 16-bit SFLOAT (only the low 16 bits of {@code raw} are used). */
+    public static float sfloat(int raw) {
+        raw &= 0xFFFF;
+        if (raw >= SFLOAT_POSITIVE_INFINITY && raw <= SFLOAT_NEGATIVE_INFINITY) {
+            return sfloatSpecial(raw);
+        }
+        // sign extend the 12-bit mantissa
+        int mantissa = (raw << 20) >> 20;
+        return (float) (mantissa * SFLOAT_POW10[raw >>> 12]);
+    }
+
+    /** Decodes the little-endian SFLOAT at {@code data[offset]}. */
+    public static float sfloat(byte[] data, int offset) {
+        return sfloat((data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8));
+    }
+
+    /**
+     * Decodes {@code count} consecutive little-endian SFLOATs from {@code src} into
+     * {@code dst} in one pass.
+     */
+    public static void decodeSfloats(byte[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        if (count < 0 || srcOffset < 0 || dstOffset < 0
+                || srcOffset > src.length - 2 * count || dstOffset > dst.length - count) {
+            throw new IndexOutOfBoundsException("decodeSfloats: count=" + count);
+        }
+        int s = srcOffset;
+        for (int i = 0; i < count; i++, s += 2) {
+            dst[dstOffset + i] = sfloat((src[s] & 0xFF) | ((src[s + 1] & 0xFF) << 8));
+        }
+    }
+
+    /**
+     * Encodes {@code value} as a raw SFLOAT with the most precise exponent that fits, then
+     * drops trailing decimal zeros (120 -> 120e0, 15.95 -> 1595e-2). NaN and out-of-range
+     * values map to the special values.
+     */
+    public static int toSfloat(float value) {
+        if (Float.isNaN(value)) return SFLOAT_NAN;
+        if (value == Float.POSITIVE_INFINITY) return SFLOAT_POSITIVE_INFINITY;
+        if (value == Float.NEGATIVE_INFINITY) return SFLOAT_NEGATIVE_INFINITY;
+        for (int exponent = -8; exponent <= 7; exponent++) {
+            long mantissa = Math.round(value / SFLOAT_POW10[exponent & 0xF]);
+            if (mantissa < -2048 || mantissa > 2047) continue;
+            // Exponent 0 reserves +-2046, +-2047 and -2048 for the special values
+            if (exponent == 0 && Math.abs(mantissa) > 2045) continue;
+            if (mantissa == 0) return 0;
+            while (mantissa % 10 == 0 && exponent < 0) {
+                mantissa /= 10;
+                exponent++;
+            }
+            return ((exponent & 0xF) << 12) | ((int) mantissa & 0x0FFF);
+        }
+        return value > 0 ? SFLOAT_POSITIVE_INFINITY : SFLOAT_NEGATIVE_INFINITY;
+    }
+
+    /** Writes {@code value} as a little-endian SFLOAT at {@code data[offset]}. */
+    public static void putSfloat(byte[] data, int offset, float value) {
+        int raw = toSfloat(value);
+        data[offset] = (byte) raw;
+        data[offset + 1] = (byte) (raw >>> 8);
+    }
+
+    public static boolean isSfloatSpecial(int raw) {
+        raw &= 0xFFFF;
+        return raw >= SFLOAT_POSITIVE_INFINITY && raw <= SFLOAT_NEGATIVE_INFINITY;
+    }
+
+    private static float sfloatSpecial(int raw) {
+        switch (raw) {
+            case SFLOAT_POSITIVE_INFINITY:
+                return Float.POSITIVE_INFINITY;
+            case SFLOAT_NEGATIVE_INFINITY:
+                return Float.NEGATIVE_INFINITY;
+            default: // NaN, NRes, reserved
+                return Float.NaN;
+        }
+    }
+
+    // =========================
+    // FLOAT (32-bit): 24-bit mantissa + 8-bit exponent base10
+    // =========================
+
+    public static float float32(int raw) {
+        int mantissa = raw & 0x00FFFFFF;
+        if (mantissa >= FLOAT_POSITIVE_INFINITY && mantissa <= FLOAT_NEGATIVE_INFINITY && (raw >>> 24) == 0) {
+            return floatSpecial(mantissa);
+        }
+        // sign extend the 24-bit mantissa, exponent is a signed byte
+        mantissa = (mantissa << 8) >> 8;
+        return (float) (mantissa * FLOAT_POW10[(raw >> 24) + 128]);
+    }
+
+    /** Decodes the little-endian FLOAT at {@code data[offset]}. */
+    public static float float32(byte[] data, int offset) {
+        return float32((data[offset] & 0xFF)
+                | ((data[offset + 1] & 0xFF) << 8)
+                | ((data[offset + 2] & 0xFF) << 16)
+                | ((data[offset + 3] & 0xFF) << 24));
+    }
+
+    /**
+     * Decodes {@code count} consecutive little-endian FLOATs from {@code src} into
+     * {@code dst} in one pass.
+     */
+    public static void decodeFloats(byte[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        if (count < 0 || srcOffset < 0 || dstOffset < 0
+                || srcOffset > src.length - 4 * count || dstOffset > dst.length - count) {
+            throw new IndexOutOfBoundsException("decodeFloats: count=" + count);
+        }
+        int s = srcOffset;
+        for (int i = 0; i < count; i++, s += 4) {
+            dst[dstOffset + i] = float32(src, s);
+        }
+    }
+
+    private static float floatSpecial(int mantissa) {
+        switch (mantissa) {
+            case FLOAT_POSITIVE_INFINITY:
+                return Float.POSITIVE_INFINITY;
+            case FLOAT_NEGATIVE_INFINITY:
+                return Float.NEGATIVE_INFINITY;
+            default: // NaN, NRes, reserved
+                return Float.NaN;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BpRecordReassembler}: replays segmented 0x2B36 streams.
+ */
+public class BpRecordReassemblerTest {
+
+    private final List<Integer> sequences = new ArrayList<>();
+    private final List<Float> systolics = new ArrayList<>();
+    private final List<Integer> drops = new ArrayList<>();
+
+    private final BpRecordReassembler.Listener listener = new BpRecordReassembler.Listener() {
+        @Override
+        public void onMeasurement(int sequenceNumber, BpsMeasurement m) {
+            sequences.add(sequenceNumber);
+            systolics.add(m.systolic);
+        }
+
+        @Override
+        public void onDropped(int sequenceNumber, int reason) {
+            drops.add(reason);
+        }
+    };
+
+    private int counter;
+
+    @Test
+    public void singleSegmentRecord() {
+        BpRecordReassembler r = new BpRecordReassembler(listener);
+        for (byte[] s : segments(7, 120, 1)) r.accept(s);
+
+        assertEquals(List.of(7), sequences);
+        assertEquals(List.of(120f), systolics);
+        assertEquals(1, r.records());
+        assertEquals(0, r.droppedRecords());
+    }
+
+    @Test
+    public void multiSegmentRecord_isJoined() {
+        BpRecordReassembler r = new BpRecordReassembler(listener);
+        for (int seq = 1; seq <= 3; seq++) {
+            for (byte[] s : segments(seq, 100 + seq, 4)) r.accept(s);
+        }
+
+        assertEquals(List.of(1, 2, 3), sequences);
+        assertEquals(List.of(101f, 102f, 103f), systolics);
+        assertEquals(12, r.segments());
+        assertEquals(0, r.counterGaps());
+    }
+
+    @Test
+    public void duplicateSegments_areIgnored() {
+        BpRecordReassembler r = new BpRecordReassembler(listener);
+        List<byte[]> segs = segments(5, 130, 3);
+        r.accept(segs.get(0));
+        r.accept(segs.get(0));
+        r.accept(segs.get(1));
+        r.accept(segs.get(1));
+        r.accept(segs.get(2));
+        r.accept(segs.get(2)); // duplicate of the last segment must not re-dispatch
+
+        assertEquals(List.of(5), sequences);
+        assertEquals(3, r.duplicateSegments());
+        assertTrue(drops.isEmpty());
+    }
+
+    @Test
+    public void missingContinuation_dropsRecord_andRecovers() {
+        BpRecordReassembler r = new BpRecordReassembler(listener);
+        List<byte[]> broken = segments(1, 110, 3);
+        r.accept(broken.get(0));
+        r.accept(broken.get(2)); // middle segment lost
+        for (byte[] s : segments(2, 111, 3)) r.accept(s);
+
+        assertEquals(List.of(2), sequences);
+        assertEquals(List.of(BpRecordReassembler.DROP_GAP), drops);
+        assertEquals(1, r.counterGaps());
+    }
+
+    @Test
+    public void missingWholeRecord_countsGap_butNextRecordIsKept() {
+        BpRecordReassembler r = new BpRecordReassembler(listener);
+        for (byte[] s : segments(1, 110, 2)) r.accept(s);
+        segments(2, 111, 2); // never delivered
+        for (byte[] s : segments(3, 112, 2)) r.accept(s);
+
+        assertEquals(List.of(1, 3), sequences);
+        assertEquals(1, r.counterGaps());
+        assertTrue(drops.isEmpty());
+    }
+
+    @Test
+    public void newFirstSegment_interruptsPartialRecord() {
+        BpRecordReassembler r = new BpRecordReassembler(listener);
+        List<byte[]> partial = segments(1, 110, 3);
+        r.accept(partial.get(0));
+        r.accept(partial.get(1));
+        for (byte[] s : segments(2, 111, 1)) r.accept(s);
+
+        assertEquals(List.of(2), sequences);
+        assertEquals(List.of(BpRecordReassembler.DROP_INTERRUPTED), drops);
+    }
+
+    @Test
+    public void orphanContinuationAndShortFrames_areMalformed() {
+        BpRecordReassembler r = new BpRecordReassembler(listener);
+        r.accept(new byte[]{0x05, 0x01, 0x02});        // continuation without a first segment
+        r.accept(new byte[]{(byte) 0xC6, 0x01});       // first+last but no header
+        r.accept(new byte[0]);
+        r.accept(null);
+
+        assertEquals(4, r.malformedSegments());
+        assertTrue(sequences.isEmpty());
+    }
+
+    @Test
+    public void oversizedRecord_isDropped() {
+        BpRecordReassembler r = new BpRecordReassembler(19, listener); // exactly one full 0x2A35 payload
+        List<byte[]> segs = segments(9, 120, 2);
+        segs.get(1)[0] &= ~BpRecordReassembler.SEG_LAST;
+        r.accept(segs.get(0));
+        r.accept(segs.get(1));
+        r.accept(new byte[]{(byte) (BpRecordReassembler.SEG_LAST | counter++), 0x00}); // 20th byte
+        for (byte[] s : segments(10, 121, 1)) r.accept(s);
+
+        assertEquals(List.of(10), sequences);
+        assertEquals(List.of(BpRecordReassembler.DROP_OVERFLOW), drops);
+    }
+
+    @Test
+    public void burstOf10kRecords_boundedMemory() {
+        final int[] count = {0};
+        BpRecordReassembler r = new BpRecordReassembler(new BpRecordReassembler.Listener() {
+            @Override
+            public void onMeasurement(int sequenceNumber, BpsMeasurement m) {
+                count[0]++;
+            }
+        });
+
+        // Pre-build the stream so only the reassembler allocates in the measured section
+        List<byte[]> stream = new ArrayList<>();
+        for (int seq = 0; seq < 12_000; seq++) {
+            List<byte[]> segs = segments(seq & 0xFFFF, 100 + (seq % 50), 1 + (seq % 3));
+            stream.addAll(segs);
+            if (seq % 97 == 0) stream.add(segs.get(segs.size() - 1)); // duplicate last segment
+        }
+        for (int i = 0; i < 2_000 * 2; i++) r.accept(stream.get(i)); // warm-up
+
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(tid);
+        for (int i = 2_000 * 2; i < stream.size(); i++) r.accept(stream.get(i));
+        long allocated = bean.getThreadAllocatedBytes(tid) - before;
+
+        assertEquals(12_000, r.measurements());
+        assertEquals(12_000, count[0]);
+        assertEquals(0, r.droppedRecords());
+        assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1024);
+    }
+
+    // Splits one 0x2B36 record carrying a full 0x2A35 payload into segmentCount notifications
+    private List<byte[]> segments(int seq, int systolic, int segmentCount) {
+        byte[] payload = {
+                0x1E,
+                (byte) systolic, 0x00, 0x50, 0x00, 0x5D, 0x00,
+                (byte) 0xE8, 0x07, 0x03, 0x0F, 0x08, 0x1E, 0x2D,
+                0x48, 0x00,
+                0x01,
+                0x00, 0x00
+        };
+        byte[] value = new byte[4 + payload.length];
+        value[0] = (byte) seq;
+        value[1] = (byte) (seq >> 8);
+        value[2] = 0x35;
+        value[3] = 0x2A;
+        System.arraycopy(payload, 0, value, 4, payload.length);
+
+        List<byte[]> out = new ArrayList<>();
+        int chunk = (value.length + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            int from = i * chunk;
+            int to = Math.min(value.length, from + chunk);
+            byte[] seg = new byte[1 + (to - from)];
+            int header = counter & BpRecordReassembler.SEG_COUNTER_MASK;
+            if (i == 0) header |= BpRecordReassembler.SEG_FIRST;
+            if (i == segmentCount - 1) header |= BpRecordReassembler.SEG_LAST;
+            seg[0] = (byte) header;
+            System.arraycopy(value, from, seg, 1, to - from);
+            out.add(seg);
+            counter++;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BpsFeature} and {@link Hex}.
+ */
+public class BpsFeatureTest {
+
+    @Test
+    public void describe_listsCapabilities() {
+        assertEquals("0x0000 (no flags)", BpsFeature.describe(0));
+        assertEquals("0x0005 (Body Movement Detection, Irregular Pulse Detection)", BpsFeature.describe(0x0005));
+        assertEquals("0x0020 (Multiple Bond)", BpsFeature.describe(BpsFeature.MULTIPLE_BOND));
+    }
+
+    @Test
+    public void parse_littleEndian() {
+        assertEquals(0x0123, BpsFeature.parse(new byte[]{0x23, 0x01}));
+        assertEquals(-1, BpsFeature.parse(new byte[]{0x23}));
+        assertEquals(-1, BpsFeature.parse(null));
+    }
+
+    @Test
+    public void hex() {
+        assertEquals("01 7A FF", Hex.toHex(new byte[]{0x01, 0x7A, (byte) 0xFF}));
+        assertEquals("01 7A", Hex.toHex(new byte[]{0x01, 0x7A, (byte) 0xFF}, 2));
+        assertEquals("(empty)", Hex.toHex(new byte[0]));
+        assertEquals("(null)", Hex.toHex(null));
+        assertEquals("[7A FF]", Hex.appendHex(new StringBuilder("["), new byte[]{0x01, 0x7A, (byte) 0xFF}, 1, 2)
+                .append(']').toString());
+    }
+
+    @Test
+    public void hex_everyByteValue() {
+        byte[] all = new byte[256];
+        for (int i = 0; i < 256; i++) all[i] = (byte) i;
+        String[] pairs = Hex.toHex(all).split(" ");
+        assertEquals(256, pairs.length);
+        for (int i = 0; i < 256; i++) assertEquals(String.format("%02X", i), pairs[i]);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BpsMeasurementCodec}.
+ */
+public class BpsMeasurementCodecTest {
+
+    // 120 / 80 / 93 mmHg, 2024-03-15 08:30:45, pulse 72, user 3, status 0x0005
+    private static final byte[] FULL_FRAME = {
+            0x1E,
+            0x78, 0x00, 0x50, 0x00, 0x5D, 0x00,
+            (byte) 0xE8, 0x07, 0x03, 0x0F, 0x08, 0x1E, 0x2D,
+            0x48, 0x00,
+            0x03,
+            0x05, 0x00
+    };
+
+    @Test
+    public void decode_fullFrame() {
+        BpsMeasurement m = new BpsMeasurement();
+        assertTrue(BpsMeasurementCodec.decode(FULL_FRAME, m));
+
+        assertEquals(120f, m.systolic, 0f);
+        assertEquals(80f, m.diastolic, 0f);
+        assertEquals(93f, m.map, 0f);
+        assertEquals("mmHg", m.unit());
+
+        assertTrue(m.hasTimestamp());
+        assertEquals(2024, BpsMeasurement.year(m.timestamp));
+        assertEquals(3, BpsMeasurement.month(m.timestamp));
+        assertEquals(15, BpsMeasurement.day(m.timestamp));
+        assertEquals(8, BpsMeasurement.hour(m.timestamp));
+        assertEquals(30, BpsMeasurement.minute(m.timestamp));
+        assertEquals(45, BpsMeasurement.second(m.timestamp));
+
+        assertTrue(m.hasPulseRate());
+        assertEquals(72f, m.pulseRate, 0f);
+        assertEquals(3, m.userId);
+        assertEquals(5, m.status);
+    }
+
+    @Test
+    public void decode_minimalFrame_leavesOptionalFieldsAbsent() {
+        byte[] frame = {0x01, 0x10, (byte) 0xF0, 0x0B, (byte) 0xF0, 0x0D, (byte) 0xF0}; // kPa, 1.6 / 1.1 / 1.3
+        BpsMeasurement m = new BpsMeasurement();
+        assertTrue(BpsMeasurementCodec.decode(frame, m));
+
+        assertEquals("kPa", m.unit());
+        assertEquals(1.6f, m.systolic, 1e-6f);
+        assertFalse(m.hasTimestamp());
+        assertEquals(BpsMeasurement.NO_TIMESTAMP, m.timestamp);
+        assertFalse(m.hasPulseRate());
+        assertTrue(Float.isNaN(m.pulseRate));
+        assertEquals(BpsMeasurement.ABSENT, m.userId);
+        assertEquals(BpsMeasurement.ABSENT, m.status);
+    }
+
+    @Test
+    public void decode_allFlagCombinations_withOffset() {
+        BpsMeasurement m = new BpsMeasurement();
+        for (int flags = 0; flags < 0x20; flags++) {
+            byte[] frame = frameFor(flags);
+            byte[] padded = new byte[frame.length + 5];
+            System.arraycopy(frame, 0, padded, 3, frame.length);
+
+            assertTrue("flags=" + flags, BpsMeasurementCodec.decode(padded, 3, frame.length, m));
+            assertEquals(flags, m.flags);
+            assertEquals(120f, m.systolic, 0f);
+            assertEquals((flags & BpsMeasurement.FLAG_PULSE_RATE) != 0, !Float.isNaN(m.pulseRate));
+            assertEquals((flags & BpsMeasurement.FLAG_USER_ID) != 0 ? 3 : BpsMeasurement.ABSENT, m.userId);
+
+            // Every truncation of the frame is rejected, never thrown
+            for (int len = 0; len < frame.length; len++) {
+                assertFalse("flags=" + flags + " len=" + len, BpsMeasurementCodec.decode(padded, 3, len, m));
+            }
+        }
+    }
+
+    @Test
+    public void decode_rejectsBadArguments() {
+        BpsMeasurement m = new BpsMeasurement();
+        assertFalse(BpsMeasurementCodec.decode(null, m));
+        assertFalse(BpsMeasurementCodec.decode(FULL_FRAME, -1, 7, m));
+        assertFalse(BpsMeasurementCodec.decode(FULL_FRAME, 15, 7, m));
+        assertFalse(BpsMeasurementCodec.decode(FULL_FRAME, 0, FULL_FRAME.length + 1, m));
+    }
+
+    @Test
+    public void decode_intoPrimitiveSinks() {
+        float[] floats = new float[8];
+        long[] longs = new long[8];
+        BpsMeasurement scratch = new BpsMeasurement();
+
+        assertTrue(BpsMeasurementCodec.decode(FULL_FRAME, 0, FULL_FRAME.length, floats, 4, longs, 4, scratch));
+        assertEquals(120f, floats[4], 0f);
+        assertEquals(72f, floats[7], 0f);
+        assertEquals(0x1E, longs[4]);
+        assertEquals(BpsMeasurement.packTimestamp(2024, 3, 15, 8, 30, 45), longs[5]);
+        assertEquals(3, longs[6]);
+        assertEquals(5, longs[7]);
+    }
+
+    @Test
+    public void encode_isTheInverseOfDecode() {
+        BpsMeasurement m = new BpsMeasurement();
+        BpsMeasurement back = new BpsMeasurement();
+        byte[] out = new byte[3 + BpsMeasurementCodec.MAX_LENGTH];
+        for (int flags = 0; flags < 0x20; flags++) {
+            byte[] frame = frameFor(flags);
+            assertTrue(BpsMeasurementCodec.decode(frame, m));
+            int n = BpsMeasurementCodec.encode(m, out, 3);
+            assertTrue(BpsMeasurementCodec.decode(out, 3, n, back));
+            assertTrue("flags=" + flags, m.sameAs(back));
+            // Canonical input (no redundant exponent): byte for byte
+            assertArrayEquals(Arrays.copyOf(frame, n), Arrays.copyOfRange(out, 3, 3 + n));
+        }
+    }
+
+    @Test
+    public void packedTimestamp_sortsChronologically() {
+        long a = BpsMeasurement.packTimestamp(2023, 12, 31, 23, 59, 59);
+        long b = BpsMeasurement.packTimestamp(2024, 1, 1, 0, 0, 0);
+        assertTrue(a < b);
+    }
+
+    @Test
+    public void decode_steadyState_allocatesNothing() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        BpsMeasurement m = new BpsMeasurement();
+        byte[] truncated = new byte[]{0x1E, 0x78, 0x00, 0x50, 0x00, 0x5D, 0x00, (byte) 0xE8};
+
+        // Warm up (JIT) before measuring
+        for (int i = 0; i < 200_000; i++) {
+            BpsMeasurementCodec.decode(FULL_FRAME, m);
+            BpsMeasurementCodec.decode(truncated, m);
+        }
+
+        long before = bean.getThreadAllocatedBytes(tid);
+        int decoded = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (BpsMeasurementCodec.decode(FULL_FRAME, m)) decoded++;
+            if (BpsMeasurementCodec.decode(truncated, m)) decoded++;
+        }
+        long allocated = bean.getThreadAllocatedBytes(tid) - before;
+
+        assertEquals(100_000, decoded);
+        assertEquals("bytes allocated by 200k decodes", 0, allocated);
+    }
+
+    private static byte[] frameFor(int flags) {
+        byte[] buf = new byte[FULL_FRAME.length];
+        int n = 0;
+        buf[n++] = (byte) flags;
+        System.arraycopy(FULL_FRAME, 1, buf, n, 6);
+        n += 6;
+        if ((flags & BpsMeasurement.FLAG_TIMESTAMP) != 0) {
+            System.arraycopy(FULL_FRAME, 7, buf, n, 7);
+            n += 7;
+        }
+        if ((flags & BpsMeasurement.FLAG_PULSE_RATE) != 0) {
+            buf[n++] = 0x48;
+            buf[n++] = 0x00;
+        }
+        if ((flags & BpsMeasurement.FLAG_USER_ID) != 0) {
+            buf[n++] = 0x03;
+        }
+        if ((flags & BpsMeasurement.FLAG_STATUS) != 0) {
+            buf[n++] = 0x05;
+            buf[n++] = 0x00;
+        }
+        byte[] frame = new byte[n];
+        System.arraycopy(buf, 0, frame, 0, n);
+        return frame;
+    }
+}
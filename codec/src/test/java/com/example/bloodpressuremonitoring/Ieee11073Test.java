@@ -0,0 +1,110 @@
+package com.example.bloodpressuremonitoring;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link Ieee11073}.
+ */
+public class Ieee11073Test {
+
+    @Test
+    public void sfloat_specialValues() {
+        assertTrue(Float.isNaN(Ieee11073.sfloat(Ieee11073.SFLOAT_NAN)));
+        assertTrue(Float.isNaN(Ieee11073.sfloat(Ieee11073.SFLOAT_NRES)));
+        assertTrue(Float.isNaN(Ieee11073.sfloat(Ieee11073.SFLOAT_RESERVED)));
+        assertEquals(Float.POSITIVE_INFINITY, Ieee11073.sfloat(Ieee11073.SFLOAT_POSITIVE_INFINITY), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, Ieee11073.sfloat(Ieee11073.SFLOAT_NEGATIVE_INFINITY), 0f);
+
+        // Same mantissas with a non-zero exponent are ordinary numbers
+        assertEquals(2047e1f, Ieee11073.sfloat(0x17FF), 1e-3f);
+        assertEquals(-2048e-1f, Ieee11073.sfloat(0xF800), 1e-3f);
+    }
+
+    @Test
+    public void sfloat_matchesLegacyForEveryOrdinaryValue() {
+        for (int raw = 0; raw <= 0xFFFF; raw++) {
+            if (Ieee11073.isSfloatSpecial(raw)) continue;
+            float expected = legacySfloat((byte) raw, (byte) (raw >> 8));
+            assertEquals("raw=0x" + Integer.toHexString(raw),
+                    Float.floatToIntBits(expected), Float.floatToIntBits(Ieee11073.sfloat(raw)));
+        }
+    }
+
+    @Test
+    public void sfloat_knownValues() {
+        assertEquals(120f, Ieee11073.sfloat(new byte[]{0x78, 0x00}, 0), 0f);
+        assertEquals(1.6f, Ieee11073.sfloat(new byte[]{0x10, (byte) 0xF0}, 0), 1e-6f);
+        assertEquals(-1f, Ieee11073.sfloat(0x0FFF), 0f);
+    }
+
+    @Test
+    public void toSfloat_roundTripsEveryOrdinaryValue() {
+        assertEquals(0x0078, Ieee11073.toSfloat(120f));      // 120 x 10^0
+        assertEquals(0xF010, Ieee11073.toSfloat(1.6f));      // 16 x 10^-1
+        assertEquals(0x0000, Ieee11073.toSfloat(0f));
+        assertEquals(Ieee11073.SFLOAT_NAN, Ieee11073.toSfloat(Float.NaN));
+        assertEquals(Ieee11073.SFLOAT_POSITIVE_INFINITY, Ieee11073.toSfloat(3e12f));
+        assertEquals(Ieee11073.SFLOAT_NEGATIVE_INFINITY, Ieee11073.toSfloat(Float.NEGATIVE_INFINITY));
+
+        // Every decodable value encodes back to a raw that decodes to the same float
+        for (int raw = 0; raw <= 0xFFFF; raw++) {
+            if (Ieee11073.isSfloatSpecial(raw)) continue;
+            float v = Ieee11073.sfloat(raw);
+            int encoded = Ieee11073.toSfloat(v);
+            assertFalse(Ieee11073.isSfloatSpecial(encoded));
+            assertEquals("raw=0x" + Integer.toHexString(raw), v, Ieee11073.sfloat(encoded), Math.abs(v) * 1e-6f);
+        }
+    }
+
+    @Test
+    public void float32_specialAndKnownValues() {
+        assertTrue(Float.isNaN(Ieee11073.float32(Ieee11073.FLOAT_NAN)));
+        assertTrue(Float.isNaN(Ieee11073.float32(Ieee11073.FLOAT_NRES)));
+        assertTrue(Float.isNaN(Ieee11073.float32(Ieee11073.FLOAT_RESERVED)));
+        assertEquals(Float.POSITIVE_INFINITY, Ieee11073.float32(Ieee11073.FLOAT_POSITIVE_INFINITY), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, Ieee11073.float32(Ieee11073.FLOAT_NEGATIVE_INFINITY), 0f);
+
+        // 36.5 = 365 x 10^-1 -> exponent 0xFF, mantissa 0x00016D
+        assertEquals(36.5f, Ieee11073.float32(new byte[]{0x6D, 0x01, 0x00, (byte) 0xFF}, 0), 1e-6f);
+        // -5 x 10^2
+        assertEquals(-500f, Ieee11073.float32(0x02FFFFFB), 0f);
+    }
+
+    @Test
+    public void batchDecode_matchesScalar() {
+        byte[] src = new byte[2 + 2 * 1000];
+        for (int i = 0; i < src.length; i++) src[i] = (byte) (i * 31 + 7);
+        float[] dst = new float[1001];
+
+        Ieee11073.decodeSfloats(src, 2, dst, 1, 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Float.floatToIntBits(Ieee11073.sfloat(src, 2 + 2 * i)), Float.floatToIntBits(dst[1 + i]));
+        }
+
+        float[] dst32 = new float[500];
+        Ieee11073.decodeFloats(src, 2, dst32, 0, 500);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Float.floatToIntBits(Ieee11073.float32(src, 2 + 4 * i)), Float.floatToIntBits(dst32[i]));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void batchDecode_rejectsOverrun() {
+        Ieee11073.decodeSfloats(new byte[10], 2, new float[10], 0, 5);
+    }
+
+    // Previous MainActivity.sfloatToFloat, kept as the reference implementation
+    private static float legacySfloat(byte b0, byte b1) {
+        int raw = ((b1 & 0xFF) << 8) | (b0 & 0xFF);
+
+        int mantissa = raw & 0x0FFF;
+        int exponent = (raw >> 12) & 0x000F;
+
+        if ((mantissa & 0x0800) != 0) mantissa |= 0xFFFFF000;
+        if ((exponent & 0x08) != 0) exponent |= 0xFFFFFFF0;
+
+        return (float) (mantissa * Math.pow(10, exponent));
+    }
+}